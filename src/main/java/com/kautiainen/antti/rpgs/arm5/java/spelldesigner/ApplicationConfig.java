@@ -9,7 +9,13 @@ public class ApplicationConfig extends Application {
 
   @Override
   public java.util.Set<Class<?>> getClasses() {
-    return super.getClasses();
+    java.util.Set<Class<?>> result = new java.util.HashSet<>(super.getClasses());
+    result.add(GrimoireExportResource.class);
+    result.add(SpellBatchResource.class);
+    result.add(MetricsResource.class);
+    result.add(ListingResource.class);
+    result.add(LiveDesignResource.class);
+    return result;
   }
 
   
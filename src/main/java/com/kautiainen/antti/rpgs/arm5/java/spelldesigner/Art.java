@@ -1,12 +1,19 @@
 package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 /**
@@ -21,33 +28,267 @@ public abstract class Art implements Comparable<Art> {
 
     /**
      * The known arts from string representation of the type to the list of arts.
+     *
+     * The map is kept in step with the {@link #getRegistry() registry} for the existing readers,
+     * but it may show a type without its arts while an art is being registered. The registry
+     * snapshots are always consistent.
+     */
+    protected static final ConcurrentNavigableMap<ArtType, NavigableSet<Art>> knownArts = new ConcurrentSkipListMap<>(ArtType.COMPARATOR);
+
+    /**
+     * The current snapshot of the known arts.
+     */
+    private static volatile Registry registry = Registry.EMPTY;
+
+    /**
+     * The lock of the writers of the registry.
+     */
+    private static final ReentrantLock REGISTRY_LOCK = new ReentrantLock();
+
+    /**
+     * An immutable snapshot of the known arts.
+     *
+     * The types and the arts of every type are sorted arrays, so a reader holding a snapshot
+     * sees every art of a type together with the type, and no reader ever locks.
+     */
+    public static final class Registry {
+
+        /**
+         * The empty registry.
+         */
+        static final Registry EMPTY = new Registry(0L, new ArtType[0], new Art[0][]);
+
+        /**
+         * The version of the snapshot.
+         */
+        private final long version;
+
+        /**
+         * The sorted types.
+         */
+        private final ArtType[] types;
+
+        /**
+         * The sorted arts of the types.
+         */
+        private final Art[][] arts;
+
+        /**
+         * The unmodifiable sets of the arts of the types.
+         */
+        private final List<NavigableSet<Art>> sets;
+
+        /**
+         * The first type of every string representation.
+         */
+        private final Map<String, ArtType> typesByName;
+
+        /**
+         * Create a new snapshot.
+         *
+         * @param version The version of the snapshot.
+         * @param types The sorted types.
+         * @param arts The sorted arts of the types.
+         */
+        private Registry(long version, ArtType[] types, Art[][] arts) {
+            this.version = version;
+            this.types = types;
+            this.arts = arts;
+            List<NavigableSet<Art>> sets = new ArrayList<>(types.length);
+            Map<String, ArtType> typesByName = new HashMap<>();
+            for (int i = 0; i < types.length; i++) {
+                sets.add(Collections.unmodifiableNavigableSet(new TreeSet<>(Arrays.asList(arts[i]))));
+                typesByName.putIfAbsent(types[i].toString(), types[i]);
+            }
+            this.sets = sets;
+            this.typesByName = typesByName;
+        }
+
+        /**
+         * Get the version of the snapshot.
+         *
+         * @return The version increasing with every change of the registry.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the known types.
+         *
+         * @return The unmodifiable list of the types in their natural order.
+         */
+        public List<ArtType> getTypes() {
+            return Collections.unmodifiableList(Arrays.asList(types));
+        }
+
+        /**
+         * Find a type by its string representation.
+         *
+         * @param typeName The string representation of the type.
+         * @return The first type with the string representation, if any exists.
+         */
+        public Optional<ArtType> findType(String typeName) {
+            return Optional.ofNullable(typeName == null ? null : typesByName.get(typeName));
+        }
+
+        /**
+         * Get the index of a type.
+         *
+         * @param type The type.
+         * @return The index of the type, or a negative value if the type is not known.
+         */
+        private int indexOf(ArtType type) {
+            return type == null ? -1 : Arrays.binarySearch(types, type, ArtType.COMPARATOR);
+        }
+
+        /**
+         * Get the arts of a type.
+         *
+         * @param type The type.
+         * @return The unmodifiable list of the arts of the type in their natural order.
+         */
+        public List<Art> getArts(ArtType type) {
+            int index = indexOf(type);
+            return index < 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(arts[index]));
+        }
+
+        /**
+         * Get the arts of a type as a set.
+         *
+         * @param type The type.
+         * @return The unmodifiable set of the arts of the type.
+         */
+        public NavigableSet<Art> getArtsOfType(ArtType type) {
+            int index = indexOf(type);
+            return index < 0 ? Collections.emptyNavigableSet() : sets.get(index);
+        }
+
+        /**
+         * Get all known arts.
+         *
+         * @return The list of the arts ordered by the type and the name.
+         */
+        public List<Art> getAllArts() {
+            List<Art> result = new ArrayList<>();
+            for (Art[] artsOfType : arts) result.addAll(Arrays.asList(artsOfType));
+            return result;
+        }
+
+        /**
+         * Get the snapshot with a type added.
+         *
+         * @param type The added type.
+         * @return The new snapshot, or this snapshot if the type was already known.
+         */
+        Registry withType(ArtType type) {
+            int index = indexOf(type);
+            if (index >= 0) return this;
+            int insertion = -index - 1;
+            ArtType[] nextTypes = new ArtType[types.length + 1];
+            Art[][] nextArts = new Art[types.length + 1][];
+            System.arraycopy(types, 0, nextTypes, 0, insertion);
+            System.arraycopy(arts, 0, nextArts, 0, insertion);
+            nextTypes[insertion] = type;
+            nextArts[insertion] = new Art[0];
+            System.arraycopy(types, insertion, nextTypes, insertion + 1, types.length - insertion);
+            System.arraycopy(arts, insertion, nextArts, insertion + 1, types.length - insertion);
+            return new Registry(version + 1, nextTypes, nextArts);
+        }
+
+        /**
+         * Get the snapshot with an art and its type added.
+         *
+         * @param art The added art.
+         * @return The new snapshot, or this snapshot if the art was already known.
+         */
+        Registry withArt(Art art) {
+            int typeIndex = indexOf(art.getType());
+            if (typeIndex < 0) return withType(art.getType()).withArt(art, version + 1);
+            return withArt(art, version + 1);
+        }
+
+        /**
+         * Get the snapshot with an art added to a known type.
+         *
+         * @param art The added art.
+         * @param nextVersion The version of the new snapshot.
+         * @return The new snapshot, or this snapshot if the art was already known.
+         */
+        private Registry withArt(Art art, long nextVersion) {
+            int typeIndex = indexOf(art.getType());
+            Art[] current = arts[typeIndex];
+            int index = Arrays.binarySearch(current, art);
+            if (index >= 0) return this;
+            int insertion = -index - 1;
+            Art[] next = new Art[current.length + 1];
+            System.arraycopy(current, 0, next, 0, insertion);
+            next[insertion] = art;
+            System.arraycopy(current, insertion, next, insertion + 1, current.length - insertion);
+            Art[][] nextArts = arts.clone();
+            nextArts[typeIndex] = next;
+            return new Registry(nextVersion, types, nextArts);
+        }
+    }
+
+    /**
+     * Get the current snapshot of the known arts.
+     *
+     * @return The snapshot.
      */
-    protected static final ConcurrentNavigableMap<ArtType, NavigableSet<Art>> knownArts = new ConcurrentSkipListMap<>();
+    public static Registry getRegistry() {
+        return registry;
+    }
 
     /**
      * Add known art tyep.
      *
+     * A registered type is published to the {@link ChangeFeed#shared() change feed}.
+     *
      * @param artType The new art type.
      * @return True, if and only if the art was added.
      */
     protected static final boolean addKnownArtType(Art.ArtType artType) {
-        if (artType == null || knownArts.containsKey(artType)) {
-            return false;
-        } else {
-            knownArts.put(artType, new ConcurrentSkipListSet<>());
+        if (artType == null) return false;
+        // The writers wait on a reentrant lock, which does not pin the carriers of virtual threads.
+        REGISTRY_LOCK.lock();
+        try {
+            Registry current = registry;
+            Registry next = current.withType(artType);
+            if (next == current) return false;
+            knownArts.putIfAbsent(artType, new ConcurrentSkipListSet<>());
+            registry = next;
+            ChangeFeed.shared().publish(ChangeFeed.Kind.ART_TYPE_ADDED, next, artType, -1, next.getVersion());
             return true;
+        } finally {
+            REGISTRY_LOCK.unlock();
         }
     }
 
     /**
      * Add known art. 
      *
+     * A registered art is published to the {@link ChangeFeed#shared() change feed}.
+     *
      * @param art The added art.
      * @return True, if and only if the art was added.
      */
     protected static final boolean addKnownArt(Art art) {
-        addKnownArtType(art.getType());
-        return knownArts.get(art.getType()).add(art);
+        REGISTRY_LOCK.lock();
+        try {
+            Registry current = registry;
+            Registry next = current.withArt(art);
+            if (next == current) return false;
+            knownArts.computeIfAbsent(art.getType(), type -> new ConcurrentSkipListSet<>()).add(art);
+            registry = next;
+            if (current.indexOf(art.getType()) < 0) {
+                ChangeFeed.shared().publish(ChangeFeed.Kind.ART_TYPE_ADDED, next, art.getType(), -1, next.getVersion());
+            }
+            ChangeFeed.shared().publish(ChangeFeed.Kind.ART_ADDED, next, art, -1, next.getVersion());
+            return true;
+        } finally {
+            REGISTRY_LOCK.unlock();
+        }
     }
 
     /**
@@ -57,19 +298,27 @@ public abstract class Art implements Comparable<Art> {
      * @return The set of arts of the given type.
      */
     public static java.util.NavigableSet<Art> getArtsOfType(String typeName) {
-        ArtType type = knownArts.keySet().stream().filter( current -> (current.toString().equals(typeName))).findFirst().orElse(null);
-        if (type == null) {
-            return Collections.emptyNavigableSet();
-        } else {
-            return Collections.unmodifiableNavigableSet(knownArts.get(type));
+        long start = SpellMetrics.start();
+        try {
+            Registry current = registry;
+            return current.findType(typeName).map(current::getArtsOfType).orElse(Collections.emptyNavigableSet());
+        } finally {
+            SpellMetrics.ART_TYPE_LOOKUPS.record(start);
         }
     }
 
+    /**
+     * Get the known arts of type.
+     * 
+     * @param type The type.
+     * @return The set of arts of the given type.
+     */
     public static java.util.SortedSet<Art> getArtsOfType(ArtType type) {
-        if (type != null && knownArts.containsKey(type)) {
-            return Collections.unmodifiableNavigableSet(knownArts.get(type));
-        } else {
-            return Collections.emptyNavigableSet();
+        long start = SpellMetrics.start();
+        try {
+            return registry.getArtsOfType(type);
+        } finally {
+            SpellMetrics.ART_TYPE_LOOKUPS.record(start);
         }
     }
 
@@ -220,6 +469,10 @@ public abstract class Art implements Comparable<Art> {
 
     /**
      * Calculate the advancement cost.
+     *
+     * Advancing to a level costs the level in experience, so the cost is the sum of the levels
+     * after the start up to the end.
+     *
      * @param start The starting level.
      * @param end The result level.
      * @return The number of experience the advancement costs.
@@ -228,12 +481,19 @@ public abstract class Art implements Comparable<Art> {
     public static int experienceCost(int start, int end) throws IllegalArgumentException {
         if (!validLevel(start)) throw new IllegalArgumentException("Invalid start level");
         if (!validLevel(end)) throw new IllegalArgumentException("Invalid end level");
-        if (start < end) {
-            // Getting the basic pyramid cost.
-            return (start + end)*(end - start +1)/2;
-        } else {
-            // Getting the opposite of hte cost for changing the value from end to start.
-            return -experienceCost(end, start);
+        long started = SpellMetrics.start();
+        try {
+            if (start == end) {
+                return 0;
+            } else if (start < end) {
+                // Getting the basic pyramid cost of the levels start+1..end.
+                return (int)((long)(end - start)*(start + end + 1)/2);
+            } else {
+                // Getting the opposite of hte cost for changing the value from end to start.
+                return (int)-((long)(start - end)*(start + end + 1)/2);
+            }
+        } finally {
+            SpellMetrics.EXPERIENCE_COSTS.record(started);
         }
     }
 
@@ -250,13 +510,13 @@ public abstract class Art implements Comparable<Art> {
             // Techniues before Forms before neither.
             if (result == 0) {
                 if (compared.isTechnique()) {
-                    result = (compared.isTechnique() ? 0 : -1);
+                    result = (comparee.isTechnique() ? 0 : -1);
                 } else if (comparee.isTechnique()) {
                     result = 1;
                 } else if (compared.isForm()) {
-                    return comparee.isForm() ? 0 : -1;
+                    result = (comparee.isForm() ? 0 : -1);
                 } else if (comparee.isForm()) {
-                    return -1;
+                    result = 1;
                 }
             }
             if (result == 0) {
@@ -327,6 +587,8 @@ public abstract class Art implements Comparable<Art> {
         if (!validAbbreviation(abbrev) ||
         abbrev.length() > name.length() ||
         abbrev.length() != 2) throw new IllegalArgumentException("Invalid art abbreviation");
+        this.name = name;
+        this.abbrev = abbrev;
     }
 
     /**
@@ -335,7 +597,7 @@ public abstract class Art implements Comparable<Art> {
      * @param name The name of the art.
      */
     protected Art(String name) throws IllegalArgumentException {
-        this(name, name == null ? null : name.substring(2));
+        this(name, name == null || name.length() < 2 ? null : name.substring(0, 2));
     }
 
 
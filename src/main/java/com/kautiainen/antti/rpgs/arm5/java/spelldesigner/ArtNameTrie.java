@@ -0,0 +1,376 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A prefix trie of the art names and abbreviations for autocompletion.
+ *
+ * The nodes are stored in parallel primitive arrays, and every node keeps its best ranked
+ * entries, so that a completion only walks the prefix. The trie is copied on write, and
+ * readers always see a consistent trie without locking.
+ */
+public class ArtNameTrie {
+
+  /**
+   * The default maximal number of completions.
+   */
+  public static final int DEFAULT_MAX_COMPLETIONS = 8;
+
+  /**
+   * The value indicating no node.
+   */
+  private static final int NO_NODE = -1;
+
+  /**
+   * The nodes and entries of the trie.
+   */
+  private static final class Nodes {
+
+    /**
+     * The characters of the edges leading to the nodes.
+     */
+    char[] labels;
+
+    /**
+     * The first child of each node.
+     */
+    int[] firstChild;
+
+    /**
+     * The next sibling of each node.
+     */
+    int[] nextSibling;
+
+    /**
+     * The ranked entry indexes of each node.
+     */
+    int[][] ranked;
+
+    /**
+     * The number of nodes.
+     */
+    int size;
+
+    /**
+     * The arts of the entries.
+     */
+    Art[] arts;
+
+    /**
+     * The keys of the entries.
+     */
+    String[] keys;
+
+    /**
+     * The number of entries.
+     */
+    int entryCount;
+
+    /**
+     * Create nodes with only the root.
+     */
+    Nodes() {
+      labels = new char[16];
+      firstChild = new int[16];
+      nextSibling = new int[16];
+      ranked = new int[16][];
+      arts = new Art[16];
+      keys = new String[16];
+      firstChild[0] = NO_NODE;
+      nextSibling[0] = NO_NODE;
+      ranked[0] = new int[0];
+      size = 1;
+    }
+
+    /**
+     * Create a copy of nodes.
+     *
+     * The ranked arrays are shared, and they are replaced instead of modified.
+     *
+     * @param original The copied nodes.
+     * @param extraNodes The number of nodes reserved for the additions.
+     * @param extraEntries The number of entries reserved for the additions.
+     */
+    Nodes(Nodes original, int extraNodes, int extraEntries) {
+      int nodeCapacity = Math.max(original.labels.length, original.size + extraNodes);
+      int entryCapacity = Math.max(original.arts.length, original.entryCount + extraEntries);
+      labels = Arrays.copyOf(original.labels, nodeCapacity);
+      firstChild = Arrays.copyOf(original.firstChild, nodeCapacity);
+      nextSibling = Arrays.copyOf(original.nextSibling, nodeCapacity);
+      ranked = Arrays.copyOf(original.ranked, nodeCapacity);
+      arts = Arrays.copyOf(original.arts, entryCapacity);
+      keys = Arrays.copyOf(original.keys, entryCapacity);
+      size = original.size;
+      entryCount = original.entryCount;
+    }
+
+    /**
+     * Find a child of a node.
+     *
+     * @param node The parent node.
+     * @param label The label of the child.
+     * @return The child node, or {@link #NO_NODE}.
+     */
+    int child(int node, char label) {
+      for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+        if (labels[child] == label) return child;
+      }
+      return NO_NODE;
+    }
+
+    /**
+     * Find or create a child of a node.
+     *
+     * @param node The parent node.
+     * @param label The label of the child.
+     * @return The child node.
+     */
+    int addChild(int node, char label) {
+      int child = child(node, label);
+      if (child != NO_NODE) return child;
+      child = size++;
+      labels[child] = label;
+      firstChild[child] = NO_NODE;
+      nextSibling[child] = firstChild[node];
+      ranked[child] = new int[0];
+      firstChild[node] = child;
+      return child;
+    }
+
+    /**
+     * Compare the rank of entries.
+     *
+     * Shorter keys rank first, so that an exact match precedes its extensions.
+     *
+     * @param entry The compared entry.
+     * @param other The entry compared with.
+     * @return The comparison result.
+     */
+    int compareRank(int entry, int other) {
+      int result = Integer.compare(keys[entry].length(), keys[other].length());
+      if (result == 0) result = arts[entry].getName().compareTo(arts[other].getName());
+      if (result == 0) result = keys[entry].compareTo(keys[other]);
+      return result;
+    }
+
+    /**
+     * Add an entry into the ranked entries of a node.
+     *
+     * @param node The node.
+     * @param entry The added entry.
+     * @param capacity The maximal number of ranked entries.
+     */
+    void rank(int node, int entry, int capacity) {
+      int[] current = ranked[node];
+      int position = 0;
+      while (position < current.length && compareRank(current[position], entry) <= 0) {
+        position++;
+      }
+      if (position >= capacity) return;
+      int[] result = new int[Math.min(capacity, current.length + 1)];
+      System.arraycopy(current, 0, result, 0, position);
+      result[position] = entry;
+      System.arraycopy(current, position, result, position + 1, result.length - position - 1);
+      ranked[node] = result;
+    }
+  }
+
+  /**
+   * The maximal number of completions.
+   */
+  private final int maxCompletions;
+
+  /**
+   * The current nodes of the trie.
+   */
+  private volatile Nodes nodes = new Nodes();
+
+  /**
+   * The added keys and arts used to ignore duplicate additions.
+   */
+  private final Set<List<Object>> added = new HashSet<>();
+
+  /**
+   * The lock of the writers.
+   */
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  /**
+   * Create an empty trie with default maximal number of completions.
+   */
+  public ArtNameTrie() {
+    this(DEFAULT_MAX_COMPLETIONS);
+  }
+
+  /**
+   * Create an empty trie.
+   *
+   * @param maxCompletions The maximal number of completions.
+   * @throws IllegalArgumentException The maximal number of completions was not positive.
+   */
+  public ArtNameTrie(int maxCompletions) throws IllegalArgumentException {
+    if (maxCompletions <= 0) throw new IllegalArgumentException("Invalid maximal number of completions");
+    this.maxCompletions = maxCompletions;
+  }
+
+  /**
+   * Create a trie of all arts of the known arts registry.
+   *
+   * @return The trie containing every registered art.
+   */
+  public static ArtNameTrie fromKnownArts() {
+    ArtNameTrie result = new ArtNameTrie();
+    result.refresh();
+    return result;
+  }
+
+  /**
+   * Add the arts of the known arts registry not yet in the trie.
+   */
+  public void refresh() {
+    addAll(Art.getRegistry().getAllArts());
+  }
+
+  /**
+   * Add the techniques and forms of the Hermetic arts.
+   *
+   * @param arts The added arts.
+   */
+  public void addAll(HermeticArts arts) {
+    List<Art> hermeticArts = new ArrayList<>(arts.getTechniques());
+    hermeticArts.addAll(arts.getForms());
+    addAll(hermeticArts);
+  }
+
+  /**
+   * Add an art with its name and abbreviation.
+   *
+   * @param art The added art.
+   * @return True, if and only if the trie changed.
+   */
+  public boolean add(Art art) {
+    return addAll(Collections.singletonList(art));
+  }
+
+  /**
+   * Add arts with their names and abbreviations.
+   *
+   * @param arts The added arts.
+   * @return True, if and only if the trie changed.
+   */
+  public boolean addAll(Collection<? extends Art> arts) {
+    writeLock.lock();
+    try {
+      List<String> keys = new ArrayList<>();
+      List<Art> keyArts = new ArrayList<>();
+      int extraNodes = 0;
+      for (Art art : arts) {
+        if (art == null || art.getName() == null) continue;
+        List<String> artKeys = new ArrayList<>(2);
+        artKeys.add(art.getName());
+        art.getAbbreviation().ifPresent(artKeys::add);
+        for (String key : artKeys) {
+          String normalized = normalize(key);
+          if (added.add(Arrays.asList(normalized, art))) {
+            keys.add(normalized);
+            keyArts.add(art);
+            extraNodes += normalized.length();
+          }
+        }
+      }
+      if (keys.isEmpty()) return false;
+      Nodes result = new Nodes(nodes, extraNodes, keys.size());
+      for (int i = 0, end = keys.size(); i < end; i++) {
+        insert(result, keys.get(i), keyArts.get(i));
+      }
+      nodes = result;
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Insert an entry into nodes.
+   *
+   * @param target The nodes.
+   * @param key The normalized key.
+   * @param art The art of the key.
+   */
+  private void insert(Nodes target, String key, Art art) {
+    int entry = target.entryCount++;
+    target.keys[entry] = key;
+    target.arts[entry] = art;
+    int capacity = maxCompletions * 2;
+    int node = 0;
+    target.rank(node, entry, capacity);
+    for (int i = 0, end = key.length(); i < end; i++) {
+      node = target.addChild(node, key.charAt(i));
+      target.rank(node, entry, capacity);
+    }
+  }
+
+  /**
+   * Normalize a key for case insensitive matching.
+   *
+   * @param key The key.
+   * @return The normalized key.
+   */
+  private static String normalize(CharSequence key) {
+    return key.toString().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Complete a prefix with the default maximal number of completions.
+   *
+   * @param prefix The typed prefix.
+   * @return The ranked distinct arts whose name or abbreviation starts with the prefix.
+   */
+  public List<Art> complete(CharSequence prefix) {
+    return complete(prefix, maxCompletions);
+  }
+
+  /**
+   * Complete a prefix.
+   *
+   * @param prefix The typed prefix. An undefined value is treated as an empty prefix.
+   * @param limit The maximal number of completions. The value is capped to the maximal
+   * number of completions of the trie.
+   * @return The ranked distinct arts whose name or abbreviation starts with the prefix.
+   */
+  public List<Art> complete(CharSequence prefix, int limit) {
+    Nodes current = nodes;
+    int node = 0;
+    if (prefix != null) {
+      for (int i = 0, end = prefix.length(); i < end && node != NO_NODE; i++) {
+        node = current.child(node, Character.toLowerCase(prefix.charAt(i)));
+      }
+    }
+    if (node == NO_NODE || limit <= 0) return Collections.emptyList();
+    int[] entries = current.ranked[node];
+    int max = Math.min(limit, maxCompletions);
+    List<Art> result = new ArrayList<>(Math.min(max, entries.length));
+    for (int i = 0; i < entries.length && result.size() < max; i++) {
+      Art art = current.arts[entries[i]];
+      if (!result.contains(art)) result.add(art);
+    }
+    return result;
+  }
+
+  /**
+   * Get the number of keys of the trie.
+   *
+   * @return The number of names and abbreviations in the trie.
+   */
+  public int size() {
+    return nodes.entryCount;
+  }
+}
@@ -0,0 +1,124 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The dense ordinals of the arts used by the primitive record stores.
+ *
+ * The techniques and the forms are identified by their keys, so equal arts of different art
+ * sets share an ordinal. The arts by ordinal are published as a copy on write array, and an
+ * ordinal stored before publishing a record is always resolvable by the readers of the record.
+ */
+public class ArtOrdinals {
+
+  /**
+   * The error message indicating there were too many arts.
+   */
+  public static final String TOO_MANY_ARTS_MESSAGE = "Too many arts";
+
+  /**
+   * The largest number of arts.
+   */
+  public static final int MAX_ARTS = Short.MAX_VALUE;
+
+  /**
+   * The arts by ordinal.
+   */
+  private volatile ArtInterface<?>[] arts = new ArtInterface<?>[0];
+
+  /**
+   * The ordinals by art key.
+   */
+  private final Map<String, Integer> ordinals = new HashMap<>();
+
+  /**
+   * The lock of the writers.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Get the key of an art.
+   *
+   * @param art The art.
+   * @return The key separating the techniques from the forms.
+   */
+  static String keyOf(ArtInterface<?> art) {
+    return (art instanceof TechniqueInterface ? "t:" : "f:") + GuidelineCatalog.artKey(art);
+  }
+
+  /**
+   * Get the ordinal of an art, registering the art when needed.
+   *
+   * @param art The art.
+   * @return The ordinal of the art.
+   * @throws IllegalArgumentException The art was undefined.
+   * @throws IllegalStateException There were too many arts.
+   */
+  public short ordinal(ArtInterface<?> art) throws IllegalArgumentException, IllegalStateException {
+    if (art == null) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    String key = keyOf(art);
+    lock.lock();
+    try {
+      Integer result = ordinals.get(key);
+      if (result == null) {
+        if (arts.length == MAX_ARTS) throw new IllegalStateException(TOO_MANY_ARTS_MESSAGE);
+        result = arts.length;
+        ArtInterface<?>[] grown = Arrays.copyOf(arts, arts.length + 1);
+        grown[result] = art;
+        arts = grown;
+        ordinals.put(key, result);
+      }
+      return result.shortValue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the ordinal of a registered art.
+   *
+   * @param art The art.
+   * @return The ordinal of the art, or -1, if the art is not registered.
+   */
+  public int find(ArtInterface<?> art) {
+    if (art == null) return -1;
+    lock.lock();
+    try {
+      return ordinals.getOrDefault(keyOf(art), -1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the registered arts.
+   *
+   * @return The arts by ordinal. The returned array must not be modified.
+   */
+  ArtInterface<?>[] snapshot() {
+    return arts;
+  }
+
+  /**
+   * Get an art.
+   *
+   * @param ordinal The ordinal.
+   * @return The art of the ordinal.
+   * @throws IndexOutOfBoundsException The ordinal was not registered.
+   */
+  public ArtInterface<?> get(int ordinal) throws IndexOutOfBoundsException {
+    return arts[ordinal];
+  }
+
+  /**
+   * Get the number of registered arts.
+   *
+   * @return The number of ordinals.
+   */
+  public int size() {
+    return arts.length;
+  }
+}
@@ -0,0 +1,279 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A Burkhard-Keller tree of values keyed by strings with edit distance metric.
+ *
+ * The keys are compared case insensitively. A query within a distance bound only visits the
+ * subtrees whose distance from the visited node may contain matches.
+ *
+ * @param <T> The type of the values.
+ */
+public class BkTree<T> {
+
+  /**
+   * A match of a query.
+   *
+   * @param <T> The type of the value.
+   */
+  public static final class Match<T> {
+
+    /**
+     * The comparator ordering matches by distance and key.
+     */
+    public static final Comparator<Match<?>> COMPARATOR = Comparator.<Match<?>>comparingInt(Match::getDistance)
+    .thenComparing(Match::getKey);
+
+    /**
+     * The matching key.
+     */
+    private final String key;
+
+    /**
+     * The matching value.
+     */
+    private final T value;
+
+    /**
+     * The edit distance from the query.
+     */
+    private final int distance;
+
+    /**
+     * Create a new match.
+     *
+     * @param key The matching key.
+     * @param value The matching value.
+     * @param distance The edit distance from the query.
+     */
+    Match(String key, T value, int distance) {
+      this.key = key;
+      this.value = value;
+      this.distance = distance;
+    }
+
+    /**
+     * Get the matching key.
+     *
+     * @return The normalized key.
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Get the matching value.
+     *
+     * @return The value.
+     */
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Get the edit distance from the query.
+     *
+     * @return The edit distance.
+     */
+    public int getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s(%d)", key, distance);
+    }
+  }
+
+  /**
+   * A node of the tree.
+   */
+  private static final class Node<T> {
+
+    /**
+     * The normalized key of the node.
+     */
+    final String key;
+
+    /**
+     * The values with the key.
+     */
+    final List<T> values = new ArrayList<>(1);
+
+    /**
+     * The children indexed by their distance from the key.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    Node<T>[] children = new Node[0];
+
+    /**
+     * Create a new node.
+     *
+     * @param key The normalized key.
+     */
+    Node(String key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * The root of the tree.
+   */
+  private Node<T> root;
+
+  /**
+   * The number of values.
+   */
+  private int size;
+
+  /**
+   * The lock guarding the tree.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Normalize a key.
+   *
+   * @param key The key.
+   * @return The normalized key.
+   */
+  public static String normalize(CharSequence key) {
+    return key.toString().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Add a value.
+   *
+   * @param key The key of the value.
+   * @param value The added value.
+   * @throws IllegalArgumentException The key was undefined.
+   */
+  public void add(CharSequence key, T value) throws IllegalArgumentException {
+    if (key == null) throw new IllegalArgumentException("Invalid key");
+    String normalized = normalize(key);
+    lock.writeLock().lock();
+    try {
+      size++;
+      if (root == null) {
+        root = new Node<>(normalized);
+        root.values.add(value);
+        return;
+      }
+      Node<T> node = root;
+      while (true) {
+        int distance = distance(normalized, node.key, Integer.MAX_VALUE);
+        if (distance == 0) {
+          if (!node.values.contains(value)) {
+            node.values.add(value);
+          } else {
+            size--;
+          }
+          return;
+        }
+        if (distance >= node.children.length) {
+          node.children = Arrays.copyOf(node.children, distance + 1);
+        }
+        if (node.children[distance] == null) {
+          Node<T> child = new Node<>(normalized);
+          child.values.add(value);
+          node.children[distance] = child;
+          return;
+        }
+        node = node.children[distance];
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get the number of values.
+   *
+   * @return The number of values.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the values within a distance.
+   *
+   * @param query The queried key.
+   * @param maxDistance The maximal edit distance.
+   * @return The matches ordered by distance and key.
+   */
+  public List<Match<T>> search(CharSequence query, int maxDistance) {
+    List<Match<T>> result = new ArrayList<>();
+    if (query == null || maxDistance < 0) return result;
+    String normalized = normalize(query);
+    lock.readLock().lock();
+    try {
+      if (root == null) return result;
+      Deque<Node<T>> pending = new ArrayDeque<>();
+      pending.push(root);
+      while (!pending.isEmpty()) {
+        Node<T> node = pending.pop();
+        int distance = distance(normalized, node.key, Integer.MAX_VALUE);
+        if (distance <= maxDistance) {
+          for (T value : node.values) {
+            result.add(new Match<>(node.key, value, distance));
+          }
+        }
+        int low = Math.max(1, distance - maxDistance);
+        int high = Math.min(node.children.length - 1, distance + maxDistance);
+        for (int i = low; i <= high; i++) {
+          if (node.children[i] != null) pending.push(node.children[i]);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    result.sort(Match.COMPARATOR);
+    return result;
+  }
+
+  /**
+   * Calculate the Levenshtein distance of strings.
+   *
+   * @param first The first string.
+   * @param second The second string.
+   * @param bound The bound after which the calculation stops.
+   * @return The edit distance, or a value greater than the bound, if the distance exceeds the bound.
+   */
+  public static int distance(CharSequence first, CharSequence second, int bound) {
+    int firstLength = first.length();
+    int secondLength = second.length();
+    if (Math.abs(firstLength - secondLength) > bound) return bound == Integer.MAX_VALUE ? bound : bound + 1;
+    int[] previous = new int[secondLength + 1];
+    int[] current = new int[secondLength + 1];
+    for (int j = 0; j <= secondLength; j++) previous[j] = j;
+    for (int i = 1; i <= firstLength; i++) {
+      current[0] = i;
+      int rowMin = i;
+      char c = first.charAt(i - 1);
+      for (int j = 1; j <= secondLength; j++) {
+        int cost = c == second.charAt(j - 1) ? 0 : 1;
+        current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+        if (current[j] < rowMin) rowMin = current[j];
+      }
+      if (rowMin > bound) return bound + 1;
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[secondLength];
+  }
+}
@@ -0,0 +1,86 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The holder of the guideline catalog and the arts served by the resources.
+ *
+ * The catalog is replaced atomically, so a request uses either the previous or the new
+ * catalog as a whole.
+ */
+public final class CatalogHolder {
+
+  /**
+   * The current catalog.
+   */
+  private static final AtomicReference<GuidelineCatalog> CATALOG = new AtomicReference<>(new GuidelineCatalog());
+
+  /**
+   * The lock ordering the replacements of the catalog in the change feed.
+   */
+  private static final ReentrantLock REPLACE_LOCK = new ReentrantLock();
+
+  /**
+   * The current arts.
+   */
+  private static final AtomicReference<HermeticArts> ARTS = new AtomicReference<>(HermeticArts.DEFAULT_ARTS);
+
+  /**
+   * The holder is not instantiated.
+   */
+  private CatalogHolder() {
+  }
+
+  /**
+   * Get the current catalog.
+   *
+   * @return The current catalog.
+   */
+  public static GuidelineCatalog getCatalog() {
+    return CATALOG.get();
+  }
+
+  /**
+   * Replace the current catalog.
+   *
+   * The replacement is published to the {@link ChangeFeed#shared() change feed}. The readers
+   * of the catalog are never blocked by a replacement.
+   *
+   * @param catalog The new catalog.
+   * @return The replaced catalog.
+   * @throws IllegalArgumentException The catalog was undefined.
+   */
+  public static GuidelineCatalog setCatalog(GuidelineCatalog catalog) throws IllegalArgumentException {
+    if (catalog == null) throw new IllegalArgumentException("Undefined catalog");
+    REPLACE_LOCK.lock();
+    try {
+      GuidelineCatalog result = CATALOG.getAndSet(catalog);
+      ChangeFeed.shared().publish(ChangeFeed.Kind.CATALOG_REPLACED, catalog, result, -1, catalog.getVersion());
+      return result;
+    } finally {
+      REPLACE_LOCK.unlock();
+    }
+  }
+
+  /**
+   * Get the current arts.
+   *
+   * @return The arts of the catalog.
+   */
+  public static HermeticArts getArts() {
+    return ARTS.get();
+  }
+
+  /**
+   * Replace the current arts.
+   *
+   * @param arts The new arts.
+   * @return The replaced arts.
+   * @throws IllegalArgumentException The arts were undefined.
+   */
+  public static HermeticArts setArts(HermeticArts arts) throws IllegalArgumentException {
+    if (arts == null) throw new IllegalArgumentException("Undefined arts");
+    return ARTS.getAndSet(arts);
+  }
+}
@@ -0,0 +1,506 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An ordered feed of the changes of the art registry and the guideline catalogs.
+ *
+ * Every change gets the next sequence number of the feed. The writers publish their changes
+ * while holding their own write locks, so the sequence numbers follow the order of the
+ * changes. Publishing only appends the change to the mailboxes of the subscribers, and the
+ * subscribers receive their changes in batches on the executor of the feed, so a slow
+ * subscriber never blocks a writer.
+ *
+ * A subscriber falling more than the capacity of its mailbox behind loses its pending
+ * changes and receives a single {@link Kind#RESYNC} change instead. It should then rebuild
+ * its state from the current registry and catalogs. The changes after the resynchronization
+ * may already be visible during the rebuild, so the subscribers should apply the changes
+ * idempotently.
+ */
+public class ChangeFeed {
+
+  /**
+   * The default largest number of changes of a batch.
+   */
+  public static final int DEFAULT_MAX_BATCH = 256;
+
+  /**
+   * The default capacity of the mailbox of a subscriber.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  /**
+   * The error message indicating a subscriber was undefined.
+   */
+  public static final String INVALID_SUBSCRIBER_MESSAGE = "Invalid subscriber";
+
+  /**
+   * The kinds of the changes.
+   */
+  public static enum Kind {
+    /**
+     * An art type was registered. The subject is the {@link Art.ArtType}.
+     */
+    ART_TYPE_ADDED,
+    /**
+     * An art was registered. The subject is the {@link Art}.
+     */
+    ART_ADDED,
+    /**
+     * A guideline was added to a catalog. The source is the {@link GuidelineCatalog}, and the
+     * subject is the guideline.
+     */
+    GUIDELINE_ADDED,
+    /**
+     * A guideline was removed from a catalog. The source is the {@link GuidelineCatalog}, and
+     * the subject is the guideline.
+     */
+    GUIDELINE_REMOVED,
+    /**
+     * The current catalog of {@link CatalogHolder} was replaced. The source is the new
+     * catalog, and the subject is the replaced catalog.
+     */
+    CATALOG_REPLACED,
+    /**
+     * The subscriber lost changes and has to rebuild its state.
+     */
+    RESYNC;
+  }
+
+  /**
+   * A change.
+   */
+  public static final class Change {
+
+    /**
+     * The sequence number of the change.
+     */
+    private final long sequence;
+
+    /**
+     * The kind of the change.
+     */
+    private final Kind kind;
+
+    /**
+     * The changed structure.
+     */
+    private final Object source;
+
+    /**
+     * The added or removed value.
+     */
+    private final Object subject;
+
+    /**
+     * The identifier of the subject in the source.
+     */
+    private final int id;
+
+    /**
+     * The version of the source after the change.
+     */
+    private final long sourceVersion;
+
+    /**
+     * Create a new change.
+     *
+     * @param sequence The sequence number.
+     * @param kind The kind.
+     * @param source The changed structure.
+     * @param subject The added or removed value.
+     * @param id The identifier of the subject, or -1.
+     * @param sourceVersion The version of the source after the change.
+     */
+    private Change(long sequence, Kind kind, Object source, Object subject, int id, long sourceVersion) {
+      this.sequence = sequence;
+      this.kind = kind;
+      this.source = source;
+      this.subject = subject;
+      this.id = id;
+      this.sourceVersion = sourceVersion;
+    }
+
+    /**
+     * Get the sequence number of the change.
+     *
+     * @return The sequence number increasing with every change of the feed.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * Get the kind of the change.
+     *
+     * @return The kind.
+     */
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * Get the changed structure.
+     *
+     * @return The catalog of a guideline change, the new catalog of a replacement, or the art registry snapshot after an art change.
+     */
+    public Object getSource() {
+      return source;
+    }
+
+    /**
+     * Get the added or removed value.
+     *
+     * @return The art type, the art, the guideline, or the replaced catalog, or an undefined value for a resynchronization.
+     */
+    public Object getSubject() {
+      return subject;
+    }
+
+    /**
+     * Get the identifier of the subject in the source.
+     *
+     * @return The identifier of a guideline in its catalog, or -1.
+     */
+    public int getId() {
+      return id;
+    }
+
+    /**
+     * Get the version of the source after the change.
+     *
+     * @return The version of the source.
+     */
+    public long getSourceVersion() {
+      return sourceVersion;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("#%d %s %s", sequence, kind, subject);
+    }
+  }
+
+  /**
+   * A subscriber of the changes.
+   */
+  @FunctionalInterface
+  public static interface Subscriber {
+
+    /**
+     * Receive a batch of changes.
+     *
+     * @param changes The unmodifiable list of the changes in the order of their sequence numbers.
+     */
+    void onChanges(List<Change> changes);
+  }
+
+  /**
+   * A subscription of the feed.
+   */
+  public final class Subscription implements AutoCloseable {
+
+    /**
+     * The subscriber.
+     */
+    private final Subscriber subscriber;
+
+    /**
+     * The pending changes.
+     */
+    private final ConcurrentLinkedQueue<Change> mailbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of the pending changes.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Is a delivery scheduled or running.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Has the mailbox overflowed.
+     */
+    private volatile boolean overflowed = false;
+
+    /**
+     * Has the subscription been cancelled.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * The sequence number of the last delivered change.
+     */
+    private volatile long deliveredSequence;
+
+    /**
+     * Create a new subscription.
+     *
+     * @param subscriber The subscriber.
+     * @param sequence The sequence number before the first delivered change.
+     */
+    private Subscription(Subscriber subscriber, long sequence) {
+      this.subscriber = subscriber;
+      this.deliveredSequence = sequence;
+    }
+
+    /**
+     * Get the sequence number of the last delivered change.
+     *
+     * @return The sequence number of the last change the subscriber has received.
+     */
+    public long getDeliveredSequence() {
+      return deliveredSequence;
+    }
+
+    /**
+     * Get the number of the changes waiting for the delivery.
+     *
+     * @return The number of the pending changes.
+     */
+    public int getPendingCount() {
+      return pending.get();
+    }
+
+    /**
+     * Offer a change to the mailbox. Called with the lock of the feed.
+     *
+     * @param change The change.
+     */
+    private void offer(Change change) {
+      if (cancelled || overflowed) return;
+      if (pending.get() >= capacity) {
+        overflowed = true;
+      } else {
+        // The count is raised first, so the delivery never sees it below the polled changes.
+        pending.incrementAndGet();
+        mailbox.add(change);
+      }
+      schedule();
+    }
+
+    /**
+     * Schedule the delivery unless it is already scheduled.
+     */
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          executor.execute(this::deliver);
+        } catch (RejectedExecutionException e) {
+          scheduled.set(false);
+        }
+      }
+    }
+
+    /**
+     * Deliver the pending changes in batches.
+     */
+    private void deliver() {
+      try {
+        while (!cancelled) {
+          List<Change> batch;
+          if (overflowed) {
+            batch = Collections.singletonList(resynchronize());
+          } else {
+            batch = new ArrayList<>(Math.min(maxBatch, Math.max(1, pending.get())));
+            Change change;
+            while (batch.size() < maxBatch && (change = mailbox.poll()) != null) batch.add(change);
+            if (batch.isEmpty()) break;
+            pending.addAndGet(-batch.size());
+            batch = Collections.unmodifiableList(batch);
+          }
+          try {
+            subscriber.onChanges(batch);
+          } catch (RuntimeException e) {
+            // A failing subscriber does not stop its later deliveries.
+          }
+          deliveredSequence = batch.get(batch.size() - 1).getSequence();
+        }
+      } finally {
+        scheduled.set(false);
+      }
+      // A change offered after the last poll but before the reset is delivered by a new run.
+      if (!cancelled && (overflowed || !mailbox.isEmpty())) schedule();
+    }
+
+    /**
+     * Discard the pending changes after an overflow.
+     *
+     * @return The resynchronization change.
+     */
+    private Change resynchronize() {
+      lock.lock();
+      try {
+        mailbox.clear();
+        pending.set(0);
+        overflowed = false;
+        return new Change(sequence, Kind.RESYNC, null, null, -1, sequence);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Cancel the subscription.
+     */
+    @Override
+    public void close() {
+      cancelled = true;
+      lock.lock();
+      try {
+        List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+        remaining.remove(this);
+        subscriptions = remaining.toArray(new Subscription[0]);
+      } finally {
+        lock.unlock();
+      }
+      mailbox.clear();
+      pending.set(0);
+    }
+  }
+
+  /**
+   * The lazily created shared feed.
+   */
+  private static final class Holder {
+
+    /**
+     * The shared feed.
+     */
+    static final ChangeFeed SHARED = new ChangeFeed();
+  }
+
+  /**
+   * Get the feed of the changes of the art registry and the catalogs.
+   *
+   * @return The shared feed.
+   */
+  public static ChangeFeed shared() {
+    return Holder.SHARED;
+  }
+
+  /**
+   * The executor of the deliveries.
+   */
+  private final Executor executor;
+
+  /**
+   * The largest number of changes of a batch.
+   */
+  private final int maxBatch;
+
+  /**
+   * The capacity of the mailbox of a subscriber.
+   */
+  private final int capacity;
+
+  /**
+   * The lock ordering the changes.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The sequence number of the last change.
+   */
+  private volatile long sequence = 0;
+
+  /**
+   * The subscriptions.
+   */
+  private volatile Subscription[] subscriptions = new Subscription[0];
+
+  /**
+   * Create a new feed delivering on daemon threads.
+   */
+  public ChangeFeed() {
+    this(ResourceExecutors.newCachedDaemonPool("spell-feed-"), DEFAULT_MAX_BATCH, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create a new feed.
+   *
+   * @param executor The executor of the deliveries.
+   * @param maxBatch The largest number of changes of a batch.
+   * @param capacity The capacity of the mailbox of a subscriber.
+   * @throws IllegalArgumentException Any argument was invalid.
+   */
+  public ChangeFeed(Executor executor, int maxBatch, int capacity) throws IllegalArgumentException {
+    if (executor == null) throw new IllegalArgumentException("Invalid executor");
+    if (maxBatch <= 0) throw new IllegalArgumentException("Invalid batch size");
+    if (capacity <= 0) throw new IllegalArgumentException("Invalid capacity");
+    this.executor = executor;
+    this.maxBatch = maxBatch;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Get the sequence number of the last change.
+   *
+   * @return The sequence number of the last published change.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Subscribe to the changes.
+   *
+   * The subscriber receives the changes published after the subscription. The sequence
+   * number of the subscription tells which changes the state read by the subscriber after
+   * subscribing may already contain.
+   *
+   * @param subscriber The subscriber.
+   * @return The subscription.
+   * @throws IllegalArgumentException The subscriber was undefined.
+   */
+  public Subscription subscribe(Subscriber subscriber) throws IllegalArgumentException {
+    if (subscriber == null) throw new IllegalArgumentException(INVALID_SUBSCRIBER_MESSAGE);
+    lock.lock();
+    try {
+      Subscription result = new Subscription(subscriber, sequence);
+      Subscription[] next = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+      next[subscriptions.length] = result;
+      subscriptions = next;
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publish a change.
+   *
+   * @param kind The kind of the change.
+   * @param source The changed structure.
+   * @param subject The added or removed value.
+   * @param id The identifier of the subject, or -1.
+   * @param sourceVersion The version of the source after the change.
+   * @return The sequence number of the change.
+   */
+  long publish(Kind kind, Object source, Object subject, int id, long sourceVersion) {
+    lock.lock();
+    try {
+      long next = sequence + 1;
+      sequence = next;
+      Subscription[] current = subscriptions;
+      if (current.length > 0) {
+        Change change = new Change(next, kind, source, subject, id, sourceVersion);
+        for (Subscription subscription : current) subscription.offer(change);
+      }
+      return next;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
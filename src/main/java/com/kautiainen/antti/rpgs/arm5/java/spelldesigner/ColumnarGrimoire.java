@@ -0,0 +1,618 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * A columnar store of spell designs for the statistics of large grimoires.
+ *
+ * Every attribute of the spells is a primitive column: the art ordinals, the base and final
+ * levels, the final magnitudes, and the range, duration, and target ordinals. The group by
+ * aggregations scan the columns in parallel. The aggregates are cached, and a cached
+ * aggregate is brought up to date by scanning only the spells added after it.
+ */
+public class ColumnarGrimoire {
+
+  /**
+   * The smallest offset of the magnitudes in the histograms. The level 0 has magnitude -4, and
+   * a grimoire with lower magnitudes uses a larger {@link Aggregate#getMagnitudeOffset() offset}.
+   */
+  public static final int MAGNITUDE_OFFSET = 4;
+
+  /**
+   * The grouping dimensions of the aggregations.
+   */
+  public static enum Dimension {
+    /**
+     * Group by the technique.
+     */
+    TECHNIQUE,
+    /**
+     * Group by the form.
+     */
+    FORM,
+    /**
+     * Group by the technique and the form.
+     */
+    TECHNIQUE_AND_FORM,
+    /**
+     * Group by the range.
+     */
+    RANGE,
+    /**
+     * Group by the duration.
+     */
+    DURATION,
+    /**
+     * Group by the target.
+     */
+    TARGET,
+    /**
+     * Group by the range and the duration.
+     */
+    RANGE_AND_DURATION;
+  }
+
+  /**
+   * The ranges by ordinal.
+   */
+  private static final SpellRange[] RANGES = SpellRange.values();
+
+  /**
+   * The durations by ordinal.
+   */
+  private static final SpellDuration[] DURATIONS = SpellDuration.values();
+
+  /**
+   * The targets by ordinal.
+   */
+  private static final SpellTarget[] TARGETS = SpellTarget.values();
+
+  /**
+   * The columns. The columns are replaced with larger copies as the grimoire grows.
+   */
+  private static final class Columns {
+
+    /**
+     * The technique ordinals.
+     */
+    final short[] techniques;
+
+    /**
+     * The form ordinals.
+     */
+    final short[] forms;
+
+    /**
+     * The base levels.
+     */
+    final short[] baseLevels;
+
+    /**
+     * The final levels.
+     */
+    final short[] levels;
+
+    /**
+     * The final magnitudes.
+     */
+    final short[] magnitudes;
+
+    /**
+     * The range ordinals.
+     */
+    final byte[] ranges;
+
+    /**
+     * The duration ordinals.
+     */
+    final byte[] durations;
+
+    /**
+     * The target ordinals.
+     */
+    final byte[] targets;
+
+    /**
+     * Create columns.
+     *
+     * @param capacity The capacity of the columns.
+     */
+    Columns(int capacity) {
+      this(null, capacity);
+    }
+
+    /**
+     * Create larger copies of columns.
+     *
+     * @param original The copied columns, or an undefined value for empty columns.
+     * @param capacity The capacity of the columns.
+     */
+    Columns(Columns original, int capacity) {
+      this.techniques = original == null ? new short[capacity] : Arrays.copyOf(original.techniques, capacity);
+      this.forms = original == null ? new short[capacity] : Arrays.copyOf(original.forms, capacity);
+      this.baseLevels = original == null ? new short[capacity] : Arrays.copyOf(original.baseLevels, capacity);
+      this.levels = original == null ? new short[capacity] : Arrays.copyOf(original.levels, capacity);
+      this.magnitudes = original == null ? new short[capacity] : Arrays.copyOf(original.magnitudes, capacity);
+      this.ranges = original == null ? new byte[capacity] : Arrays.copyOf(original.ranges, capacity);
+      this.durations = original == null ? new byte[capacity] : Arrays.copyOf(original.durations, capacity);
+      this.targets = original == null ? new byte[capacity] : Arrays.copyOf(original.targets, capacity);
+    }
+  }
+
+  /**
+   * The result of an aggregation.
+   *
+   * The groups are identified by keys. The art keys are the art ordinals, the technique and
+   * form keys combine the ordinals, and the parameter keys are the ordinals of the ranges,
+   * durations, and targets.
+   */
+  public final class Aggregate {
+
+    /**
+     * The dimension.
+     */
+    private final Dimension dimension;
+
+    /**
+     * The number of aggregated spells.
+     */
+    private final int rows;
+
+    /**
+     * The number of arts when the keys were assigned.
+     */
+    private final int artCount;
+
+    /**
+     * The number of histogram bins per group.
+     */
+    private final int bins;
+
+    /**
+     * The offset of the magnitudes in the histograms.
+     */
+    private final int offset;
+
+    /**
+     * The spell counts by key.
+     */
+    private final long[] counts;
+
+    /**
+     * The sums of the levels by key.
+     */
+    private final long[] levelSums;
+
+    /**
+     * The magnitude histograms by key.
+     */
+    private final long[] histograms;
+
+    /**
+     * Create an aggregate.
+     *
+     * @param dimension The dimension.
+     * @param rows The number of aggregated spells.
+     * @param artCount The number of arts.
+     * @param bins The number of histogram bins per group.
+     * @param offset The offset of the magnitudes in the histograms.
+     * @param counts The counts.
+     * @param levelSums The level sums.
+     * @param histograms The histograms.
+     */
+    Aggregate(Dimension dimension, int rows, int artCount, int bins, int offset, long[] counts, long[] levelSums,
+    long[] histograms) {
+      this.dimension = dimension;
+      this.rows = rows;
+      this.artCount = artCount;
+      this.bins = bins;
+      this.offset = offset;
+      this.counts = counts;
+      this.levelSums = levelSums;
+      this.histograms = histograms;
+    }
+
+    /**
+     * Get the dimension.
+     *
+     * @return The grouping dimension.
+     */
+    public Dimension getDimension() {
+      return dimension;
+    }
+
+    /**
+     * Get the number of aggregated spells.
+     *
+     * @return The number of spells included.
+     */
+    public int getRows() {
+      return rows;
+    }
+
+    /**
+     * Get the offset of the magnitudes in the histograms.
+     *
+     * @return The index of the magnitude 0 in the histograms, at least
+     * {@link ColumnarGrimoire#MAGNITUDE_OFFSET}.
+     */
+    public int getMagnitudeOffset() {
+      return offset;
+    }
+
+    /**
+     * Get the keys of the non-empty groups.
+     *
+     * @return The keys in increasing order.
+     */
+    public int[] keys() {
+      return IntStream.range(0, counts.length).filter(key -> counts[key] > 0).toArray();
+    }
+
+    /**
+     * Get the number of spells of a group.
+     *
+     * @param key The key of the group.
+     * @return The number of spells, or 0 for an unknown key.
+     */
+    public long count(int key) {
+      return key < 0 || key >= counts.length ? 0 : counts[key];
+    }
+
+    /**
+     * Get the average level of a group.
+     *
+     * @param key The key of the group.
+     * @return The average final level, or {@link Double#NaN} for an empty group.
+     */
+    public double average(int key) {
+      long count = count(key);
+      return count == 0 ? Double.NaN : (double)levelSums[key] / count;
+    }
+
+    /**
+     * Get the magnitude histogram of a group.
+     *
+     * @param key The key of the group.
+     * @return The spell counts by final magnitude plus the {@link #getMagnitudeOffset() offset}.
+     */
+    public long[] histogram(int key) {
+      if (key < 0 || key >= counts.length) return new long[0];
+      return Arrays.copyOfRange(histograms, key * bins, (key + 1) * bins);
+    }
+
+    /**
+     * Get the label of a group.
+     *
+     * @param key The key of the group.
+     * @return The names of the grouped arts or parameters.
+     */
+    public String labelOf(int key) {
+      ArtInterface<?>[] known = arts.snapshot();
+      switch (dimension) {
+        case TECHNIQUE:
+        case FORM:
+          return known[key].getName();
+        case TECHNIQUE_AND_FORM:
+          return known[key / artCount].getName() + " " + known[key % artCount].getName();
+        case RANGE:
+          return RANGES[key].toString();
+        case DURATION:
+          return DURATIONS[key].toString();
+        case TARGET:
+          return TARGETS[key].toString();
+        default:
+          return RANGES[key / DURATIONS.length] + "/" + DURATIONS[key % DURATIONS.length];
+      }
+    }
+
+    /**
+     * Get the key of a technique and a form.
+     *
+     * @param technique The technique.
+     * @param form The form.
+     * @return The key of the technique and the form, or -1, if either is unknown.
+     */
+    public int keyOf(ArtInterface<?> technique, ArtInterface<?> form) {
+      int first = arts.find(technique);
+      int second = arts.find(form);
+      return first < 0 || second < 0 || first >= artCount || second >= artCount ? -1 : first * artCount + second;
+    }
+  }
+
+  /**
+   * The partial result of a parallel aggregation.
+   */
+  private static final class Accumulator {
+
+    /**
+     * The counts.
+     */
+    final long[] counts;
+
+    /**
+     * The level sums.
+     */
+    final long[] levelSums;
+
+    /**
+     * The histograms.
+     */
+    final long[] histograms;
+
+    /**
+     * Create an empty accumulator.
+     *
+     * @param groups The number of groups.
+     * @param bins The number of histogram bins per group.
+     */
+    Accumulator(int groups, int bins) {
+      this.counts = new long[groups];
+      this.levelSums = new long[groups];
+      this.histograms = new long[groups * bins];
+    }
+
+    /**
+     * Create an accumulator of existing values.
+     *
+     * @param counts The counts.
+     * @param levelSums The level sums.
+     * @param histograms The histograms.
+     */
+    Accumulator(long[] counts, long[] levelSums, long[] histograms) {
+      this.counts = counts;
+      this.levelSums = levelSums;
+      this.histograms = histograms;
+    }
+
+    /**
+     * Add the values of another accumulator.
+     *
+     * @param other The added accumulator.
+     */
+    void combine(Accumulator other) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+        levelSums[i] += other.levelSums[i];
+      }
+      for (int i = 0; i < histograms.length; i++) histograms[i] += other.histograms[i];
+    }
+  }
+
+  /**
+   * The ordinals of the arts.
+   */
+  private final ArtOrdinals arts;
+
+  /**
+   * The current columns.
+   */
+  private volatile Columns columns = new Columns(1024);
+
+  /**
+   * The number of published spells.
+   */
+  private volatile int count = 0;
+
+  /**
+   * The largest final magnitude.
+   */
+  private volatile int maxMagnitude = 0;
+
+  /**
+   * The smallest final magnitude, or the magnitude of the level 0.
+   */
+  private volatile int minMagnitude = -MAGNITUDE_OFFSET;
+
+  /**
+   * The cached aggregates.
+   */
+  private final Map<Dimension, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+  /**
+   * The lock of the writers.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Create an empty grimoire.
+   */
+  public ColumnarGrimoire() {
+    this(new ArtOrdinals());
+  }
+
+  /**
+   * Create an empty grimoire.
+   *
+   * @param arts The ordinals of the arts.
+   * @throws IllegalArgumentException The ordinals were undefined.
+   */
+  public ColumnarGrimoire(ArtOrdinals arts) throws IllegalArgumentException {
+    if (arts == null) throw new IllegalArgumentException(ArtOrdinals.TOO_MANY_ARTS_MESSAGE);
+    this.arts = arts;
+  }
+
+  /**
+   * Get the number of spells.
+   *
+   * @return The number of spells.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Get the ordinals of the arts.
+   *
+   * @return The art ordinals used as the art keys.
+   */
+  public ArtOrdinals getArtOrdinals() {
+    return arts;
+  }
+
+  /**
+   * Add a spell.
+   *
+   * @param spell The added spell.
+   * @return The row of the spell.
+   * @throws IllegalArgumentException The spell was undefined.
+   */
+  public int add(SpellDesign spell) throws IllegalArgumentException {
+    if (spell == null) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    lock.lock();
+    try {
+      return append(spell);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Add spells.
+   *
+   * @param spells The added spells.
+   * @throws IllegalArgumentException Any spell was undefined.
+   */
+  public void addAll(Collection<? extends SpellDesign> spells) throws IllegalArgumentException {
+    if (spells == null || spells.stream().anyMatch(Objects::isNull)) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    lock.lock();
+    try {
+      for (SpellDesign spell : spells) append(spell);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a spell while holding the lock.
+   *
+   * @param spell The appended spell.
+   * @return The row of the spell.
+   */
+  private int append(SpellDesign spell) {
+    int row = count;
+    Columns current = columns;
+    if (row == current.levels.length) {
+      current = new Columns(current, row * 2);
+    }
+    short magnitude = SpellGuideline.levelToMagnitude(spell.getLevel());
+    current.techniques[row] = arts.ordinal(spell.getTechnique());
+    current.forms[row] = arts.ordinal(spell.getForm());
+    current.baseLevels[row] = spell.getBaseLevel();
+    current.levels[row] = spell.getLevel();
+    current.magnitudes[row] = magnitude;
+    current.ranges[row] = (byte)spell.getRange().ordinal();
+    current.durations[row] = (byte)spell.getDuration().ordinal();
+    current.targets[row] = (byte)spell.getTarget().ordinal();
+    if (magnitude > maxMagnitude) maxMagnitude = magnitude;
+    if (magnitude < minMagnitude) minMagnitude = magnitude;
+    columns = current;
+    count = row + 1;
+    return row;
+  }
+
+  /**
+   * Aggregate the spells.
+   *
+   * @param dimension The grouping dimension.
+   * @return The counts, average levels, and magnitude histograms of the groups.
+   * @throws IllegalArgumentException The dimension was undefined.
+   */
+  public Aggregate aggregate(Dimension dimension) throws IllegalArgumentException {
+    if (dimension == null) throw new IllegalArgumentException("Invalid dimension");
+    int rows = count;
+    Columns current = columns;
+    int artCount = Math.max(1, arts.size());
+    // The extremes are written before the count, so they cover every counted spell.
+    int offset = -minMagnitude;
+    int bins = maxMagnitude + offset + 1;
+    Aggregate cached = aggregates.get(dimension);
+    if (cached != null && cached.rows == rows) {
+      SpellMetrics.AGGREGATE_CACHE_HITS.increment();
+      return cached;
+    }
+    SpellMetrics.AGGREGATE_CACHE_MISSES.increment();
+    int from = 0;
+    if (cached == null || cached.rows > rows || cached.artCount != artCount || cached.bins != bins
+    || cached.offset != offset) {
+      cached = null;
+    } else {
+      from = cached.rows;
+    }
+    int groups = groupCount(dimension, artCount);
+    Accumulator result = IntStream.range(from, rows).parallel().collect(
+      () -> new Accumulator(groups, bins),
+      (accumulator, row) -> {
+        int key = groupOf(current, dimension, artCount, row);
+        accumulator.counts[key]++;
+        accumulator.levelSums[key] += current.levels[row];
+        accumulator.histograms[key * bins + current.magnitudes[row] + offset]++;
+      },
+      Accumulator::combine);
+    if (cached != null) {
+      result.combine(new Accumulator(cached.counts, cached.levelSums, cached.histograms));
+    }
+    Aggregate aggregate = new Aggregate(dimension, rows, artCount, bins, offset, result.counts, result.levelSums, result.histograms);
+    aggregates.merge(dimension, aggregate, (previous, next) -> next.rows >= previous.rows ? next : previous);
+    return aggregate;
+  }
+
+  /**
+   * Get the number of groups of a dimension.
+   *
+   * @param dimension The dimension.
+   * @param artCount The number of arts.
+   * @return The number of keys.
+   */
+  private static int groupCount(Dimension dimension, int artCount) {
+    switch (dimension) {
+      case TECHNIQUE:
+      case FORM:
+        return artCount;
+      case TECHNIQUE_AND_FORM:
+        return artCount * artCount;
+      case RANGE:
+        return RANGES.length;
+      case DURATION:
+        return DURATIONS.length;
+      case TARGET:
+        return TARGETS.length;
+      default:
+        return RANGES.length * DURATIONS.length;
+    }
+  }
+
+  /**
+   * Get the group key of a spell.
+   *
+   * @param columns The columns.
+   * @param dimension The dimension.
+   * @param artCount The number of arts.
+   * @param row The row of the spell.
+   * @return The key of the group of the spell.
+   */
+  private static int groupOf(Columns columns, Dimension dimension, int artCount, int row) {
+    switch (dimension) {
+      case TECHNIQUE:
+        return columns.techniques[row];
+      case FORM:
+        return columns.forms[row];
+      case TECHNIQUE_AND_FORM:
+        return columns.techniques[row] * artCount + columns.forms[row];
+      case RANGE:
+        return columns.ranges[row];
+      case DURATION:
+        return columns.durations[row];
+      case TARGET:
+        return columns.targets[row];
+      default:
+        return columns.ranges[row] * DURATIONS.length + columns.durations[row];
+    }
+  }
+}
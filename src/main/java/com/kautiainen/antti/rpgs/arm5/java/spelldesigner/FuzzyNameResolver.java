@@ -0,0 +1,176 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A typo tolerant resolver of art and guideline names.
+ *
+ * The names and abbreviations are indexed in edit distance trees, so that the closest
+ * names within a distance bound are found without comparing against every entry.
+ */
+public class FuzzyNameResolver {
+
+  /**
+   * The default maximal edit distance of the art names.
+   */
+  public static final int DEFAULT_MAX_DISTANCE = 2;
+
+  /**
+   * The tree of the art names and abbreviations.
+   */
+  private final BkTree<Art> arts = new BkTree<>();
+
+  /**
+   * The tree of the guideline names.
+   */
+  private final BkTree<SpellGuideline<?, ?, ?, ?>> guidelines = new BkTree<>();
+
+  /**
+   * Create an empty resolver.
+   */
+  public FuzzyNameResolver() {
+  }
+
+  /**
+   * Create a resolver of the Hermetic arts.
+   *
+   * @param hermeticArts The resolved arts.
+   */
+  public FuzzyNameResolver(HermeticArts hermeticArts) {
+    addArts(hermeticArts.getTechniques());
+    addArts(hermeticArts.getForms());
+  }
+
+  /**
+   * Add the arts of the known arts registry.
+   */
+  public void addKnownArts() {
+    addArts(Art.getRegistry().getAllArts());
+  }
+
+  /**
+   * Add arts with their names and abbreviations.
+   *
+   * @param added The added arts.
+   */
+  public void addArts(Collection<? extends Art> added) {
+    for (Art art : added) {
+      addArt(art);
+    }
+  }
+
+  /**
+   * Add an art with its name and abbreviation.
+   *
+   * @param art The added art.
+   */
+  public void addArt(Art art) {
+    if (art == null || art.getName() == null) return;
+    arts.add(art.getName(), art);
+    art.getAbbreviation().ifPresent(abbrev -> arts.add(abbrev, art));
+  }
+
+  /**
+   * Add guidelines by their names.
+   *
+   * @param added The added guidelines.
+   */
+  public void addGuidelines(Collection<? extends SpellGuideline<?, ?, ?, ?>> added) {
+    for (SpellGuideline<?, ?, ?, ?> guideline : added) {
+      addGuideline(guideline);
+    }
+  }
+
+  /**
+   * Add a guideline by its name.
+   *
+   * @param guideline The added guideline with initialized name.
+   */
+  public void addGuideline(SpellGuideline<?, ?, ?, ?> guideline) {
+    if (guideline == null) return;
+    guidelines.add(guideline.getName(), guideline);
+  }
+
+  /**
+   * Find the arts with names or abbreviations within a distance.
+   *
+   * @param name The resolved name.
+   * @param maxDistance The maximal edit distance.
+   * @return The distinct matching arts ordered by distance.
+   */
+  public List<BkTree.Match<Art>> findArts(CharSequence name, int maxDistance) {
+    List<BkTree.Match<Art>> result = new ArrayList<>();
+    for (BkTree.Match<Art> match : arts.search(name, maxDistance)) {
+      if (result.stream().noneMatch(current -> current.getValue() == match.getValue())) {
+        result.add(match);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Resolve the closest art.
+   *
+   * An abbreviation has only two letters, and a tolerated typo in it would match other
+   * abbreviations, so the names of two letters or less must match exactly.
+   *
+   * @param name The resolved name or abbreviation.
+   * @return The closest art within the default distance, if any exists.
+   */
+  public Optional<Art> resolveArt(CharSequence name) {
+    if (name == null) return Optional.empty();
+    int maxDistance = name.length() <= 2 ? 0 : Math.min(DEFAULT_MAX_DISTANCE, name.length() / 3);
+    List<BkTree.Match<Art>> matches = findArts(name, maxDistance);
+    return matches.isEmpty() ? Optional.empty() : Optional.of(matches.get(0).getValue());
+  }
+
+  /**
+   * Resolve the arts of a spell header such as "ReCo(Me)".
+   *
+   * The header is split into words at the non-letters and at the upper case letters.
+   *
+   * @param header The header.
+   * @return The resolved arts in the order of the header. An unresolved word yields no art.
+   */
+  public List<Art> resolveHeader(CharSequence header) {
+    List<Art> result = new ArrayList<>();
+    if (header == null) return result;
+    int start = -1;
+    for (int i = 0, end = header.length(); i <= end; i++) {
+      char c = i < end ? header.charAt(i) : ' ';
+      boolean boundary = !Character.isLetter(c) || Character.isUpperCase(c);
+      if (boundary && start >= 0) {
+        resolveArt(header.subSequence(start, i)).ifPresent(result::add);
+        start = -1;
+      }
+      if (Character.isLetter(c) && start < 0) start = i;
+    }
+    return result;
+  }
+
+  /**
+   * Find the guidelines with names within a distance.
+   *
+   * @param name The resolved name.
+   * @param maxDistance The maximal edit distance.
+   * @return The matching guidelines ordered by distance.
+   */
+  public List<BkTree.Match<SpellGuideline<?, ?, ?, ?>>> findGuidelines(CharSequence name, int maxDistance) {
+    return guidelines.search(name, maxDistance);
+  }
+
+  /**
+   * Resolve the closest guideline.
+   *
+   * @param name The resolved name.
+   * @param maxDistance The maximal edit distance.
+   * @return The closest guideline within the distance, if any exists.
+   */
+  public Optional<SpellGuideline<?, ?, ?, ?>> resolveGuideline(CharSequence name, int maxDistance) {
+    List<BkTree.Match<SpellGuideline<?, ?, ?, ?>>> matches = findGuidelines(name, maxDistance);
+    return matches.isEmpty() ? Optional.empty() : Optional.of(matches.get(0).getValue());
+  }
+}
@@ -0,0 +1,65 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * The download of the current guideline catalog.
+ *
+ * The catalogs up to {@link PrecompressedPayloads#MAX_GUIDELINES} guidelines are served from
+ * the payloads rendered and compressed once per catalog version, with the content encoding
+ * negotiated from the Accept-Encoding header. The larger catalogs are streamed.
+ */
+@Path("export")
+public class GrimoireExportResource {
+
+  /**
+   * Download the catalog.
+   *
+   * @param format The format, either "text" or "html".
+   * @param grouped Are the guidelines grouped by the technique and the form.
+   * @param headers The headers of the request.
+   * @param request The request evaluating the entity tag preconditions.
+   * @param response The suspended response, resumed on the executor of the resources.
+   */
+  @GET
+  @Produces({ "text/plain", "text/html" })
+  public void export(@QueryParam("format") @DefaultValue("text") String format,
+  @QueryParam("grouped") @DefaultValue("true") boolean grouped, @Context HttpHeaders headers,
+  @Context Request request, @Suspended AsyncResponse response) {
+    GrimoireExporter.Format exported = "html".equalsIgnoreCase(format) ? GrimoireExporter.Format.HTML : GrimoireExporter.Format.TEXT;
+    GuidelineCatalog catalog = CatalogHolder.getCatalog();
+    HermeticArts arts = CatalogHolder.getArts();
+    String mediaType = exported.getMediaType() + ";charset=utf-8";
+    String disposition = "attachment; filename=\"grimoire." + (exported == GrimoireExporter.Format.HTML ? "html" : "txt") + "\"";
+    if (catalog.size() > PrecompressedPayloads.MAX_GUIDELINES) {
+      GrimoireExporter exporter = new GrimoireExporter(catalog, arts);
+      StreamingOutput body = output -> exporter.export(output, exported, grouped);
+      ResourceExecutors.resume(response, () -> Response.ok(body, mediaType)
+      .header(HttpHeaders.CONTENT_DISPOSITION, disposition).build());
+      return;
+    }
+    PrecompressedPayloads.Encoding encoding = PrecompressedPayloads.negotiate(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+    ResourceExecutors.resume(response, () -> {
+      PrecompressedPayloads.Payload payload = PrecompressedPayloads.export(catalog, arts, exported, grouped);
+      EntityTag tag = new EntityTag(payload.getEntityTag(encoding));
+      Response.ResponseBuilder result = request.evaluatePreconditions(tag);
+      if (result == null) {
+        result = Response.ok(payload.getBytes(encoding), mediaType).header(HttpHeaders.CONTENT_DISPOSITION, disposition);
+        if (encoding != PrecompressedPayloads.Encoding.IDENTITY) result.header(HttpHeaders.CONTENT_ENCODING, encoding.getToken());
+      }
+      return result.tag(tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    });
+  }
+}
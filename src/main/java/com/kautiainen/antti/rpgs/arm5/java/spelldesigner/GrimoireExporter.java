@@ -0,0 +1,294 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A streaming exporter of the guideline catalogs as text or HTML.
+ *
+ * The guidelines are appended one at a time through {@link SpellGuideline#appendTo(Appendable)}
+ * into a fixed size buffer written to the target, so the memory used does not depend on the
+ * size of the catalog.
+ */
+public class GrimoireExporter {
+
+  /**
+   * The export formats.
+   */
+  public static enum Format {
+    /**
+     * Plain text with a guideline per line.
+     */
+    TEXT("text/plain"),
+    /**
+     * An HTML document with a list per group.
+     */
+    HTML("text/html");
+
+    /**
+     * The media type of the format.
+     */
+    private final String mediaType;
+
+    /**
+     * Create a format.
+     *
+     * @param mediaType The media type.
+     */
+    Format(String mediaType) {
+      this.mediaType = mediaType;
+    }
+
+    /**
+     * Get the media type.
+     *
+     * @return The media type of the exported documents.
+     */
+    public String getMediaType() {
+      return mediaType;
+    }
+  }
+
+  /**
+   * The size of the output buffer in characters.
+   */
+  public static final int BUFFER_SIZE = 8192;
+
+  /**
+   * A buffered appendable writing full buffers to a writer.
+   *
+   * Unlike the writers, the buffer does not synchronize on every appended character.
+   */
+  private static final class Buffer implements Appendable, Flushable {
+
+    /**
+     * The target writer.
+     */
+    private final Writer target;
+
+    /**
+     * The buffered characters.
+     */
+    private final char[] chars = new char[BUFFER_SIZE];
+
+    /**
+     * The number of buffered characters.
+     */
+    private int size = 0;
+
+    /**
+     * Create a buffer.
+     *
+     * @param target The target writer.
+     */
+    Buffer(Writer target) {
+      this.target = target;
+    }
+
+    @Override
+    public Buffer append(CharSequence sequence) throws IOException {
+      return append(sequence, 0, sequence.length());
+    }
+
+    @Override
+    public Buffer append(CharSequence sequence, int start, int end) throws IOException {
+      if (sequence instanceof String string) {
+        while (start < end) {
+          if (size == chars.length) drain();
+          int count = Math.min(end - start, chars.length - size);
+          string.getChars(start, start + count, chars, size);
+          size += count;
+          start += count;
+        }
+      } else {
+        for (int i = start; i < end; i++) append(sequence.charAt(i));
+      }
+      return this;
+    }
+
+    @Override
+    public Buffer append(char c) throws IOException {
+      if (size == chars.length) drain();
+      chars[size++] = c;
+      return this;
+    }
+
+    /**
+     * Write the buffered characters to the target.
+     *
+     * @throws IOException The writing failed.
+     */
+    private void drain() throws IOException {
+      target.write(chars, 0, size);
+      size = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+      target.flush();
+    }
+  }
+
+  /**
+   * An appendable escaping the HTML special characters.
+   */
+  private static final class HtmlEscaper implements Appendable {
+
+    /**
+     * The target.
+     */
+    private final Appendable target;
+
+    /**
+     * Create an escaper.
+     *
+     * @param target The target.
+     */
+    HtmlEscaper(Appendable target) {
+      this.target = target;
+    }
+
+    @Override
+    public HtmlEscaper append(CharSequence sequence) throws IOException {
+      return append(sequence, 0, sequence.length());
+    }
+
+    @Override
+    public HtmlEscaper append(CharSequence sequence, int start, int end) throws IOException {
+      for (int i = start; i < end; i++) append(sequence.charAt(i));
+      return this;
+    }
+
+    @Override
+    public HtmlEscaper append(char c) throws IOException {
+      switch (c) {
+        case '<' -> target.append("&lt;");
+        case '>' -> target.append("&gt;");
+        case '&' -> target.append("&amp;");
+        case '"' -> target.append("&quot;");
+        case '\'' -> target.append("&#39;");
+        default -> target.append(c);
+      }
+      return this;
+    }
+  }
+
+  /**
+   * The exported catalog.
+   */
+  private final GuidelineCatalog catalog;
+
+  /**
+   * The arts whose techniques and forms define the groups.
+   */
+  private final HermeticArts arts;
+
+  /**
+   * Create an exporter.
+   *
+   * @param catalog The exported catalog.
+   * @param arts The arts defining the groups.
+   * @throws IllegalArgumentException The catalog or the arts were undefined.
+   */
+  public GrimoireExporter(GuidelineCatalog catalog, HermeticArts arts) throws IllegalArgumentException {
+    if (catalog == null || arts == null) throw new IllegalArgumentException("Undefined catalog or arts");
+    this.catalog = catalog;
+    this.arts = arts;
+  }
+
+  /**
+   * Export to an output stream in UTF-8.
+   *
+   * @param output The output stream. The stream is flushed but not closed.
+   * @param format The format.
+   * @param grouped Are the guidelines grouped by the technique and the form.
+   * @throws IOException The writing failed.
+   */
+  public void export(OutputStream output, Format format, boolean grouped) throws IOException {
+    export(new OutputStreamWriter(output, StandardCharsets.UTF_8), format, grouped);
+  }
+
+  /**
+   * Export to a writer.
+   *
+   * @param writer The writer. The writer is flushed but not closed.
+   * @param format The format.
+   * @param grouped Are the guidelines grouped by the technique and the form.
+   * @throws IOException The writing failed.
+   */
+  public void export(Writer writer, Format format, boolean grouped) throws IOException {
+    Buffer buffer = new Buffer(writer);
+    export((Appendable)buffer, format, grouped);
+    buffer.flush();
+  }
+
+  /**
+   * Export to an appendable.
+   *
+   * Without grouping the guidelines are exported in the level order. With grouping the groups
+   * follow the order of the techniques and the forms of the arts, and the guidelines of
+   * other arts are left out.
+   *
+   * @param target The target.
+   * @param format The format.
+   * @param grouped Are the guidelines grouped by the technique and the form.
+   * @throws IOException The writing failed.
+   */
+  public void export(Appendable target, Format format, boolean grouped) throws IOException {
+    boolean html = format == Format.HTML;
+    Appendable escaped = html ? new HtmlEscaper(target) : target;
+    if (html) target.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Grimoire</title></head><body>\n");
+    if (grouped) {
+      for (Art technique : arts.getTechniques()) {
+        // The guidelines only refer to the arts implementing the art interfaces.
+        if (!(technique instanceof ArtInterface<?> techniqueArt)) continue;
+        for (Art form : arts.getForms()) {
+          if (!(form instanceof ArtInterface<?> formArt)) continue;
+          int[] ids = catalog.idsOfTechniquesAndForms(List.of(GuidelineCatalog.artKey(techniqueArt)),
+          List.of(GuidelineCatalog.artKey(formArt)), Integer.MIN_VALUE, Integer.MAX_VALUE);
+          if (ids.length == 0) continue;
+          if (html) {
+            target.append("<h2>");
+            escaped.append(technique.getName()).append(' ').append(form.getName());
+            target.append("</h2>\n");
+          } else {
+            target.append(technique.getName()).append(' ').append(form.getName()).append('\n');
+          }
+          exportEntries(target, escaped, html, ids);
+          if (!html) target.append('\n');
+        }
+      }
+    } else {
+      exportEntries(target, escaped, html, catalog.ids());
+    }
+    if (html) target.append("</body></html>\n");
+  }
+
+  /**
+   * Export guidelines.
+   *
+   * @param target The target.
+   * @param escaped The target of the escaped content.
+   * @param html Is the format HTML.
+   * @param ids The identifiers of the exported guidelines.
+   * @throws IOException The writing failed.
+   */
+  private void exportEntries(Appendable target, Appendable escaped, boolean html, int[] ids) throws IOException {
+    if (html) target.append("<ul>\n");
+    for (int id : ids) {
+      SpellGuideline<?, ?, ?, ?> guideline = catalog.get(id);
+      // The guideline may have been removed after the identifiers were listed.
+      if (guideline == null) continue;
+      if (html) target.append("<li>");
+      guideline.appendTo(escaped);
+      target.append(html ? "</li>\n" : "\n");
+    }
+    if (html) target.append("</ul>\n");
+  }
+}
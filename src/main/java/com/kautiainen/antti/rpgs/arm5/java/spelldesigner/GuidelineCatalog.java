@@ -0,0 +1,625 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A catalog of spell guidelines with technique, form, level, and text indexes.
+ *
+ * The guidelines are identified by the document identifiers of the text index of the
+ * catalog.
+ */
+public class GuidelineCatalog {
+
+  /**
+   * The level key of the generic level. The generic level orders before the numeric levels
+   * as in {@link Art.Level#compareTo(Art.Level)}.
+   */
+  public static final int GENERIC_LEVEL_KEY = -1;
+
+  /**
+   * A growable list of the identifiers of a key in increasing order.
+   */
+  private static final class Bucket {
+
+    /**
+     * The identifiers followed by the unused capacity.
+     */
+    int[] ids = new int[2];
+
+    /**
+     * The number of identifiers.
+     */
+    int size = 0;
+
+    /**
+     * Add an identifier larger than the current identifiers.
+     *
+     * @param id The added identifier.
+     */
+    void add(int id) {
+      // The capacity doubles, so the bulk additions take amortized constant time.
+      if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+      ids[size++] = id;
+    }
+
+    /**
+     * Remove an identifier.
+     *
+     * @param id The removed identifier.
+     * @return True, if and only if the identifier was removed.
+     */
+    boolean remove(int id) {
+      int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index < 0) return false;
+      System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+      size--;
+      return true;
+    }
+
+    /**
+     * Find the position of the first identifier after an identifier.
+     *
+     * @param id The identifier.
+     * @return The index of the first identifier larger than the identifier.
+     */
+    int indexAfter(int id) {
+      int index = Arrays.binarySearch(ids, 0, size, id);
+      return index >= 0 ? index + 1 : -index - 1;
+    }
+  }
+
+  /**
+   * A cursor over the keys of the levels of a technique and form in increasing order.
+   */
+  private static final class Cursor implements Comparable<Cursor> {
+
+    /**
+     * The remaining levels.
+     */
+    private final Iterator<Map.Entry<Integer, Bucket>> levels;
+
+    /**
+     * The level key in the high 32 bits.
+     */
+    private long high;
+
+    /**
+     * The identifiers of the current level.
+     */
+    private Bucket ids;
+
+    /**
+     * The index of the current identifier.
+     */
+    private int index;
+
+    /**
+     * Create a cursor at the first key of levels.
+     *
+     * @param levels The levels in increasing order.
+     */
+    Cursor(Iterator<Map.Entry<Integer, Bucket>> levels) {
+      this.levels = levels;
+      nextLevel();
+    }
+
+    /**
+     * Move to the first identifier of the next non-empty level.
+     *
+     * @return True, if and only if the cursor has a current key.
+     */
+    private boolean nextLevel() {
+      while (levels.hasNext()) {
+        Map.Entry<Integer, Bucket> entry = levels.next();
+        if (entry.getValue().size > 0) {
+          high = (long)entry.getKey() << 32;
+          ids = entry.getValue();
+          index = 0;
+          return true;
+        }
+      }
+      ids = null;
+      return false;
+    }
+
+    /**
+     * Does the cursor have a current key.
+     *
+     * @return True, if and only if the cursor is not exhausted.
+     */
+    boolean hasKey() {
+      return ids != null;
+    }
+
+    /**
+     * Get the current key.
+     *
+     * @return The level key in the high and the identifier in the low 32 bits.
+     */
+    long key() {
+      return high | (ids.ids[index] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Move to the next key.
+     *
+     * @return True, if and only if the cursor has a current key.
+     */
+    boolean advance() {
+      return ++index < ids.size || nextLevel();
+    }
+
+    @Override
+    public int compareTo(Cursor other) {
+      return Long.compare(key(), other.key());
+    }
+  }
+
+  /**
+   * The text index, which also assigns the identifiers.
+   */
+  private final GuidelineTextIndex textIndex = new GuidelineTextIndex();
+
+  /**
+   * The identifiers by the key of the technique and form, and then by the level key.
+   */
+  private final Map<String, NavigableMap<Integer, Bucket>> byTechniqueAndForm = new HashMap<>();
+
+  /**
+   * The identifiers by level key.
+   */
+  private final NavigableMap<Integer, Bucket> byLevel = new TreeMap<>();
+
+  /**
+   * The number of guidelines.
+   */
+  private int size = 0;
+
+  /**
+   * The version increasing on every change.
+   */
+  private volatile long version = 0;
+
+  /**
+   * The lock of the indexes.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Are the changes of the catalog published to the change feed.
+   */
+  private final boolean publishing;
+
+  /**
+   * Create a new catalog publishing its changes to the {@link ChangeFeed#shared() change feed}.
+   */
+  public GuidelineCatalog() {
+    this(true);
+  }
+
+  /**
+   * Create a new catalog.
+   *
+   * @param publishing Are the changes of the catalog published to the change feed. The internal
+   * catalogs never seen by the feed subscribers do not publish their changes.
+   */
+  GuidelineCatalog(boolean publishing) {
+    this.publishing = publishing;
+  }
+
+  /**
+   * Get the key of an art.
+   *
+   * @param art The art.
+   * @return The lower case abbreviation of the art, or the lower case name without abbreviation.
+   */
+  public static String artKey(ArtInterface<?> art) {
+    return art == null ? "" : art.getAbreviation().orElse(art.getName()).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Get the key of a technique and a form.
+   *
+   * @param technique The technique key.
+   * @param form The form key.
+   * @return The combined key.
+   */
+  static String techniqueAndFormKey(String technique, String form) {
+    return technique + '|' + form;
+  }
+
+  /**
+   * Get the level key of a level.
+   *
+   * @param level The level.
+   * @return The numeric level, or {@link #GENERIC_LEVEL_KEY} for a generic or missing level.
+   */
+  public static int levelKey(Art.Level level) {
+    return level == null || level.isAbsent() ? GENERIC_LEVEL_KEY : level.getLevel();
+  }
+
+  /**
+   * Add an identifier to the identifiers of a key.
+   *
+   * @param map The map.
+   * @param key The key.
+   * @param id The added identifier.
+   */
+  private static void addId(NavigableMap<Integer, Bucket> map, int key, int id) {
+    map.computeIfAbsent(key, level -> new Bucket()).add(id);
+  }
+
+  /**
+   * Remove an identifier from the identifiers of a key.
+   *
+   * @param map The map.
+   * @param key The key.
+   * @param id The removed identifier.
+   */
+  private static void removeId(NavigableMap<Integer, Bucket> map, int key, int id) {
+    Bucket ids = map.get(key);
+    if (ids != null && ids.remove(id) && ids.size == 0) map.remove(key);
+  }
+
+  /**
+   * Add a guideline.
+   *
+   * An added guideline is published to the {@link ChangeFeed#shared() change feed}.
+   *
+   * @param guideline The added guideline.
+   * @return The identifier of the guideline.
+   * @throws IllegalArgumentException The guideline was undefined.
+   */
+  public int add(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+    lock.writeLock().lock();
+    try {
+      int before = textIndex.size();
+      int id = insert(guideline);
+      if (publishing && textIndex.size() != before) {
+        ChangeFeed.shared().publish(ChangeFeed.Kind.GUIDELINE_ADDED, this, guideline, id, version);
+      }
+      return id;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add the guidelines of a catalog not yet published.
+   *
+   * The guidelines are added without publishing them to the change feed, as the subscribers
+   * learn of the whole catalog when it replaces the current catalog.
+   *
+   * @param guidelines The added guidelines.
+   * @throws IllegalArgumentException A guideline was undefined.
+   */
+  void addAllUnpublished(Iterable<? extends SpellGuideline<?, ?, ?, ?>> guidelines) throws IllegalArgumentException {
+    lock.writeLock().lock();
+    try {
+      for (SpellGuideline<?, ?, ?, ?> guideline : guidelines) insert(guideline);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add a guideline to the indexes while holding the write lock.
+   *
+   * @param guideline The added guideline.
+   * @return The identifier of the guideline.
+   * @throws IllegalArgumentException The guideline was undefined.
+   */
+  private int insert(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+    int before = textIndex.size();
+    int id = textIndex.add(guideline);
+    if (textIndex.size() == before) return id;
+    int level = levelKey(guideline.getLevel());
+    addId(byTechniqueAndForm.computeIfAbsent(
+      techniqueAndFormKey(artKey(guideline.getTechnique()), artKey(guideline.getForm())),
+      key -> new TreeMap<>()), level, id);
+    addId(byLevel, level, id);
+    size++;
+    version++;
+    return id;
+  }
+
+  /**
+   * Remove a guideline.
+   *
+   * A removed guideline is published to the {@link ChangeFeed#shared() change feed}.
+   *
+   * @param guideline The removed guideline.
+   * @return True, if and only if the guideline was removed.
+   */
+  public boolean remove(SpellGuideline<?, ?, ?, ?> guideline) {
+    lock.writeLock().lock();
+    try {
+      int id = textIndex.indexOf(guideline);
+      if (id < 0 || !textIndex.remove(guideline)) return false;
+      int level = levelKey(guideline.getLevel());
+      String key = techniqueAndFormKey(artKey(guideline.getTechnique()), artKey(guideline.getForm()));
+      NavigableMap<Integer, Bucket> levels = byTechniqueAndForm.get(key);
+      if (levels != null) {
+        removeId(levels, level, id);
+        if (levels.isEmpty()) byTechniqueAndForm.remove(key);
+      }
+      removeId(byLevel, level, id);
+      size--;
+      version++;
+      if (publishing) ChangeFeed.shared().publish(ChangeFeed.Kind.GUIDELINE_REMOVED, this, guideline, id, version);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get a guideline.
+   *
+   * @param id The identifier of the guideline.
+   * @return The guideline, or an undefined value, if the identifier is unused.
+   */
+  public SpellGuideline<?, ?, ?, ?> get(int id) {
+    return textIndex.getGuideline(id);
+  }
+
+  /**
+   * Get the number of guidelines.
+   *
+   * @return The number of guidelines.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the version of the catalog.
+   *
+   * @return The version increasing on every change.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the text index of the catalog.
+   *
+   * @return The text index.
+   */
+  public GuidelineTextIndex getTextIndex() {
+    return textIndex;
+  }
+
+  /**
+   * Get all identifiers in level order.
+   *
+   * @return The identifiers ordered by level and identifier.
+   */
+  public int[] ids() {
+    return idsInLevelRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Get the identifiers within a level range.
+   *
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @return The identifiers ordered by level and identifier.
+   */
+  public int[] idsInLevelRange(int min, int max) {
+    lock.readLock().lock();
+    try {
+      return concat(min > max ? List.of() : byLevel.subMap(min, true, max, true).values());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Count the identifiers within a level range.
+   *
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @return The number of guidelines within the range.
+   */
+  public int countInLevelRange(int min, int max) {
+    lock.readLock().lock();
+    try {
+      int result = 0;
+      if (min <= max) {
+        for (Bucket ids : byLevel.subMap(min, true, max, true).values()) result += ids.size;
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the identifiers of techniques and forms.
+   *
+   * @param techniques The technique keys, or an undefined value for any technique.
+   * @param forms The form keys, or an undefined value for any form.
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @return The identifiers ordered by technique and form, and then by level.
+   */
+  public int[] idsOfTechniquesAndForms(List<String> techniques, List<String> forms, int min, int max) {
+    lock.readLock().lock();
+    try {
+      List<Bucket> parts = new ArrayList<>();
+      for (Map.Entry<String, NavigableMap<Integer, Bucket>> entry : byTechniqueAndForm.entrySet()) {
+        int separator = entry.getKey().indexOf('|');
+        if (techniques != null && !techniques.contains(entry.getKey().substring(0, separator))) continue;
+        if (forms != null && !forms.contains(entry.getKey().substring(separator + 1))) continue;
+        if (min <= max) parts.addAll(entry.getValue().subMap(min, true, max, true).values());
+      }
+      return concat(parts);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Count the identifiers of techniques and forms.
+   *
+   * @param techniques The technique keys, or an undefined value for any technique.
+   * @param forms The form keys, or an undefined value for any form.
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @return The number of guidelines of the techniques and forms within the level range.
+   */
+  public int countOfTechniquesAndForms(List<String> techniques, List<String> forms, int min, int max) {
+    lock.readLock().lock();
+    try {
+      int result = 0;
+      for (Map.Entry<String, NavigableMap<Integer, Bucket>> entry : byTechniqueAndForm.entrySet()) {
+        int separator = entry.getKey().indexOf('|');
+        if (techniques != null && !techniques.contains(entry.getKey().substring(0, separator))) continue;
+        if (forms != null && !forms.contains(entry.getKey().substring(separator + 1))) continue;
+        if (min <= max) {
+          for (Bucket ids : entry.getValue().subMap(min, true, max, true).values()) result += ids.size;
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get a page of the identifiers following a key in the order of the level and the identifier.
+   *
+   * @param technique The technique key, or an undefined value for any technique and form.
+   * @param form The form key, or an undefined value for any technique and form.
+   * @param level The level key of the last identifier of the previous page, or
+   * {@link Integer#MIN_VALUE} for the first page.
+   * @param id The last identifier of the previous page, or a negative value for the first page.
+   * @param limit The largest number of identifiers.
+   * @return The identifiers following the key ordered by level and identifier.
+   * @throws IllegalArgumentException The limit was negative, or only one of the technique and
+   * the form was given.
+   */
+  public int[] idsAfter(String technique, String form, int level, int id, int limit) throws IllegalArgumentException {
+    long[] keys = keysAfter(technique, form, level, id, limit);
+    int[] result = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) result[i] = (int)keys[i];
+    return result;
+  }
+
+  /**
+   * Get a page of the keys following a key in the order of the level and the identifier.
+   *
+   * The page starts from the level with the map navigation, so a page deep in the catalog
+   * costs as little as the first page.
+   *
+   * @param technique The technique key, or an undefined value for any technique and form.
+   * @param form The form key, or an undefined value for any technique and form.
+   * @param level The level key of the last identifier of the previous page.
+   * @param id The last identifier of the previous page.
+   * @param limit The largest number of keys.
+   * @return The keys with the level key in the high and the identifier in the low 32 bits.
+   * @throws IllegalArgumentException The limit was negative, or only one of the technique and
+   * the form was given.
+   */
+  long[] keysAfter(String technique, String form, int level, int id, int limit) throws IllegalArgumentException {
+    if (limit < 0) throw new IllegalArgumentException("Invalid limit");
+    if ((technique == null) != (form == null)) throw new IllegalArgumentException("Invalid technique and form");
+    lock.readLock().lock();
+    try {
+      NavigableMap<Integer, Bucket> levels = technique == null ? byLevel : byTechniqueAndForm.get(techniqueAndFormKey(technique, form));
+      long[] result = new long[limit];
+      int count = 0;
+      if (levels != null) {
+        for (Map.Entry<Integer, Bucket> entry : levels.tailMap(level, true).entrySet()) {
+          if (count == limit) break;
+          Bucket ids = entry.getValue();
+          int start = entry.getKey() == level ? ids.indexAfter(id) : 0;
+          long high = (long)entry.getKey() << 32;
+          for (int i = start; i < ids.size && count < limit; i++) result[count++] = high | (ids.ids[i] & 0xFFFFFFFFL);
+        }
+      }
+      return count == limit ? result : Arrays.copyOf(result, count);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the keys of techniques and forms in the order of the level and the identifier.
+   *
+   * The level ordered keys of the techniques and forms are merged until the limit, so a small
+   * limit costs little however many guidelines match.
+   *
+   * @param techniques The technique keys, or an undefined value for any technique.
+   * @param forms The form keys, or an undefined value for any form.
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @param limit The largest number of keys.
+   * @return The first keys with the level key in the high and the identifier in the low 32 bits.
+   * @throws IllegalArgumentException The limit was negative.
+   */
+  long[] keysOfTechniquesAndForms(List<String> techniques, List<String> forms, int min, int max, int limit)
+  throws IllegalArgumentException {
+    if (limit < 0) throw new IllegalArgumentException("Invalid limit");
+    lock.readLock().lock();
+    try {
+      PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+      long length = 0;
+      for (Map.Entry<String, NavigableMap<Integer, Bucket>> entry : byTechniqueAndForm.entrySet()) {
+        int separator = entry.getKey().indexOf('|');
+        if (techniques != null && !techniques.contains(entry.getKey().substring(0, separator))) continue;
+        if (forms != null && !forms.contains(entry.getKey().substring(separator + 1))) continue;
+        if (min > max) continue;
+        NavigableMap<Integer, Bucket> levels = entry.getValue().subMap(min, true, max, true);
+        Cursor cursor = new Cursor(levels.entrySet().iterator());
+        if (cursor.hasKey()) {
+          cursors.add(cursor);
+          if (length < limit) for (Bucket ids : levels.values()) length += ids.size;
+        }
+      }
+      long[] result = new long[(int)Math.min(limit, length)];
+      for (int count = 0; count < result.length; count++) {
+        Cursor cursor = cursors.poll();
+        result[count] = cursor.key();
+        if (cursor.advance()) cursors.add(cursor);
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Concatenate the identifiers of buckets.
+   *
+   * @param parts The concatenated buckets.
+   * @return The trimmed copy of the concatenated identifiers.
+   */
+  private static int[] concat(Iterable<Bucket> parts) {
+    int length = 0;
+    for (Bucket part : parts) length += part.size;
+    int[] result = new int[length];
+    int offset = 0;
+    for (Bucket part : parts) {
+      System.arraycopy(part.ids, 0, result, offset, part.size);
+      offset += part.size;
+    }
+    return result;
+  }
+}
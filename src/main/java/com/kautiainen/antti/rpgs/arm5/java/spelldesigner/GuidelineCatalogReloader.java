@@ -0,0 +1,488 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The reloading of the current guideline catalog from a directory of guideline files.
+ *
+ * Every file ending with {@link #FILE_SUFFIX} contains a guideline per line in the format of
+ * {@link SpellGuideline#toString()}, such as "CrIg5: Name.Description" or "ReCoGeneric: Name.".
+ * The empty lines and the lines starting with '#' are ignored.
+ *
+ * A watcher thread reloads the catalog after the files have been quiet for a while. Only the
+ * changed files are parsed again, and the new catalog is built aside from the current one.
+ * The new catalog replaces the current catalog of {@link CatalogHolder} with a single atomic
+ * swap, so the requests use either the old or the new catalog as a whole. A reload with any
+ * invalid guideline is rejected, and the current catalog stays in use.
+ */
+public class GuidelineCatalogReloader implements AutoCloseable {
+
+  /**
+   * The system property of the watched directory.
+   */
+  public static final String DIRECTORY_PROPERTY = "arm5.spells.guidelineDirectory";
+
+  /**
+   * The suffix of the guideline files.
+   */
+  public static final String FILE_SUFFIX = ".guidelines";
+
+  /**
+   * The default time the files have to be quiet before a reload.
+   */
+  public static final long DEFAULT_QUIET_MILLIS = 250;
+
+  /**
+   * The error message indicating a line did not start with a technique, a form, and a level.
+   */
+  public static final String INVALID_CODE_MESSAGE = "Invalid technique, form, or level";
+
+  /**
+   * The number of created watcher threads.
+   */
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  /**
+   * The result of a reload.
+   */
+  public static final class Result {
+
+    /**
+     * The loaded catalog.
+     */
+    private final GuidelineCatalog catalog;
+
+    /**
+     * The errors of the files.
+     */
+    private final List<String> errors;
+
+    /**
+     * The number of the loaded files.
+     */
+    private final int fileCount;
+
+    /**
+     * The number of the parsed files.
+     */
+    private final int parsedCount;
+
+    /**
+     * Create a new result.
+     *
+     * @param catalog The loaded catalog, or an undefined value if the reload was rejected.
+     * @param errors The errors.
+     * @param fileCount The number of the files.
+     * @param parsedCount The number of the files parsed again.
+     */
+    private Result(GuidelineCatalog catalog, List<String> errors, int fileCount, int parsedCount) {
+      this.catalog = catalog;
+      this.errors = Collections.unmodifiableList(errors);
+      this.fileCount = fileCount;
+      this.parsedCount = parsedCount;
+    }
+
+    /**
+     * Was the loaded catalog published.
+     *
+     * @return True, if and only if the files had no errors.
+     */
+    public boolean isPublished() {
+      return catalog != null;
+    }
+
+    /**
+     * Get the loaded catalog.
+     *
+     * @return The published catalog, if the reload was not rejected.
+     */
+    public Optional<GuidelineCatalog> getCatalog() {
+      return Optional.ofNullable(catalog);
+    }
+
+    /**
+     * Get the errors of the reload.
+     *
+     * @return The unmodifiable list of the errors with the file and the line.
+     */
+    public List<String> getErrors() {
+      return errors;
+    }
+
+    /**
+     * Get the number of the guideline files.
+     *
+     * @return The number of the files in the directory.
+     */
+    public int getFileCount() {
+      return fileCount;
+    }
+
+    /**
+     * Get the number of the files parsed by the reload.
+     *
+     * @return The number of the new and the changed files.
+     */
+    public int getParsedCount() {
+      return parsedCount;
+    }
+  }
+
+  /**
+   * A parsed guideline file.
+   */
+  private static final class Source {
+
+    /**
+     * The modification time of the file.
+     */
+    final FileTime modified;
+
+    /**
+     * The size of the file.
+     */
+    final long size;
+
+    /**
+     * The guidelines of the file.
+     */
+    final List<SpellGuideline<?, ?, ?, ?>> guidelines;
+
+    /**
+     * The errors of the file.
+     */
+    final List<String> errors;
+
+    /**
+     * Create a new source.
+     *
+     * @param modified The modification time.
+     * @param size The size.
+     * @param guidelines The guidelines.
+     * @param errors The errors.
+     */
+    Source(FileTime modified, long size, List<SpellGuideline<?, ?, ?, ?>> guidelines, List<String> errors) {
+      this.modified = modified;
+      this.size = size;
+      this.guidelines = guidelines;
+      this.errors = errors;
+    }
+  }
+
+  /**
+   * The watched directory.
+   */
+  private final Path directory;
+
+  /**
+   * The arts of the guidelines.
+   */
+  private final HermeticArts arts;
+
+  /**
+   * The time the files have to be quiet before a reload.
+   */
+  private final long quietMillis;
+
+  /**
+   * The parsed files by path.
+   */
+  private final Map<Path, Source> sources = new HashMap<>();
+
+  /**
+   * The lock of the reloads.
+   */
+  private final ReentrantLock reloadLock = new ReentrantLock();
+
+  /**
+   * The result of the last reload.
+   */
+  private volatile Result lastResult;
+
+  /**
+   * The watch service, or an undefined value before the watching starts.
+   */
+  private volatile WatchService watcher;
+
+  /**
+   * Has the reloader been closed.
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * Create a new reloader.
+   *
+   * @param directory The directory of the guideline files.
+   * @param arts The arts of the guidelines.
+   * @throws IllegalArgumentException The directory or the arts was undefined.
+   */
+  public GuidelineCatalogReloader(Path directory, HermeticArts arts) throws IllegalArgumentException {
+    this(directory, arts, DEFAULT_QUIET_MILLIS);
+  }
+
+  /**
+   * Create a new reloader.
+   *
+   * @param directory The directory of the guideline files.
+   * @param arts The arts of the guidelines.
+   * @param quietMillis The time the files have to be quiet before a reload.
+   * @throws IllegalArgumentException Any argument was invalid.
+   */
+  public GuidelineCatalogReloader(Path directory, HermeticArts arts, long quietMillis) throws IllegalArgumentException {
+    if (directory == null) throw new IllegalArgumentException("Invalid directory");
+    if (arts == null) throw new IllegalArgumentException("Invalid arts");
+    if (quietMillis < 0) throw new IllegalArgumentException("Invalid quiet time");
+    this.directory = directory;
+    this.arts = arts;
+    this.quietMillis = quietMillis;
+  }
+
+  /**
+   * Load the catalog and start watching the directory.
+   *
+   * @return The result of the first load.
+   * @throws IOException The directory could not be watched or read.
+   * @throws IllegalStateException The watching had already started, or the reloader was closed.
+   */
+  public Result start() throws IOException, IllegalStateException {
+    reloadLock.lock();
+    try {
+      if (closed || watcher != null) throw new IllegalStateException("The reloader has already been started");
+      WatchService service = directory.getFileSystem().newWatchService();
+      directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+      StandardWatchEventKinds.ENTRY_DELETE);
+      watcher = service;
+      Result result = reload();
+      Thread thread = new Thread(() -> watch(service), "spell-reload-" + THREADS.incrementAndGet());
+      thread.setDaemon(true);
+      thread.start();
+      return result;
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  /**
+   * Watch the directory until the reloader is closed.
+   *
+   * @param service The watch service.
+   */
+  private void watch(WatchService service) {
+    try {
+      while (!closed) {
+        WatchKey key = service.take();
+        boolean changed = drain(key);
+        // The reload waits until the editors have finished writing the files.
+        while ((key = service.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) changed |= drain(key);
+        if (changed) {
+          try {
+            reload();
+          } catch (IOException | RuntimeException e) {
+            lastResult = new Result(null, List.of(directory + ": " + e), 0, 0);
+          }
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // The reloader was closed.
+    }
+  }
+
+  /**
+   * Consume the events of a watch key.
+   *
+   * @param key The key.
+   * @return True, if and only if any event concerned a guideline file or overflowed.
+   */
+  private static boolean drain(WatchKey key) {
+    boolean result = false;
+    for (var event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+      || event.context() instanceof Path path && path.toString().endsWith(FILE_SUFFIX)) {
+        result = true;
+      }
+    }
+    key.reset();
+    return result;
+  }
+
+  /**
+   * Reload the catalog from the directory.
+   *
+   * The new and the changed files are parsed, and a new catalog of all files is built and
+   * published, unless any file has errors.
+   *
+   * @return The result of the reload.
+   * @throws IOException The directory could not be read.
+   */
+  public Result reload() throws IOException {
+    reloadLock.lock();
+    try {
+      Map<Path, BasicFileAttributes> files = new TreeMap<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+        for (Path file : stream) {
+          BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+          if (attributes.isRegularFile()) files.put(file, attributes);
+        }
+      }
+      sources.keySet().retainAll(files.keySet());
+      int parsed = 0;
+      for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+        Source source = sources.get(file.getKey());
+        BasicFileAttributes attributes = file.getValue();
+        if (source == null || !source.modified.equals(attributes.lastModifiedTime()) || source.size != attributes.size()) {
+          List<String> errors = new ArrayList<>();
+          List<SpellGuideline<?, ?, ?, ?>> guidelines;
+          try (Reader reader = Files.newBufferedReader(file.getKey(), StandardCharsets.UTF_8)) {
+            guidelines = parse(reader, file.getKey().getFileName().toString(), arts, errors);
+          } catch (IOException e) {
+            guidelines = List.of();
+            errors.add(file.getKey().getFileName() + ": " + e.getMessage());
+          }
+          sources.put(file.getKey(), new Source(attributes.lastModifiedTime(), attributes.size(), guidelines, errors));
+          parsed++;
+        }
+      }
+      List<String> errors = new ArrayList<>();
+      for (Source source : sources.values()) errors.addAll(source.errors);
+      GuidelineCatalog catalog = null;
+      if (errors.isEmpty()) {
+        catalog = new GuidelineCatalog();
+        // The subscribers learn of the new catalog from its replacement event alone.
+        for (Path file : files.keySet()) catalog.addAllUnpublished(sources.get(file).guidelines);
+        CatalogHolder.setCatalog(catalog);
+      }
+      Result result = new Result(catalog, errors, files.size(), parsed);
+      lastResult = result;
+      return result;
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  /**
+   * Get the result of the last reload.
+   *
+   * @return The result of the last reload, if any reload has been done.
+   */
+  public Optional<Result> getLastResult() {
+    return Optional.ofNullable(lastResult);
+  }
+
+  /**
+   * Parse guidelines.
+   *
+   * @param input The input of the guideline lines.
+   * @param sourceName The name of the source in the error messages.
+   * @param arts The arts of the guidelines.
+   * @param errors The list receiving the errors.
+   * @return The valid guidelines.
+   * @throws IOException The reading failed.
+   */
+  public static List<SpellGuideline<?, ?, ?, ?>> parse(Reader input, String sourceName, HermeticArts arts,
+  List<String> errors) throws IOException {
+    Map<String, Art> techniques = byAbbreviation(arts.getTechniques());
+    Map<String, Art> forms = byAbbreviation(arts.getForms());
+    List<SpellGuideline<?, ?, ?, ?>> result = new ArrayList<>();
+    BufferedReader reader = input instanceof BufferedReader buffered ? buffered : new BufferedReader(input);
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      line = line.strip();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      try {
+        result.add(parseLine(line, techniques, forms));
+      } catch (IllegalArgumentException e) {
+        errors.add(sourceName + ":" + lineNumber + ": " + e.getMessage());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the arts by lower case abbreviation.
+   *
+   * @param arts The arts.
+   * @return The arts implementing the technique or the form interface by abbreviation.
+   */
+  private static Map<String, Art> byAbbreviation(Iterable<Art> arts) {
+    Map<String, Art> result = new HashMap<>();
+    for (Art art : arts) {
+      art.getAbbreviation().ifPresent(abbreviation -> result.putIfAbsent(abbreviation.toLowerCase(Locale.ROOT), art));
+    }
+    return result;
+  }
+
+  /**
+   * Parse a guideline line.
+   *
+   * @param line The stripped line.
+   * @param techniques The techniques by lower case abbreviation.
+   * @param forms The forms by lower case abbreviation.
+   * @return The guideline.
+   * @throws IllegalArgumentException The line was invalid.
+   */
+  @SuppressWarnings("unchecked")
+  private static SpellGuideline<?, ?, ?, ?> parseLine(String line, Map<String, Art> techniques, Map<String, Art> forms)
+  throws IllegalArgumentException {
+    int colon = line.indexOf(':');
+    if (colon < 4) throw new IllegalArgumentException(INVALID_CODE_MESSAGE);
+    Art technique = techniques.get(line.substring(0, 2).toLowerCase(Locale.ROOT));
+    Art form = forms.get(line.substring(2, 4).toLowerCase(Locale.ROOT));
+    if (!(technique instanceof TechniqueInterface) || !(form instanceof FormInterface)) {
+      throw new IllegalArgumentException(INVALID_CODE_MESSAGE);
+    }
+    SpellGuideline.GuidelineLevel level;
+    String levelText = line.substring(4, colon).strip();
+    try {
+      // An empty level would parse as generic, so it is rejected first.
+      if (levelText.isEmpty()) throw new NumberFormatException();
+      level = SpellGuideline.GuidelineLevel.valueOf(levelText);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(SpellGuideline.INVALID_LEVEL_EXCEPTION, e);
+    }
+    String text = line.substring(colon + 1).strip();
+    int period = text.indexOf('.');
+    if (period < 0) throw new IllegalArgumentException(SpellGuideline.INVALID_NAME_EXCEPTION);
+    String description = text.substring(period + 1).strip();
+    // The builder validates the name and the description with validName and validDescription.
+    return ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType, FormInterface<FormArtType>>builder()
+    .technique((TechniqueInterface<TechniqueArtType>)technique).form((FormInterface<FormArtType>)form).level(level)
+    .name(text.substring(0, period).strip()).description(description.isEmpty() ? null : description).build();
+  }
+
+  /**
+   * Stop watching the directory.
+   *
+   * @throws IOException The watch service could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    WatchService service = watcher;
+    if (service != null) service.close();
+  }
+}
@@ -0,0 +1,772 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A compiled guideline query such as
+ * {@code tech in (Cr,Re) and form=Co and level<=20 and text~"heal"}.
+ *
+ * The query is compiled once into a predicate tree. When the query is executed, the most
+ * selective index of the catalog available for the conjuncts of the query is chosen, and
+ * only the guidelines of the index are tested with the predicate. A query without indexable
+ * conjuncts scans the catalog. The compiled queries are cached by the query string.
+ *
+ * <pre>
+ * query      := or
+ * or         := and ("or" and)*
+ * and        := not ("and" not)*
+ * not        := "not" not | "(" or ")" | comparison
+ * comparison := field ("=" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=" | "~") value
+ *             | field "in" "(" value ("," value)* ")"
+ * field      := "tech" | "technique" | "form" | "level" | "name" | "description" | "desc" | "text"
+ * </pre>
+ */
+public class GuidelineQuery {
+
+  /**
+   * The maximal number of cached compiled queries.
+   */
+  public static final int PLAN_CACHE_CAPACITY = 1024;
+
+  /**
+   * The error message of an invalid query.
+   */
+  public static final String INVALID_QUERY_MESSAGE = "Invalid query";
+
+  /**
+   * The compiled queries by query string.
+   */
+  private static final Map<String, GuidelineQuery> PLAN_CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * The fields of the queries.
+   */
+  public static enum Field {
+    Technique, Form, Level, Name, Description, Text;
+
+    /**
+     * Parse a field name.
+     *
+     * @param name The field name.
+     * @return The field.
+     * @throws IllegalArgumentException The field name was unknown.
+     */
+    static Field parse(String name) throws IllegalArgumentException {
+      switch (name.toLowerCase(Locale.ROOT)) {
+        case "tech":
+        case "technique":
+          return Technique;
+        case "form":
+          return Form;
+        case "level":
+          return Level;
+        case "name":
+          return Name;
+        case "desc":
+        case "description":
+          return Description;
+        case "text":
+          return Text;
+        default:
+          throw new IllegalArgumentException("Unknown field " + name);
+      }
+    }
+  }
+
+  /**
+   * An index access path of a conjunct.
+   */
+  private static abstract class AccessPath {
+
+    /**
+     * Estimate the number of identifiers of the path.
+     *
+     * @param catalog The catalog.
+     * @return The estimated number of identifiers.
+     */
+    abstract int estimate(GuidelineCatalog catalog);
+
+    /**
+     * Get the identifiers of the path.
+     *
+     * @param catalog The catalog.
+     * @return The identifiers, which contain every identifier satisfying the conjunct.
+     */
+    abstract int[] ids(GuidelineCatalog catalog);
+  }
+
+  /**
+   * The access path through the technique, form, and level index.
+   */
+  private static final class TechniqueAndFormPath extends AccessPath {
+
+    /**
+     * The technique keys, or an undefined value for any.
+     */
+    final List<String> techniques;
+
+    /**
+     * The form keys, or an undefined value for any.
+     */
+    final List<String> forms;
+
+    /**
+     * The minimal level key.
+     */
+    final int min;
+
+    /**
+     * The maximal level key.
+     */
+    final int max;
+
+    TechniqueAndFormPath(List<String> techniques, List<String> forms, int min, int max) {
+      this.techniques = techniques;
+      this.forms = forms;
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    int estimate(GuidelineCatalog catalog) {
+      return catalog.countOfTechniquesAndForms(techniques, forms, min, max);
+    }
+
+    @Override
+    int[] ids(GuidelineCatalog catalog) {
+      return catalog.idsOfTechniquesAndForms(techniques, forms, min, max);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("TeFo index(tech=%s, form=%s, level=%d..%d)",
+      techniques == null ? "*" : techniques, forms == null ? "*" : forms, min, max);
+    }
+  }
+
+  /**
+   * The access path through the level index.
+   */
+  private static final class LevelPath extends AccessPath {
+
+    /**
+     * The minimal level key.
+     */
+    final int min;
+
+    /**
+     * The maximal level key.
+     */
+    final int max;
+
+    LevelPath(int min, int max) {
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    int estimate(GuidelineCatalog catalog) {
+      return catalog.countInLevelRange(min, max);
+    }
+
+    @Override
+    int[] ids(GuidelineCatalog catalog) {
+      return catalog.idsInLevelRange(min, max);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("level index(%d..%d)", min, max);
+    }
+  }
+
+  /**
+   * The access path through the text index.
+   */
+  private static final class TextPath extends AccessPath {
+
+    /**
+     * The words of the phrase.
+     */
+    final List<String> words;
+
+    TextPath(List<String> words) {
+      this.words = words;
+    }
+
+    @Override
+    int estimate(GuidelineCatalog catalog) {
+      int result = Integer.MAX_VALUE;
+      for (String word : words) {
+        result = Math.min(result, catalog.getTextIndex().documentFrequency(word));
+      }
+      return result;
+    }
+
+    @Override
+    int[] ids(GuidelineCatalog catalog) {
+      return catalog.getTextIndex().matchAll(words);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("text index(%s)", words);
+    }
+  }
+
+  /**
+   * The query string.
+   */
+  private final String query;
+
+  /**
+   * The compiled predicate.
+   */
+  private final Predicate<SpellGuideline<?, ?, ?, ?>> predicate;
+
+  /**
+   * The access paths of the conjuncts.
+   */
+  private final List<AccessPath> accessPaths;
+
+  /**
+   * Create a compiled query.
+   *
+   * @param query The query string.
+   * @param predicate The predicate.
+   * @param accessPaths The access paths.
+   */
+  private GuidelineQuery(String query, Predicate<SpellGuideline<?, ?, ?, ?>> predicate, List<AccessPath> accessPaths) {
+    this.query = query;
+    this.predicate = predicate;
+    this.accessPaths = accessPaths;
+  }
+
+  /**
+   * Compile a query, or get the cached compiled query.
+   *
+   * @param query The query string.
+   * @return The compiled query.
+   * @throws IllegalArgumentException The query was invalid.
+   */
+  public static GuidelineQuery compile(String query) throws IllegalArgumentException {
+    if (query == null) throw new IllegalArgumentException(INVALID_QUERY_MESSAGE);
+    GuidelineQuery result = PLAN_CACHE.get(query);
+    if (result == null) {
+      result = new Parser(query).parse();
+      if (PLAN_CACHE.size() >= PLAN_CACHE_CAPACITY) PLAN_CACHE.clear();
+      PLAN_CACHE.putIfAbsent(query, result);
+    }
+    return result;
+  }
+
+  /**
+   * Get the query string.
+   *
+   * @return The query string.
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Test a guideline.
+   *
+   * @param guideline The tested guideline.
+   * @return True, if and only if the guideline satisfies the query.
+   */
+  public boolean test(SpellGuideline<?, ?, ?, ?> guideline) {
+    return predicate.test(guideline);
+  }
+
+  /**
+   * Choose the most selective access path.
+   *
+   * @param catalog The catalog.
+   * @return The chosen path, or an undefined value for a scan.
+   */
+  private AccessPath choosePath(GuidelineCatalog catalog) {
+    AccessPath result = null;
+    int best = catalog.size();
+    for (AccessPath path : accessPaths) {
+      int estimate = path.estimate(catalog);
+      if (estimate < best || (result == null && estimate <= best)) {
+        best = estimate;
+        result = path;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Describe the plan of the query.
+   *
+   * @param catalog The catalog.
+   * @return The description of the chosen access path.
+   */
+  public String explain(GuidelineCatalog catalog) {
+    AccessPath path = choosePath(catalog);
+    return path == null ? "scan" : path.toString();
+  }
+
+  /**
+   * Execute the query.
+   *
+   * @param catalog The queried catalog.
+   * @return The matching guidelines ordered by level.
+   */
+  public List<SpellGuideline<?, ?, ?, ?>> execute(GuidelineCatalog catalog) {
+    AccessPath path = choosePath(catalog);
+    int[] ids = path == null ? catalog.ids() : path.ids(catalog);
+    List<SpellGuideline<?, ?, ?, ?>> result = new ArrayList<>();
+    for (int id : ids) {
+      SpellGuideline<?, ?, ?, ?> guideline = catalog.get(id);
+      if (guideline != null && predicate.test(guideline)) result.add(guideline);
+    }
+    if (path != null && !(path instanceof LevelPath)) {
+      result.sort((first, second) -> Integer.compare(
+        GuidelineCatalog.levelKey(first.getLevel()), GuidelineCatalog.levelKey(second.getLevel())));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return query;
+  }
+
+  /**
+   * The recursive descent parser of the queries.
+   */
+  private static final class Parser {
+
+    /**
+     * The parsed query.
+     */
+    private final String query;
+
+    /**
+     * The current index.
+     */
+    private int index = 0;
+
+    /**
+     * The technique keys of the top level conjuncts.
+     */
+    private List<String> techniques;
+
+    /**
+     * The form keys of the top level conjuncts.
+     */
+    private List<String> forms;
+
+    /**
+     * The minimal level key of the top level conjuncts.
+     */
+    private int minLevel = Integer.MIN_VALUE;
+
+    /**
+     * The maximal level key of the top level conjuncts.
+     */
+    private int maxLevel = Integer.MAX_VALUE;
+
+    /**
+     * The text access paths of the top level conjuncts.
+     */
+    private final List<AccessPath> textPaths = new ArrayList<>();
+
+    /**
+     * Create a parser.
+     *
+     * @param query The parsed query.
+     */
+    Parser(String query) {
+      this.query = query;
+    }
+
+    /**
+     * Parse the query.
+     *
+     * @return The compiled query.
+     * @throws IllegalArgumentException The query was invalid.
+     */
+    GuidelineQuery parse() throws IllegalArgumentException {
+      List<Predicate<SpellGuideline<?, ?, ?, ?>>> conjuncts = new ArrayList<>();
+      conjuncts.add(parseNot(true));
+      boolean disjunction = false;
+      List<Predicate<SpellGuideline<?, ?, ?, ?>>> disjuncts = new ArrayList<>();
+      while (true) {
+        if (keyword("and")) {
+          conjuncts.add(parseNot(!disjunction));
+        } else if (keyword("or")) {
+          disjunction = true;
+          disjuncts.add(all(conjuncts));
+          conjuncts = new ArrayList<>();
+          conjuncts.add(parseNot(false));
+        } else {
+          break;
+        }
+      }
+      skipWhitespace();
+      if (index != query.length()) throw error();
+      List<AccessPath> paths = new ArrayList<>();
+      if (disjunction) {
+        disjuncts.add(all(conjuncts));
+        return new GuidelineQuery(query, any(disjuncts), paths);
+      }
+      if (techniques != null || forms != null) {
+        paths.add(new TechniqueAndFormPath(techniques, forms, minLevel, maxLevel));
+      }
+      if (minLevel != Integer.MIN_VALUE || maxLevel != Integer.MAX_VALUE) {
+        paths.add(new LevelPath(minLevel, maxLevel));
+      }
+      paths.addAll(textPaths);
+      return new GuidelineQuery(query, all(conjuncts), Collections.unmodifiableList(paths));
+    }
+
+    /**
+     * Combine predicates with conjunction.
+     *
+     * @param predicates The combined predicates.
+     * @return The conjunction.
+     */
+    private static Predicate<SpellGuideline<?, ?, ?, ?>> all(List<Predicate<SpellGuideline<?, ?, ?, ?>>> predicates) {
+      if (predicates.size() == 1) return predicates.get(0);
+      List<Predicate<SpellGuideline<?, ?, ?, ?>>> copy = List.copyOf(predicates);
+      return guideline -> {
+        for (Predicate<SpellGuideline<?, ?, ?, ?>> predicate : copy) {
+          if (!predicate.test(guideline)) return false;
+        }
+        return true;
+      };
+    }
+
+    /**
+     * Combine predicates with disjunction.
+     *
+     * @param predicates The combined predicates.
+     * @return The disjunction.
+     */
+    private static Predicate<SpellGuideline<?, ?, ?, ?>> any(List<Predicate<SpellGuideline<?, ?, ?, ?>>> predicates) {
+      List<Predicate<SpellGuideline<?, ?, ?, ?>>> copy = List.copyOf(predicates);
+      return guideline -> {
+        for (Predicate<SpellGuideline<?, ?, ?, ?>> predicate : copy) {
+          if (predicate.test(guideline)) return true;
+        }
+        return false;
+      };
+    }
+
+    /**
+     * Parse a negation, a parenthesized disjunction, or a comparison.
+     *
+     * @param topLevel Is the parsed expression a conjunct of the top level conjunction.
+     * @return The predicate.
+     */
+    private Predicate<SpellGuideline<?, ?, ?, ?>> parseNot(boolean topLevel) {
+      if (keyword("not")) {
+        return parseNot(false).negate();
+      }
+      skipWhitespace();
+      if (peek() == '(') {
+        index++;
+        List<Predicate<SpellGuideline<?, ?, ?, ?>>> disjuncts = new ArrayList<>();
+        List<Predicate<SpellGuideline<?, ?, ?, ?>>> conjuncts = new ArrayList<>();
+        conjuncts.add(parseNot(false));
+        while (true) {
+          if (keyword("and")) {
+            conjuncts.add(parseNot(false));
+          } else if (keyword("or")) {
+            disjuncts.add(all(conjuncts));
+            conjuncts = new ArrayList<>();
+            conjuncts.add(parseNot(false));
+          } else {
+            break;
+          }
+        }
+        disjuncts.add(all(conjuncts));
+        expect(')');
+        return disjuncts.size() == 1 ? disjuncts.get(0) : any(disjuncts);
+      }
+      return parseComparison(topLevel);
+    }
+
+    /**
+     * Parse a comparison.
+     *
+     * @param topLevel Is the comparison a conjunct of the top level conjunction.
+     * @return The predicate.
+     */
+    private Predicate<SpellGuideline<?, ?, ?, ?>> parseComparison(boolean topLevel) {
+      Field field = Field.parse(identifier());
+      String operator;
+      List<String> values = new ArrayList<>();
+      if (keyword("in")) {
+        operator = "in";
+        expect('(');
+        values.add(value());
+        skipWhitespace();
+        while (peek() == ',') {
+          index++;
+          values.add(value());
+          skipWhitespace();
+        }
+        expect(')');
+      } else {
+        operator = operator();
+        values.add(value());
+      }
+      switch (field) {
+        case Technique:
+        case Form:
+          return artComparison(field, operator, values, topLevel);
+        case Level:
+          return levelComparison(operator, values.get(0), topLevel);
+        default:
+          return textComparison(field, operator, values.get(0), topLevel);
+      }
+    }
+
+    /**
+     * Create an art comparison.
+     *
+     * @param field The technique or the form field.
+     * @param operator The operator.
+     * @param values The compared values.
+     * @param topLevel Is the comparison a top level conjunct.
+     * @return The predicate.
+     */
+    private Predicate<SpellGuideline<?, ?, ?, ?>> artComparison(Field field, String operator, List<String> values, boolean topLevel) {
+      List<String> keys = new ArrayList<>();
+      for (String value : values) keys.add(artKeyOf(value));
+      boolean negated;
+      if ("=".equals(operator) || "in".equals(operator)) {
+        negated = false;
+      } else if ("!=".equals(operator)) {
+        negated = true;
+      } else {
+        throw error();
+      }
+      List<String> copy = List.copyOf(keys);
+      Predicate<SpellGuideline<?, ?, ?, ?>> result = guideline -> copy.contains(GuidelineCatalog.artKey(
+        field == Field.Technique ? guideline.getTechnique() : guideline.getForm()));
+      if (negated) return result.negate();
+      if (topLevel) {
+        if (field == Field.Technique) {
+          techniques = intersection(techniques, copy);
+        } else {
+          forms = intersection(forms, copy);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Intersect key lists, where an undefined list means every key.
+     *
+     * @param current The current keys.
+     * @param added The added keys.
+     * @return The intersection.
+     */
+    private static List<String> intersection(List<String> current, List<String> added) {
+      if (current == null) return added;
+      List<String> result = new ArrayList<>(current);
+      result.retainAll(added);
+      return result;
+    }
+
+    /**
+     * Get the art key of a value, mapping the default art names to their abbreviations.
+     *
+     * @param value The value.
+     * @return The art key.
+     */
+    private static String artKeyOf(String value) {
+      List<Art> arts = new ArrayList<>(HermeticArts.DEFAULT_ARTS.getTechniques());
+      arts.addAll(HermeticArts.DEFAULT_ARTS.getForms());
+      for (Art art : arts) {
+        if (art.getName().equalsIgnoreCase(value)) {
+          return art.getAbbreviation().orElse(art.getName()).toLowerCase(Locale.ROOT);
+        }
+      }
+      return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Create a level comparison.
+     *
+     * @param operator The operator.
+     * @param value The compared value.
+     * @param topLevel Is the comparison a top level conjunct.
+     * @return The predicate.
+     */
+    private Predicate<SpellGuideline<?, ?, ?, ?>> levelComparison(String operator, String value, boolean topLevel) {
+      int key;
+      try {
+        key = GuidelineCatalog.levelKey(SpellGuideline.GuidelineLevel.valueOf(value));
+      } catch (NumberFormatException exception) {
+        throw error();
+      }
+      int min;
+      int max;
+      boolean generic = key == GuidelineCatalog.GENERIC_LEVEL_KEY;
+      switch (operator) {
+        case "=": min = key; max = key; break;
+        case "<": min = 0; max = key - 1; break;
+        case "<=": min = 0; max = key; break;
+        case ">": min = key + 1; max = Integer.MAX_VALUE; break;
+        case ">=": min = key; max = Integer.MAX_VALUE; break;
+        case "!=":
+          return guideline -> GuidelineCatalog.levelKey(guideline.getLevel()) != key;
+        default:
+          throw error();
+      }
+      if (generic && !"=".equals(operator)) throw error();
+      if (topLevel) {
+        minLevel = Math.max(minLevel, min);
+        maxLevel = Math.min(maxLevel, max);
+      }
+      return guideline -> {
+        int level = GuidelineCatalog.levelKey(guideline.getLevel());
+        return level >= min && level <= max;
+      };
+    }
+
+    /**
+     * Create a text comparison.
+     *
+     * @param field The name, description, or text field.
+     * @param operator The operator.
+     * @param value The compared value.
+     * @param topLevel Is the comparison a top level conjunct.
+     * @return The predicate.
+     */
+    private Predicate<SpellGuideline<?, ?, ?, ?>> textComparison(Field field, String operator, String value, boolean topLevel) {
+      if ("~".equals(operator)) {
+        List<String> words = GuidelineTextIndex.tokenize(value);
+        if (words.isEmpty()) return guideline -> true;
+        if (topLevel) textPaths.add(new TextPath(words));
+        return guideline -> (field != Field.Description && GuidelineTextIndex.containsPhrase(guideline.getNameSequence(), words))
+        || (field != Field.Name && GuidelineTextIndex.containsPhrase(guideline.getDescriptionSequence(), words));
+      }
+      boolean negated;
+      if ("=".equals(operator)) {
+        negated = false;
+      } else if ("!=".equals(operator)) {
+        negated = true;
+      } else {
+        throw error();
+      }
+      Predicate<SpellGuideline<?, ?, ?, ?>> result = guideline ->
+      (field != Field.Description && value.equalsIgnoreCase(guideline.getName()))
+      || (field != Field.Name && value.equalsIgnoreCase(guideline.getDescription().orElse(null)));
+      return negated ? result.negate() : result;
+    }
+
+    /**
+     * Create an error of the current position.
+     *
+     * @return The error.
+     */
+    private IllegalArgumentException error() {
+      return new IllegalArgumentException(String.format("%s at %d: %s", INVALID_QUERY_MESSAGE, index, query));
+    }
+
+    /**
+     * Skip whitespace.
+     */
+    private void skipWhitespace() {
+      while (index < query.length() && Character.isWhitespace(query.charAt(index))) index++;
+    }
+
+    /**
+     * Peek the current character.
+     *
+     * @return The current character, or 0 at the end.
+     */
+    private char peek() {
+      return index < query.length() ? query.charAt(index) : 0;
+    }
+
+    /**
+     * Expect a character.
+     *
+     * @param expected The expected character.
+     */
+    private void expect(char expected) {
+      skipWhitespace();
+      if (peek() != expected) throw error();
+      index++;
+    }
+
+    /**
+     * Consume a keyword.
+     *
+     * @param keyword The keyword.
+     * @return True, if and only if the keyword was consumed.
+     */
+    private boolean keyword(String keyword) {
+      skipWhitespace();
+      int end = index + keyword.length();
+      if (end <= query.length() && query.regionMatches(true, index, keyword, 0, keyword.length())
+      && (end == query.length() || !Character.isLetterOrDigit(query.charAt(end)))) {
+        index = end;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Parse an identifier.
+     *
+     * @return The identifier.
+     */
+    private String identifier() {
+      skipWhitespace();
+      int start = index;
+      while (index < query.length() && Character.isLetterOrDigit(query.charAt(index))) index++;
+      if (start == index) throw error();
+      return query.substring(start, index);
+    }
+
+    /**
+     * Parse an operator.
+     *
+     * @return The operator.
+     */
+    private String operator() {
+      skipWhitespace();
+      for (String operator : Arrays.asList("<=", ">=", "!=", "=", "<", ">", "~")) {
+        if (query.startsWith(operator, index)) {
+          index += operator.length();
+          return operator;
+        }
+      }
+      throw error();
+    }
+
+    /**
+     * Parse a value.
+     *
+     * @return The value.
+     */
+    private String value() {
+      skipWhitespace();
+      if (peek() == '"') {
+        int end = query.indexOf('"', index + 1);
+        if (end < 0) throw error();
+        String result = query.substring(index + 1, end);
+        index = end + 1;
+        return result;
+      }
+      return identifier();
+    }
+  }
+}
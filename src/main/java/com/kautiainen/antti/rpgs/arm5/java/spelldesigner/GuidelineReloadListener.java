@@ -0,0 +1,49 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The listener starting the hot reload of the guideline catalog with the application.
+ *
+ * The reload is enabled by the system property or the context parameter
+ * {@link GuidelineCatalogReloader#DIRECTORY_PROPERTY} naming the directory of the guideline
+ * files.
+ */
+@WebListener
+public class GuidelineReloadListener implements ServletContextListener {
+
+  /**
+   * The running reloader, or an undefined value if the reload is not enabled.
+   */
+  private GuidelineCatalogReloader reloader;
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    String directory = System.getProperty(GuidelineCatalogReloader.DIRECTORY_PROPERTY,
+    event.getServletContext().getInitParameter(GuidelineCatalogReloader.DIRECTORY_PROPERTY));
+    if (directory == null || directory.isBlank()) return;
+    reloader = new GuidelineCatalogReloader(Path.of(directory), CatalogHolder.getArts());
+    try {
+      GuidelineCatalogReloader.Result result = reloader.start();
+      for (String error : result.getErrors()) event.getServletContext().log(error);
+    } catch (IOException e) {
+      event.getServletContext().log("Guideline reload disabled: " + directory, e);
+      reloader = null;
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    if (reloader == null) return;
+    try {
+      reloader.close();
+    } catch (IOException e) {
+      event.getServletContext().log("Closing the guideline reload failed", e);
+    }
+    reloader = null;
+  }
+}
@@ -0,0 +1,624 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A full text inverted index over the names and descriptions of the spell guidelines.
+ *
+ * The postings of every term are sorted arrays of document identifiers. A name or a
+ * description with a magnitude reference is indexed once by the text of its template,
+ * instead of once per rendered level.
+ */
+public class GuidelineTextIndex {
+
+  /**
+   * The token separating the prefix and the suffix of a template.
+   */
+  private static final int GAP = -1;
+
+  /**
+   * The weight of a term occurring in the name.
+   */
+  private static final double NAME_WEIGHT = 2.0;
+
+  /**
+   * A search hit.
+   */
+  public static final class Hit {
+
+    /**
+     * The document identifier.
+     */
+    private final int id;
+
+    /**
+     * The guideline.
+     */
+    private final SpellGuideline<?, ?, ?, ?> guideline;
+
+    /**
+     * The relevance score.
+     */
+    private final double score;
+
+    /**
+     * Create a new hit.
+     *
+     * @param id The document identifier.
+     * @param guideline The guideline.
+     * @param score The relevance score.
+     */
+    Hit(int id, SpellGuideline<?, ?, ?, ?> guideline, double score) {
+      this.id = id;
+      this.guideline = guideline;
+      this.score = score;
+    }
+
+    /**
+     * Get the document identifier.
+     *
+     * @return The document identifier.
+     */
+    public int getId() {
+      return id;
+    }
+
+    /**
+     * Get the guideline.
+     *
+     * @return The matching guideline.
+     */
+    public SpellGuideline<?, ?, ?, ?> getGuideline() {
+      return guideline;
+    }
+
+    /**
+     * Get the relevance score.
+     *
+     * @return The score of the hit.
+     */
+    public double getScore() {
+      return score;
+    }
+  }
+
+  /**
+   * The identifiers of the terms.
+   */
+  private final Map<String, Integer> terms = new HashMap<>();
+
+  /**
+   * The postings of the terms.
+   */
+  private int[][] postings = new int[64][];
+
+  /**
+   * The sizes of the postings.
+   */
+  private int[] postingSizes = new int[64];
+
+  /**
+   * The guidelines indexed by document identifier.
+   */
+  private SpellGuideline<?, ?, ?, ?>[] documents = newDocuments(64);
+
+  /**
+   * The name tokens of the documents.
+   */
+  private int[][] nameTokens = new int[64][];
+
+  /**
+   * The description tokens of the documents.
+   */
+  private int[][] descriptionTokens = new int[64][];
+
+  /**
+   * The document identifiers of the guidelines.
+   */
+  private final Map<SpellGuideline<?, ?, ?, ?>, Integer> identifiers = new IdentityHashMap<>();
+
+  /**
+   * The next document identifier.
+   */
+  private int nextId = 0;
+
+  /**
+   * The lock of the index.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Create a document array.
+   *
+   * @param size The size of the array.
+   * @return The created array.
+   */
+  @SuppressWarnings("rawtypes")
+  private static SpellGuideline<?, ?, ?, ?>[] newDocuments(int size) {
+    return new SpellGuideline[size];
+  }
+
+  /**
+   * Split a text into normalized words.
+   *
+   * @param text The text.
+   * @return The words of the text.
+   */
+  public static List<String> tokenize(CharSequence text) {
+    List<String> result = new ArrayList<>();
+    if (text == null) return result;
+    int start = -1;
+    for (int i = 0, end = text.length(); i <= end; i++) {
+      boolean wordChar = i < end && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        result.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the term identifier of a word, creating a new term when needed.
+   *
+   * @param word The normalized word.
+   * @return The term identifier.
+   */
+  private int termId(String word) {
+    Integer id = terms.get(word);
+    if (id == null) {
+      id = terms.size();
+      terms.put(word, id);
+      if (id >= postings.length) {
+        postings = Arrays.copyOf(postings, id * 2);
+        postingSizes = Arrays.copyOf(postingSizes, id * 2);
+      }
+      postings[id] = new int[4];
+    }
+    return id;
+  }
+
+  /**
+   * Tokenize a name or a description into term identifiers.
+   *
+   * A magnitude reference contributes only the words of its prefix and suffix.
+   *
+   * @param text The text.
+   * @return The term identifiers.
+   */
+  private int[] termIds(CharSequence text) {
+    List<String> words;
+    if (text instanceof SpellGuideline.SequenceWithMagnitudeReference template) {
+      words = tokenize(template.getPrefix());
+      words.add(null);
+      words.addAll(tokenize(template.getSuffix()));
+    } else if (text instanceof SpellGuideline.LevelReference) {
+      words = new ArrayList<>();
+    } else {
+      words = tokenize(text);
+    }
+    int[] result = new int[words.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = words.get(i) == null ? GAP : termId(words.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Add a guideline.
+   *
+   * @param guideline The added guideline.
+   * @return The document identifier of the guideline.
+   * @throws IllegalArgumentException The guideline was undefined.
+   */
+  public int add(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+    if (guideline == null) throw new IllegalArgumentException("Invalid guideline");
+    lock.writeLock().lock();
+    try {
+      Integer existing = identifiers.get(guideline);
+      if (existing != null) return existing;
+      int id = nextId++;
+      if (id >= documents.length) {
+        documents = Arrays.copyOf(documents, id * 2);
+        nameTokens = Arrays.copyOf(nameTokens, id * 2);
+        descriptionTokens = Arrays.copyOf(descriptionTokens, id * 2);
+      }
+      documents[id] = guideline;
+      nameTokens[id] = termIds(guideline.getNameSequence());
+      descriptionTokens[id] = termIds(guideline.getDescriptionSequence());
+      identifiers.put(guideline, id);
+      for (int term : distinctTerms(id)) {
+        if (postingSizes[term] == postings[term].length) {
+          postings[term] = Arrays.copyOf(postings[term], postingSizes[term] * 2);
+        }
+        // The identifiers grow, so appending keeps the postings sorted.
+        postings[term][postingSizes[term]++] = id;
+      }
+      return id;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove a guideline.
+   *
+   * @param guideline The removed guideline.
+   * @return True, if and only if the guideline was removed.
+   */
+  public boolean remove(SpellGuideline<?, ?, ?, ?> guideline) {
+    lock.writeLock().lock();
+    try {
+      Integer id = identifiers.remove(guideline);
+      if (id == null) return false;
+      for (int term : distinctTerms(id)) {
+        int index = Arrays.binarySearch(postings[term], 0, postingSizes[term], id);
+        if (index >= 0) {
+          System.arraycopy(postings[term], index + 1, postings[term], index, postingSizes[term] - index - 1);
+          postingSizes[term]--;
+        }
+      }
+      documents[id] = null;
+      nameTokens[id] = null;
+      descriptionTokens[id] = null;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get the distinct terms of a document.
+   *
+   * @param id The document identifier.
+   * @return The distinct term identifiers.
+   */
+  private int[] distinctTerms(int id) {
+    int[] all = new int[nameTokens[id].length + descriptionTokens[id].length];
+    System.arraycopy(nameTokens[id], 0, all, 0, nameTokens[id].length);
+    System.arraycopy(descriptionTokens[id], 0, all, nameTokens[id].length, descriptionTokens[id].length);
+    Arrays.sort(all);
+    int size = 0;
+    for (int i = 0; i < all.length; i++) {
+      if (all[i] != GAP && (size == 0 || all[size - 1] != all[i])) all[size++] = all[i];
+    }
+    return Arrays.copyOf(all, size);
+  }
+
+  /**
+   * Get the indexed guideline of a document identifier.
+   *
+   * @param id The document identifier.
+   * @return The guideline, or an undefined value, if the document was removed.
+   */
+  public SpellGuideline<?, ?, ?, ?> getGuideline(int id) {
+    lock.readLock().lock();
+    try {
+      return id >= 0 && id < nextId ? documents[id] : null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the document identifier of a guideline.
+   *
+   * @param guideline The guideline.
+   * @return The document identifier, or -1, if the guideline is not indexed.
+   */
+  public int indexOf(SpellGuideline<?, ?, ?, ?> guideline) {
+    lock.readLock().lock();
+    try {
+      return identifiers.getOrDefault(guideline, -1);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the number of indexed guidelines.
+   *
+   * @return The number of indexed guidelines.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return identifiers.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the postings of a word.
+   *
+   * @param word The normalized word.
+   * @return The sorted document identifiers, or an empty array.
+   */
+  private int[] postingsOf(String word) {
+    Integer term = terms.get(word);
+    return term == null ? new int[0] : Arrays.copyOf(postings[term], postingSizes[term]);
+  }
+
+  /**
+   * Get the number of documents containing a word.
+   *
+   * @param word The word.
+   * @return The number of documents containing the word.
+   */
+  public int documentFrequency(String word) {
+    lock.readLock().lock();
+    try {
+      Integer term = terms.get(word.toLowerCase(Locale.ROOT));
+      return term == null ? 0 : postingSizes[term];
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Intersect sorted identifiers.
+   *
+   * @param first The first identifiers.
+   * @param second The second identifiers.
+   * @return The sorted identifiers in both.
+   */
+  static int[] intersect(int[] first, int[] second) {
+    int[] result = new int[Math.min(first.length, second.length)];
+    int i = 0, j = 0, size = 0;
+    while (i < first.length && j < second.length) {
+      if (first[i] < second[j]) i++;
+      else if (first[i] > second[j]) j++;
+      else {
+        result[size++] = first[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Unite sorted identifiers.
+   *
+   * @param first The first identifiers.
+   * @param second The second identifiers.
+   * @return The sorted identifiers in either.
+   */
+  static int[] unite(int[] first, int[] second) {
+    int[] result = new int[first.length + second.length];
+    int i = 0, j = 0, size = 0;
+    while (i < first.length || j < second.length) {
+      if (j >= second.length || (i < first.length && first[i] < second[j])) result[size++] = first[i++];
+      else if (i >= first.length || second[j] < first[i]) result[size++] = second[j++];
+      else {
+        result[size++] = first[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Find the documents containing every word.
+   *
+   * @param words The words.
+   * @return The sorted document identifiers.
+   */
+  public int[] matchAll(List<String> words) {
+    lock.readLock().lock();
+    try {
+      int[] result = null;
+      for (String word : words) {
+        int[] current = postingsOf(word.toLowerCase(Locale.ROOT));
+        result = result == null ? current : intersect(result, current);
+        if (result.length == 0) break;
+      }
+      return result == null ? new int[0] : result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the documents containing any word.
+   *
+   * @param words The words.
+   * @return The sorted document identifiers.
+   */
+  public int[] matchAny(List<String> words) {
+    lock.readLock().lock();
+    try {
+      int[] result = new int[0];
+      for (String word : words) {
+        result = unite(result, postingsOf(word.toLowerCase(Locale.ROOT)));
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the documents containing a phrase in the name or in the description.
+   *
+   * @param phrase The phrase.
+   * @return The sorted document identifiers.
+   */
+  public int[] matchPhrase(CharSequence phrase) {
+    List<String> words = tokenize(phrase);
+    lock.readLock().lock();
+    try {
+      int[] candidates = matchAll(words);
+      if (words.size() <= 1 || candidates.length == 0) return candidates;
+      int[] sequence = new int[words.size()];
+      for (int i = 0; i < sequence.length; i++) sequence[i] = terms.get(words.get(i));
+      int size = 0;
+      for (int id : candidates) {
+        if (containsSequence(nameTokens[id], sequence) || containsSequence(descriptionTokens[id], sequence)) {
+          candidates[size++] = id;
+        }
+      }
+      return Arrays.copyOf(candidates, size);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Test whether a name or a description contains a phrase with the tokenization of the index.
+   *
+   * @param text The name or the description.
+   * @param phrase The normalized words of the phrase.
+   * @return True, if and only if the words occur consecutively in the text.
+   */
+  public static boolean containsPhrase(CharSequence text, List<String> phrase) {
+    if (text == null) return false;
+    if (text instanceof SpellGuideline.SequenceWithMagnitudeReference template) {
+      return Collections.indexOfSubList(tokenize(template.getPrefix()), phrase) >= 0
+      || Collections.indexOfSubList(tokenize(template.getSuffix()), phrase) >= 0;
+    } else if (text instanceof SpellGuideline.LevelReference) {
+      return false;
+    }
+    return Collections.indexOfSubList(tokenize(text), phrase) >= 0;
+  }
+
+  /**
+   * Test whether tokens contain a sequence.
+   *
+   * @param tokens The tokens.
+   * @param sequence The sequence.
+   * @return True, if and only if the sequence occurs in the tokens.
+   */
+  private static boolean containsSequence(int[] tokens, int[] sequence) {
+    outer:
+    for (int start = 0, last = tokens.length - sequence.length; start <= last; start++) {
+      for (int i = 0; i < sequence.length; i++) {
+        if (tokens[start + i] != sequence[i]) continue outer;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Search with a query.
+   *
+   * The words of the query must all occur, unless they are separated by "OR". A quoted
+   * part of the query is a phrase.
+   *
+   * @param query The query.
+   * @param limit The maximal number of hits.
+   * @return The hits ordered by descending score.
+   */
+  public List<Hit> search(CharSequence query, int limit) {
+    List<String> scoredWords = new ArrayList<>();
+    int[] result = null;
+    int[] clause = null;
+    boolean or = false;
+    String text = query == null ? "" : query.toString();
+    lock.readLock().lock();
+    try {
+      int index = 0;
+      while (index < text.length()) {
+        char c = text.charAt(index);
+        int[] current;
+        if (Character.isWhitespace(c)) {
+          index++;
+          continue;
+        } else if (c == '"') {
+          int end = text.indexOf('"', index + 1);
+          if (end < 0) end = text.length();
+          String phrase = text.substring(index + 1, end);
+          index = end + 1;
+          List<String> words = tokenize(phrase);
+          // A clause without words, such as a dash, does not restrict the matches.
+          if (words.isEmpty()) continue;
+          scoredWords.addAll(words);
+          current = matchPhrase(phrase);
+        } else {
+          int end = index;
+          while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') end++;
+          String word = text.substring(index, end);
+          index = end;
+          if ("OR".equals(word)) {
+            or = true;
+            continue;
+          }
+          List<String> words = tokenize(word);
+          if (words.isEmpty()) continue;
+          scoredWords.addAll(words);
+          current = matchAll(words);
+        }
+        if (or && clause != null) {
+          clause = unite(clause, current);
+        } else {
+          if (clause != null) result = result == null ? clause : intersect(result, clause);
+          clause = current;
+        }
+        or = false;
+      }
+      if (clause != null) result = result == null ? clause : intersect(result, clause);
+      return rank(result == null ? new int[0] : result, scoredWords, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rank documents by the term frequencies weighted by the inverse document frequencies.
+   *
+   * @param ids The ranked document identifiers.
+   * @param words The query words.
+   * @param limit The maximal number of hits.
+   * @return The hits ordered by descending score.
+   */
+  private List<Hit> rank(int[] ids, List<String> words, int limit) {
+    int documentCount = Math.max(1, identifiers.size());
+    int[] queryTerms = new int[words.size()];
+    double[] idf = new double[words.size()];
+    int size = 0;
+    for (String word : words) {
+      Integer term = terms.get(word);
+      if (term == null) continue;
+      queryTerms[size] = term;
+      idf[size++] = Math.log(1.0 + (double)documentCount / (1 + postingSizes[term]));
+    }
+    List<Hit> result = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      double score = 0;
+      for (int i = 0; i < size; i++) {
+        score += idf[i] * (NAME_WEIGHT * count(nameTokens[id], queryTerms[i]) + count(descriptionTokens[id], queryTerms[i]));
+      }
+      result.add(new Hit(id, documents[id], score));
+    }
+    result.sort((first, second) -> Double.compare(second.getScore(), first.getScore()));
+    return result.size() > limit ? new ArrayList<>(result.subList(0, Math.max(0, limit))) : result;
+  }
+
+  /**
+   * Count the occurrences of a term.
+   *
+   * @param tokens The tokens.
+   * @param term The term.
+   * @return The number of occurrences.
+   */
+  private static int count(int[] tokens, int term) {
+    int result = 0;
+    for (int token : tokens) {
+      if (token == term) result++;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,502 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A deduplicating store of the names and descriptions of the guidelines.
+ *
+ * The texts are split into fragments of a word and the following separators. Every distinct
+ * fragment is stored once in shared byte chunks, with one byte per character when the
+ * fragment is Latin-1, and every distinct text is stored once as the identifiers of its
+ * fragments. The stored texts are {@link CharSequence} views, so they can be used as the
+ * names and descriptions of the guidelines.
+ *
+ * A store lives as long as the texts interned into it, so a catalog and the texts of its
+ * guidelines are released together when the catalog is replaced. The texts no longer used by
+ * any guideline are dropped from the store.
+ */
+public class GuidelineTextStore {
+
+  /**
+   * The size of the byte chunks of the fragments.
+   */
+  public static final int CHUNK_SIZE = 1 << 16;
+
+  /**
+   * The fragment storage.
+   *
+   * A text captures the storage when it is created, and the storage entries of its fragments
+   * are never modified afterwards.
+   */
+  private static final class Fragments {
+
+    /**
+     * The byte chunks.
+     */
+    final byte[][] chunks;
+
+    /**
+     * The chunk of each fragment.
+     */
+    final int[] chunkIndexes;
+
+    /**
+     * The offset of each fragment in its chunk.
+     */
+    final int[] offsets;
+
+    /**
+     * The length of each fragment in characters, negated for two byte characters.
+     */
+    final int[] lengths;
+
+    /**
+     * Create a fragment storage.
+     *
+     * @param chunks The chunks.
+     * @param capacity The fragment capacity.
+     */
+    Fragments(byte[][] chunks, int capacity) {
+      this.chunks = chunks;
+      this.chunkIndexes = new int[capacity];
+      this.offsets = new int[capacity];
+      this.lengths = new int[capacity];
+    }
+
+    /**
+     * Create a copy of a fragment storage.
+     *
+     * @param original The copied storage.
+     * @param chunks The chunks.
+     * @param capacity The fragment capacity.
+     */
+    Fragments(Fragments original, byte[][] chunks, int capacity) {
+      this.chunks = chunks;
+      this.chunkIndexes = Arrays.copyOf(original.chunkIndexes, capacity);
+      this.offsets = Arrays.copyOf(original.offsets, capacity);
+      this.lengths = Arrays.copyOf(original.lengths, capacity);
+    }
+
+    /**
+     * Get the length of a fragment.
+     *
+     * @param fragment The fragment.
+     * @return The number of characters.
+     */
+    int length(int fragment) {
+      return Math.abs(lengths[fragment]);
+    }
+
+    /**
+     * Get a character of a fragment.
+     *
+     * @param fragment The fragment.
+     * @param index The index of the character.
+     * @return The character.
+     */
+    char charAt(int fragment, int index) {
+      byte[] chunk = chunks[chunkIndexes[fragment]];
+      if (lengths[fragment] >= 0) {
+        return (char)(chunk[offsets[fragment] + index] & 0xFF);
+      }
+      int offset = offsets[fragment] + index * 2;
+      return (char)(((chunk[offset] & 0xFF) << 8) | (chunk[offset + 1] & 0xFF));
+    }
+  }
+
+  /**
+   * A stored text.
+   *
+   * The stored texts of the same store are equal when they have the same fragments. The stored
+   * texts of different stores are equal when they have the same characters.
+   */
+  public static final class StoredText implements CharSequence {
+
+    /**
+     * The store of the text.
+     */
+    private final GuidelineTextStore store;
+
+    /**
+     * The fragment storage of the text.
+     */
+    private final Fragments fragments;
+
+    /**
+     * The fragment identifiers of the text.
+     */
+    private final int[] ids;
+
+    /**
+     * The index of the first character of each fragment, followed by the length of the text.
+     */
+    private final int[] starts;
+
+    /**
+     * The length of the text.
+     */
+    private final int length;
+
+    /**
+     * The hash code of the characters of the text.
+     */
+    private final int hashCode;
+
+    /**
+     * Create a stored text.
+     *
+     * @param store The store of the text.
+     * @param fragments The fragment storage.
+     * @param ids The fragment identifiers.
+     */
+    StoredText(GuidelineTextStore store, Fragments fragments, int[] ids) {
+      this.store = store;
+      this.fragments = fragments;
+      this.ids = ids;
+      this.starts = new int[ids.length + 1];
+      int total = 0;
+      int hash = 0;
+      for (int i = 0; i < ids.length; i++) {
+        int id = ids[i];
+        for (int j = 0, end = fragments.length(id); j < end; j++) hash = 31 * hash + fragments.charAt(id, j);
+        starts[i] = total;
+        total += fragments.length(id);
+      }
+      starts[ids.length] = total;
+      this.length = total;
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+      // The fragment is the last one starting at or before the index. Empty fragments do not exist.
+      int fragment = Arrays.binarySearch(starts, 0, ids.length, index);
+      if (fragment < 0) fragment = -fragment - 2;
+      return fragments.charAt(ids[fragment], index - starts[fragment]);
+    }
+
+    /**
+     * Append the text.
+     *
+     * @param target The appended target.
+     * @throws IOException The appending failed.
+     */
+    public void appendTo(Appendable target) throws IOException {
+      if (target instanceof StringBuilder builder) {
+        builder.ensureCapacity(builder.length() + length);
+        appendFragments(builder);
+      } else {
+        StringBuilder builder = new StringBuilder(length);
+        appendFragments(builder);
+        target.append(builder);
+      }
+    }
+
+    /**
+     * Append the characters of the fragments.
+     *
+     * @param target The appended builder.
+     */
+    private void appendFragments(StringBuilder target) {
+      for (int id : ids) {
+        for (int i = 0, end = fragments.length(id); i < end; i++) target.append(fragments.charAt(id, i));
+      }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder(length);
+      appendFragments(result);
+      return result.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) return true;
+      if (!(other instanceof StoredText text) || hashCode != text.hashCode || length != text.length) return false;
+      // The fragment identifiers of different stores are unrelated.
+      return store == text.store ? Arrays.equals(ids, text.ids) : toString().equals(text.toString());
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The current fragment storage.
+   */
+  private volatile Fragments fragments = new Fragments(new byte[][] { new byte[CHUNK_SIZE] }, 256);
+
+  /**
+   * The number of fragments.
+   */
+  private int fragmentCount = 0;
+
+  /**
+   * The used bytes of the last chunk.
+   */
+  private int chunkUsed = 0;
+
+  /**
+   * The open addressing table of the fragment identifiers plus one.
+   */
+  private int[] fragmentTable = new int[512];
+
+  /**
+   * The stored texts, which are dropped when no guideline uses them.
+   */
+  private final Map<StoredText, WeakReference<StoredText>> texts = new WeakHashMap<>();
+
+  /**
+   * The canonical template strings.
+   */
+  private final Map<String, String> templateParts = new HashMap<>();
+
+  /**
+   * The canonical templates by their prefix, modifier, and suffix.
+   */
+  private final Map<List<Object>, SpellGuideline.SequenceWithMagnitudeReference> templates = new HashMap<>();
+
+  /**
+   * The lock of the writers.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Intern a name or a description.
+   *
+   * A magnitude reference template is replaced with a shared template with canonical prefix
+   * and suffix, and other level references are returned as they are.
+   *
+   * @param text The interned text.
+   * @return The stored text, or an undefined value for an undefined text.
+   */
+  public CharSequence intern(CharSequence text) {
+    if (text == null || text instanceof StoredText) return text;
+    if (text instanceof SpellGuideline.SequenceWithMagnitudeReference template) {
+      return internTemplate(template);
+    } else if (text instanceof SpellGuideline.LevelReference) {
+      return text;
+    }
+    lock.lock();
+    try {
+      int[] ids = new int[8];
+      int size = 0;
+      int start = 0;
+      int end = text.length();
+      while (start < end) {
+        int split = start;
+        while (split < end && Character.isLetterOrDigit(text.charAt(split))) split++;
+        while (split < end && !Character.isLetterOrDigit(text.charAt(split))) split++;
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        ids[size++] = fragmentId(text, start, split);
+        start = split;
+      }
+      StoredText result = new StoredText(this, fragments, Arrays.copyOf(ids, size));
+      WeakReference<StoredText> reference = texts.get(result);
+      StoredText existing = reference == null ? null : reference.get();
+      if (existing != null) return existing;
+      texts.put(result, new WeakReference<>(result));
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Intern a magnitude reference template.
+   *
+   * @param template The template.
+   * @return The shared template.
+   */
+  private SpellGuideline.SequenceWithMagnitudeReference internTemplate(SpellGuideline.SequenceWithMagnitudeReference template) {
+    lock.lock();
+    try {
+      String prefix = templateParts.computeIfAbsent(template.getPrefix(), part -> part);
+      String suffix = templateParts.computeIfAbsent(template.getSuffix(), part -> part);
+      return templates.computeIfAbsent(List.of(prefix, template.getMagnitudeModifier(), suffix),
+      key -> new SpellGuideline.SequenceWithMagnitudeReference(prefix, (short)template.getMagnitudeModifier(), suffix));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Hash a fragment.
+   *
+   * @param text The text.
+   * @param start The start of the fragment.
+   * @param end The end of the fragment.
+   * @return The hash of the fragment.
+   */
+  private static int hash(CharSequence text, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; i++) result = 31 * result + text.charAt(i);
+    return result ^ (result >>> 16);
+  }
+
+  /**
+   * Get the identifier of a fragment, storing the fragment when needed.
+   *
+   * @param text The text.
+   * @param start The start of the fragment.
+   * @param end The end of the fragment.
+   * @return The fragment identifier.
+   */
+  private int fragmentId(CharSequence text, int start, int end) {
+    int mask = fragmentTable.length - 1;
+    int slot = hash(text, start, end) & mask;
+    while (fragmentTable[slot] != 0) {
+      int id = fragmentTable[slot] - 1;
+      if (matches(id, text, start, end)) return id;
+      slot = (slot + 1) & mask;
+    }
+    int id = store(text, start, end);
+    fragmentTable[slot] = id + 1;
+    if (fragmentCount * 2 > fragmentTable.length) rehash();
+    return id;
+  }
+
+  /**
+   * Test whether a stored fragment matches characters.
+   *
+   * @param id The fragment identifier.
+   * @param text The text.
+   * @param start The start of the characters.
+   * @param end The end of the characters.
+   * @return True, if and only if the fragment has the characters.
+   */
+  private boolean matches(int id, CharSequence text, int start, int end) {
+    Fragments current = fragments;
+    if (current.length(id) != end - start) return false;
+    for (int i = start; i < end; i++) {
+      if (current.charAt(id, i - start) != text.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Store a fragment.
+   *
+   * @param text The text.
+   * @param start The start of the fragment.
+   * @param end The end of the fragment.
+   * @return The identifier of the stored fragment.
+   */
+  private int store(CharSequence text, int start, int end) {
+    boolean latin1 = true;
+    for (int i = start; i < end && latin1; i++) latin1 = text.charAt(i) < 0x100;
+    int length = end - start;
+    int bytes = latin1 ? length : length * 2;
+    Fragments current = fragments;
+    byte[][] chunks = current.chunks;
+    if (chunkUsed + bytes > chunks[chunks.length - 1].length) {
+      chunks = Arrays.copyOf(chunks, chunks.length + 1);
+      chunks[chunks.length - 1] = new byte[Math.max(CHUNK_SIZE, bytes)];
+      chunkUsed = 0;
+    }
+    if (chunks != current.chunks || fragmentCount == current.lengths.length) {
+      current = new Fragments(current, chunks, Math.max(current.lengths.length, fragmentCount + 1) * 2);
+    }
+    int id = fragmentCount++;
+    byte[] chunk = chunks[chunks.length - 1];
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (latin1) {
+        chunk[chunkUsed++] = (byte)c;
+      } else {
+        chunk[chunkUsed++] = (byte)(c >>> 8);
+        chunk[chunkUsed++] = (byte)c;
+      }
+    }
+    current.chunkIndexes[id] = chunks.length - 1;
+    current.offsets[id] = chunkUsed - bytes;
+    current.lengths[id] = latin1 ? length : -length;
+    fragments = current;
+    return id;
+  }
+
+  /**
+   * Double the fragment table.
+   */
+  private void rehash() {
+    int[] table = new int[fragmentTable.length * 2];
+    int mask = table.length - 1;
+    Fragments current = fragments;
+    for (int entry : fragmentTable) {
+      if (entry == 0) continue;
+      int id = entry - 1;
+      int hash = 0;
+      for (int i = 0, end = current.length(id); i < end; i++) hash = 31 * hash + current.charAt(id, i);
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (table[slot] != 0) slot = (slot + 1) & mask;
+      table[slot] = entry;
+    }
+    fragmentTable = table;
+  }
+
+  /**
+   * Get the number of distinct fragments.
+   *
+   * @return The number of fragments.
+   */
+  public int getFragmentCount() {
+    lock.lock();
+    try {
+      return fragmentCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of distinct texts.
+   *
+   * @return The number of texts.
+   */
+  public int getTextCount() {
+    lock.lock();
+    try {
+      return texts.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of bytes used by the fragment characters.
+   *
+   * @return The used bytes of the chunks.
+   */
+  public long getFragmentBytes() {
+    lock.lock();
+    try {
+      byte[][] chunks = fragments.chunks;
+      long result = chunkUsed;
+      for (int i = 0; i < chunks.length - 1; i++) result += chunks[i].length;
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
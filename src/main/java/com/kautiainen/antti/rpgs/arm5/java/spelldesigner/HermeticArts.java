@@ -129,6 +129,10 @@ public class HermeticArts {
    */
   public static final HermeticArts DEFAULT_ARTS = new HermeticArts();
 
+  static {
+    DEFAULT_ARTS.register();
+  }
+
   /**
    * The techniques of the arts.
    */
@@ -147,7 +151,7 @@ public class HermeticArts {
   }
 
   /**
-   * Create a new art with abbreviation cut 2 first letters of the name.
+   * Create a new art with abbreviation of the 2 first letters of the name.
    * 
    * @param type The type of the art.
    * @param name The name of the art.
@@ -157,7 +161,7 @@ public class HermeticArts {
   public Art createArt(Art.ArtType type, String name) throws IllegalArgumentException {
     return createArt(type, name, Optional.ofNullable(name).orElseThrow( () -> (
       new IllegalArgumentException("Invalid art name")
-    )).substring(2));
+    )).substring(0, Math.min(2, name.length())));
   }
 
   /**
@@ -199,6 +203,9 @@ public class HermeticArts {
   /**
    * Create a new Hermetic Arts with custom technique type and names, and form type and form names.
    * 
+   * The created arts are not registered as {@link Art#getRegistry() known arts}, so the arts of
+   * a saga stay private to it unless they are {@link #register() registered}.
+   * 
    * @param techniqueType The custon type of the techniques.
    */
   @SuppressWarnings("")
@@ -213,6 +220,20 @@ public class HermeticArts {
     }
   }
 
+  /**
+   * Register the arts as {@link Art#getRegistry() known arts}.
+   *
+   * An art already known with the same type and name is not registered again.
+   *
+   * @return True, if and only if any art was registered.
+   */
+  public boolean register() {
+    boolean result = false;
+    for (Art art : technqiues) result |= Art.addKnownArt(art);
+    for (Art art : forms) result |= Art.addKnownArt(art);
+    return result;
+  }
+
 
   /**
    * Class representing a hermetic technique.
@@ -261,6 +282,24 @@ public class HermeticArts {
   }
 
 
+  /**
+   * Get the techniques of the arts.
+   *
+   * @return The unmodifiable set of the techniques.
+   */
+  public NavigableSet<Art> getTechniques() {
+    return Collections.unmodifiableNavigableSet(this.technqiues);
+  }
+
+  /**
+   * Get the forms of the arts.
+   *
+   * @return The unmodifiable set of the forms.
+   */
+  public NavigableSet<Art> getForms() {
+    return Collections.unmodifiableNavigableSet(this.forms);
+  }
+
   /**
    * Get technique from the arts.
    *
@@ -268,9 +307,14 @@ public class HermeticArts {
    * @return The technique with given name, if the arts has one.
    */
   public Optional<HermeticTechnique> getTechnique(String techniqueName) {
-    return Optional.ofNullable(
-      (HermeticTechnique)this.technqiues.stream().filter( current -> (current.getName().equals(techniqueName))).findFirst().orElse(null)
-    );
+    long start = SpellMetrics.start();
+    try {
+      return counted(Optional.ofNullable(
+        (HermeticTechnique)this.technqiues.stream().filter( current -> (current.getName().equals(techniqueName))).findFirst().orElse(null)
+      ));
+    } finally {
+      SpellMetrics.ART_LOOKUPS.record(start);
+    }
   }
 
   /**
@@ -280,8 +324,25 @@ public class HermeticArts {
    * @return The form with given name, if the arts has one.
    */
   public Optional<HermeticForm> getForm(String formName) {
-    return Optional.ofNullable(
-      (HermeticForm)this.forms.stream().filter( current -> (current.getName().equals(formName))).findFirst().orElse(null)
-    );
+    long start = SpellMetrics.start();
+    try {
+      return counted(Optional.ofNullable(
+        (HermeticForm)this.forms.stream().filter( current -> (current.getName().equals(formName))).findFirst().orElse(null)
+      ));
+    } finally {
+      SpellMetrics.ART_LOOKUPS.record(start);
+    }
+  }
+
+  /**
+   * Count a lookup finding nothing.
+   *
+   * @param <T> The type of the found art.
+   * @param result The result of the lookup.
+   * @return The result.
+   */
+  private static <T> Optional<T> counted(Optional<T> result) {
+    if (result.isEmpty()) SpellMetrics.ART_LOOKUP_MISSES.increment();
+    return result;
   }
 }
@@ -0,0 +1,368 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import jakarta.resource.spi.IllegalStateException;
+
+/**
+ * An immutable spell guideline.
+ *
+ * The state of the guideline is held in final fields, so the guideline is safely published
+ * to every thread without synchronization. The initialization setters of the spell guideline
+ * always fail. The guidelines are equal when their technique, form, level, name, and
+ * description are equal, and the hash code and the short code are calculated only once.
+ */
+public final class ImmutableSpellGuideline<TECHNIQUE_TYPE extends TechniqueArtType,
+TECHNIQUE extends TechniqueInterface<TECHNIQUE_TYPE>,
+FORM_TYPE extends FormArtType,
+FORM extends FormInterface<FORM_TYPE>> extends SpellGuideline<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> {
+
+  /**
+   * The builder of the immutable spell guidelines.
+   */
+  public static final class Builder<TECHNIQUE_TYPE extends TechniqueArtType,
+  TECHNIQUE extends TechniqueInterface<TECHNIQUE_TYPE>,
+  FORM_TYPE extends FormArtType,
+  FORM extends FormInterface<FORM_TYPE>> {
+
+    /**
+     * The technique.
+     */
+    private TECHNIQUE technique;
+
+    /**
+     * The form.
+     */
+    private FORM form;
+
+    /**
+     * The level.
+     */
+    private GuidelineLevel level;
+
+    /**
+     * The name.
+     */
+    private CharSequence name;
+
+    /**
+     * The description.
+     */
+    private CharSequence description;
+
+    /**
+     * Create an empty builder.
+     */
+    Builder() {
+    }
+
+    /**
+     * Set the technique.
+     *
+     * @param technique The technique.
+     * @return The builder.
+     */
+    public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> technique(TECHNIQUE technique) {
+      this.technique = technique;
+      return this;
+    }
+
+    /**
+     * Set the form.
+     *
+     * @param form The form.
+     * @return The builder.
+     */
+    public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> form(FORM form) {
+      this.form = form;
+      return this;
+    }
+
+    /**
+     * Set the level.
+     *
+     * @param level The level.
+     * @return The builder.
+     */
+    public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> level(GuidelineLevel level) {
+      this.level = level;
+      return this;
+    }
+
+    /**
+     * Set the name.
+     *
+     * @param name The name.
+     * @return The builder.
+     */
+    public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> name(CharSequence name) {
+      this.name = name;
+      return this;
+    }
+
+    /**
+     * Set the description.
+     *
+     * @param description The description. An undefined value indicates no description.
+     * @return The builder.
+     */
+    public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> description(CharSequence description) {
+      this.description = description;
+      return this;
+    }
+
+    /**
+     * Build the guideline.
+     *
+     * @return The immutable guideline.
+     * @throws IllegalArgumentException The technique, form, level, name, or description was invalid.
+     */
+    public ImmutableSpellGuideline<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> build() throws IllegalArgumentException {
+      return new ImmutableSpellGuideline<>(this);
+    }
+  }
+
+  /**
+   * The technique.
+   */
+  private final TECHNIQUE technique;
+
+  /**
+   * The form.
+   */
+  private final FORM form;
+
+  /**
+   * The level.
+   */
+  private final GuidelineLevel level;
+
+  /**
+   * The name.
+   */
+  private final CharSequence name;
+
+  /**
+   * The description.
+   */
+  private final CharSequence description;
+
+  /**
+   * The rendered name.
+   */
+  private final String nameString;
+
+  /**
+   * The rendered description.
+   */
+  private final String descriptionString;
+
+  /**
+   * The short code of the technique, form, and level.
+   */
+  private final String shortCode;
+
+  /**
+   * The cached hash code.
+   */
+  private final int hashCode;
+
+  /**
+   * Create a guideline from a builder.
+   *
+   * @param builder The builder.
+   * @throws IllegalArgumentException The values of the builder were invalid.
+   */
+  private ImmutableSpellGuideline(Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> builder) throws IllegalArgumentException {
+    if (builder.technique == null) throw new IllegalArgumentException(INVALID_TECHNIQUE_EXCEPTION);
+    if (builder.form == null) throw new IllegalArgumentException(FORM_LEVEL_EXCEPTION);
+    if (builder.level == null) throw new IllegalArgumentException(INVALID_LEVEL_EXCEPTION);
+    if (builder.name instanceof LevelReference reference) {
+      // The superclass validation of level references reads its own uninitialized level.
+      if (!validName(reference.toString(builder.level.shortValue()))) throw new IllegalArgumentException(INVALID_NAME_EXCEPTION);
+    } else if (!validName(builder.name)) {
+      throw new IllegalArgumentException(INVALID_NAME_EXCEPTION);
+    }
+    if (!validDescription(builder.description)) throw new IllegalArgumentException(INVALID_DESCRIPTION_EXCEPTION);
+    this.technique = builder.technique;
+    this.form = builder.form;
+    this.level = new GuidelineLevel(builder.level.shortValue());
+    this.name = snapshot(builder.name, level.shortValue());
+    this.description = snapshot(builder.description, level.shortValue());
+    this.nameString = name.toString();
+    this.descriptionString = description == null ? null : description.toString();
+    this.shortCode = technique.getAbreviation().orElse(technique.getName())
+    + form.getAbreviation().orElse(form.getName()) + level.toString();
+    this.hashCode = Objects.hash(technique.getName(), form.getName(), level.shortValue(), nameString, descriptionString);
+  }
+
+  /**
+   * Get an immutable snapshot of a text.
+   *
+   * The strings, the stored texts, and the magnitude references are immutable and kept as they
+   * are. Other level references are rendered with the level of the guideline, and other
+   * sequences are copied into strings, so a later change of the caller's sequence does not
+   * change the guideline.
+   *
+   * @param text The text.
+   * @param level The level of the guideline, or an undefined value for a generic guideline.
+   * @return The immutable text, or an undefined value for an undefined text.
+   */
+  private static CharSequence snapshot(CharSequence text, Short level) {
+    if (text == null || text instanceof String || text instanceof GuidelineTextStore.StoredText
+    || text instanceof MagnitudeReference) {
+      return text;
+    } else if (text instanceof LevelReference reference) {
+      return reference.toString(level);
+    } else {
+      return text.toString();
+    }
+  }
+
+  /**
+   * Create a new builder.
+   *
+   * @param <TECHNIQUE_TYPE> The technique type.
+   * @param <TECHNIQUE> The technique.
+   * @param <FORM_TYPE> The form type.
+   * @param <FORM> The form.
+   * @return The builder.
+   */
+  public static <TECHNIQUE_TYPE extends TechniqueArtType,
+  TECHNIQUE extends TechniqueInterface<TECHNIQUE_TYPE>,
+  FORM_TYPE extends FormArtType,
+  FORM extends FormInterface<FORM_TYPE>> Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * Create an immutable copy of a guideline.
+   *
+   * @param <TECHNIQUE_TYPE> The technique type.
+   * @param <TECHNIQUE> The technique.
+   * @param <FORM_TYPE> The form type.
+   * @param <FORM> The form.
+   * @param guideline The copied guideline.
+   * @return The immutable guideline.
+   * @throws IllegalArgumentException The guideline was invalid.
+   */
+  @SuppressWarnings("unchecked")
+  public static <TECHNIQUE_TYPE extends TechniqueArtType,
+  TECHNIQUE extends TechniqueInterface<TECHNIQUE_TYPE>,
+  FORM_TYPE extends FormArtType,
+  FORM extends FormInterface<FORM_TYPE>> ImmutableSpellGuideline<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> copyOf(
+    SpellGuideline<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> guideline) throws IllegalArgumentException {
+    if (guideline instanceof ImmutableSpellGuideline<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> immutable) return immutable;
+    // The getters widen the types of the technique and the form stored with the type parameters.
+    return ImmutableSpellGuideline.<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM>builder()
+    .technique((TECHNIQUE)guideline.getTechnique()).form((FORM)guideline.getForm()).level(guideline.getLevel())
+    .name(guideline.getNameSequence()).description(guideline.getDescriptionSequence()).build();
+  }
+
+  /**
+   * Create a builder initialized with the values of the guideline.
+   *
+   * @return The builder.
+   */
+  public Builder<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM> toBuilder() {
+    return ImmutableSpellGuideline.<TECHNIQUE_TYPE, TECHNIQUE, FORM_TYPE, FORM>builder()
+    .technique(technique).form(form).level(level).name(name).description(description);
+  }
+
+  /**
+   * Get the short code of the guideline.
+   *
+   * @return The technique and form abbreviations followed by the level.
+   */
+  public String getShortCode() {
+    return shortCode;
+  }
+
+  @Override
+  public String getName() {
+    return nameString;
+  }
+
+  @Override
+  public CharSequence getNameSequence() {
+    return name;
+  }
+
+  @Override
+  public Optional<String> getDescription() {
+    return Optional.ofNullable(descriptionString);
+  }
+
+  @Override
+  public CharSequence getDescriptionSequence() {
+    return description;
+  }
+
+  /**
+   * Get the guideline level.
+   *
+   * @return A copy of the guideline level, as the levels are mutable.
+   */
+  @Override
+  public GuidelineLevel getLevel() {
+    return new GuidelineLevel(level.shortValue());
+  }
+
+  @Override
+  public TECHNIQUE getTechnique() {
+    return technique;
+  }
+
+  @Override
+  public FORM getForm() {
+    return form;
+  }
+
+  @Override
+  public void setName(CharSequence name) throws IllegalArgumentException, IllegalStateException {
+    throw new IllegalStateException(NAME_ALREADY_SET_EXCEPTION);
+  }
+
+  @Override
+  public void setDescription(CharSequence description) throws IllegalArgumentException, IllegalStateException {
+    throw new IllegalStateException(DESCRIPTION_ALREADY_SET_EXCEPTION);
+  }
+
+  @Override
+  public void setLevel(GuidelineLevel level) throws IllegalArgumentException, IllegalStateException {
+    throw new IllegalStateException(LEVEL_ALREADY_SET_EXCEPTION);
+  }
+
+  @Override
+  public void setTechnique(TECHNIQUE technique) throws IllegalStateException {
+    throw new IllegalStateException(TECHNIQUE_ALREADY_SET_EXCEPTION);
+  }
+
+  @Override
+  public void setForm(FORM form) throws IllegalStateException {
+    throw new IllegalStateException(FORM_ALREADY_SET_EXCEPTION);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) return true;
+    if (!(other instanceof ImmutableSpellGuideline<?, ?, ?, ?> guideline)) return false;
+    return hashCode == guideline.hashCode
+    && technique.getName().equals(guideline.technique.getName())
+    && form.getName().equals(guideline.form.getName())
+    && level.compareTo(guideline.level) == 0
+    && nameString.equals(guideline.nameString)
+    && Objects.equals(descriptionString, guideline.descriptionString);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %s.%s", shortCode, nameString, descriptionString == null ? "" : descriptionString);
+  }
+}
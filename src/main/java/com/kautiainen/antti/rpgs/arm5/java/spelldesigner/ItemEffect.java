@@ -0,0 +1,226 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+/**
+ * An effect enchanted into an item.
+ *
+ * The effect level is the level of the spell design with the item modifiers added as levels.
+ */
+public class ItemEffect {
+
+  /**
+   * The error message indicating the design was invalid.
+   */
+  public static final String INVALID_DESIGN_MESSAGE = "Invalid effect design";
+
+  /**
+   * The error message indicating the penetration was invalid.
+   */
+  public static final String INVALID_PENETRATION_MESSAGE = "Invalid penetration";
+
+  /**
+   * The level added by an environmental trigger.
+   */
+  public static final int ENVIRONMENTAL_TRIGGER_LEVELS = 3;
+
+  /**
+   * The level added by maintaining concentration.
+   */
+  public static final int MAINTAIN_CONCENTRATION_LEVELS = 5;
+
+  /**
+   * The uses per day of an item effect.
+   */
+  public static enum UsesPerDay {
+    Once(1, 0), Twice(2, 1), Thrice(3, 2), Six(6, 3), Twelve(12, 4),
+    TwentyFour(24, 5), Fifty(50, 6), Unlimited(Integer.MAX_VALUE, 10);
+
+    /**
+     * The number of uses per day.
+     */
+    private final int uses;
+
+    /**
+     * The levels the frequency adds.
+     */
+    private final int levels;
+
+    /**
+     * Create a new use frequency.
+     *
+     * @param uses The number of uses per day.
+     * @param levels The levels added to the effect.
+     */
+    UsesPerDay(int uses, int levels) {
+      this.uses = uses;
+      this.levels = levels;
+    }
+
+    /**
+     * Get the number of uses per day.
+     *
+     * @return The number of uses, or {@link Integer#MAX_VALUE} for unlimited uses.
+     */
+    public int getUses() {
+      return uses;
+    }
+
+    /**
+     * Get the levels the frequency adds to the effect.
+     *
+     * @return The added levels.
+     */
+    public int getLevels() {
+      return levels;
+    }
+  }
+
+  /**
+   * The spell design of the effect.
+   */
+  private final SpellDesign design;
+
+  /**
+   * The uses per day.
+   */
+  private final UsesPerDay usesPerDay;
+
+  /**
+   * Does the effect have an environmental trigger.
+   */
+  private final boolean environmentalTrigger;
+
+  /**
+   * The penetration of the effect.
+   */
+  private final int penetration;
+
+  /**
+   * Does the item maintain concentration.
+   */
+  private final boolean maintainConcentration;
+
+  /**
+   * Create a new item effect.
+   *
+   * @param design The spell design of the effect.
+   * @param usesPerDay The uses per day. An undefined value defaults to once per day.
+   * @param environmentalTrigger Does the effect have an environmental trigger.
+   * @param penetration The penetration of the effect.
+   * @param maintainConcentration Does the item maintain concentration.
+   * @throws IllegalArgumentException The design or the penetration was invalid.
+   */
+  public ItemEffect(SpellDesign design, UsesPerDay usesPerDay, boolean environmentalTrigger,
+  int penetration, boolean maintainConcentration) throws IllegalArgumentException {
+    if (design == null) throw new IllegalArgumentException(INVALID_DESIGN_MESSAGE);
+    if (penetration < 0) throw new IllegalArgumentException(INVALID_PENETRATION_MESSAGE);
+    this.design = design;
+    this.usesPerDay = usesPerDay == null ? UsesPerDay.Once : usesPerDay;
+    this.environmentalTrigger = environmentalTrigger;
+    this.penetration = penetration;
+    this.maintainConcentration = maintainConcentration;
+  }
+
+  /**
+   * Calculate the levels added by the item modifiers.
+   *
+   * @param usesPerDay The uses per day.
+   * @param environmentalTrigger Does the effect have an environmental trigger.
+   * @param penetration The penetration of the effect.
+   * @param maintainConcentration Does the item maintain concentration.
+   * @return The levels added on top of the spell design level.
+   */
+  public static int modifierLevels(UsesPerDay usesPerDay, boolean environmentalTrigger,
+  int penetration, boolean maintainConcentration) {
+    return usesPerDay.getLevels()
+    + (environmentalTrigger ? ENVIRONMENTAL_TRIGGER_LEVELS : 0)
+    + (penetration + 1) / 2
+    + (maintainConcentration ? MAINTAIN_CONCENTRATION_LEVELS : 0);
+  }
+
+  /**
+   * Calculate the vis cost of an effect level.
+   *
+   * @param level The effect level.
+   * @return The pawns of vis required, one per full or partial ten levels.
+   */
+  public static int visCost(int level) {
+    return level <= 0 ? 0 : (level + 9) / 10;
+  }
+
+  /**
+   * Calculate the seasons required to instill an effect level.
+   *
+   * @param level The effect level.
+   * @param labTotal The laboratory total.
+   * @return The number of seasons, or -1, if the laboratory total does not exceed the level.
+   */
+  public static int seasons(int level, int labTotal) {
+    int excess = labTotal - level;
+    if (excess <= 0) return -1;
+    if (level <= 0) return 1;
+    return (level + excess - 1) / excess;
+  }
+
+  /**
+   * Get the spell design of the effect.
+   *
+   * @return The spell design.
+   */
+  public SpellDesign getDesign() {
+    return design;
+  }
+
+  /**
+   * Get the uses per day.
+   *
+   * @return The uses per day.
+   */
+  public UsesPerDay getUsesPerDay() {
+    return usesPerDay;
+  }
+
+  /**
+   * Does the effect have an environmental trigger.
+   *
+   * @return True, if and only if the effect is triggered by the environment.
+   */
+  public boolean hasEnvironmentalTrigger() {
+    return environmentalTrigger;
+  }
+
+  /**
+   * Get the penetration of the effect.
+   *
+   * @return The penetration.
+   */
+  public int getPenetration() {
+    return penetration;
+  }
+
+  /**
+   * Does the item maintain concentration.
+   *
+   * @return True, if and only if the item maintains concentration.
+   */
+  public boolean maintainsConcentration() {
+    return maintainConcentration;
+  }
+
+  /**
+   * Get the level of the effect.
+   *
+   * @return The level of the spell design with item modifiers added.
+   */
+  public int getLevel() {
+    return design.getLevel() + modifierLevels(usesPerDay, environmentalTrigger, penetration, maintainConcentration);
+  }
+
+  /**
+   * Get the vis cost of the effect.
+   *
+   * @return The pawns of vis required to instill the effect.
+   */
+  public int getVisCost() {
+    return visCost(getLevel());
+  }
+}
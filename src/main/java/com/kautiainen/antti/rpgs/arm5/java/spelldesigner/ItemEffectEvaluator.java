@@ -0,0 +1,191 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The evaluator of the item effect levels, vis costs, and seasons in batches.
+ *
+ * The evaluator writes the results into primitive arrays of a reusable result, so that
+ * alternative configurations can be re-evaluated on every edit without allocating.
+ */
+public class ItemEffectEvaluator {
+
+  /**
+   * The result of a batch evaluation.
+   */
+  public static class Results {
+
+    /**
+     * The number of evaluated effects.
+     */
+    private int size;
+
+    /**
+     * The effect levels.
+     */
+    private int[] levels;
+
+    /**
+     * The vis costs.
+     */
+    private int[] visCosts;
+
+    /**
+     * The seasons required, or -1 for effects the laboratory total cannot instill.
+     */
+    private int[] seasons;
+
+    /**
+     * Create an empty result.
+     */
+    public Results() {
+      this(16);
+    }
+
+    /**
+     * Create an empty result with initial capacity.
+     *
+     * @param capacity The initial capacity.
+     */
+    public Results(int capacity) {
+      levels = new int[Math.max(1, capacity)];
+      visCosts = new int[levels.length];
+      seasons = new int[levels.length];
+    }
+
+    /**
+     * Reset the result to the given size, growing the arrays when needed.
+     *
+     * @param size The new size.
+     */
+    void reset(int size) {
+      if (size > levels.length) {
+        int capacity = Math.max(size, levels.length * 2);
+        levels = new int[capacity];
+        visCosts = new int[capacity];
+        seasons = new int[capacity];
+      }
+      this.size = size;
+    }
+
+    /**
+     * Get the number of evaluated effects.
+     *
+     * @return The number of results.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Get the level of an evaluated effect.
+     *
+     * @param index The index of the effect.
+     * @return The level of the effect.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public int getLevel(int index) throws IndexOutOfBoundsException {
+      return levels[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Get the vis cost of an evaluated effect.
+     *
+     * @param index The index of the effect.
+     * @return The vis cost of the effect.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public int getVisCost(int index) throws IndexOutOfBoundsException {
+      return visCosts[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Get the seasons required by an evaluated effect.
+     *
+     * @param index The index of the effect.
+     * @return The seasons, or -1, if the laboratory total does not exceed the level.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public int getSeasons(int index) throws IndexOutOfBoundsException {
+      return seasons[Objects.checkIndex(index, size)];
+    }
+  }
+
+  /**
+   * Evaluate a batch of effects.
+   *
+   * @param effects The evaluated effects.
+   * @param labTotal The laboratory total used for seasons.
+   * @return The results of the evaluation.
+   */
+  public Results evaluate(List<ItemEffect> effects, int labTotal) {
+    return evaluate(effects, labTotal, new Results(effects.size()));
+  }
+
+  /**
+   * Evaluate a batch of effects into an existing result.
+   *
+   * @param effects The evaluated effects.
+   * @param labTotal The laboratory total used for seasons.
+   * @param results The result the values are written into.
+   * @return The given result.
+   */
+  public Results evaluate(List<ItemEffect> effects, int labTotal, Results results) {
+    int size = effects.size();
+    results.reset(size);
+    for (int i = 0; i < size; i++) {
+      store(results, i, effects.get(i).getLevel(), labTotal);
+    }
+    return results;
+  }
+
+  /**
+   * Evaluate alternative item modifiers for a single design.
+   *
+   * The level of the design is calculated once, and only the item modifiers vary.
+   *
+   * @param design The spell design shared by the alternatives.
+   * @param usesPerDay The uses per day of each alternative.
+   * @param environmentalTriggers The environmental triggers of each alternative.
+   * @param penetrations The penetrations of each alternative.
+   * @param maintainConcentrations The concentration maintenance of each alternative.
+   * @param labTotal The laboratory total used for seasons.
+   * @param results The result the values are written into.
+   * @return The given result.
+   * @throws IllegalArgumentException The alternative arrays had different lengths, or a penetration was negative.
+   */
+  public Results evaluateAlternatives(SpellDesign design, ItemEffect.UsesPerDay[] usesPerDay,
+  boolean[] environmentalTriggers, int[] penetrations, boolean[] maintainConcentrations,
+  int labTotal, Results results) throws IllegalArgumentException {
+    int size = usesPerDay.length;
+    if (environmentalTriggers.length != size || penetrations.length != size || maintainConcentrations.length != size) {
+      throw new IllegalArgumentException("Alternative arrays differ in length");
+    }
+    for (int penetration : penetrations) {
+      if (penetration < 0) throw new IllegalArgumentException(ItemEffect.INVALID_PENETRATION_MESSAGE);
+    }
+    int designLevel = design.getLevel();
+    results.reset(size);
+    for (int i = 0; i < size; i++) {
+      store(results, i, designLevel + ItemEffect.modifierLevels(
+        usesPerDay[i] == null ? ItemEffect.UsesPerDay.Once : usesPerDay[i],
+        environmentalTriggers[i], penetrations[i], maintainConcentrations[i]), labTotal);
+    }
+    return results;
+  }
+
+  /**
+   * Store the values derived from a level.
+   *
+   * @param results The result.
+   * @param index The index of the stored values.
+   * @param level The effect level.
+   * @param labTotal The laboratory total.
+   */
+  private static void store(Results results, int index, int level, int labTotal) {
+    results.levels[index] = level;
+    results.visCosts[index] = ItemEffect.visCost(level);
+    results.seasons[index] = ItemEffect.seasons(level, labTotal);
+  }
+}
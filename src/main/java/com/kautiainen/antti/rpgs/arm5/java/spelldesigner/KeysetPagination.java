@@ -0,0 +1,344 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The keyset pagination of the known arts and the guideline catalogs.
+ *
+ * A page continues after the last key of the previous page instead of skipping an offset, so
+ * every page costs as much as the first one. The key is returned as an opaque cursor: the
+ * URL safe Base64 encoding of the last key.
+ */
+public final class KeysetPagination {
+
+  /**
+   * The default number of items of a page.
+   */
+  public static final int DEFAULT_LIMIT = 50;
+
+  /**
+   * The largest number of items of a page.
+   */
+  public static final int MAX_LIMIT = 500;
+
+  /**
+   * The error message indicating a cursor was invalid.
+   */
+  public static final String INVALID_CURSOR_MESSAGE = "Invalid cursor";
+
+  /**
+   * The error message indicating a page size was invalid.
+   */
+  public static final String INVALID_LIMIT_MESSAGE = "Invalid limit";
+
+  /**
+   * The tag of the art cursors.
+   */
+  private static final byte ART_CURSOR = 'A';
+
+  /**
+   * The tag of the guideline cursors.
+   */
+  private static final byte GUIDELINE_CURSOR = 'G';
+
+  /**
+   * The pagination is not instantiated.
+   */
+  private KeysetPagination() {
+  }
+
+  /**
+   * A page of items.
+   *
+   * @param <T> The type of the items.
+   */
+  public static final class Page<T> {
+
+    /**
+     * The items.
+     */
+    private final List<T> items;
+
+    /**
+     * The cursor of the next page.
+     */
+    private final String next;
+
+    /**
+     * Create a new page.
+     *
+     * @param items The items.
+     * @param next The cursor of the next page, or an undefined value for the last page.
+     */
+    private Page(List<T> items, String next) {
+      this.items = Collections.unmodifiableList(items);
+      this.next = next;
+    }
+
+    /**
+     * Get the items of the page.
+     *
+     * @return The unmodifiable list of the items.
+     */
+    public List<T> getItems() {
+      return items;
+    }
+
+    /**
+     * Get the cursor of the next page.
+     *
+     * @return The cursor, if there is a next page.
+     */
+    public Optional<String> getNext() {
+      return Optional.ofNullable(next);
+    }
+  }
+
+  /**
+   * The art type of an art cursor. The type compares equal to the type it was encoded from.
+   */
+  private static final class CursorType implements Art.ArtType {
+
+    /**
+     * The key of the type.
+     */
+    private final String key;
+
+    /**
+     * The name of the type.
+     */
+    private final String name;
+
+    /**
+     * Is the type technique.
+     */
+    private final boolean technique;
+
+    /**
+     * Is the type form.
+     */
+    private final boolean form;
+
+    /**
+     * Create a new cursor type.
+     *
+     * @param key The key of the type.
+     * @param name The name of the type.
+     * @param technique Is the type technique.
+     * @param form Is the type form.
+     */
+    CursorType(String key, String name, boolean technique, boolean form) {
+      this.key = key;
+      this.name = name;
+      this.technique = technique;
+      this.form = form;
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isTechnique() {
+      return technique;
+    }
+
+    @Override
+    public boolean isForm() {
+      return form;
+    }
+  }
+
+  /**
+   * Check a page size.
+   *
+   * @param limit The page size.
+   * @return The page size.
+   * @throws IllegalArgumentException The page size was not between 1 and {@link #MAX_LIMIT}.
+   */
+  private static int checkLimit(int limit) throws IllegalArgumentException {
+    if (limit <= 0 || limit > MAX_LIMIT) throw new IllegalArgumentException(INVALID_LIMIT_MESSAGE);
+    return limit;
+  }
+
+  /**
+   * Get a page of the known arts in their natural order.
+   *
+   * @param registry The snapshot of the known arts.
+   * @param typeName The name of the listed art type, or an undefined value for all types.
+   * @param cursor The cursor of the page, or an undefined value for the first page.
+   * @param limit The largest number of arts.
+   * @return The page of the arts.
+   * @throws IllegalArgumentException The cursor or the limit was invalid.
+   */
+  public static Page<Art> arts(Art.Registry registry, String typeName, String cursor, int limit)
+  throws IllegalArgumentException {
+    checkLimit(limit);
+    Art after = cursor == null ? null : decodeArt(cursor);
+    List<Art> result = new ArrayList<>(limit);
+    boolean more = false;
+    for (Art.ArtType type : registry.getTypes()) {
+      if (typeName != null && !typeName.equalsIgnoreCase(type.getName())) continue;
+      int order = after == null ? 1 : Art.ArtType.COMPARATOR.compare(type, after.getType());
+      if (order < 0) continue;
+      for (Art art : order == 0 ? registry.getArtsOfType(type).tailSet(after, false) : registry.getArtsOfType(type)) {
+        if (result.size() == limit) {
+          more = true;
+          break;
+        }
+        result.add(art);
+      }
+      if (more) break;
+    }
+    return new Page<>(result, more ? encodeArt(result.get(result.size() - 1)) : null);
+  }
+
+  /**
+   * Get a page of the guidelines of a catalog ordered by level.
+   *
+   * @param catalog The catalog.
+   * @param technique The technique key, or an undefined value for any technique and form.
+   * @param form The form key, or an undefined value for any technique and form.
+   * @param cursor The cursor of the page, or an undefined value for the first page.
+   * @param limit The largest number of guidelines.
+   * @return The page of the identifiers of the guidelines.
+   * @throws IllegalArgumentException The cursor or the limit was invalid, or only one of the
+   * technique and the form was given.
+   */
+  public static Page<Integer> guidelines(GuidelineCatalog catalog, String technique, String form, String cursor, int limit)
+  throws IllegalArgumentException {
+    checkLimit(limit);
+    int level = Integer.MIN_VALUE;
+    int id = -1;
+    if (cursor != null) {
+      try (DataInputStream input = decode(cursor, GUIDELINE_CURSOR)) {
+        level = input.readInt();
+        id = input.readInt();
+      } catch (IOException e) {
+        throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE, e);
+      }
+    }
+    long[] keys = catalog.keysAfter(technique, form, level, id, limit + 1);
+    List<Integer> result = new ArrayList<>(Math.min(limit, keys.length));
+    for (int i = 0, end = Math.min(limit, keys.length); i < end; i++) result.add((int)keys[i]);
+    String next = null;
+    if (keys.length > limit) {
+      long last = keys[limit - 1];
+      next = encode(GUIDELINE_CURSOR, output -> {
+        output.writeInt((int)(last >> 32));
+        output.writeInt((int)last);
+      });
+    }
+    return new Page<>(result, next);
+  }
+
+  /**
+   * The writer of the fields of a cursor.
+   */
+  @FunctionalInterface
+  private static interface CursorWriter {
+
+    /**
+     * Write the fields.
+     *
+     * @param output The output.
+     * @throws IOException The writing failed.
+     */
+    void write(DataOutputStream output) throws IOException;
+  }
+
+  /**
+   * Encode a cursor.
+   *
+   * @param tag The tag of the cursor.
+   * @param fields The writer of the fields.
+   * @return The encoded cursor.
+   */
+  private static String encode(byte tag, CursorWriter fields) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(tag);
+      fields.write(output);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * Decode a cursor.
+   *
+   * @param cursor The cursor.
+   * @param tag The expected tag of the cursor.
+   * @return The input of the fields of the cursor.
+   * @throws IllegalArgumentException The cursor was not a valid cursor with the tag.
+   */
+  private static DataInputStream decode(String cursor, byte tag) throws IllegalArgumentException {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE, e);
+    }
+    if (bytes.length == 0 || bytes[0] != tag) throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE);
+    return new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+  }
+
+  /**
+   * Encode the cursor of an art.
+   *
+   * @param art The last art of a page.
+   * @return The cursor.
+   */
+  private static String encodeArt(Art art) {
+    return encode(ART_CURSOR, output -> {
+      output.writeUTF(art.getType().getKey());
+      output.writeUTF(art.getType().getName());
+      output.writeBoolean(art.getType().isTechnique());
+      output.writeBoolean(art.getType().isForm());
+      output.writeUTF(art.getName());
+    });
+  }
+
+  /**
+   * Decode the cursor of an art.
+   *
+   * @param cursor The cursor.
+   * @return An art comparing equal to the last art of the previous page.
+   * @throws IllegalArgumentException The cursor was invalid.
+   */
+  private static Art decodeArt(String cursor) throws IllegalArgumentException {
+    try (DataInputStream input = decode(cursor, ART_CURSOR)) {
+      CursorType type = new CursorType(input.readUTF(), input.readUTF(), input.readBoolean(), input.readBoolean());
+      String name = input.readUTF();
+      if (!Art.validName(name)) throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE);
+      Art result = new Art() {
+
+        @Override
+        public Art.ArtType getType() {
+          return type;
+        }
+      };
+      result.setName(name);
+      return result;
+    } catch (IOException e) {
+      throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE, e);
+    }
+  }
+}
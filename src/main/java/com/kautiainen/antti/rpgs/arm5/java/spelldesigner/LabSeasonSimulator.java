@@ -0,0 +1,715 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A discrete season simulator of laboratory activities of many magi.
+ *
+ * The state of the magi is kept in primitive arrays indexed by magus and art. Each season
+ * the magi are advanced independently, in parallel, and the results of the season are
+ * streamed to a sink. The random values depend only on the seed, the magus, and the season,
+ * so a simulation replayed from the same state with the same seed gives the same results
+ * regardless of the thread scheduling.
+ */
+public class LabSeasonSimulator {
+
+  /**
+   * The laboratory activities of a season.
+   */
+  public static enum Activity {
+    /**
+     * The magus does not work in the laboratory.
+     */
+    Idle,
+    /**
+     * The magus studies raw vis of an art.
+     */
+    StudyVis,
+    /**
+     * The magus studies a book of an art. The level of the plan is the quality of the book.
+     */
+    StudyBook,
+    /**
+     * The magus invents a spell of a technique, a form, and a level.
+     */
+    InventSpell;
+
+    /**
+     * The cached values of the activities.
+     */
+    private static final Activity[] VALUES = values();
+  }
+
+  /**
+   * Create a plan of a season.
+   *
+   * @param activity The activity.
+   * @param art The art index of the studied art, or the technique of an invented spell.
+   * @param secondArt The form index of an invented spell.
+   * @param level The level of an invented spell, or the quality of a studied book.
+   * @return The plan encoded as a long.
+   */
+  public static long plan(Activity activity, int art, int secondArt, int level) {
+    return (activity.ordinal() & 0xFFL)
+    | ((art & 0xFFFFL) << 8)
+    | ((secondArt & 0xFFFFL) << 24)
+    | ((level & 0xFFFFL) << 40);
+  }
+
+  /**
+   * Get the activity of an encoded plan.
+   *
+   * @param plan The encoded plan.
+   * @return The activity of the plan.
+   */
+  public static Activity activityOf(long plan) {
+    return Activity.VALUES[(int)(plan & 0xFF)];
+  }
+
+  /**
+   * Get the art of an encoded plan.
+   *
+   * @param plan The encoded plan.
+   * @return The art index of the plan.
+   */
+  public static int artOf(long plan) {
+    return (int)((plan >>> 8) & 0xFFFF);
+  }
+
+  /**
+   * Get the second art of an encoded plan.
+   *
+   * @param plan The encoded plan.
+   * @return The second art index of the plan.
+   */
+  public static int secondArtOf(long plan) {
+    return (int)((plan >>> 24) & 0xFFFF);
+  }
+
+  /**
+   * Get the level of an encoded plan.
+   *
+   * @param plan The encoded plan.
+   * @return The level of the plan.
+   */
+  public static int levelOf(long plan) {
+    return (int)((plan >>> 40) & 0xFFFF);
+  }
+
+  /**
+   * The policy choosing the plan of a magus for a season.
+   *
+   * The policy is called concurrently for different magi, and it should only read the
+   * state of the given magus.
+   */
+  @FunctionalInterface
+  public static interface Policy {
+
+    /**
+     * Choose the plan of a magus.
+     *
+     * @param state The simulation state.
+     * @param magus The index of the magus.
+     * @param season The index of the season.
+     * @param random The deterministic random value of the magus and season.
+     * @return The plan created with {@link LabSeasonSimulator#plan(Activity, int, int, int)}.
+     */
+    long choose(State state, int magus, int season, long random);
+  }
+
+  /**
+   * The sink receiving the results of each season.
+   */
+  @FunctionalInterface
+  public static interface SeasonSink {
+
+    /**
+     * Accept the results of a season.
+     *
+     * @param report The season report. The report is reused for the next season, and it
+     * must be copied if it is kept after the call.
+     */
+    void accept(SeasonReport report);
+  }
+
+  /**
+   * The state of the simulated magi.
+   */
+  public static class State {
+
+    /**
+     * The number of magi.
+     */
+    private final int magi;
+
+    /**
+     * The number of arts of each magus.
+     */
+    private final int arts;
+
+    /**
+     * The art levels indexed by magus and art.
+     */
+    private final short[] artLevels;
+
+    /**
+     * The experience towards the next level indexed by magus and art.
+     */
+    private final int[] artExperience;
+
+    /**
+     * The pawns of vis indexed by magus and art.
+     */
+    private final int[] vis;
+
+    /**
+     * The laboratory total without arts of each magus.
+     */
+    private final short[] labBase;
+
+    /**
+     * The aura of the laboratory of each magus.
+     */
+    private final short[] aura;
+
+    /**
+     * The technique of the current invention project of each magus.
+     */
+    private final short[] projectTechnique;
+
+    /**
+     * The form of the current invention project of each magus.
+     */
+    private final short[] projectForm;
+
+    /**
+     * The level of the current invention project of each magus, or 0 without project.
+     */
+    private final short[] projectLevel;
+
+    /**
+     * The accumulated points of the current invention project of each magus.
+     */
+    private final int[] projectPoints;
+
+    /**
+     * The number of invented spells of each magus.
+     */
+    private final int[] spellCount;
+
+    /**
+     * The total levels of the invented spells of each magus.
+     */
+    private final int[] spellLevels;
+
+    /**
+     * Create a new state with all arts at level 0.
+     *
+     * @param magi The number of magi.
+     * @param arts The number of arts.
+     * @throws IllegalArgumentException Either count was negative, or there were too many arts.
+     */
+    public State(int magi, int arts) throws IllegalArgumentException {
+      if (magi < 0) throw new IllegalArgumentException("Invalid number of magi");
+      if (arts < 0 || arts > 0xFFFF) throw new IllegalArgumentException("Invalid number of arts");
+      this.magi = magi;
+      this.arts = arts;
+      this.artLevels = new short[magi * arts];
+      this.artExperience = new int[magi * arts];
+      this.vis = new int[magi * arts];
+      this.labBase = new short[magi];
+      this.aura = new short[magi];
+      this.projectTechnique = new short[magi];
+      this.projectForm = new short[magi];
+      this.projectLevel = new short[magi];
+      this.projectPoints = new int[magi];
+      this.spellCount = new int[magi];
+      this.spellLevels = new int[magi];
+    }
+
+    /**
+     * Create a copy of a state.
+     *
+     * @param original The copied state.
+     */
+    public State(State original) {
+      this.magi = original.magi;
+      this.arts = original.arts;
+      this.artLevels = original.artLevels.clone();
+      this.artExperience = original.artExperience.clone();
+      this.vis = original.vis.clone();
+      this.labBase = original.labBase.clone();
+      this.aura = original.aura.clone();
+      this.projectTechnique = original.projectTechnique.clone();
+      this.projectForm = original.projectForm.clone();
+      this.projectLevel = original.projectLevel.clone();
+      this.projectPoints = original.projectPoints.clone();
+      this.spellCount = original.spellCount.clone();
+      this.spellLevels = original.spellLevels.clone();
+    }
+
+    /**
+     * Get the index of an art of a magus.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @return The index into the per art arrays.
+     * @throws IndexOutOfBoundsException Either index was invalid.
+     */
+    private int index(int magus, int art) throws IndexOutOfBoundsException {
+      return Objects.checkIndex(magus, magi) * arts + Objects.checkIndex(art, arts);
+    }
+
+    /**
+     * Get the number of magi.
+     *
+     * @return The number of magi.
+     */
+    public int getMagi() {
+      return magi;
+    }
+
+    /**
+     * Get the number of arts.
+     *
+     * @return The number of arts of each magus.
+     */
+    public int getArts() {
+      return arts;
+    }
+
+    /**
+     * Get the level of an art of a magus.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @return The level of the art.
+     */
+    public int getArtLevel(int magus, int art) {
+      return artLevels[index(magus, art)];
+    }
+
+    /**
+     * Set the level of an art of a magus.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @param level The new level.
+     * @throws IllegalArgumentException The level was invalid.
+     */
+    public void setArtLevel(int magus, int art, int level) throws IllegalArgumentException {
+      if (!Art.validLevel(level)) throw new IllegalArgumentException(Art.Level.INVALID_LEVEL_MESSAGE);
+      int index = index(magus, art);
+      artLevels[index] = (short)level;
+      artExperience[index] = 0;
+    }
+
+    /**
+     * Get the experience towards the next level of an art.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @return The experience points.
+     */
+    public int getArtExperience(int magus, int art) {
+      return artExperience[index(magus, art)];
+    }
+
+    /**
+     * Get the pawns of vis of an art.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @return The pawns of vis.
+     */
+    public int getVis(int magus, int art) {
+      return vis[index(magus, art)];
+    }
+
+    /**
+     * Set the pawns of vis of an art.
+     *
+     * @param magus The magus.
+     * @param art The art.
+     * @param pawns The pawns of vis.
+     * @throws IllegalArgumentException The number of pawns was negative.
+     */
+    public void setVis(int magus, int art, int pawns) throws IllegalArgumentException {
+      if (pawns < 0) throw new IllegalArgumentException("Invalid vis");
+      vis[index(magus, art)] = pawns;
+    }
+
+    /**
+     * Get the laboratory total without arts.
+     *
+     * @param magus The magus.
+     * @return The laboratory total without arts.
+     */
+    public int getLabBase(int magus) {
+      return labBase[Objects.checkIndex(magus, magi)];
+    }
+
+    /**
+     * Set the laboratory total without arts.
+     *
+     * @param magus The magus.
+     * @param value The laboratory total without arts.
+     */
+    public void setLabBase(int magus, int value) {
+      labBase[Objects.checkIndex(magus, magi)] = (short)value;
+    }
+
+    /**
+     * Get the aura of the laboratory.
+     *
+     * @param magus The magus.
+     * @return The aura.
+     */
+    public int getAura(int magus) {
+      return aura[Objects.checkIndex(magus, magi)];
+    }
+
+    /**
+     * Set the aura of the laboratory.
+     *
+     * @param magus The magus.
+     * @param value The aura.
+     */
+    public void setAura(int magus, int value) {
+      aura[Objects.checkIndex(magus, magi)] = (short)value;
+    }
+
+    /**
+     * Get the level of the current invention project.
+     *
+     * @param magus The magus.
+     * @return The level of the project, or 0, if the magus has no project.
+     */
+    public int getProjectLevel(int magus) {
+      return projectLevel[Objects.checkIndex(magus, magi)];
+    }
+
+    /**
+     * Get the number of invented spells.
+     *
+     * @param magus The magus.
+     * @return The number of invented spells.
+     */
+    public int getSpellCount(int magus) {
+      return spellCount[Objects.checkIndex(magus, magi)];
+    }
+
+    /**
+     * Get the total level of the invented spells.
+     *
+     * @param magus The magus.
+     * @return The sum of the levels of the invented spells.
+     */
+    public int getSpellLevels(int magus) {
+      return spellLevels[Objects.checkIndex(magus, magi)];
+    }
+
+    /**
+     * Gain experience in an art, advancing the level when the experience suffices.
+     *
+     * @param index The index of the art of the magus.
+     * @param experience The gained experience.
+     */
+    private void gainExperience(int index, int experience) {
+      int level = artLevels[index];
+      int total = artExperience[index] + experience;
+      int cost;
+      while (level < Short.MAX_VALUE && total >= (cost = Art.experienceCost(level, level + 1))) {
+        total -= cost;
+        level++;
+      }
+      artLevels[index] = (short)level;
+      artExperience[index] = total;
+    }
+  }
+
+  /**
+   * The results of a season.
+   */
+  public static class SeasonReport {
+
+    /**
+     * The index of the season.
+     */
+    private int season;
+
+    /**
+     * The state after the season.
+     */
+    private final State state;
+
+    /**
+     * The activity ordinal of each magus.
+     */
+    private final byte[] activities;
+
+    /**
+     * The experience gained by each magus.
+     */
+    private final int[] experience;
+
+    /**
+     * The level of the spell completed by each magus, or 0.
+     */
+    private final short[] completedSpells;
+
+    /**
+     * Create a new report.
+     *
+     * @param state The simulated state.
+     */
+    SeasonReport(State state) {
+      this.state = state;
+      this.activities = new byte[state.magi];
+      this.experience = new int[state.magi];
+      this.completedSpells = new short[state.magi];
+    }
+
+    /**
+     * Get the index of the season.
+     *
+     * @return The season index.
+     */
+    public int getSeason() {
+      return season;
+    }
+
+    /**
+     * Get the state after the season.
+     *
+     * @return The simulation state.
+     */
+    public State getState() {
+      return state;
+    }
+
+    /**
+     * Get the activity of a magus.
+     *
+     * @param magus The magus.
+     * @return The activity performed during the season.
+     */
+    public Activity getActivity(int magus) {
+      return Activity.VALUES[activities[magus]];
+    }
+
+    /**
+     * Get the experience gained by a magus.
+     *
+     * @param magus The magus.
+     * @return The experience gained during the season.
+     */
+    public int getExperience(int magus) {
+      return experience[magus];
+    }
+
+    /**
+     * Get the level of the spell completed by a magus.
+     *
+     * @param magus The magus.
+     * @return The level of the completed spell, or 0, if no spell was completed.
+     */
+    public int getCompletedSpell(int magus) {
+      return completedSpells[magus];
+    }
+  }
+
+  /**
+   * The simulated state.
+   */
+  private final State state;
+
+  /**
+   * The policy choosing the plans.
+   */
+  private final Policy policy;
+
+  /**
+   * The seed of the random values.
+   */
+  private final long seed;
+
+  /**
+   * The next simulated season.
+   */
+  private int season = 0;
+
+  /**
+   * Does the simulator advance the magi in parallel.
+   */
+  private boolean parallel = true;
+
+  /**
+   * Create a new simulator.
+   *
+   * @param state The simulated state. The state is modified by the simulation.
+   * @param policy The policy choosing the plans.
+   * @param seed The seed of the random values.
+   * @throws IllegalArgumentException The state or the policy was undefined.
+   */
+  public LabSeasonSimulator(State state, Policy policy, long seed) throws IllegalArgumentException {
+    if (state == null) throw new IllegalArgumentException("Invalid state");
+    if (policy == null) throw new IllegalArgumentException("Invalid policy");
+    this.state = state;
+    this.policy = policy;
+    this.seed = seed;
+  }
+
+  /**
+   * Set whether the magi are advanced in parallel.
+   *
+   * @param parallel True, if the magi are advanced in parallel.
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Get the next simulated season.
+   *
+   * @return The index of the next season.
+   */
+  public int getSeason() {
+    return season;
+  }
+
+  /**
+   * Get the simulated state.
+   *
+   * @return The state.
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * Get the deterministic random value of a magus and a season.
+   *
+   * @param magus The magus.
+   * @param season The season.
+   * @param draw The index of the draw within the season.
+   * @return The random value.
+   */
+  public long random(int magus, int season, int draw) {
+    long z = seed + 0x9E3779B97F4A7C15L * (((long)magus << 32) ^ ((long)season << 8) ^ draw ^ 0x5DEECE66DL);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Simulate seasons.
+   *
+   * @param seasons The number of simulated seasons.
+   * @param sink The sink receiving the results of each season. An undefined value discards the results.
+   */
+  public void run(int seasons, SeasonSink sink) {
+    SeasonReport report = new SeasonReport(state);
+    for (int i = 0; i < seasons; i++) {
+      int current = season++;
+      report.season = current;
+      IntStream magi = IntStream.range(0, state.magi);
+      (parallel ? magi.parallel() : magi).forEach(magus -> advance(magus, current, report));
+      if (sink != null) sink.accept(report);
+    }
+  }
+
+  /**
+   * Advance a magus one season.
+   *
+   * @param magus The magus.
+   * @param season The season.
+   * @param report The report the results are written into.
+   */
+  private void advance(int magus, int season, SeasonReport report) {
+    long plan = policy.choose(state, magus, season, random(magus, season, 0));
+    Activity activity = activityOf(plan);
+    int experience = 0;
+    short completed = 0;
+    switch (activity) {
+      case StudyVis: {
+        int index = state.index(magus, artOf(plan));
+        int cost = Math.max(1, (state.artLevels[index] + 4) / 5);
+        if (state.vis[index] >= cost) {
+          state.vis[index] -= cost;
+          experience = Math.max(0, (int)Long.remainderUnsigned(random(magus, season, 1), 10) + 1 + state.aura[magus]);
+          state.gainExperience(index, experience);
+        } else {
+          activity = Activity.Idle;
+        }
+        break;
+      }
+      case StudyBook: {
+        experience = levelOf(plan);
+        state.gainExperience(state.index(magus, artOf(plan)), experience);
+        break;
+      }
+      case InventSpell: {
+        if (state.projectLevel[magus] == 0) {
+          // Validating the arts before starting the project.
+          state.index(magus, artOf(plan));
+          state.index(magus, secondArtOf(plan));
+          state.projectTechnique[magus] = (short)artOf(plan);
+          state.projectForm[magus] = (short)secondArtOf(plan);
+          state.projectLevel[magus] = (short)Math.max(1, Math.min(Short.MAX_VALUE, levelOf(plan)));
+          state.projectPoints[magus] = 0;
+        }
+        int level = state.projectLevel[magus];
+        int labTotal = state.labBase[magus] + state.aura[magus]
+        + state.artLevels[state.index(magus, state.projectTechnique[magus])]
+        + state.artLevels[state.index(magus, state.projectForm[magus])];
+        if (labTotal > level) {
+          state.projectPoints[magus] += labTotal - level;
+          if (state.projectPoints[magus] >= level) {
+            completed = (short)level;
+            state.spellCount[magus]++;
+            state.spellLevels[magus] += level;
+            state.projectLevel[magus] = 0;
+            state.projectPoints[magus] = 0;
+          }
+        } else {
+          // The project is beyond the laboratory total, and it is abandoned.
+          state.projectLevel[magus] = 0;
+          state.projectPoints[magus] = 0;
+          activity = Activity.Idle;
+        }
+        break;
+      }
+      default:
+        break;
+    }
+    report.activities[magus] = (byte)activity.ordinal();
+    report.experience[magus] = experience;
+    report.completedSpells[magus] = completed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LabSeasonSimulator[season=%d, magi=%d, arts=%d, seed=%d]",
+    season, state.magi, state.arts, seed);
+  }
+
+  /**
+   * Create a state with the given art levels for every magus.
+   *
+   * @param magi The number of magi.
+   * @param levels The art levels shared by every magus.
+   * @return The created state.
+   */
+  public static State uniformState(int magi, int[] levels) {
+    State result = new State(magi, levels.length);
+    for (int magus = 0; magus < magi; magus++) {
+      for (int art = 0; art < levels.length; art++) {
+        result.setArtLevel(magus, art, levels[art]);
+      }
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,103 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Locale;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * The paginated listings of the known arts and the current guideline catalog.
+ *
+ * Every page contains the cursor of the next page as "next", which is passed back as the
+ * "cursor" query parameter.
+ */
+@Path("list")
+public class ListingResource {
+
+  /**
+   * List the known arts.
+   *
+   * @param type The name of the listed art type, or an undefined value for all types.
+   * @param cursor The cursor of the page, or an undefined value for the first page.
+   * @param limit The largest number of arts.
+   * @return The page of the arts.
+   */
+  @GET
+  @Path("arts")
+  @Produces(MediaType.APPLICATION_JSON)
+  public JsonObject arts(@QueryParam("type") String type, @QueryParam("cursor") String cursor,
+  @QueryParam("limit") @DefaultValue("" + KeysetPagination.DEFAULT_LIMIT) int limit) {
+    KeysetPagination.Page<Art> page;
+    try {
+      page = KeysetPagination.arts(Art.getRegistry(), type, cursor, limit);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+    JsonArrayBuilder items = Json.createArrayBuilder();
+    for (Art art : page.getItems()) {
+      JsonObjectBuilder item = Json.createObjectBuilder().add("type", art.getType().getName()).add("name", art.getName());
+      art.getAbbreviation().ifPresent(abbreviation -> item.add("abbreviation", abbreviation));
+      items.add(item);
+    }
+    return result(items, page);
+  }
+
+  /**
+   * List the guidelines of the current catalog by level.
+   *
+   * @param technique The name or the abbreviation of the technique, or an undefined value for
+   * all guidelines.
+   * @param form The name or the abbreviation of the form, or an undefined value for all guidelines.
+   * @param cursor The cursor of the page, or an undefined value for the first page.
+   * @param limit The largest number of guidelines.
+   * @return The page of the guidelines.
+   */
+  @GET
+  @Path("guidelines")
+  @Produces(MediaType.APPLICATION_JSON)
+  public JsonObject guidelines(@QueryParam("technique") String technique, @QueryParam("form") String form,
+  @QueryParam("cursor") String cursor, @QueryParam("limit") @DefaultValue("" + KeysetPagination.DEFAULT_LIMIT) int limit) {
+    GuidelineCatalog catalog = CatalogHolder.getCatalog();
+    HermeticArts arts = CatalogHolder.getArts();
+    KeysetPagination.Page<Integer> page;
+    try {
+      page = KeysetPagination.guidelines(catalog,
+      technique == null ? null : arts.getTechnique(technique).map(GuidelineCatalog::artKey).orElse(technique.toLowerCase(Locale.ROOT)),
+      form == null ? null : arts.getForm(form).map(GuidelineCatalog::artKey).orElse(form.toLowerCase(Locale.ROOT)),
+      cursor, limit);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+    JsonArrayBuilder items = Json.createArrayBuilder();
+    for (int id : page.getItems()) {
+      SpellGuideline<?, ?, ?, ?> guideline = catalog.get(id);
+      // A guideline removed after the page was read is left out.
+      if (guideline == null) continue;
+      items.add(Json.createObjectBuilder().add("id", id).add("level", guideline.getLevel().toString())
+      .add("name", guideline.getName()).add("text", guideline.toString()));
+    }
+    return result(items, page);
+  }
+
+  /**
+   * Create the JSON object of a page.
+   *
+   * @param items The items of the page.
+   * @param page The page.
+   * @return The page with the items and the cursor of the next page.
+   */
+  private static JsonObject result(JsonArrayBuilder items, KeysetPagination.Page<?> page) {
+    JsonObjectBuilder result = Json.createObjectBuilder().add("items", items);
+    page.getNext().ifPresent(next -> result.add("next", next));
+    return result.build();
+  }
+}
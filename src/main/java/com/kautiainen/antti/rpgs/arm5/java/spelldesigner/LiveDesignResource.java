@@ -0,0 +1,96 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import jakarta.json.JsonObject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+/**
+ * The live search and design evaluation of the editor sessions.
+ *
+ * An editor opens an event stream, whose first "session" event carries the identifier of the
+ * new session, and then posts its searches and designs to the session as the user types. The results arrive on the stream as "search" and "design" events. A
+ * request carrying a "seq" parameter lower than an earlier request of the same kind is
+ * ignored, and the results echo the sequence number.
+ */
+@Path("live")
+public class LiveDesignResource {
+
+  /**
+   * Open the event stream of a new session.
+   *
+   * @param sink The sink of the events.
+   * @param sse The factory of the events.
+   */
+  @GET
+  @Path("events")
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  public void events(@Context SseEventSink sink, @Context Sse sse) {
+    try {
+      LiveSession.open(sink, sse);
+    } catch (IllegalArgumentException e) {
+      sink.close();
+      throw new BadRequestException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Search the guidelines of the current catalog.
+   *
+   * @param session The identifier of the session.
+   * @param query The search query.
+   * @param sequence The sequence number of the request, or an undefined value.
+   * @return The accepted response.
+   */
+  @POST
+  @Path("{session}/search")
+  public Response search(@PathParam("session") String session, @QueryParam("q") String query,
+  @QueryParam("seq") Long sequence) {
+    session(session).search(query, sequence);
+    return Response.accepted().build();
+  }
+
+  /**
+   * Evaluate a design.
+   *
+   * @param session The identifier of the session.
+   * @param design The design object in the format of the batch evaluation.
+   * @param sequence The sequence number of the request, or an undefined value.
+   * @return The accepted response.
+   */
+  @POST
+  @Path("{session}/design")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response design(@PathParam("session") String session, JsonObject design, @QueryParam("seq") Long sequence) {
+    if (design == null) throw new BadRequestException(SpellBatchPipeline.EXPECTED_OBJECT_MESSAGE);
+    session(session).evaluate(design, sequence);
+    return Response.accepted().build();
+  }
+
+  /**
+   * Get an open session.
+   *
+   * @param session The identifier of the session.
+   * @return The session.
+   * @throws BadRequestException The identifier was invalid.
+   * @throws NotFoundException The session had no open stream.
+   */
+  private static LiveSession session(String session) throws BadRequestException, NotFoundException {
+    try {
+      return LiveSession.get(session).orElseThrow(() -> new NotFoundException(LiveSession.INVALID_SESSION_MESSAGE));
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,483 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+/**
+ * The live evaluation stream of an editor session.
+ *
+ * A session has a single event stream. The identifier of the session is chosen by the server
+ * and sent as the first event of the stream, so only the client holding the stream knows it. Every search or design evaluation supersedes the
+ * previous evaluation of the same kind: the previous evaluation is cancelled, and its results
+ * are no longer sent. The results are sent as cumulative snapshots, so only the latest
+ * snapshot of a kind waits for a slow client, and the outdated snapshots are dropped instead
+ * of queued.
+ */
+public class LiveSession {
+
+  /**
+   * The name of the event carrying the identifier of the session.
+   */
+  public static final String SESSION_EVENT = "session";
+
+  /**
+   * The name of the search result events.
+   */
+  public static final String SEARCH_EVENT = "search";
+
+  /**
+   * The name of the design result events.
+   */
+  public static final String DESIGN_EVENT = "design";
+
+  /**
+   * The number of search hits between the snapshots of a search.
+   */
+  public static final int SEARCH_SNAPSHOT_SIZE = 20;
+
+  /**
+   * The largest number of search hits.
+   */
+  public static final int MAX_SEARCH_HITS = 200;
+
+  /**
+   * The distance of the levels of the matching guidelines from the base level of a design.
+   */
+  public static final int GUIDELINE_LEVEL_DISTANCE = 5;
+
+  /**
+   * The largest number of open sessions.
+   */
+  public static final int MAX_SESSIONS = 10_000;
+
+  /**
+   * The error message indicating a session identifier was invalid.
+   */
+  public static final String INVALID_SESSION_MESSAGE = "Invalid session";
+
+  /**
+   * The pattern of the session identifiers.
+   */
+  private static final Pattern SESSION_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  /**
+   * The number of random bytes of a session identifier.
+   */
+  private static final int SESSION_ID_BYTES = 24;
+
+  /**
+   * The generator of the session identifiers.
+   */
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  /**
+   * The open sessions by identifier.
+   */
+  private static final Map<String, LiveSession> SESSIONS = new ConcurrentHashMap<>();
+
+  /**
+   * The evaluations of a kind. A new evaluation supersedes the previous one.
+   */
+  private final class Channel {
+
+    /**
+     * The name of the events of the channel.
+     */
+    final String name;
+
+    /**
+     * The lock of the submissions.
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The generation of the current evaluation.
+     */
+    volatile long generation = 0;
+
+    /**
+     * The highest sequence number given by the client.
+     */
+    long clientSequence = Long.MIN_VALUE;
+
+    /**
+     * The running evaluation, or an undefined value.
+     */
+    Future<?> running;
+
+    /**
+     * The latest unsent event of the channel.
+     */
+    final AtomicReference<OutboundSseEvent> pending = new AtomicReference<>();
+
+    /**
+     * Create a new channel.
+     *
+     * @param name The name of the events.
+     */
+    Channel(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Start an evaluation superseding the previous evaluation.
+     *
+     * @param sequence The sequence number given by the client, or an undefined value.
+     * @param evaluation The evaluation receiving its cancellation check.
+     * @return True, if and only if the evaluation was started. An evaluation with a sequence
+     * number lower than an earlier evaluation is ignored.
+     */
+    boolean submit(Long sequence, Evaluation evaluation) {
+      lock.lock();
+      try {
+        if (closed.get()) return false;
+        if (sequence != null) {
+          // A request overtaken by a later request in transit is stale on arrival.
+          if (sequence <= clientSequence) return false;
+          clientSequence = sequence;
+        }
+        long current = ++generation;
+        if (running != null) running.cancel(true);
+        BooleanSupplier superseded = () -> generation != current || closed.get();
+        try {
+          running = ResourceExecutors.getExecutor().submit(() -> {
+            try {
+              evaluation.run(superseded, (data, complete) -> {
+                if (!superseded.getAsBoolean()) send(this, data, complete);
+              });
+            } catch (RuntimeException e) {
+              if (!superseded.getAsBoolean()) {
+                send(this, Json.createObjectBuilder().add("error", String.valueOf(e.getMessage())), true);
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          running = null;
+          return false;
+        }
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * The receiver of the snapshots of an evaluation.
+   */
+  @FunctionalInterface
+  private static interface Snapshots {
+
+    /**
+     * Send a snapshot unless the evaluation was superseded.
+     *
+     * @param data The data of the snapshot.
+     * @param complete Is the snapshot the final result.
+     */
+    void send(JsonObjectBuilder data, boolean complete);
+  }
+
+  /**
+   * An evaluation.
+   */
+  @FunctionalInterface
+  private static interface Evaluation {
+
+    /**
+     * Run the evaluation.
+     *
+     * @param superseded The check of the supersession of the evaluation.
+     * @param snapshots The receiver of the snapshots.
+     */
+    void run(BooleanSupplier superseded, Snapshots snapshots);
+  }
+
+  /**
+   * The identifier of the session.
+   */
+  private final String id;
+
+  /**
+   * The sink of the events.
+   */
+  private final SseEventSink sink;
+
+  /**
+   * The factory of the events.
+   */
+  private final Sse sse;
+
+  /**
+   * The search channel.
+   */
+  private final Channel search = new Channel(SEARCH_EVENT);
+
+  /**
+   * The design channel.
+   */
+  private final Channel design = new Channel(DESIGN_EVENT);
+
+  /**
+   * Is an event being sent.
+   */
+  private final AtomicBoolean sending = new AtomicBoolean();
+
+  /**
+   * Has the session been closed.
+   */
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /**
+   * Create a new session.
+   *
+   * @param id The identifier.
+   * @param sink The sink of the events.
+   * @param sse The factory of the events.
+   */
+  private LiveSession(String id, SseEventSink sink, Sse sse) {
+    this.id = id;
+    this.sink = sink;
+    this.sse = sse;
+  }
+
+  /**
+   * Check a session identifier.
+   *
+   * @param id The identifier.
+   * @return The identifier.
+   * @throws IllegalArgumentException The identifier was invalid.
+   */
+  private static String checkId(String id) throws IllegalArgumentException {
+    if (id == null || !SESSION_PATTERN.matcher(id).matches()) throw new IllegalArgumentException(INVALID_SESSION_MESSAGE);
+    return id;
+  }
+
+  /**
+   * Generate a new session identifier.
+   *
+   * @return The URL safe Base64 encoding of random bytes.
+   */
+  private static String newId() {
+    byte[] bytes = new byte[SESSION_ID_BYTES];
+    RANDOM.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  /**
+   * Close the sessions whose stream the client has closed.
+   */
+  private static void purge() {
+    for (LiveSession session : SESSIONS.values()) {
+      if (session.sink.isClosed()) session.close();
+    }
+  }
+
+  /**
+   * Open a new session. The identifier of the session is sent as the first event.
+   *
+   * @param sink The sink of the events.
+   * @param sse The factory of the events.
+   * @return The session.
+   * @throws IllegalArgumentException There were too many sessions.
+   */
+  public static LiveSession open(SseEventSink sink, Sse sse) throws IllegalArgumentException {
+    if (sink == null || sse == null) throw new IllegalArgumentException("Invalid event sink");
+    // The abandoned sessions are only noticed on access, so they are purged before refusing.
+    if (SESSIONS.size() >= MAX_SESSIONS) purge();
+    if (SESSIONS.size() >= MAX_SESSIONS) throw new IllegalArgumentException("Too many sessions");
+    LiveSession result;
+    do {
+      result = new LiveSession(newId(), sink, sse);
+    } while (SESSIONS.putIfAbsent(result.id, result) != null);
+    // The identifier is sent before any result, as the results wait for the sending to end.
+    result.sending.set(true);
+    result.transmit(sse.newEventBuilder().name(SESSION_EVENT).mediaType(MediaType.APPLICATION_JSON_TYPE)
+    .data(String.class, Json.createObjectBuilder().add("session", result.id).build().toString()).build());
+    return result;
+  }
+
+  /**
+   * Get an open session.
+   *
+   * @param id The identifier of the session.
+   * @return The session, if its stream is open.
+   * @throws IllegalArgumentException The identifier was invalid.
+   */
+  public static Optional<LiveSession> get(String id) throws IllegalArgumentException {
+    LiveSession result = SESSIONS.get(checkId(id));
+    if (result != null && result.sink.isClosed()) {
+      result.close();
+      result = null;
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /**
+   * Get the identifier of the session.
+   *
+   * @return The identifier.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Search the guidelines of the current catalog.
+   *
+   * The hits are sent as growing snapshots of {@link #SEARCH_SNAPSHOT_SIZE} more hits.
+   *
+   * @param query The search query of the text index.
+   * @param sequence The sequence number of the request, or an undefined value.
+   * @return True, if and only if the search was started.
+   */
+  public boolean search(String query, Long sequence) {
+    GuidelineCatalog catalog = CatalogHolder.getCatalog();
+    return search.submit(sequence, (superseded, snapshots) -> {
+      List<GuidelineTextIndex.Hit> hits = catalog.getTextIndex().search(query, MAX_SEARCH_HITS);
+      List<JsonObject> items = new ArrayList<>(hits.size());
+      for (GuidelineTextIndex.Hit hit : hits) {
+        if (superseded.getAsBoolean()) return;
+        items.add(Json.createObjectBuilder().add("id", hit.getId()).add("score", hit.getScore())
+        .add("text", hit.getGuideline().toString()).build());
+        if (items.size() % SEARCH_SNAPSHOT_SIZE == 0 && items.size() < hits.size()) {
+          snapshots.send(snapshot(query, sequence).add("hits", Json.createArrayBuilder(items)), false);
+        }
+      }
+      snapshots.send(snapshot(query, sequence).add("hits", Json.createArrayBuilder(items)), true);
+    });
+  }
+
+  /**
+   * Evaluate a design.
+   *
+   * The level of the design is sent first, and then the guidelines of the technique and the
+   * form near the base level of the design.
+   *
+   * @param source The design object in the format of the batch evaluation.
+   * @param sequence The sequence number of the request, or an undefined value.
+   * @return True, if and only if the evaluation was started.
+   */
+  public boolean evaluate(JsonObject source, Long sequence) {
+    HermeticArts arts = CatalogHolder.getArts();
+    GuidelineCatalog catalog = CatalogHolder.getCatalog();
+    return design.submit(sequence, (superseded, snapshots) -> {
+      SpellDesign evaluated = new SpellBatchPipeline(arts).design(source);
+      short level = evaluated.getLevel();
+      JsonObjectBuilder result = Json.createObjectBuilder().add("level", level)
+      .add("magnitude", SpellGuideline.levelToMagnitude(level));
+      if (sequence != null) result.add("seq", sequence);
+      JsonObject levels = result.build();
+      snapshots.send(Json.createObjectBuilder(levels), false);
+      if (superseded.getAsBoolean()) return;
+      int base = evaluated.getBaseLevel();
+      JsonArrayBuilder guidelines = Json.createArrayBuilder();
+      for (int id : catalog.idsOfTechniquesAndForms(List.of(GuidelineCatalog.artKey(evaluated.getTechnique())),
+      List.of(GuidelineCatalog.artKey(evaluated.getForm())), base - GUIDELINE_LEVEL_DISTANCE, base + GUIDELINE_LEVEL_DISTANCE)) {
+        if (superseded.getAsBoolean()) return;
+        SpellGuideline<?, ?, ?, ?> guideline = catalog.get(id);
+        if (guideline != null) guidelines.add(Json.createObjectBuilder().add("id", id).add("text", guideline.toString()));
+      }
+      snapshots.send(Json.createObjectBuilder(levels).add("guidelines", guidelines), true);
+    });
+  }
+
+  /**
+   * Create the common fields of a search snapshot.
+   *
+   * @param query The query.
+   * @param sequence The sequence number, or an undefined value.
+   * @return The builder of the snapshot.
+   */
+  private static JsonObjectBuilder snapshot(String query, Long sequence) {
+    JsonObjectBuilder result = Json.createObjectBuilder().add("query", query == null ? "" : query);
+    if (sequence != null) result.add("seq", sequence);
+    return result;
+  }
+
+  /**
+   * Replace the pending event of a channel and send the pending events.
+   *
+   * @param channel The channel.
+   * @param data The data of the event.
+   * @param complete Is the event the final result.
+   */
+  private void send(Channel channel, JsonObjectBuilder data, boolean complete) {
+    // A snapshot not yet sent is outdated by the new snapshot.
+    channel.pending.set(sse.newEventBuilder().name(channel.name).mediaType(MediaType.APPLICATION_JSON_TYPE)
+    .data(String.class, data.add("complete", complete).build().toString()).build());
+    drain();
+  }
+
+  /**
+   * Send the pending events one at a time.
+   */
+  private void drain() {
+    while (!closed.get() && sending.compareAndSet(false, true)) {
+      OutboundSseEvent event = search.pending.getAndSet(null);
+      if (event == null) event = design.pending.getAndSet(null);
+      if (event == null) {
+        sending.set(false);
+        // An event offered after the checks but before the reset is sent by this loop.
+        if (search.pending.get() == null && design.pending.get() == null) return;
+        continue;
+      }
+      transmit(event);
+      return;
+    }
+  }
+
+  /**
+   * Send an event while holding the sending, and send the pending events after it.
+   *
+   * @param event The event.
+   */
+  private void transmit(OutboundSseEvent event) {
+    sink.send(event).whenComplete((result, failure) -> {
+      sending.set(false);
+      if (failure != null) {
+        close();
+      } else {
+        drain();
+      }
+    });
+  }
+
+  /**
+   * Close the session, cancelling its evaluations and closing its stream.
+   */
+  public void close() {
+    if (!closed.compareAndSet(false, true)) return;
+    SESSIONS.remove(id, this);
+    for (Channel channel : List.of(search, design)) {
+      channel.lock.lock();
+      try {
+        if (channel.running != null) channel.running.cancel(true);
+        channel.pending.set(null);
+      } finally {
+        channel.lock.unlock();
+      }
+    }
+    sink.close();
+  }
+}
@@ -0,0 +1,31 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.IOException;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * The metrics of the application in the Prometheus text format.
+ */
+@Path("metrics")
+public class MetricsResource {
+
+  /**
+   * The media type of the Prometheus text format.
+   */
+  public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+  /**
+   * Get the metrics.
+   *
+   * @return The current values of the registered metrics.
+   * @throws IOException The formatting of the metrics failed.
+   */
+  @GET
+  @Produces(PROMETHEUS_TEXT)
+  public String getMetrics() throws IOException {
+    return SpellMetrics.appendTo(new StringBuilder()).toString();
+  }
+}
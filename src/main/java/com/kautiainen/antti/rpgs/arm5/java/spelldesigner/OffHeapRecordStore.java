@@ -0,0 +1,659 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An append only store of guideline and spell records outside of the heap.
+ *
+ * The records are fixed width slots of a direct buffer holding the ordinals of the arts,
+ * the levels, and the offsets of the texts in a separate direct character area. The records
+ * are read through reusable {@link Cursor cursors}, which do not create objects per record.
+ * The readers do not lock, as a record is never modified after the record count including
+ * it has been published. The writers append under a lock.
+ */
+public class OffHeapRecordStore {
+
+  /**
+   * The error message indicating the store is full.
+   */
+  public static final String STORE_FULL_MESSAGE = "The record store is full";
+
+  /**
+   * The error message indicating the record index was invalid.
+   */
+  public static final String INVALID_INDEX_MESSAGE = "Invalid record index";
+
+  /**
+   * The kind of a guideline record.
+   */
+  public static final byte GUIDELINE_RECORD = 1;
+
+  /**
+   * The kind of a spell record.
+   */
+  public static final byte SPELL_RECORD = 2;
+
+  /**
+   * The stored level of a generic guideline.
+   */
+  public static final short GENERIC_LEVEL = Short.MIN_VALUE;
+
+  /**
+   * The width of a slot in bytes.
+   */
+  public static final int SLOT_SIZE = 40;
+
+  /**
+   * The offset of the record kind byte.
+   */
+  private static final int KIND = 0;
+
+  /**
+   * The offset of the range ordinal byte.
+   */
+  private static final int RANGE = 1;
+
+  /**
+   * The offset of the duration ordinal byte.
+   */
+  private static final int DURATION = 2;
+
+  /**
+   * The offset of the target ordinal byte.
+   */
+  private static final int TARGET = 3;
+
+  /**
+   * The offset of the technique ordinal short.
+   */
+  private static final int TECHNIQUE = 4;
+
+  /**
+   * The offset of the form ordinal short.
+   */
+  private static final int FORM = 6;
+
+  /**
+   * The offset of the level short.
+   */
+  private static final int LEVEL = 8;
+
+  /**
+   * The offset of the base level short.
+   */
+  private static final int BASE_LEVEL = 10;
+
+  /**
+   * The offset of the additional magnitudes int.
+   */
+  private static final int EXTRA_MAGNITUDES = 12;
+
+  /**
+   * The offset of the name offset int.
+   */
+  private static final int NAME = 16;
+
+  /**
+   * The offset of the name length int. A negative length indicates no name.
+   */
+  private static final int NAME_LENGTH = 20;
+
+  /**
+   * The offset of the description offset int.
+   */
+  private static final int DESCRIPTION = 24;
+
+  /**
+   * The offset of the description length int. A negative length indicates no description.
+   */
+  private static final int DESCRIPTION_LENGTH = 28;
+
+  /**
+   * The offset of the requisite ordinals offset int. The ordinals are stored as characters
+   * of the character area.
+   */
+  private static final int REQUISITES = 32;
+
+  /**
+   * The offset of the requisite count int.
+   */
+  private static final int REQUISITE_COUNT = 36;
+
+  /**
+   * The buffers of the store. The buffers are replaced with larger copies as the store grows.
+   */
+  private static final class Buffers {
+
+    /**
+     * The slots.
+     */
+    final ByteBuffer slots;
+
+    /**
+     * The character area.
+     */
+    final ByteBuffer chars;
+
+    /**
+     * Create buffers.
+     *
+     * @param slots The slots.
+     * @param chars The character area.
+     */
+    Buffers(ByteBuffer slots, ByteBuffer chars) {
+      this.slots = slots;
+      this.chars = chars;
+    }
+  }
+
+  /**
+   * A reusable read only view of a record.
+   *
+   * The accessors follow {@link SpellGuideline} and {@link SpellDesign}. A cursor is not
+   * thread safe, but every thread may use its own cursor.
+   */
+  public final class Cursor {
+
+    /**
+     * The buffers of the current record.
+     */
+    private Buffers buffers;
+
+    /**
+     * The arts known when the cursor moved.
+     */
+    private ArtInterface<?>[] knownArts;
+
+    /**
+     * The slot offset of the current record.
+     */
+    private int base = -1;
+
+    /**
+     * Create a cursor.
+     */
+    Cursor() {
+    }
+
+    /**
+     * Move the cursor to a record.
+     *
+     * @param index The index of the record.
+     * @return The cursor.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public Cursor moveTo(int index) throws IndexOutOfBoundsException {
+      if (index < 0 || index >= count) throw new IndexOutOfBoundsException(INVALID_INDEX_MESSAGE);
+      buffers = OffHeapRecordStore.this.buffers;
+      knownArts = arts.snapshot();
+      base = index * SLOT_SIZE;
+      return this;
+    }
+
+    /**
+     * Test whether the record is a spell.
+     *
+     * @return True, if and only if the record is a spell design.
+     */
+    public boolean isSpell() {
+      return buffers.slots.get(base + KIND) == SPELL_RECORD;
+    }
+
+    /**
+     * Get the technique.
+     *
+     * @return The technique of the record.
+     */
+    public TechniqueInterface<?> getTechnique() {
+      return (TechniqueInterface<?>)knownArts[buffers.slots.getShort(base + TECHNIQUE)];
+    }
+
+    /**
+     * Get the form.
+     *
+     * @return The form of the record.
+     */
+    public FormInterface<?> getForm() {
+      return (FormInterface<?>)knownArts[buffers.slots.getShort(base + FORM)];
+    }
+
+    /**
+     * Get the level.
+     *
+     * @return The level of the guideline or the final level of the spell, or
+     * {@link OffHeapRecordStore#GENERIC_LEVEL} for a generic guideline.
+     */
+    public short getLevelValue() {
+      return buffers.slots.getShort(base + LEVEL);
+    }
+
+    /**
+     * Test whether the level is generic.
+     *
+     * @return True, if and only if the record is a generic guideline.
+     */
+    public boolean isGeneric() {
+      return getLevelValue() == GENERIC_LEVEL;
+    }
+
+    /**
+     * Get the base level of a spell.
+     *
+     * @return The base level of the spell, or the level of the guideline.
+     */
+    public short getBaseLevel() {
+      return buffers.slots.getShort(base + BASE_LEVEL);
+    }
+
+    /**
+     * Get the range of a spell.
+     *
+     * @return The range, or an undefined value for a guideline.
+     */
+    public SpellRange getRange() {
+      return isSpell() ? RANGES[buffers.slots.get(base + RANGE)] : null;
+    }
+
+    /**
+     * Get the duration of a spell.
+     *
+     * @return The duration, or an undefined value for a guideline.
+     */
+    public SpellDuration getDuration() {
+      return isSpell() ? DURATIONS[buffers.slots.get(base + DURATION)] : null;
+    }
+
+    /**
+     * Get the target of a spell.
+     *
+     * @return The target, or an undefined value for a guideline.
+     */
+    public SpellTarget getTarget() {
+      return isSpell() ? TARGETS[buffers.slots.get(base + TARGET)] : null;
+    }
+
+    /**
+     * Get the additional magnitudes of a spell.
+     *
+     * @return The additional magnitudes.
+     */
+    public int getExtraMagnitudes() {
+      return buffers.slots.getInt(base + EXTRA_MAGNITUDES);
+    }
+
+    /**
+     * Get the number of requisites.
+     *
+     * @return The number of requisites of a spell.
+     */
+    public int getRequisiteCount() {
+      return buffers.slots.getInt(base + REQUISITE_COUNT);
+    }
+
+    /**
+     * Get a requisite.
+     *
+     * @param index The index of the requisite.
+     * @return The requisite.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public ArtInterface<?> getRequisite(int index) throws IndexOutOfBoundsException {
+      if (index < 0 || index >= getRequisiteCount()) throw new IndexOutOfBoundsException(index);
+      return knownArts[buffers.chars.getChar((buffers.slots.getInt(base + REQUISITES) + index) * 2)];
+    }
+
+    /**
+     * Get the length of the name.
+     *
+     * @return The number of characters of the name, or -1 for no name.
+     */
+    public int getNameLength() {
+      return buffers.slots.getInt(base + NAME_LENGTH);
+    }
+
+    /**
+     * Get a character of the name.
+     *
+     * @param index The index of the character.
+     * @return The character.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public char nameCharAt(int index) throws IndexOutOfBoundsException {
+      if (index < 0 || index >= getNameLength()) throw new IndexOutOfBoundsException(index);
+      return buffers.chars.getChar((buffers.slots.getInt(base + NAME) + index) * 2);
+    }
+
+    /**
+     * Test whether the name equals a text without creating the name.
+     *
+     * @param text The compared text.
+     * @return True, if and only if the name has the characters of the text.
+     */
+    public boolean nameEquals(CharSequence text) {
+      return textEquals(NAME, text);
+    }
+
+    /**
+     * Append the name.
+     *
+     * @param target The appended target.
+     * @return The target.
+     */
+    public StringBuilder appendName(StringBuilder target) {
+      return appendText(NAME, target);
+    }
+
+    /**
+     * Get the name.
+     *
+     * @return The name, or an undefined value for no name.
+     */
+    public String getName() {
+      return getNameLength() < 0 ? null : appendName(new StringBuilder(getNameLength())).toString();
+    }
+
+    /**
+     * Get the length of the description.
+     *
+     * @return The number of characters of the description, or -1 for no description.
+     */
+    public int getDescriptionLength() {
+      return buffers.slots.getInt(base + DESCRIPTION_LENGTH);
+    }
+
+    /**
+     * Append the description.
+     *
+     * @param target The appended target.
+     * @return The target.
+     */
+    public StringBuilder appendDescription(StringBuilder target) {
+      return appendText(DESCRIPTION, target);
+    }
+
+    /**
+     * Get the description.
+     *
+     * @return The description, if any exists.
+     */
+    public Optional<String> getDescription() {
+      int length = getDescriptionLength();
+      return length < 0 ? Optional.empty() : Optional.of(appendDescription(new StringBuilder(length)).toString());
+    }
+
+    /**
+     * Create a spell design of a spell record.
+     *
+     * @return The spell design.
+     * @throws IllegalStateException The record was not a spell.
+     */
+    public SpellDesign toSpellDesign() throws IllegalStateException {
+      if (!isSpell()) throw new IllegalStateException(INVALID_INDEX_MESSAGE);
+      List<ArtInterface<?>> requisites = new ArrayList<>(getRequisiteCount());
+      for (int i = 0; i < getRequisiteCount(); i++) requisites.add(getRequisite(i));
+      return new SpellDesign(getName(), getTechnique(), getForm(), requisites, getBaseLevel(),
+      getRange(), getDuration(), getTarget(), getExtraMagnitudes());
+    }
+
+    /**
+     * Append a text of the record.
+     *
+     * @param field The slot offset of the text offset.
+     * @param target The appended target.
+     * @return The target.
+     */
+    private StringBuilder appendText(int field, StringBuilder target) {
+      int start = buffers.slots.getInt(base + field);
+      int length = buffers.slots.getInt(base + field + 4);
+      for (int i = 0; i < length; i++) target.append(buffers.chars.getChar((start + i) * 2));
+      return target;
+    }
+
+    /**
+     * Compare a text of the record.
+     *
+     * @param field The slot offset of the text offset.
+     * @param text The compared text.
+     * @return True, if and only if the text of the record equals the text.
+     */
+    private boolean textEquals(int field, CharSequence text) {
+      int start = buffers.slots.getInt(base + field);
+      int length = buffers.slots.getInt(base + field + 4);
+      if (text == null) return length < 0;
+      if (text.length() != length) return false;
+      for (int i = 0; i < length; i++) {
+        if (buffers.chars.getChar((start + i) * 2) != text.charAt(i)) return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The ranges by ordinal.
+   */
+  private static final SpellRange[] RANGES = SpellRange.values();
+
+  /**
+   * The durations by ordinal.
+   */
+  private static final SpellDuration[] DURATIONS = SpellDuration.values();
+
+  /**
+   * The targets by ordinal.
+   */
+  private static final SpellTarget[] TARGETS = SpellTarget.values();
+
+  /**
+   * The current buffers.
+   */
+  private volatile Buffers buffers;
+
+  /**
+   * The ordinals of the arts.
+   */
+  private final ArtOrdinals arts;
+
+  /**
+   * The number of published records.
+   */
+  private volatile int count = 0;
+
+  /**
+   * The number of used characters of the character area.
+   */
+  private int charsUsed = 0;
+
+  /**
+   * The lock of the writers.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Create a store with the default initial capacity.
+   */
+  public OffHeapRecordStore() {
+    this(new ArtOrdinals(), 1024, 32 * 1024);
+  }
+
+  /**
+   * Create a store.
+   *
+   * @param arts The ordinals of the arts.
+   * @param records The initial record capacity.
+   * @param characters The initial character capacity.
+   * @throws IllegalArgumentException The ordinals were undefined, or the capacities were not positive.
+   */
+  public OffHeapRecordStore(ArtOrdinals arts, int records, int characters) throws IllegalArgumentException {
+    if (arts == null || records <= 0 || characters <= 0) throw new IllegalArgumentException(STORE_FULL_MESSAGE);
+    this.arts = arts;
+    this.buffers = new Buffers(ByteBuffer.allocateDirect(records * SLOT_SIZE), ByteBuffer.allocateDirect(characters * 2));
+  }
+
+  /**
+   * Create a cursor.
+   *
+   * @return A new cursor of the store.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Get the number of records.
+   *
+   * @return The number of published records.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Get the number of bytes reserved outside of the heap.
+   *
+   * @return The capacity of the buffers in bytes.
+   */
+  public long getReservedBytes() {
+    Buffers current = buffers;
+    return (long)current.slots.capacity() + current.chars.capacity();
+  }
+
+  /**
+   * Append a guideline.
+   *
+   * @param guideline The appended guideline.
+   * @return The index of the record.
+   * @throws IllegalArgumentException The guideline was undefined or incomplete.
+   * @throws IllegalStateException The store was full.
+   */
+  public int addGuideline(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException, IllegalStateException {
+    if (guideline == null || guideline.getTechnique() == null || guideline.getForm() == null) {
+      throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    }
+    Art.Level level = guideline.getLevel();
+    short value = level == null || level.isAbsent() ? GENERIC_LEVEL : level.shortValue();
+    lock.lock();
+    try {
+      int slot = reserveSlot();
+      ByteBuffer slots = buffers.slots;
+      slots.put(slot + KIND, GUIDELINE_RECORD);
+      slots.putShort(slot + TECHNIQUE, arts.ordinal(guideline.getTechnique()));
+      slots.putShort(slot + FORM, arts.ordinal(guideline.getForm()));
+      slots.putShort(slot + LEVEL, value);
+      slots.putShort(slot + BASE_LEVEL, value);
+      slots.putInt(slot + EXTRA_MAGNITUDES, 0);
+      putText(slot + NAME, guideline.getName());
+      putText(slot + DESCRIPTION, guideline.getDescription().orElse(null));
+      slots.putInt(slot + REQUISITES, 0);
+      slots.putInt(slot + REQUISITE_COUNT, 0);
+      return count++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a spell design.
+   *
+   * @param spell The appended spell.
+   * @return The index of the record.
+   * @throws IllegalArgumentException The spell was undefined.
+   * @throws IllegalStateException The store was full.
+   */
+  public int addSpell(SpellDesign spell) throws IllegalArgumentException, IllegalStateException {
+    if (spell == null) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    lock.lock();
+    try {
+      int slot = reserveSlot();
+      ByteBuffer slots = buffers.slots;
+      slots.put(slot + KIND, SPELL_RECORD);
+      slots.put(slot + RANGE, (byte)spell.getRange().ordinal());
+      slots.put(slot + DURATION, (byte)spell.getDuration().ordinal());
+      slots.put(slot + TARGET, (byte)spell.getTarget().ordinal());
+      slots.putShort(slot + TECHNIQUE, arts.ordinal(spell.getTechnique()));
+      slots.putShort(slot + FORM, arts.ordinal(spell.getForm()));
+      slots.putShort(slot + LEVEL, spell.getLevel());
+      slots.putShort(slot + BASE_LEVEL, spell.getBaseLevel());
+      slots.putInt(slot + EXTRA_MAGNITUDES, spell.getExtraMagnitudes());
+      putText(slot + NAME, spell.getName());
+      putText(slot + DESCRIPTION, null);
+      List<ArtInterface<?>> requisites = spell.getRequisites();
+      char[] requisiteOrdinals = new char[requisites.size()];
+      for (int i = 0; i < requisiteOrdinals.length; i++) requisiteOrdinals[i] = (char)arts.ordinal(requisites.get(i));
+      slots.putInt(slot + REQUISITES, putChars(CharBuffer.wrap(requisiteOrdinals)));
+      slots.putInt(slot + REQUISITE_COUNT, requisiteOrdinals.length);
+      return count++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reserve the slot of the next record.
+   *
+   * @return The byte offset of the slot.
+   * @throws IllegalStateException The store was full.
+   */
+  private int reserveSlot() throws IllegalStateException {
+    Buffers current = buffers;
+    int slot = count * SLOT_SIZE;
+    if (slot + SLOT_SIZE > current.slots.capacity()) {
+      if (current.slots.capacity() > Integer.MAX_VALUE / 2) throw new IllegalStateException(STORE_FULL_MESSAGE);
+      buffers = new Buffers(copy(current.slots, current.slots.capacity() * 2, slot), current.chars);
+    }
+    return slot;
+  }
+
+  /**
+   * Store a text and its offset and length at a slot field.
+   *
+   * @param field The byte offset of the text offset field.
+   * @param text The stored text, or an undefined value for no text.
+   * @throws IllegalStateException The store was full.
+   */
+  private void putText(int field, CharSequence text) throws IllegalStateException {
+    int start = text == null ? 0 : putChars(text);
+    buffers.slots.putInt(field, start);
+    buffers.slots.putInt(field + 4, text == null ? -1 : text.length());
+  }
+
+  /**
+   * Append characters to the character area.
+   *
+   * @param text The appended characters.
+   * @return The character offset of the characters.
+   * @throws IllegalStateException The store was full.
+   */
+  private int putChars(CharSequence text) throws IllegalStateException {
+    Buffers current = buffers;
+    long needed = 2L * (charsUsed + text.length());
+    if (needed > current.chars.capacity()) {
+      long capacity = Math.max(needed, 2L * current.chars.capacity());
+      if (capacity > Integer.MAX_VALUE - 8) throw new IllegalStateException(STORE_FULL_MESSAGE);
+      current = new Buffers(current.slots, copy(current.chars, (int)capacity, charsUsed * 2));
+      buffers = current;
+    }
+    int start = charsUsed;
+    for (int i = 0; i < text.length(); i++) current.chars.putChar((start + i) * 2, text.charAt(i));
+    charsUsed += text.length();
+    return start;
+  }
+
+  /**
+   * Copy a buffer into a larger direct buffer.
+   *
+   * @param source The copied buffer.
+   * @param capacity The capacity of the copy.
+   * @param used The number of used bytes.
+   * @return The copy.
+   */
+  private static ByteBuffer copy(ByteBuffer source, int capacity, int used) {
+    ByteBuffer result = ByteBuffer.allocateDirect(capacity);
+    result.put(0, source, 0, used);
+    return result;
+  }
+}
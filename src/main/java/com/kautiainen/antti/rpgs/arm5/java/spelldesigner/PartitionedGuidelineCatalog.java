@@ -0,0 +1,519 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A guideline catalog partitioned across several nodes.
+ *
+ * The guidelines are sharded by their technique and form with consistent hashing: every node
+ * owns several points of a hash ring, and a technique and form belongs to the node owning the
+ * next point of the ring. Adding a node moves only the guidelines of the ring segments the new
+ * node takes over.
+ *
+ * A query is sent to the nodes owning the queried techniques and forms, or to every node, in
+ * parallel. The level ordered results of the nodes are merged into a single level ordered
+ * result.
+ */
+public class PartitionedGuidelineCatalog {
+
+  /**
+   * The default number of the points of a node in the hash ring.
+   */
+  public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+  /**
+   * The error message indicating a node was invalid.
+   */
+  public static final String INVALID_NODE_MESSAGE = "Invalid node";
+
+  /**
+   * A node storing a partition of the guidelines.
+   *
+   * The identifiers of the guidelines are local to their node. A node of another process is
+   * implemented by forwarding the operations to it.
+   */
+  public static interface Node {
+
+    /**
+     * Get the name of the node.
+     *
+     * @return The unique name of the node determining its points in the hash ring.
+     */
+    String getName();
+
+    /**
+     * Add a guideline to the node.
+     *
+     * @param guideline The added guideline.
+     * @return The identifier of the guideline in the node.
+     * @throws IllegalArgumentException The guideline was invalid.
+     */
+    int add(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException;
+
+    /**
+     * Remove a guideline from the node.
+     *
+     * @param guideline The removed guideline.
+     * @return True, if and only if the guideline was removed.
+     */
+    boolean remove(SpellGuideline<?, ?, ?, ?> guideline);
+
+    /**
+     * Get a guideline of the node.
+     *
+     * @param id The identifier of the guideline in the node.
+     * @return The guideline, or an undefined value, if the identifier is unused.
+     */
+    SpellGuideline<?, ?, ?, ?> get(int id);
+
+    /**
+     * Get the number of the guidelines of the node.
+     *
+     * @return The number of the guidelines.
+     */
+    int size();
+
+    /**
+     * Get the keys of the guidelines of techniques and forms in the order of the level and the
+     * identifier.
+     *
+     * @param techniques The technique keys, or an undefined value for any technique.
+     * @param forms The form keys, or an undefined value for any form.
+     * @param min The minimal level key, inclusive.
+     * @param max The maximal level key, inclusive.
+     * @param limit The largest number of keys.
+     * @return The keys with the level key in the high and the identifier in the low 32 bits.
+     */
+    long[] keys(List<String> techniques, List<String> forms, int min, int max, int limit);
+
+    /**
+     * Get the guidelines of the node for moving them to other nodes.
+     *
+     * @return The iterator over the guidelines of the node when it was created, which the
+     * removals of the guidelines do not disturb.
+     */
+    Iterator<SpellGuideline<?, ?, ?, ?>> guidelines();
+  }
+
+  /**
+   * A node storing its partition in a catalog of this process.
+   */
+  public static class LocalNode implements Node {
+
+    /**
+     * The name of the node.
+     */
+    private final String name;
+
+    /**
+     * The catalog of the partition. The changes of a partition are not published, as the
+     * partition catalog is not seen by the change feed subscribers.
+     */
+    private final GuidelineCatalog catalog = new GuidelineCatalog(false);
+
+    /**
+     * Create a new local node.
+     *
+     * @param name The name of the node.
+     * @throws IllegalArgumentException The name was undefined or blank.
+     */
+    public LocalNode(String name) throws IllegalArgumentException {
+      if (name == null || name.isBlank()) throw new IllegalArgumentException(INVALID_NODE_MESSAGE);
+      this.name = name;
+    }
+
+    /**
+     * Get the catalog of the partition.
+     *
+     * @return The catalog of the guidelines of the node.
+     */
+    public GuidelineCatalog getCatalog() {
+      return catalog;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int add(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+      return catalog.add(guideline);
+    }
+
+    @Override
+    public boolean remove(SpellGuideline<?, ?, ?, ?> guideline) {
+      return catalog.remove(guideline);
+    }
+
+    @Override
+    public SpellGuideline<?, ?, ?, ?> get(int id) {
+      return catalog.get(id);
+    }
+
+    @Override
+    public int size() {
+      return catalog.size();
+    }
+
+    @Override
+    public long[] keys(List<String> techniques, List<String> forms, int min, int max, int limit) {
+      return catalog.keysOfTechniquesAndForms(techniques, forms, min, max, limit);
+    }
+
+    @Override
+    public Iterator<SpellGuideline<?, ?, ?, ?>> guidelines() {
+      return Arrays.stream(catalog.ids()).<SpellGuideline<?, ?, ?, ?>>mapToObj(catalog::get)
+      .filter(Objects::nonNull).iterator();
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * The lazily created executor of the queries of the nodes.
+   */
+  private static final class Holder {
+
+    /**
+     * The executor.
+     */
+    static final Executor EXECUTOR = ResourceExecutors.newCachedDaemonPool("spell-shard-");
+  }
+
+  /**
+   * The executor of the queries of the nodes.
+   */
+  private final Executor executor;
+
+  /**
+   * The number of the points of a node in the ring.
+   */
+  private final int virtualNodes;
+
+  /**
+   * The nodes in the order of their addition.
+   */
+  private final List<Node> nodes = new ArrayList<>();
+
+  /**
+   * The hash ring from the points to the nodes.
+   */
+  private final TreeMap<Long, Node> ring = new TreeMap<>();
+
+  /**
+   * The lock of the ring. The queries and the changes of the guidelines share the lock, and the
+   * changes of the nodes take the exclusive lock while moving the guidelines.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Create a new catalog of local nodes.
+   *
+   * @param nodeCount The number of the local nodes.
+   * @throws IllegalArgumentException The number of the nodes was not positive.
+   */
+  public PartitionedGuidelineCatalog(int nodeCount) throws IllegalArgumentException {
+    this(localNodes(nodeCount), DEFAULT_VIRTUAL_NODES, Holder.EXECUTOR);
+  }
+
+  /**
+   * Create a new catalog.
+   *
+   * @param nodes The initial nodes.
+   * @param virtualNodes The number of the points of a node in the hash ring.
+   * @param executor The executor of the queries of the nodes.
+   * @throws IllegalArgumentException Any argument was invalid.
+   */
+  public PartitionedGuidelineCatalog(List<? extends Node> nodes, int virtualNodes, Executor executor)
+  throws IllegalArgumentException {
+    if (nodes == null || nodes.isEmpty()) throw new IllegalArgumentException(INVALID_NODE_MESSAGE);
+    if (virtualNodes <= 0) throw new IllegalArgumentException("Invalid number of virtual nodes");
+    if (executor == null) throw new IllegalArgumentException("Invalid executor");
+    this.virtualNodes = virtualNodes;
+    this.executor = executor;
+    for (Node node : nodes) addToRing(node);
+  }
+
+  /**
+   * Create local nodes.
+   *
+   * @param count The number of the nodes.
+   * @return The nodes named "node-0", "node-1", and so on.
+   * @throws IllegalArgumentException The number was not positive.
+   */
+  private static List<Node> localNodes(int count) throws IllegalArgumentException {
+    if (count <= 0) throw new IllegalArgumentException(INVALID_NODE_MESSAGE);
+    List<Node> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) result.add(new LocalNode("node-" + i));
+    return result;
+  }
+
+  /**
+   * Get the hash of a text.
+   *
+   * @param text The text.
+   * @return The 64 bit FNV-1a hash of the text with a final avalanche mix.
+   */
+  static long hash(String text) {
+    long result = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      result ^= text.charAt(i);
+      result *= 0x100000001b3L;
+    }
+    result ^= result >>> 33;
+    result *= 0xff51afd7ed558ccdL;
+    result ^= result >>> 33;
+    result *= 0xc4ceb9fe1a85ec53L;
+    return result ^ (result >>> 33);
+  }
+
+  /**
+   * Add the points of a node to the ring.
+   *
+   * @param node The node.
+   * @throws IllegalArgumentException The node was undefined or had the name of an existing node.
+   */
+  private void addToRing(Node node) throws IllegalArgumentException {
+    if (node == null || nodes.stream().anyMatch(existing -> existing.getName().equals(node.getName()))) {
+      throw new IllegalArgumentException(INVALID_NODE_MESSAGE);
+    }
+    nodes.add(node);
+    for (int i = 0; i < virtualNodes; i++) ring.putIfAbsent(hash(node.getName() + '#' + i), node);
+  }
+
+  /**
+   * Get the owner of a technique and form in the ring. Called with the lock.
+   *
+   * @param technique The technique key.
+   * @param form The form key.
+   * @return The node owning the technique and the form.
+   */
+  private Node owner(String technique, String form) {
+    Map.Entry<Long, Node> entry = ring.ceilingEntry(hash(GuidelineCatalog.techniqueAndFormKey(technique, form)));
+    return (entry == null ? ring.firstEntry() : entry).getValue();
+  }
+
+  /**
+   * Get the node owning a technique and a form.
+   *
+   * @param technique The technique key.
+   * @param form The form key.
+   * @return The node storing the guidelines of the technique and the form.
+   */
+  public Node nodeOf(String technique, String form) {
+    lock.readLock().lock();
+    try {
+      return owner(technique, form);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the node owning a guideline.
+   *
+   * @param guideline The guideline.
+   * @return The node storing the guideline.
+   */
+  private Node owner(SpellGuideline<?, ?, ?, ?> guideline) {
+    return owner(GuidelineCatalog.artKey(guideline.getTechnique()), GuidelineCatalog.artKey(guideline.getForm()));
+  }
+
+  /**
+   * Get the nodes.
+   *
+   * @return The unmodifiable list of the nodes in the order of their addition.
+   */
+  public List<Node> getNodes() {
+    lock.readLock().lock();
+    try {
+      return Collections.unmodifiableList(new ArrayList<>(nodes));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Add a node.
+   *
+   * The guidelines of the ring segments taken over by the new node are moved to it.
+   *
+   * @param node The added node.
+   * @return The number of the moved guidelines.
+   * @throws IllegalArgumentException The node was undefined or had the name of an existing node.
+   */
+  public int addNode(Node node) throws IllegalArgumentException {
+    lock.writeLock().lock();
+    try {
+      List<Node> previous = new ArrayList<>(nodes);
+      addToRing(node);
+      int result = 0;
+      for (Node source : previous) {
+        for (Iterator<SpellGuideline<?, ?, ?, ?>> guidelines = source.guidelines(); guidelines.hasNext();) {
+          SpellGuideline<?, ?, ?, ?> guideline = guidelines.next();
+          if (owner(guideline) == node) {
+            node.add(guideline);
+            source.remove(guideline);
+            result++;
+          }
+        }
+      }
+      return result;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add a guideline to its node.
+   *
+   * @param guideline The added guideline.
+   * @return The node storing the guideline.
+   * @throws IllegalArgumentException The guideline was undefined or invalid.
+   */
+  public Node add(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+    if (guideline == null) throw new IllegalArgumentException("Undefined guideline");
+    lock.readLock().lock();
+    try {
+      Node result = owner(guideline);
+      result.add(guideline);
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Remove a guideline from its node.
+   *
+   * @param guideline The removed guideline.
+   * @return True, if and only if the guideline was removed.
+   */
+  public boolean remove(SpellGuideline<?, ?, ?, ?> guideline) {
+    if (guideline == null) return false;
+    lock.readLock().lock();
+    try {
+      return owner(guideline).remove(guideline);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the number of the guidelines.
+   *
+   * @return The total number of the guidelines of the nodes.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      int result = 0;
+      for (Node node : nodes) result += node.size();
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the guidelines of techniques and forms within a level range.
+   *
+   * @param techniques The technique keys, or an undefined value for any technique.
+   * @param forms The form keys, or an undefined value for any form.
+   * @param min The minimal level key, inclusive.
+   * @param max The maximal level key, inclusive.
+   * @param limit The largest number of guidelines.
+   * @return The first guidelines in the order of the level.
+   * @throws IllegalArgumentException The limit was negative.
+   */
+  public List<SpellGuideline<?, ?, ?, ?>> find(List<String> techniques, List<String> forms, int min, int max, int limit)
+  throws IllegalArgumentException {
+    if (limit < 0) throw new IllegalArgumentException("Invalid limit");
+    lock.readLock().lock();
+    try {
+      List<Node> targets = targets(techniques, forms);
+      List<long[]> results = new ArrayList<>(targets.size());
+      if (targets.size() == 1) {
+        results.add(targets.get(0).keys(techniques, forms, min, max, limit));
+      } else {
+        List<CompletableFuture<long[]>> queries = new ArrayList<>(targets.size());
+        for (Node node : targets) {
+          queries.add(CompletableFuture.supplyAsync(() -> node.keys(techniques, forms, min, max, limit), executor));
+        }
+        try {
+          for (CompletableFuture<long[]> query : queries) results.add(query.join());
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof RuntimeException failure) throw failure;
+          throw e;
+        }
+      }
+      return merge(targets, results, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the nodes of a query. Called with the lock.
+   *
+   * @param techniques The technique keys, or an undefined value for any technique.
+   * @param forms The form keys, or an undefined value for any form.
+   * @return The owners of the techniques and the forms, or every node, if either is undefined.
+   */
+  private List<Node> targets(List<String> techniques, List<String> forms) {
+    if (techniques == null || forms == null) return nodes;
+    Set<Node> result = new LinkedHashSet<>();
+    for (String technique : techniques) {
+      for (String form : forms) result.add(owner(technique, form));
+    }
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Merge the level ordered keys of the nodes.
+   *
+   * @param targets The queried nodes.
+   * @param results The keys of the nodes.
+   * @param limit The largest number of guidelines.
+   * @return The guidelines in the order of the level, the node, and the identifier.
+   */
+  private static List<SpellGuideline<?, ?, ?, ?>> merge(List<Node> targets, List<long[]> results, int limit) {
+    // The heap holds the index of the node in the high and the position in the low 32 bits.
+    PriorityQueue<Long> heads = new PriorityQueue<>(Math.max(1, targets.size()), (first, second) -> {
+      int order = Long.compare(results.get((int)(first >>> 32))[(int)(long)first],
+      results.get((int)(second >>> 32))[(int)(long)second]);
+      return order != 0 ? order : Long.compare(first >>> 32, second >>> 32);
+    });
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i).length > 0) heads.add((long)i << 32);
+    }
+    List<SpellGuideline<?, ?, ?, ?>> result = new ArrayList<>();
+    while (result.size() < limit && !heads.isEmpty()) {
+      long head = heads.poll();
+      int index = (int)(head >>> 32);
+      int position = (int)head;
+      SpellGuideline<?, ?, ?, ?> guideline = targets.get(index).get((int)results.get(index)[position]);
+      if (guideline != null) result.add(guideline);
+      if (position + 1 < results.get(index).length) heads.add(head + 1);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,345 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The rendered and compressed catalog payloads.
+ *
+ * A payload is rendered and compressed once per version of its catalog and arts, and every
+ * request of the same version is served from the stored bytes. The gzip and deflate variants
+ * are compressed with the best compression, as the cost is paid only once.
+ */
+public final class PrecompressedPayloads {
+
+  /**
+   * The largest number of guidelines of a cached catalog. The larger catalogs are streamed.
+   */
+  public static final int MAX_GUIDELINES = 50_000;
+
+  /**
+   * The content encodings of the payloads in the order of the preference.
+   */
+  public static enum Encoding {
+    /**
+     * The gzip encoding.
+     */
+    GZIP("gzip"),
+    /**
+     * The zlib encoding of the HTTP deflate encoding.
+     */
+    DEFLATE("deflate"),
+    /**
+     * The uncompressed payload.
+     */
+    IDENTITY("identity");
+
+    /**
+     * The name of the encoding in the HTTP headers.
+     */
+    private final String token;
+
+    /**
+     * Create a new encoding.
+     *
+     * @param token The name of the encoding in the HTTP headers.
+     */
+    private Encoding(String token) {
+      this.token = token;
+    }
+
+    /**
+     * Get the name of the encoding.
+     *
+     * @return The name of the encoding in the HTTP headers.
+     */
+    public String getToken() {
+      return token;
+    }
+  }
+
+  /**
+   * A rendered payload.
+   */
+  public static final class Payload {
+
+    /**
+     * The rendered catalog.
+     */
+    private final GuidelineCatalog catalog;
+
+    /**
+     * The version of the rendered catalog.
+     */
+    private final long version;
+
+    /**
+     * The rendered arts.
+     */
+    private final HermeticArts arts;
+
+    /**
+     * The variants by the ordinal of the encoding.
+     */
+    private final byte[][] variants;
+
+    /**
+     * The entity tag of the uncompressed payload without the quotes.
+     */
+    private final String tag;
+
+    /**
+     * Create a new payload.
+     *
+     * @param catalog The catalog.
+     * @param version The version of the catalog.
+     * @param arts The arts.
+     * @param identity The uncompressed payload.
+     */
+    private Payload(GuidelineCatalog catalog, long version, HermeticArts arts, byte[] identity) {
+      this.catalog = catalog;
+      this.version = version;
+      this.arts = arts;
+      this.variants = new byte[Encoding.values().length][];
+      variants[Encoding.IDENTITY.ordinal()] = identity;
+      variants[Encoding.GZIP.ordinal()] = compress(identity, GZIP_COMPRESSOR);
+      variants[Encoding.DEFLATE.ordinal()] = compress(identity, DEFLATE_COMPRESSOR);
+      this.tag = digest(identity);
+    }
+
+    /**
+     * Is the payload rendered from a catalog version and arts.
+     *
+     * @param catalog The catalog.
+     * @param version The version of the catalog.
+     * @param arts The arts.
+     * @return True, if and only if the payload is current.
+     */
+    private boolean isOf(GuidelineCatalog catalog, long version, HermeticArts arts) {
+      return this.catalog == catalog && this.version == version && this.arts == arts;
+    }
+
+    /**
+     * Get the version of the rendered catalog.
+     *
+     * @return The version of the catalog.
+     */
+    public long getVersion() {
+      return version;
+    }
+
+    /**
+     * Get an encoded variant of the payload.
+     *
+     * @param encoding The encoding.
+     * @return The shared bytes of the variant, which must not be modified.
+     */
+    public byte[] getBytes(Encoding encoding) {
+      return variants[encoding.ordinal()];
+    }
+
+    /**
+     * Get the entity tag of an encoded variant.
+     *
+     * @param encoding The encoding.
+     * @return The value of the strong entity tag without the quotes.
+     */
+    public String getEntityTag(Encoding encoding) {
+      return encoding == Encoding.IDENTITY ? tag : tag + "-" + encoding.getToken();
+    }
+  }
+
+  /**
+   * The compressor of an output.
+   */
+  @FunctionalInterface
+  private static interface Compressor {
+
+    /**
+     * Wrap an output.
+     *
+     * @param output The output of the compressed bytes.
+     * @return The output compressing into the output.
+     * @throws IOException The creation failed.
+     */
+    OutputStream wrap(OutputStream output) throws IOException;
+  }
+
+  /**
+   * The gzip compressor.
+   */
+  private static final Compressor GZIP_COMPRESSOR = output -> new GZIPOutputStream(output) {
+    {
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  };
+
+  /**
+   * The deflate compressor.
+   */
+  private static final Compressor DEFLATE_COMPRESSOR = output -> new DeflaterOutputStream(output,
+  new Deflater(Deflater.BEST_COMPRESSION)) {
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      // The deflater is not owned by the stream, so it is released here.
+      def.end();
+    }
+  };
+
+  /**
+   * The latest payloads by variant.
+   */
+  private static final Map<String, Payload> PAYLOADS = new ConcurrentHashMap<>();
+
+  /**
+   * The lock of the rendering, so a version is rendered only once.
+   */
+  private static final ReentrantLock RENDER_LOCK = new ReentrantLock();
+
+  /**
+   * The payloads are not instantiated.
+   */
+  private PrecompressedPayloads() {
+  }
+
+  /**
+   * Compress bytes.
+   *
+   * @param bytes The bytes.
+   * @param compressor The compressor.
+   * @return The compressed bytes.
+   */
+  private static byte[] compress(byte[] bytes, Compressor compressor) {
+    ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+    try (OutputStream output = compressor.wrap(result)) {
+      output.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result.toByteArray();
+  }
+
+  /**
+   * Get the digest of bytes.
+   *
+   * @param bytes The bytes.
+   * @return The URL safe Base64 encoding of the first 128 bits of the SHA-256 digest.
+   */
+  private static String digest(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get the export payload of a catalog.
+   *
+   * @param catalog The catalog.
+   * @param arts The arts.
+   * @param format The format.
+   * @param grouped Are the guidelines grouped by the technique and the form.
+   * @return The payload of the current version of the catalog.
+   * @throws IllegalArgumentException The catalog or the arts was undefined.
+   */
+  public static Payload export(GuidelineCatalog catalog, HermeticArts arts, GrimoireExporter.Format format,
+  boolean grouped) throws IllegalArgumentException {
+    if (catalog == null || arts == null) throw new IllegalArgumentException("Undefined catalog");
+    String key = format.name() + (grouped ? "/grouped" : "/ungrouped");
+    long version = catalog.getVersion();
+    Payload result = PAYLOADS.get(key);
+    if (result != null && result.isOf(catalog, version, arts)) return result;
+    RENDER_LOCK.lock();
+    try {
+      version = catalog.getVersion();
+      result = PAYLOADS.get(key);
+      if (result != null && result.isOf(catalog, version, arts)) return result;
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(GrimoireExporter.BUFFER_SIZE);
+      try {
+        new GrimoireExporter(catalog, arts).export(bytes, format, grouped);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      // A change during the rendering raises the version, so the payload is rendered again.
+      result = new Payload(catalog, version, arts, bytes.toByteArray());
+      PAYLOADS.put(key, result);
+      return result;
+    } finally {
+      RENDER_LOCK.unlock();
+    }
+  }
+
+  /**
+   * Choose the encoding of a response.
+   *
+   * @param acceptEncoding The value of the Accept-Encoding header, or an undefined value.
+   * @return The preferred acceptable encoding with the highest quality.
+   */
+  public static Encoding negotiate(String acceptEncoding) {
+    if (acceptEncoding == null || acceptEncoding.isBlank()) return Encoding.IDENTITY;
+    // The quality of an unlisted encoding is negative.
+    double[] quality = new double[Encoding.values().length];
+    Arrays.fill(quality, -1);
+    double wildcard = -1;
+    for (String part : acceptEncoding.split(",")) {
+      String[] fields = part.split(";");
+      String token = fields[0].strip().toLowerCase(Locale.ROOT);
+      double value = 1;
+      for (int i = 1; i < fields.length; i++) {
+        String parameter = fields[i].strip().toLowerCase(Locale.ROOT);
+        if (parameter.startsWith("q=")) {
+          try {
+            value = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            value = 0;
+          }
+        }
+      }
+      Encoding encoding = switch (token) {
+        case "gzip", "x-gzip" -> Encoding.GZIP;
+        case "deflate" -> Encoding.DEFLATE;
+        case "identity" -> Encoding.IDENTITY;
+        default -> null;
+      };
+      if ("*".equals(token)) {
+        wildcard = value;
+      } else if (encoding != null) {
+        quality[encoding.ordinal()] = Math.max(quality[encoding.ordinal()], value);
+      }
+    }
+    boolean identityListed = quality[Encoding.IDENTITY.ordinal()] >= 0;
+    for (int i = 0; i < quality.length; i++) {
+      if (quality[i] < 0) quality[i] = wildcard >= 0 ? wildcard : 0;
+    }
+    // The identity is acceptable unless it is explicitly refused.
+    if (quality[Encoding.IDENTITY.ordinal()] == 0 && wildcard != 0 && !identityListed) {
+      quality[Encoding.IDENTITY.ordinal()] = Double.MIN_VALUE;
+    }
+    Encoding result = Encoding.IDENTITY;
+    double best = 0;
+    for (Encoding encoding : Encoding.values()) {
+      if (quality[encoding.ordinal()] > best) {
+        best = quality[encoding.ordinal()];
+        result = encoding;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,294 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * The executors of the blocking work of the resources.
+ *
+ * The execution mode is chosen with the system property {@link #MODE_PROPERTY}:
+ * <ul>
+ * <li>"platform", the default, runs the work on a bounded pool of platform threads with a
+ * bounded queue. The work rejected by a full queue is answered with the status 503, so slow
+ * exports and batches cannot queue up every other request behind them.</li>
+ * <li>"virtual" runs every task on its own virtual thread on Java 21 and later. The executor
+ * is created reflectively, so the application still compiles and runs on Java 17, where the
+ * mode falls back to the platform threads.</li>
+ * <li>"managed" uses the default managed executor of the container, which the container may
+ * back with virtual threads.</li>
+ * </ul>
+ * The shared structures used by the resources lock with {@link java.util.concurrent.locks.ReentrantLock}
+ * or are lock free, so a blocked virtual thread never pins its carrier thread.
+ */
+public final class ResourceExecutors {
+
+  /**
+   * The system property of the execution mode.
+   */
+  public static final String MODE_PROPERTY = "arm5.spells.executionMode";
+
+  /**
+   * The system property of the number of platform threads.
+   */
+  public static final String PLATFORM_THREADS_PROPERTY = "arm5.spells.platformThreads";
+
+  /**
+   * The default number of platform threads.
+   */
+  public static final int DEFAULT_PLATFORM_THREADS = 32;
+
+  /**
+   * The system property of the number of the queued tasks of the platform threads.
+   */
+  public static final String PLATFORM_QUEUE_PROPERTY = "arm5.spells.platformQueue";
+
+  /**
+   * The default number of the queued tasks of the platform threads.
+   */
+  public static final int DEFAULT_PLATFORM_QUEUE = 64;
+
+  /**
+   * The JNDI name of the default managed executor.
+   */
+  public static final String MANAGED_EXECUTOR_NAME = "java:comp/DefaultManagedExecutorService";
+
+  /**
+   * The execution modes.
+   */
+  public static enum Mode {
+    /**
+     * A bounded pool of platform threads with a bounded queue.
+     */
+    PLATFORM,
+    /**
+     * A virtual thread per task.
+     */
+    VIRTUAL,
+    /**
+     * The managed executor of the container.
+     */
+    MANAGED;
+  }
+
+  /**
+   * The number of created platform threads.
+   */
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  /**
+   * The lazily created executors of the configured mode.
+   */
+  private static final class Holder {
+
+    /**
+     * The mode in use.
+     */
+    static final Mode MODE;
+
+    /**
+     * The executor of the resources.
+     */
+    static final ExecutorService EXECUTOR;
+
+    static {
+      Mode mode = requestedMode();
+      ExecutorService executor;
+      try {
+        executor = create(mode, platformThreads());
+      } catch (UnsupportedOperationException e) {
+        mode = Mode.PLATFORM;
+        executor = create(mode, platformThreads());
+      }
+      MODE = mode;
+      EXECUTOR = executor;
+    }
+
+    /**
+     * The executor of the pipeline stages.
+     */
+    static final ExecutorService STAGE_EXECUTOR = MODE == Mode.VIRTUAL ? EXECUTOR : newCachedDaemonPool("spell-stage-");
+  }
+
+  /**
+   * The executors are not instantiated.
+   */
+  private ResourceExecutors() {
+  }
+
+  /**
+   * Get the configured execution mode.
+   *
+   * @return The mode in use, which is the platform mode when the requested mode is unavailable.
+   */
+  public static Mode getMode() {
+    return Holder.MODE;
+  }
+
+  /**
+   * Get the executor of the resources.
+   *
+   * @return The executor of the configured mode.
+   */
+  public static ExecutorService getExecutor() {
+    return Holder.EXECUTOR;
+  }
+
+  /**
+   * Get the executor of the stages of the pipelines.
+   *
+   * The stages block on each other, so in the bounded platform and managed modes they get
+   * their own unbounded pool instead of competing with the resources for the bounded pool.
+   * In the virtual mode the stages share the unbounded executor of the resources.
+   *
+   * @return The executor of the stages.
+   */
+  public static ExecutorService getStageExecutor() {
+    return Holder.STAGE_EXECUTOR;
+  }
+
+  /**
+   * Test whether the runtime supports virtual threads.
+   *
+   * @return True, if and only if the virtual thread executor exists.
+   */
+  public static boolean virtualThreadsSupported() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Create an executor.
+   *
+   * @param mode The mode.
+   * @param platformThreads The number of threads of the platform mode.
+   * @return The new executor.
+   * @throws UnsupportedOperationException The mode was not available.
+   */
+  public static ExecutorService create(Mode mode, int platformThreads) throws UnsupportedOperationException {
+    return create(mode, platformThreads, platformQueue());
+  }
+
+  /**
+   * Create an executor.
+   *
+   * @param mode The mode.
+   * @param platformThreads The number of threads of the platform mode.
+   * @param platformQueue The number of the queued tasks of the platform mode.
+   * @return The new executor.
+   * @throws UnsupportedOperationException The mode was not available.
+   */
+  public static ExecutorService create(Mode mode, int platformThreads, int platformQueue)
+  throws UnsupportedOperationException {
+    switch (mode) {
+      case VIRTUAL:
+        try {
+          return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+          throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+      case MANAGED:
+        try {
+          return (ExecutorService)new InitialContext().lookup(MANAGED_EXECUTOR_NAME);
+        } catch (NamingException | ClassCastException e) {
+          throw new UnsupportedOperationException("The managed executor is not available", e);
+        }
+      default:
+        // The queue is bounded, so the overload is rejected instead of delaying every request.
+        return new ThreadPoolExecutor(platformThreads, platformThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(platformQueue), runnable -> {
+          Thread result = new Thread(runnable, "spell-resource-" + THREADS.incrementAndGet());
+          result.setDaemon(true);
+          return result;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+  }
+
+  /**
+   * Run the work of a suspended request and resume the request with its response.
+   *
+   * The common implementations write the resumed response on the resuming thread, so the
+   * streaming of the response also runs on the executor.
+   *
+   * @param response The suspended response.
+   * @param work The work creating the response.
+   */
+  public static void resume(AsyncResponse response, Supplier<Response> work) {
+    try {
+      getExecutor().execute(() -> {
+        try {
+          response.resume(work.get());
+        } catch (RuntimeException e) {
+          response.resume(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+    }
+  }
+
+  /**
+   * Get the requested mode.
+   *
+   * @return The mode of the system property, or the platform mode.
+   */
+  private static Mode requestedMode() {
+    String value = System.getProperty(MODE_PROPERTY, Mode.PLATFORM.name());
+    try {
+      return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return Mode.PLATFORM;
+    }
+  }
+
+  /**
+   * Get the configured number of platform threads.
+   *
+   * @return The number of platform threads.
+   */
+  private static int platformThreads() {
+    Integer value = Integer.getInteger(PLATFORM_THREADS_PROPERTY, DEFAULT_PLATFORM_THREADS);
+    return value == null || value <= 0 ? DEFAULT_PLATFORM_THREADS : value;
+  }
+
+  /**
+   * Get the configured number of the queued tasks of the platform threads.
+   *
+   * @return The capacity of the queue of the platform threads.
+   */
+  private static int platformQueue() {
+    Integer value = Integer.getInteger(PLATFORM_QUEUE_PROPERTY, DEFAULT_PLATFORM_QUEUE);
+    return value == null || value <= 0 ? DEFAULT_PLATFORM_QUEUE : value;
+  }
+
+  /**
+   * Create an unbounded pool of daemon threads.
+   *
+   * @param prefix The prefix of the thread names.
+   * @return The pool.
+   */
+  static ExecutorService newCachedDaemonPool(String prefix) {
+    return Executors.newCachedThreadPool(runnable -> {
+      Thread result = new Thread(runnable, prefix + THREADS.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    });
+  }
+}
@@ -0,0 +1,659 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The art sets of many sagas.
+ *
+ * A saga using the standard arts shares the single standard art set. A saga renaming or
+ * adding arts stores only its differences from the standard arts: the arts it adds and the
+ * names of the standard arts it lacks. Every art is created once for all the sagas, so the
+ * sagas adding the same art share its instance, and the standard arts are the instances of
+ * {@link HermeticArts#DEFAULT_ARTS}.
+ */
+public class SagaArtSets {
+
+  /**
+   * The error message indicating a saga identifier was invalid.
+   */
+  public static final String INVALID_SAGA_MESSAGE = "Invalid saga";
+
+  /**
+   * The error message indicating art names were invalid.
+   */
+  public static final String INVALID_NAMES_MESSAGE = "Invalid art names";
+
+  /**
+   * The estimated size of an object header with a reference in bytes.
+   */
+  static final int OBJECT_BYTES = 16;
+
+  /**
+   * The estimated size of an entry of a hash map or a hash set in bytes.
+   */
+  static final int MAP_ENTRY_BYTES = 48;
+
+  /**
+   * The estimated size of an art with its name and abbreviation in bytes.
+   */
+  static final int ART_BYTES = 120;
+
+  /**
+   * The estimated size of a skip list node of a set of arts in bytes.
+   */
+  static final int SKIP_LIST_NODE_BYTES = 40;
+
+  /**
+   * The arts shared by all sagas by the key of their type, name, and abbreviation.
+   */
+  private static final Map<String, Art> SHARED_ARTS = new ConcurrentHashMap<>();
+
+  /**
+   * The standard techniques by name.
+   */
+  private static final Map<String, Art> DEFAULT_TECHNIQUES = new HashMap<>();
+
+  /**
+   * The standard forms by name.
+   */
+  private static final Map<String, Art> DEFAULT_FORMS = new HashMap<>();
+
+  static {
+    for (Art art : HermeticArts.DEFAULT_ARTS.getTechniques()) {
+      DEFAULT_TECHNIQUES.put(art.getName(), art);
+      SHARED_ARTS.put(sharedKey(HermeticArts.HermeticArtType.Technique, art.getName(), art.getAbbreviation().orElse(null)), art);
+    }
+    for (Art art : HermeticArts.DEFAULT_ARTS.getForms()) {
+      DEFAULT_FORMS.put(art.getName(), art);
+      SHARED_ARTS.put(sharedKey(HermeticArts.HermeticArtType.Form, art.getName(), art.getAbbreviation().orElse(null)), art);
+    }
+  }
+
+  /**
+   * The art set of the sagas using the standard arts.
+   */
+  public static final SagaArts DEFAULT_SAGA_ARTS = new SagaArts(true, Collections.emptyMap(), Collections.emptyMap(),
+  Collections.emptySet(), Collections.emptySet(), HermeticArts.HermeticArtType.Technique, HermeticArts.HermeticArtType.Form,
+  HermeticArts.DEFAULT_ARTS);
+
+  /**
+   * The art sets by saga.
+   */
+  private final ConcurrentHashMap<String, SagaArts> sagas = new ConcurrentHashMap<>();
+
+  /**
+   * The art set of a saga.
+   *
+   * The lookups by name take constant time: a name is looked up first from the arts of the
+   * saga, and then from the standard arts unless the saga lacks the standard art.
+   */
+  public static final class SagaArts {
+
+    /**
+     * Does the saga inherit the standard arts it does not lack.
+     */
+    private final boolean inheritsDefaults;
+
+    /**
+     * The techniques of the saga not among the standard techniques by name.
+     */
+    private final Map<String, Art> techniques;
+
+    /**
+     * The forms of the saga not among the standard forms by name.
+     */
+    private final Map<String, Art> forms;
+
+    /**
+     * The names of the standard techniques the saga lacks.
+     */
+    private final Set<String> missingTechniques;
+
+    /**
+     * The names of the standard forms the saga lacks.
+     */
+    private final Set<String> missingForms;
+
+    /**
+     * The type of the techniques.
+     */
+    private final Art.ArtType techniqueType;
+
+    /**
+     * The type of the forms.
+     */
+    private final Art.ArtType formType;
+
+    /**
+     * The lazily created Hermetic arts of the saga.
+     */
+    private volatile HermeticArts hermeticArts;
+
+    /**
+     * Create an art set.
+     *
+     * @param inheritsDefaults Does the saga inherit the standard arts.
+     * @param techniques The techniques not among the standard techniques.
+     * @param forms The forms not among the standard forms.
+     * @param missingTechniques The lacking standard techniques.
+     * @param missingForms The lacking standard forms.
+     * @param techniqueType The type of the techniques.
+     * @param formType The type of the forms.
+     * @param hermeticArts The Hermetic arts, or undefined to create them on demand.
+     */
+    private SagaArts(boolean inheritsDefaults, Map<String, Art> techniques, Map<String, Art> forms,
+    Set<String> missingTechniques, Set<String> missingForms, Art.ArtType techniqueType,
+    Art.ArtType formType, HermeticArts hermeticArts) {
+      this.inheritsDefaults = inheritsDefaults;
+      this.techniques = techniques;
+      this.forms = forms;
+      this.missingTechniques = missingTechniques;
+      this.missingForms = missingForms;
+      this.techniqueType = techniqueType;
+      this.formType = formType;
+      this.hermeticArts = hermeticArts;
+    }
+
+    /**
+     * Does the saga use exactly the standard arts.
+     *
+     * @return True, if and only if the saga shares the standard art set.
+     */
+    public boolean isDefault() {
+      return this == DEFAULT_SAGA_ARTS;
+    }
+
+    /**
+     * Get a technique of the saga.
+     *
+     * @param name The name of the technique.
+     * @return The technique, if the saga has one.
+     */
+    public Optional<Art> getTechnique(String name) {
+      return find(name, techniques, missingTechniques, DEFAULT_TECHNIQUES);
+    }
+
+    /**
+     * Get a form of the saga.
+     *
+     * @param name The name of the form.
+     * @return The form, if the saga has one.
+     */
+    public Optional<Art> getForm(String name) {
+      return find(name, forms, missingForms, DEFAULT_FORMS);
+    }
+
+    /**
+     * Find an art.
+     *
+     * @param name The name of the art.
+     * @param own The arts of the saga.
+     * @param missing The lacking standard arts.
+     * @param defaults The standard arts.
+     * @return The art, if the saga has one.
+     */
+    private Optional<Art> find(String name, Map<String, Art> own, Set<String> missing, Map<String, Art> defaults) {
+      if (name == null) return Optional.empty();
+      Art result = own.get(name);
+      if (result == null && inheritsDefaults && !missing.contains(name)) result = defaults.get(name);
+      return Optional.ofNullable(result);
+    }
+
+    /**
+     * Get the number of the arts stored for the saga alone.
+     *
+     * @return The number of the added arts and the lacking standard arts.
+     */
+    public int getDifferenceCount() {
+      return techniques.size() + forms.size() + missingTechniques.size() + missingForms.size();
+    }
+
+    /**
+     * Get the number of the arts of the saga.
+     *
+     * @return The number of the techniques and the forms.
+     */
+    public int getArtCount() {
+      int result = techniques.size() + forms.size();
+      if (inheritsDefaults) {
+        result += DEFAULT_TECHNIQUES.size() - missingTechniques.size() + DEFAULT_FORMS.size() - missingForms.size();
+      }
+      return result;
+    }
+
+    /**
+     * Get the names of arts.
+     *
+     * @param own The arts of the saga.
+     * @param missing The lacking standard arts.
+     * @param defaults The standard arts.
+     * @return The names of the arts of the saga.
+     */
+    private List<String> names(Map<String, Art> own, Set<String> missing, Map<String, Art> defaults) {
+      List<String> result = new ArrayList<>(own.keySet());
+      if (inheritsDefaults) {
+        for (String name : defaults.keySet()) if (!missing.contains(name)) result.add(name);
+      }
+      return result;
+    }
+
+    /**
+     * Get the Hermetic arts of the saga.
+     *
+     * The Hermetic arts are created on the first call with the shared art instances.
+     *
+     * @return The Hermetic arts of the saga.
+     */
+    public HermeticArts asHermeticArts() {
+      HermeticArts result = hermeticArts;
+      if (result == null) {
+        // Racing threads create equal arts from the shared instances, so either one may win.
+        result = new SharedHermeticArts(techniqueType, names(techniques, missingTechniques, DEFAULT_TECHNIQUES),
+        formType, names(forms, missingForms, DEFAULT_FORMS));
+        hermeticArts = result;
+      }
+      return result;
+    }
+
+    /**
+     * Have the Hermetic arts of the saga been created.
+     *
+     * @return True, if and only if the Hermetic arts exist.
+     */
+    boolean isMaterialized() {
+      return hermeticArts != null;
+    }
+  }
+
+  /**
+   * The Hermetic arts creating their arts from the shared arts.
+   */
+  private static final class SharedHermeticArts extends HermeticArts {
+
+    /**
+     * Create new Hermetic arts.
+     *
+     * @param techniqueType The type of the techniques.
+     * @param techniqueNames The names of the techniques.
+     * @param formType The type of the forms.
+     * @param formNames The names of the forms.
+     */
+    SharedHermeticArts(Art.ArtType techniqueType, List<String> techniqueNames, Art.ArtType formType, List<String> formNames) {
+      super(techniqueType, techniqueNames, formType, formNames);
+    }
+
+    @Override
+    public Art createArt(Art.ArtType type, String name, String abbrev) throws IllegalArgumentException {
+      return sharedArt(type, name, abbrev);
+    }
+  }
+
+  /**
+   * The memory used by the art sets.
+   */
+  public static final class MemoryReport {
+
+    /**
+     * The number of the sagas.
+     */
+    private final int sagaCount;
+
+    /**
+     * The number of the sagas sharing the standard art set.
+     */
+    private final int defaultSagaCount;
+
+    /**
+     * The number of the differences stored for the sagas.
+     */
+    private final long differenceCount;
+
+    /**
+     * The number of the sagas whose Hermetic arts have been created.
+     */
+    private final int materializedCount;
+
+    /**
+     * The number of the arts of the sagas whose Hermetic arts have been created.
+     */
+    private final long materializedArtCount;
+
+    /**
+     * The number of the shared arts.
+     */
+    private final int sharedArtCount;
+
+    /**
+     * The number of the arts of the sagas if no art were shared.
+     */
+    private final long unsharedArtCount;
+
+    /**
+     * Create a new report.
+     *
+     * @param sagaCount The number of the sagas.
+     * @param defaultSagaCount The number of the sagas using the standard arts.
+     * @param differenceCount The number of the stored differences.
+     * @param materializedCount The number of the created Hermetic arts.
+     * @param materializedArtCount The number of the arts of the created Hermetic arts.
+     * @param sharedArtCount The number of the shared arts.
+     * @param unsharedArtCount The number of the arts without sharing.
+     */
+    private MemoryReport(int sagaCount, int defaultSagaCount, long differenceCount, int materializedCount,
+    long materializedArtCount, int sharedArtCount, long unsharedArtCount) {
+      this.sagaCount = sagaCount;
+      this.defaultSagaCount = defaultSagaCount;
+      this.differenceCount = differenceCount;
+      this.materializedCount = materializedCount;
+      this.materializedArtCount = materializedArtCount;
+      this.sharedArtCount = sharedArtCount;
+      this.unsharedArtCount = unsharedArtCount;
+    }
+
+    /**
+     * Get the number of the sagas.
+     *
+     * @return The number of the sagas.
+     */
+    public int getSagaCount() {
+      return sagaCount;
+    }
+
+    /**
+     * Get the number of the sagas sharing the standard art set.
+     *
+     * @return The number of the sagas using the standard arts.
+     */
+    public int getDefaultSagaCount() {
+      return defaultSagaCount;
+    }
+
+    /**
+     * Get the number of the differences stored for the sagas.
+     *
+     * @return The number of the added and the lacking arts of all sagas.
+     */
+    public long getDifferenceCount() {
+      return differenceCount;
+    }
+
+    /**
+     * Get the number of the sagas whose Hermetic arts have been created.
+     *
+     * @return The number of the created Hermetic arts.
+     */
+    public int getMaterializedCount() {
+      return materializedCount;
+    }
+
+    /**
+     * Get the number of the art instances shared by the sagas.
+     *
+     * @return The number of the shared arts including the standard arts.
+     */
+    public int getSharedArtCount() {
+      return sharedArtCount;
+    }
+
+    /**
+     * Get the estimated memory use of the art sets.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getEstimatedBytes() {
+      return (long)sagaCount * MAP_ENTRY_BYTES
+      + (long)(sagaCount - defaultSagaCount) * 5 * OBJECT_BYTES
+      + differenceCount * MAP_ENTRY_BYTES
+      + (long)sharedArtCount * (ART_BYTES + MAP_ENTRY_BYTES)
+      + materializedCount * 3L * OBJECT_BYTES + materializedArtCount * SKIP_LIST_NODE_BYTES;
+    }
+
+    /**
+     * Get the estimated memory use if every saga had its own arts.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getUnsharedEstimatedBytes() {
+      return (long)sagaCount * (MAP_ENTRY_BYTES + OBJECT_BYTES) + unsharedArtCount * (ART_BYTES + SKIP_LIST_NODE_BYTES);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d sagas (%d standard, %d materialized), %d differences, %d shared arts, "
+      + "about %d bytes instead of %d bytes", sagaCount, defaultSagaCount, materializedCount, differenceCount,
+      sharedArtCount, getEstimatedBytes(), getUnsharedEstimatedBytes());
+    }
+  }
+
+  /**
+   * Register the arts of a saga with the standard art types.
+   *
+   * @param saga The identifier of the saga.
+   * @param techniqueNames The names of the techniques.
+   * @param formNames The names of the forms.
+   * @return The art set of the saga.
+   * @throws IllegalArgumentException The saga or any name was invalid.
+   */
+  public SagaArts register(String saga, List<String> techniqueNames, List<String> formNames) throws IllegalArgumentException {
+    return register(saga, HermeticArts.HermeticArtType.Technique, techniqueNames, HermeticArts.HermeticArtType.Form, formNames);
+  }
+
+  /**
+   * Register the arts of a saga.
+   *
+   * A previous art set of the saga is replaced.
+   *
+   * @param saga The identifier of the saga.
+   * @param techniqueType The type of the techniques.
+   * @param techniqueNames The names of the techniques.
+   * @param formType The type of the forms.
+   * @param formNames The names of the forms.
+   * @return The art set of the saga.
+   * @throws IllegalArgumentException The saga, any type, or any name was invalid.
+   */
+  public SagaArts register(String saga, Art.ArtType techniqueType, List<String> techniqueNames,
+  Art.ArtType formType, List<String> formNames) throws IllegalArgumentException {
+    if (saga == null || saga.isEmpty()) throw new IllegalArgumentException(INVALID_SAGA_MESSAGE);
+    if (techniqueType == null || formType == null) throw new IllegalArgumentException("Invalid art type");
+    if (techniqueNames == null || formNames == null || techniqueNames.stream().anyMatch(Objects::isNull)
+    || formNames.stream().anyMatch(Objects::isNull)) {
+      throw new IllegalArgumentException(INVALID_NAMES_MESSAGE);
+    }
+    SagaArts result = create(techniqueType, List.copyOf(new LinkedHashSet<>(techniqueNames)),
+    formType, List.copyOf(new LinkedHashSet<>(formNames)));
+    sagas.put(saga, result);
+    return result;
+  }
+
+  /**
+   * Create an art set.
+   *
+   * @param techniqueType The type of the techniques.
+   * @param techniqueNames The distinct names of the techniques.
+   * @param formType The type of the forms.
+   * @param formNames The distinct names of the forms.
+   * @return The art set.
+   * @throws IllegalArgumentException Any name was invalid.
+   */
+  private static SagaArts create(Art.ArtType techniqueType, List<String> techniqueNames,
+  Art.ArtType formType, List<String> formNames) throws IllegalArgumentException {
+    boolean standardTypes = techniqueType == HermeticArts.HermeticArtType.Technique
+    && formType == HermeticArts.HermeticArtType.Form;
+    if (standardTypes && techniqueNames.size() == DEFAULT_TECHNIQUES.size() && formNames.size() == DEFAULT_FORMS.size()
+    && DEFAULT_TECHNIQUES.keySet().containsAll(techniqueNames) && DEFAULT_FORMS.keySet().containsAll(formNames)) {
+      return DEFAULT_SAGA_ARTS;
+    }
+    Map<String, Art> techniques = differences(techniqueType, techniqueNames, standardTypes ? DEFAULT_TECHNIQUES : Collections.emptyMap());
+    Map<String, Art> forms = differences(formType, formNames, standardTypes ? DEFAULT_FORMS : Collections.emptyMap());
+    return new SagaArts(standardTypes, techniques, forms,
+    standardTypes ? missing(DEFAULT_TECHNIQUES, techniqueNames) : Collections.emptySet(),
+    standardTypes ? missing(DEFAULT_FORMS, formNames) : Collections.emptySet(),
+    techniqueType, formType, null);
+  }
+
+  /**
+   * Get the arts not among the standard arts.
+   *
+   * @param type The type of the arts.
+   * @param names The names of the arts.
+   * @param defaults The standard arts.
+   * @return The shared instances of the arts not among the standard arts by name.
+   * @throws IllegalArgumentException Any name was invalid.
+   */
+  private static Map<String, Art> differences(Art.ArtType type, List<String> names, Map<String, Art> defaults)
+  throws IllegalArgumentException {
+    Map<String, Art> result = null;
+    for (String name : names) {
+      if (defaults.containsKey(name)) continue;
+      if (result == null) result = new HashMap<>(4);
+      result.put(name, sharedArt(type, name, name.substring(0, Math.min(2, name.length()))));
+    }
+    return result == null ? Collections.emptyMap() : result;
+  }
+
+  /**
+   * Get the standard arts lacking from names.
+   *
+   * @param defaults The standard arts.
+   * @param names The names of the arts.
+   * @return The names of the lacking standard arts.
+   */
+  private static Set<String> missing(Map<String, Art> defaults, List<String> names) {
+    Set<String> result = new HashSet<>(defaults.keySet());
+    result.removeAll(names);
+    return result.isEmpty() ? Collections.emptySet() : result;
+  }
+
+  /**
+   * Get the shared instance of an art.
+   *
+   * @param type The type of the art.
+   * @param name The name of the art.
+   * @param abbrev The abbreviation of the art.
+   * @return The shared art.
+   * @throws IllegalArgumentException The name or the abbreviation was invalid.
+   */
+  static Art sharedArt(Art.ArtType type, String name, String abbrev) throws IllegalArgumentException {
+    String key = sharedKey(type, name, abbrev);
+    Art result = SHARED_ARTS.get(key);
+    if (result == null) {
+      // The art is validated outside of the map, so an invalid name leaves no entry behind.
+      Art created = HermeticArts.DEFAULT_ARTS.createArt(type, name, abbrev);
+      result = SHARED_ARTS.putIfAbsent(key, created);
+      if (result == null) result = created;
+    }
+    return result;
+  }
+
+  /**
+   * Get the key of a shared art.
+   *
+   * @param type The type of the art.
+   * @param name The name of the art.
+   * @param abbrev The abbreviation of the art.
+   * @return The key of the art.
+   */
+  private static String sharedKey(Art.ArtType type, String name, String abbrev) {
+    return (type.isTechnique() ? "t:" : "f:") + type.getKey() + ':' + type.getName() + ':' + name + ':' + abbrev;
+  }
+
+  /**
+   * Get the art set of a saga.
+   *
+   * @param saga The identifier of the saga.
+   * @return The art set, if the saga has been registered.
+   */
+  public Optional<SagaArts> get(String saga) {
+    return Optional.ofNullable(saga == null ? null : sagas.get(saga));
+  }
+
+  /**
+   * Get the art set of a saga, or the standard art set.
+   *
+   * @param saga The identifier of the saga.
+   * @return The art set of the saga, or the standard art set if the saga has not been registered.
+   */
+  public SagaArts getOrDefault(String saga) {
+    return get(saga).orElse(DEFAULT_SAGA_ARTS);
+  }
+
+  /**
+   * Remove a saga.
+   *
+   * @param saga The identifier of the saga.
+   * @return True, if and only if the saga was removed.
+   */
+  public boolean remove(String saga) {
+    return saga != null && sagas.remove(saga) != null;
+  }
+
+  /**
+   * Get a technique of a saga.
+   *
+   * @param saga The identifier of the saga.
+   * @param name The name of the technique.
+   * @return The technique, if the saga has one.
+   */
+  public Optional<Art> getTechnique(String saga, String name) {
+    return getOrDefault(saga).getTechnique(name);
+  }
+
+  /**
+   * Get a form of a saga.
+   *
+   * @param saga The identifier of the saga.
+   * @param name The name of the form.
+   * @return The form, if the saga has one.
+   */
+  public Optional<Art> getForm(String saga, String name) {
+    return getOrDefault(saga).getForm(name);
+  }
+
+  /**
+   * Get the number of the registered sagas.
+   *
+   * @return The number of the sagas.
+   */
+  public int size() {
+    return sagas.size();
+  }
+
+  /**
+   * Report the memory use of the art sets.
+   *
+   * @return The memory report.
+   */
+  public MemoryReport getMemoryReport() {
+    int sagaCount = 0;
+    int defaultSagaCount = 0;
+    int materializedCount = 0;
+    long materializedArtCount = 0;
+    long differenceCount = 0;
+    long unsharedArtCount = 0;
+    for (SagaArts arts : sagas.values()) {
+      sagaCount++;
+      unsharedArtCount += arts.getArtCount();
+      if (arts.isDefault()) {
+        defaultSagaCount++;
+      } else {
+        differenceCount += arts.getDifferenceCount();
+        if (arts.isMaterialized()) {
+          materializedCount++;
+          materializedArtCount += arts.getArtCount();
+        }
+      }
+    }
+    return new MemoryReport(sagaCount, defaultSagaCount, differenceCount, materializedCount, materializedArtCount,
+    SHARED_ARTS.size(), unsharedArtCount);
+  }
+}
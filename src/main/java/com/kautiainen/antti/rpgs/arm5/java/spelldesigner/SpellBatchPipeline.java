@@ -0,0 +1,524 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * A pipeline evaluating a JSON array of spell designs into newline delimited JSON results.
+ *
+ * The parsing, the level calculation, and the rendering run concurrently with bounded queues
+ * between them, so a batch holds at most the queue capacities of designs in memory however
+ * large it is, and a slow client slows down the parsing of its own batch. The results are
+ * written in the order of the designs, and the output is flushed whenever the rendering runs
+ * out of evaluated designs.
+ *
+ * A design is either given with the code of its guideline, such as "ReCo(Me)15", or with its
+ * "technique", "form", "requisites", and "baseLevel". The optional fields are "name",
+ * "range", "duration", "target", "extraMagnitudes", and "castingTotal".
+ */
+public class SpellBatchPipeline {
+
+  /**
+   * The default capacity of the queues between the stages.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+  /**
+   * The largest number of designs in a batch.
+   */
+  public static final int MAX_BATCH_SIZE = 100_000;
+
+  /**
+   * The error message indicating the batch was not an array.
+   */
+  public static final String EXPECTED_ARRAY_MESSAGE = "Expected an array of designs";
+
+  /**
+   * The error message indicating a design was not an object.
+   */
+  public static final String EXPECTED_OBJECT_MESSAGE = "Expected a design object";
+
+  /**
+   * The error message indicating the batch was too large.
+   */
+  public static final String TOO_MANY_DESIGNS_MESSAGE = "Too many designs in the batch";
+
+  /**
+   * The error message indicating the level of a design was generic.
+   */
+  public static final String GENERIC_LEVEL_MESSAGE = "The guideline level is generic";
+
+  /**
+   * The time a stage waits before checking the cancellation.
+   */
+  private static final long POLL_MILLIS = 100;
+
+  /**
+   * A design passing through the pipeline.
+   */
+  private static final class Item {
+
+    /**
+     * The index of the design in the batch, or -1 for a batch error.
+     */
+    final int index;
+
+    /**
+     * The parsed design object.
+     */
+    final JsonObject source;
+
+    /**
+     * The evaluated design.
+     */
+    SpellDesign design;
+
+    /**
+     * The casting total, or an undefined value without a casting total.
+     */
+    Integer castingTotal;
+
+    /**
+     * The error message, or an undefined value without error.
+     */
+    String error;
+
+    /**
+     * Create an item.
+     *
+     * @param index The index.
+     * @param source The parsed design object.
+     * @param error The error message.
+     */
+    Item(int index, JsonObject source, String error) {
+      this.index = index;
+      this.source = source;
+      this.error = error;
+    }
+  }
+
+  /**
+   * The end of the batch.
+   */
+  private static final Item END = new Item(-1, null, null);
+
+  /**
+   * The arts of the designs.
+   */
+  private final HermeticArts arts;
+
+  /**
+   * The parser of the guideline codes.
+   */
+  private final SpellCodeParser codeParser;
+
+  /**
+   * The executor of the parsing and the level calculation.
+   */
+  private final Executor executor;
+
+  /**
+   * The capacity of the queues.
+   */
+  private final int capacity;
+
+  /**
+   * Create a pipeline with the default executor and queue capacity.
+   *
+   * @param arts The arts of the designs.
+   * @throws IllegalArgumentException The arts were undefined.
+   */
+  public SpellBatchPipeline(HermeticArts arts) throws IllegalArgumentException {
+    this(arts, ResourceExecutors.getStageExecutor(), DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Create a pipeline.
+   *
+   * @param arts The arts of the designs.
+   * @param executor The executor of the parsing and the level calculation stages.
+   * @param capacity The capacity of the queues between the stages.
+   * @throws IllegalArgumentException Any argument was invalid.
+   */
+  public SpellBatchPipeline(HermeticArts arts, Executor executor, int capacity) throws IllegalArgumentException {
+    if (arts == null || executor == null || capacity <= 0) throw new IllegalArgumentException("Invalid pipeline settings");
+    this.arts = arts;
+    this.codeParser = new SpellCodeParser(arts);
+    this.executor = executor;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Evaluate a batch.
+   *
+   * @param input The JSON array of the designs. The input is not closed.
+   * @param output The output of the results. The output is flushed but not closed.
+   * @throws IOException The writing of the results failed.
+   */
+  public void run(InputStream input, OutputStream output) throws IOException {
+    BlockingQueue<Item> parsed = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Item> evaluated = new ArrayBlockingQueue<>(capacity);
+    Cancellation cancellation = new Cancellation();
+    executor.execute(() -> parse(input, parsed, cancellation));
+    executor.execute(() -> evaluate(parsed, evaluated, cancellation));
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    try {
+      while (true) {
+        Item item = evaluated.poll();
+        if (item == null) {
+          writer.flush();
+          item = evaluated.take();
+        }
+        if (item == END) break;
+        render(writer, item);
+      }
+      writer.flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } finally {
+      cancellation.cancelled = true;
+    }
+  }
+
+  /**
+   * The cancellation of a batch.
+   */
+  private static final class Cancellation {
+
+    /**
+     * Has the batch been cancelled.
+     */
+    volatile boolean cancelled = false;
+  }
+
+  /**
+   * Put an item into a queue unless the batch is cancelled.
+   *
+   * @param queue The queue.
+   * @param item The item.
+   * @param cancellation The cancellation.
+   * @return True, if and only if the item was put.
+   */
+  private static boolean put(BlockingQueue<Item> queue, Item item, Cancellation cancellation) {
+    try {
+      while (!cancellation.cancelled) {
+        if (queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancellation.cancelled = true;
+    }
+    return false;
+  }
+
+  /**
+   * Take an item from a queue unless the batch is cancelled.
+   *
+   * @param queue The queue.
+   * @param cancellation The cancellation.
+   * @return The item, or an undefined value, if the batch was cancelled.
+   */
+  private static Item take(BlockingQueue<Item> queue, Cancellation cancellation) {
+    try {
+      while (!cancellation.cancelled) {
+        Item result = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (result != null) return result;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancellation.cancelled = true;
+    }
+    return null;
+  }
+
+  /**
+   * The parsing stage.
+   *
+   * @param input The input.
+   * @param parsed The queue of the parsed designs.
+   * @param cancellation The cancellation.
+   */
+  private void parse(InputStream input, BlockingQueue<Item> parsed, Cancellation cancellation) {
+    int index = 0;
+    try {
+      JsonParser parser = Json.createParser(input);
+      if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY) {
+        put(parsed, new Item(-1, null, EXPECTED_ARRAY_MESSAGE), cancellation);
+        return;
+      }
+      while (parser.hasNext() && !cancellation.cancelled) {
+        JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.END_ARRAY) break;
+        if (index == MAX_BATCH_SIZE) {
+          put(parsed, new Item(index, null, TOO_MANY_DESIGNS_MESSAGE), cancellation);
+          break;
+        }
+        Item item;
+        if (event == JsonParser.Event.START_OBJECT) {
+          item = new Item(index++, parser.getObject(), null);
+        } else {
+          if (event == JsonParser.Event.START_ARRAY) parser.skipArray();
+          item = new Item(index++, null, EXPECTED_OBJECT_MESSAGE);
+        }
+        if (!put(parsed, item, cancellation)) return;
+      }
+    } catch (JsonException | IllegalStateException e) {
+      put(parsed, new Item(index, null, e.getMessage()), cancellation);
+    } finally {
+      put(parsed, END, cancellation);
+    }
+  }
+
+  /**
+   * The level calculation stage.
+   *
+   * @param parsed The queue of the parsed designs.
+   * @param evaluated The queue of the evaluated designs.
+   * @param cancellation The cancellation.
+   */
+  private void evaluate(BlockingQueue<Item> parsed, BlockingQueue<Item> evaluated, Cancellation cancellation) {
+    boolean ended = false;
+    try {
+      Item item;
+      while (!ended && (item = take(parsed, cancellation)) != null) {
+        if (item != END && item.error == null) {
+          long start = SpellMetrics.start();
+          try {
+            item.design = design(item.source);
+            item.castingTotal = integer(item.source, "castingTotal").orElse(null);
+          } catch (IllegalArgumentException e) {
+            item.error = e.getMessage();
+          } catch (RuntimeException e) {
+            // An unexpected failure of a design is reported with the design instead of ending the batch.
+            item.error = String.valueOf(e);
+          } finally {
+            SpellMetrics.BATCH_EVALUATIONS.record(start);
+          }
+        }
+        if (item != END && item.error != null) SpellMetrics.BATCH_ERRORS.increment();
+        if (!put(evaluated, item, cancellation)) return;
+        ended = item == END;
+      }
+    } finally {
+      // The rendering waits for the end even if the stage fails.
+      if (!ended) put(evaluated, END, cancellation);
+    }
+  }
+
+  /**
+   * Create the design of a design object.
+   *
+   * @param source The design object.
+   * @return The design.
+   * @throws IllegalArgumentException The design object was invalid.
+   */
+  SpellDesign design(JsonObject source) throws IllegalArgumentException {
+    TechniqueInterface<?> technique;
+    FormInterface<?> form;
+    List<ArtInterface<?>> requisites = new ArrayList<>();
+    short baseLevel;
+    Optional<String> code = string(source, "code");
+    if (code.isPresent()) {
+      SpellCodeParser.SpellCode parsed = codeParser.parse(code.get());
+      if (parsed.isGeneric()) throw new IllegalArgumentException(GENERIC_LEVEL_MESSAGE);
+      technique = technique(parsed.getTechnique().getName());
+      form = form(parsed.getForm().getName());
+      for (Art requisite : parsed.getRequisites()) requisites.add(art(requisite.getName()));
+      baseLevel = parsed.getLevel();
+    } else {
+      technique = technique(string(source, "technique").orElse(null));
+      form = form(string(source, "form").orElse(null));
+      if (source.get("requisites") instanceof JsonArray array) {
+        for (JsonValue value : array) {
+          if (!(value instanceof JsonString name)) throw new IllegalArgumentException(SpellCodeParser.INVALID_REQUISITE_MESSAGE);
+          requisites.add(art(name.getString()));
+        }
+      }
+      int level = integer(source, "baseLevel").orElseThrow(() -> new IllegalArgumentException(SpellDesign.INVALID_BASE_LEVEL_MESSAGE));
+      if (level < Short.MIN_VALUE || level > Short.MAX_VALUE) throw new IllegalArgumentException(SpellDesign.INVALID_BASE_LEVEL_MESSAGE);
+      baseLevel = (short)level;
+    }
+    return new SpellDesign(string(source, "name").orElse(null), technique, form, requisites, baseLevel,
+    parameter(SpellRange.class, string(source, "range").orElse(SpellRange.Personal.name())),
+    parameter(SpellDuration.class, string(source, "duration").orElse(SpellDuration.Momentary.name())),
+    parameter(SpellTarget.class, string(source, "target").orElse(SpellTarget.Individual.name())),
+    integer(source, "extraMagnitudes").orElse(0));
+  }
+
+  /**
+   * Get a string field.
+   *
+   * @param source The object.
+   * @param key The key of the field.
+   * @return The string value of the field, if the field is a string.
+   */
+  private static Optional<String> string(JsonObject source, String key) {
+    return source.get(key) instanceof JsonString value ? Optional.of(value.getString()) : Optional.empty();
+  }
+
+  /**
+   * Get an integer field.
+   *
+   * @param source The object.
+   * @param key The key of the field.
+   * @return The integer value of the field, if the field is an integral number.
+   * @throws IllegalArgumentException The field was present but not an integer.
+   */
+  private static Optional<Integer> integer(JsonObject source, String key) throws IllegalArgumentException {
+    JsonValue value = source.get(key);
+    if (value == null || value == JsonValue.NULL) return Optional.empty();
+    if (!(value instanceof JsonNumber number) || !number.isIntegral()) throw new IllegalArgumentException("Invalid " + key);
+    try {
+      return Optional.of(number.intValueExact());
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Invalid " + key, e);
+    }
+  }
+
+  /**
+   * Parse a range, a duration, or a target by its name or its displayed name.
+   *
+   * @param <E> The type of the parameter.
+   * @param type The type of the parameter.
+   * @param name The name.
+   * @return The parameter.
+   * @throws IllegalArgumentException The name was unknown.
+   */
+  static <E extends Enum<E>> E parameter(Class<E> type, String name) throws IllegalArgumentException {
+    for (E value : type.getEnumConstants()) {
+      if (value.name().equalsIgnoreCase(name) || value.toString().equalsIgnoreCase(name)) return value;
+    }
+    throw new IllegalArgumentException(SpellDesign.INVALID_PARAMETER_MESSAGE);
+  }
+
+  /**
+   * Resolve a technique.
+   *
+   * @param name The name of the technique.
+   * @return The technique.
+   * @throws IllegalArgumentException The technique was unknown.
+   */
+  private TechniqueInterface<?> technique(String name) throws IllegalArgumentException {
+    return arts.getTechnique(name).orElseThrow(() -> new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE));
+  }
+
+  /**
+   * Resolve a form.
+   *
+   * @param name The name of the form.
+   * @return The form.
+   * @throws IllegalArgumentException The form was unknown.
+   */
+  private FormInterface<?> form(String name) throws IllegalArgumentException {
+    return arts.getForm(name).orElseThrow(() -> new IllegalArgumentException(SpellDesign.INVALID_FORM_MESSAGE));
+  }
+
+  /**
+   * Resolve a technique or a form.
+   *
+   * @param name The name of the art.
+   * @return The art.
+   * @throws IllegalArgumentException The art was unknown.
+   */
+  private ArtInterface<?> art(String name) throws IllegalArgumentException {
+    Optional<? extends ArtInterface<?>> technique = arts.getTechnique(name);
+    if (technique.isPresent()) return technique.get();
+    return arts.getForm(name).orElseThrow(() -> new IllegalArgumentException(SpellCodeParser.INVALID_REQUISITE_MESSAGE));
+  }
+
+  /**
+   * Render the result of a design as a line of JSON.
+   *
+   * @param target The target.
+   * @param item The evaluated design.
+   * @throws IOException The writing failed.
+   */
+  static void render(Appendable target, Item item) throws IOException {
+    target.append("{\"index\":").append(Integer.toString(item.index));
+    if (item.error != null) {
+      target.append(",\"error\":");
+      quote(target, item.error);
+    } else {
+      SpellDesign design = item.design;
+      if (design.getName() != null) {
+        target.append(",\"name\":");
+        quote(target, design.getName());
+      }
+      target.append(",\"code\":\"").append(abbreviation(design.getTechnique())).append(abbreviation(design.getForm()));
+      if (!design.getRequisites().isEmpty()) {
+        target.append('(');
+        for (ArtInterface<?> requisite : design.getRequisites()) target.append(abbreviation(requisite));
+        target.append(')');
+      }
+      target.append(Short.toString(design.getBaseLevel())).append('"')
+      .append(",\"level\":").append(Short.toString(design.getLevel()))
+      .append(",\"magnitude\":").append(Short.toString(SpellGuideline.levelToMagnitude(design.getLevel())));
+      if (item.castingTotal != null) {
+        target.append(",\"castingMargin\":").append(Integer.toString(item.castingTotal - design.getLevel()));
+      }
+    }
+    target.append("}\n");
+  }
+
+  /**
+   * Get the abbreviation of an art.
+   *
+   * @param art The art.
+   * @return The abbreviation, or the name without abbreviation.
+   */
+  private static String abbreviation(ArtInterface<?> art) {
+    return art.getAbreviation().orElse(art.getName());
+  }
+
+  /**
+   * Append a JSON string.
+   *
+   * @param target The target.
+   * @param value The quoted value.
+   * @throws IOException The writing failed.
+   */
+  static void quote(Appendable target, CharSequence value) throws IOException {
+    target.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> target.append("\\\"");
+        case '\\' -> target.append("\\\\");
+        case '\n' -> target.append("\\n");
+        case '\r' -> target.append("\\r");
+        case '\t' -> target.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            target.append(String.format("\\u%04x", (int)c));
+          } else {
+            target.append(c);
+          }
+        }
+      }
+    }
+    target.append('"');
+  }
+}
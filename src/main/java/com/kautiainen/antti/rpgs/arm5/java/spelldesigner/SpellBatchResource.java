@@ -0,0 +1,43 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.InputStream;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * The batch evaluation of spell designs.
+ */
+@Path("batch")
+public class SpellBatchResource {
+
+  /**
+   * The media type of newline delimited JSON.
+   */
+  public static final String NDJSON = "application/x-ndjson";
+
+  /**
+   * Evaluate a batch of designs.
+   *
+   * The results are streamed as newline delimited JSON objects in the order of the designs
+   * while the request is still being read.
+   *
+   * @param body The JSON array of the designs.
+   * @param response The suspended response, resumed on the executor of the resources.
+   */
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(NDJSON)
+  public void evaluate(InputStream body, @Suspended AsyncResponse response) {
+    SpellBatchPipeline pipeline = new SpellBatchPipeline(CatalogHolder.getArts());
+    StreamingOutput results = output -> pipeline.run(body, output);
+    ResourceExecutors.resume(response, () -> Response.ok(results, NDJSON).build());
+  }
+}
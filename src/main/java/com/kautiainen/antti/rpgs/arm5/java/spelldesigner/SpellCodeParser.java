@@ -0,0 +1,414 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A parser of spell codes such as "ReCo(Me) 20" or "CrIg Generic".
+ *
+ * The parser scans the characters of the code without creating substrings, and it resolves
+ * the two letter abbreviations through a table built once from the Hermetic arts. The parse
+ * results are written into a reusable {@link SpellCode}.
+ */
+public class SpellCodeParser {
+
+  /**
+   * The generic level keyword of the spell codes.
+   */
+  public static final String GENERIC_LEVEL = "Generic";
+
+  /**
+   * The error message of a missing technique.
+   */
+  public static final String INVALID_TECHNIQUE_MESSAGE = "Invalid technique abbreviation";
+
+  /**
+   * The error message of a missing form.
+   */
+  public static final String INVALID_FORM_MESSAGE = "Invalid form abbreviation";
+
+  /**
+   * The error message of an invalid requisite.
+   */
+  public static final String INVALID_REQUISITE_MESSAGE = "Invalid requisite";
+
+  /**
+   * The error message of an invalid level.
+   */
+  public static final String INVALID_LEVEL_MESSAGE = "Invalid level";
+
+  /**
+   * The error message of trailing characters.
+   */
+  public static final String TRAILING_CHARACTERS_MESSAGE = "Unexpected characters after the level";
+
+  /**
+   * The result of parsing a spell code.
+   *
+   * The result is mutable, and it is meant to be reused by a single thread.
+   */
+  public static class SpellCode {
+
+    /**
+     * The technique of the code.
+     */
+    private Art technique;
+
+    /**
+     * The form of the code.
+     */
+    private Art form;
+
+    /**
+     * The requisites of the code.
+     */
+    private Art[] requisites = new Art[2];
+
+    /**
+     * The number of requisites.
+     */
+    private int requisiteCount;
+
+    /**
+     * The level of the code.
+     */
+    private short level;
+
+    /**
+     * Is the level generic.
+     */
+    private boolean generic;
+
+    /**
+     * The index of the error, or -1 after a successful parse.
+     */
+    private int errorIndex = -1;
+
+    /**
+     * The error message, or an undefined value after a successful parse.
+     */
+    private String errorMessage;
+
+    /**
+     * Clear the result.
+     */
+    void clear() {
+      technique = null;
+      form = null;
+      Arrays.fill(requisites, 0, requisiteCount, null);
+      requisiteCount = 0;
+      level = 0;
+      generic = false;
+      errorIndex = -1;
+      errorMessage = null;
+    }
+
+    /**
+     * Add a requisite.
+     *
+     * @param requisite The added requisite.
+     */
+    void addRequisite(Art requisite) {
+      if (requisiteCount == requisites.length) {
+        requisites = Arrays.copyOf(requisites, requisiteCount * 2);
+      }
+      requisites[requisiteCount++] = requisite;
+    }
+
+    /**
+     * Mark the parse failed.
+     *
+     * @param index The index of the error.
+     * @param message The error message.
+     * @return Always false.
+     */
+    boolean fail(int index, String message) {
+      errorIndex = index;
+      errorMessage = message;
+      return false;
+    }
+
+    /**
+     * Get the technique.
+     *
+     * @return The technique of the code.
+     */
+    public Art getTechnique() {
+      return technique;
+    }
+
+    /**
+     * Get the form.
+     *
+     * @return The form of the code.
+     */
+    public Art getForm() {
+      return form;
+    }
+
+    /**
+     * Get the number of requisites.
+     *
+     * @return The number of requisites.
+     */
+    public int getRequisiteCount() {
+      return requisiteCount;
+    }
+
+    /**
+     * Get a requisite.
+     *
+     * @param index The index of the requisite.
+     * @return The requisite.
+     * @throws IndexOutOfBoundsException The index was invalid.
+     */
+    public Art getRequisite(int index) throws IndexOutOfBoundsException {
+      return requisites[Objects.checkIndex(index, requisiteCount)];
+    }
+
+    /**
+     * Get the requisites.
+     *
+     * @return The list of the requisites.
+     */
+    public List<Art> getRequisites() {
+      return requisiteCount == 0 ? Collections.emptyList()
+      : Collections.unmodifiableList(new ArrayList<>(Arrays.asList(requisites).subList(0, requisiteCount)));
+    }
+
+    /**
+     * Is the level generic.
+     *
+     * @return True, if and only if the level of the code is generic.
+     */
+    public boolean isGeneric() {
+      return generic;
+    }
+
+    /**
+     * Get the numeric level.
+     *
+     * @return The level of the code. The value is 0 for a generic level.
+     */
+    public short getLevel() {
+      return level;
+    }
+
+    /**
+     * Create the guideline level of the code.
+     *
+     * @return The guideline level.
+     */
+    public SpellGuideline.GuidelineLevel toGuidelineLevel() {
+      return new SpellGuideline.GuidelineLevel(generic ? null : level);
+    }
+
+    /**
+     * Get the error index.
+     *
+     * @return The index of the error, or -1 after a successful parse.
+     */
+    public int getErrorIndex() {
+      return errorIndex;
+    }
+
+    /**
+     * Get the error message.
+     *
+     * @return The error message, or an undefined value after a successful parse.
+     */
+    public String getErrorMessage() {
+      return errorMessage;
+    }
+  }
+
+  /**
+   * The abbreviations encoded as the two characters.
+   */
+  private final int[] abbreviations;
+
+  /**
+   * The arts of the abbreviations.
+   */
+  private final Art[] arts;
+
+  /**
+   * Create a parser of the default Hermetic arts.
+   */
+  public SpellCodeParser() {
+    this(HermeticArts.DEFAULT_ARTS);
+  }
+
+  /**
+   * Create a parser of Hermetic arts.
+   *
+   * @param hermeticArts The arts whose abbreviations the parser resolves.
+   */
+  public SpellCodeParser(HermeticArts hermeticArts) {
+    List<Art> all = new ArrayList<>(hermeticArts.getTechniques());
+    all.addAll(hermeticArts.getForms());
+    int[] keys = new int[all.size()];
+    Art[] values = new Art[all.size()];
+    int size = 0;
+    for (Art art : all) {
+      String abbrev = art.getAbbreviation().orElse(null);
+      if (abbrev == null || abbrev.length() != 2) continue;
+      keys[size] = key(abbrev.charAt(0), abbrev.charAt(1));
+      values[size++] = art;
+    }
+    this.abbreviations = Arrays.copyOf(keys, size);
+    this.arts = Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Encode an abbreviation.
+   *
+   * @param first The first character.
+   * @param second The second character.
+   * @return The encoded abbreviation.
+   */
+  private static int key(char first, char second) {
+    return (first << 16) | second;
+  }
+
+  /**
+   * Resolve an abbreviation.
+   *
+   * @param first The first character.
+   * @param second The second character.
+   * @return The art of the abbreviation, or an undefined value.
+   */
+  private Art resolve(char first, char second) {
+    int key = key(first, second);
+    for (int i = 0; i < abbreviations.length; i++) {
+      if (abbreviations[i] == key) return arts[i];
+    }
+    return null;
+  }
+
+  /**
+   * Resolve an abbreviation at an index.
+   *
+   * @param code The code.
+   * @param index The index of the abbreviation.
+   * @param end The end of the code.
+   * @return The art of the abbreviation, or an undefined value.
+   */
+  private Art resolveAt(CharSequence code, int index, int end) {
+    if (index + 1 >= end) return null;
+    char first = code.charAt(index);
+    char second = code.charAt(index + 1);
+    if (!Character.isUpperCase(first) || !Character.isLowerCase(second)) return null;
+    return resolve(first, second);
+  }
+
+  /**
+   * Parse a whole spell code.
+   *
+   * @param code The parsed code.
+   * @return The parse result.
+   * @throws IllegalArgumentException The code was invalid.
+   */
+  public SpellCode parse(CharSequence code) throws IllegalArgumentException {
+    SpellCode result = new SpellCode();
+    if (code == null || !parse(code, 0, code.length(), result)) {
+      throw new IllegalArgumentException(result.getErrorMessage() == null ? INVALID_TECHNIQUE_MESSAGE : result.getErrorMessage());
+    }
+    return result;
+  }
+
+  /**
+   * Parse a window of a spell code.
+   *
+   * @param code The parsed characters.
+   * @param start The start of the window.
+   * @param end The end of the window, exclusive.
+   * @param result The result the code is parsed into.
+   * @return True, if and only if the window contained a valid code. On failure the result
+   * contains the error index and message.
+   * @throws IndexOutOfBoundsException The window was invalid.
+   */
+  public boolean parse(CharSequence code, int start, int end, SpellCode result) throws IndexOutOfBoundsException {
+    Objects.checkFromToIndex(start, end, code.length());
+    result.clear();
+    int index = skipWhitespace(code, start, end);
+    Art technique = resolveAt(code, index, end);
+    if (technique == null || !technique.getType().isTechnique()) return result.fail(index, INVALID_TECHNIQUE_MESSAGE);
+    result.technique = technique;
+    index += 2;
+    Art form = resolveAt(code, index, end);
+    if (form == null || !form.getType().isForm()) return result.fail(index, INVALID_FORM_MESSAGE);
+    result.form = form;
+    index += 2;
+    while (index < end && code.charAt(index) == '(') {
+      index = skipWhitespace(code, index + 1, end);
+      do {
+        Art requisite = resolveAt(code, index, end);
+        if (requisite == null) return result.fail(index, INVALID_REQUISITE_MESSAGE);
+        result.addRequisite(requisite);
+        index = skipWhitespace(code, index + 2, end);
+        if (index < end && code.charAt(index) == ',') {
+          index = skipWhitespace(code, index + 1, end);
+        }
+      } while (index < end && code.charAt(index) != ')');
+      if (index >= end) return result.fail(index, INVALID_REQUISITE_MESSAGE);
+      index++;
+    }
+    index = skipWhitespace(code, index, end);
+    if (index == end) {
+      // An absent level is a generic level as with GuidelineLevel.valueOf.
+      result.generic = true;
+      return true;
+    }
+    if (regionMatchesIgnoreCase(code, index, end, GENERIC_LEVEL)) {
+      result.generic = true;
+      index += GENERIC_LEVEL.length();
+    } else {
+      int level = 0;
+      int digitStart = index;
+      while (index < end && code.charAt(index) >= '0' && code.charAt(index) <= '9') {
+        level = level * 10 + (code.charAt(index++) - '0');
+        if (level > Short.MAX_VALUE) return result.fail(digitStart, INVALID_LEVEL_MESSAGE);
+      }
+      if (index == digitStart) return result.fail(digitStart, INVALID_LEVEL_MESSAGE);
+      result.level = (short)level;
+    }
+    index = skipWhitespace(code, index, end);
+    if (index != end) return result.fail(index, TRAILING_CHARACTERS_MESSAGE);
+    return true;
+  }
+
+  /**
+   * Skip whitespace.
+   *
+   * @param code The code.
+   * @param index The start index.
+   * @param end The end index.
+   * @return The index of the first non-whitespace character, or the end.
+   */
+  private static int skipWhitespace(CharSequence code, int index, int end) {
+    while (index < end && Character.isWhitespace(code.charAt(index))) index++;
+    return index;
+  }
+
+  /**
+   * Test whether a region matches a word ignoring case.
+   *
+   * @param code The code.
+   * @param index The start of the region.
+   * @param end The end of the code.
+   * @param word The matched word.
+   * @return True, if and only if the region starts with the word followed by a non-letter.
+   */
+  private static boolean regionMatchesIgnoreCase(CharSequence code, int index, int end, String word) {
+    int wordEnd = index + word.length();
+    if (wordEnd > end) return false;
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.toLowerCase(code.charAt(index + i)) != Character.toLowerCase(word.charAt(i))) return false;
+    }
+    return wordEnd == end || !Character.isLetter(code.charAt(wordEnd));
+  }
+}
@@ -0,0 +1,275 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A spell design combining a guideline base level with range, duration and target.
+ *
+ * The design is immutable. The final level is derived from the base level by adding the
+ * magnitudes of the range, duration, target and the additional magnitudes.
+ */
+public class SpellDesign {
+
+  /**
+   * The error message indicating the technique was invalid.
+   */
+  public static final String INVALID_TECHNIQUE_MESSAGE = "Invalid technique";
+
+  /**
+   * The error message indicating the form was invalid.
+   */
+  public static final String INVALID_FORM_MESSAGE = "Invalid form";
+
+  /**
+   * The error message indicating the base level was invalid.
+   */
+  public static final String INVALID_BASE_LEVEL_MESSAGE = "Invalid base level";
+
+  /**
+   * The error message indicating the range, duration, or target was invalid.
+   */
+  public static final String INVALID_PARAMETER_MESSAGE = "Invalid range, duration, or target";
+
+  /**
+   * The error message indicating the magnitudes of a design were out of range.
+   */
+  public static final String INVALID_MAGNITUDES_MESSAGE = "Invalid magnitudes";
+
+  /**
+   * The lowest magnitude whose level fits a short.
+   */
+  public static final int MIN_MAGNITUDE = -1301;
+
+  /**
+   * The highest magnitude whose level fits a short.
+   */
+  public static final int MAX_MAGNITUDE = Short.MAX_VALUE / 5;
+
+  /**
+   * The name of the design.
+   */
+  private final String name;
+
+  /**
+   * The technique of the design.
+   */
+  private final TechniqueInterface<?> technique;
+
+  /**
+   * The form of the design.
+   */
+  private final FormInterface<?> form;
+
+  /**
+   * The requisite arts of the design.
+   */
+  private final List<ArtInterface<?>> requisites;
+
+  /**
+   * The base level of the guideline.
+   */
+  private final short baseLevel;
+
+  /**
+   * The range of the design.
+   */
+  private final SpellRange range;
+
+  /**
+   * The duration of the design.
+   */
+  private final SpellDuration duration;
+
+  /**
+   * The target of the design.
+   */
+  private final SpellTarget target;
+
+  /**
+   * The magnitudes added on top of the range, duration, and target.
+   */
+  private final int extraMagnitudes;
+
+  /**
+   * The final level of the design.
+   */
+  private final short level;
+
+  /**
+   * Create a new spell design.
+   *
+   * @param name The name of the design. An undefined value indicates an unnamed design.
+   * @param technique The technique of the design.
+   * @param form The form of the design.
+   * @param requisites The requisites of the design. An undefined value indicates no requisites.
+   * @param baseLevel The base level of the guideline.
+   * @param range The range of the design.
+   * @param duration The duration of the design.
+   * @param target The target of the design.
+   * @param extraMagnitudes The additional magnitudes of the design.
+   * @throws IllegalArgumentException Any argument was invalid.
+   */
+  public SpellDesign(String name, TechniqueInterface<?> technique, FormInterface<?> form,
+  List<? extends ArtInterface<?>> requisites, short baseLevel,
+  SpellRange range, SpellDuration duration, SpellTarget target, int extraMagnitudes) throws IllegalArgumentException {
+    if (technique == null) throw new IllegalArgumentException(INVALID_TECHNIQUE_MESSAGE);
+    if (form == null) throw new IllegalArgumentException(INVALID_FORM_MESSAGE);
+    if (!Art.validLevel(baseLevel)) throw new IllegalArgumentException(INVALID_BASE_LEVEL_MESSAGE);
+    if (range == null || duration == null || target == null) throw new IllegalArgumentException(INVALID_PARAMETER_MESSAGE);
+    if (extraMagnitudes < MIN_MAGNITUDE || extraMagnitudes > MAX_MAGNITUDE) throw new IllegalArgumentException(INVALID_MAGNITUDES_MESSAGE);
+    this.name = name;
+    this.technique = technique;
+    this.form = form;
+    this.requisites = requisites == null ? Collections.emptyList() : List.copyOf(requisites);
+    this.baseLevel = baseLevel;
+    this.range = range;
+    this.duration = duration;
+    this.target = target;
+    this.extraMagnitudes = extraMagnitudes;
+    this.level = levelOf(baseLevel, range.getMagnitude() + duration.getMagnitude() + target.getMagnitude() + extraMagnitudes);
+  }
+
+  /**
+   * Create a new spell design from a guideline.
+   *
+   * @param name The name of the design.
+   * @param guideline The guideline whose technique, form, and level the design uses.
+   * @param range The range of the design.
+   * @param duration The duration of the design.
+   * @param target The target of the design.
+   * @throws IllegalArgumentException The guideline was undefined, or it had generic level.
+   */
+  public SpellDesign(String name, SpellGuideline<?, ?, ?, ?> guideline,
+  SpellRange range, SpellDuration duration, SpellTarget target) throws IllegalArgumentException {
+    this(name,
+    guideline == null ? null : guideline.getTechnique(),
+    guideline == null ? null : guideline.getForm(),
+    null,
+    baseLevelOf(guideline), range, duration, target, 0);
+  }
+
+  /**
+   * Get the numeric base level of a guideline.
+   *
+   * @param guideline The guideline.
+   * @return The base level of the guideline.
+   * @throws IllegalArgumentException The guideline was undefined or its level was generic.
+   */
+  private static short baseLevelOf(SpellGuideline<?, ?, ?, ?> guideline) throws IllegalArgumentException {
+    if (guideline == null || guideline.getLevel() == null || guideline.getLevel().isAbsent()) {
+      throw new IllegalArgumentException(INVALID_BASE_LEVEL_MESSAGE);
+    }
+    return guideline.getLevel().shortValue();
+  }
+
+  /**
+   * Calculate the level resulting from adding magnitudes to a base level.
+   *
+   * @param baseLevel The base level.
+   * @param magnitudes The added magnitudes.
+   * @return The resulting level.
+   * @throws IllegalArgumentException The resulting magnitude was not between {@link #MIN_MAGNITUDE}
+   * and {@link #MAX_MAGNITUDE}.
+   */
+  public static short levelOf(short baseLevel, int magnitudes) throws IllegalArgumentException {
+    long start = SpellMetrics.start();
+    try {
+      long magnitude = (long)SpellGuideline.levelToMagnitude(baseLevel) + magnitudes;
+      if (magnitude < MIN_MAGNITUDE || magnitude > MAX_MAGNITUDE) throw new IllegalArgumentException(INVALID_MAGNITUDES_MESSAGE);
+      return SpellGuideline.magnitudeToLevel((short)magnitude);
+    } finally {
+      SpellMetrics.LEVEL_CALCULATIONS.record(start);
+    }
+  }
+
+  /**
+   * Get the name of the design.
+   *
+   * @return The name of the design, or an undefined value for an unnamed design.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the technique of the design.
+   *
+   * @return The technique of the design.
+   */
+  public TechniqueInterface<?> getTechnique() {
+    return technique;
+  }
+
+  /**
+   * Get the form of the design.
+   *
+   * @return The form of the design.
+   */
+  public FormInterface<?> getForm() {
+    return form;
+  }
+
+  /**
+   * Get the requisites of the design.
+   *
+   * @return The unmodifiable list of the requisites.
+   */
+  public List<ArtInterface<?>> getRequisites() {
+    return requisites;
+  }
+
+  /**
+   * Get the base level of the design.
+   *
+   * @return The base level of the guideline.
+   */
+  public short getBaseLevel() {
+    return baseLevel;
+  }
+
+  /**
+   * Get the range of the design.
+   *
+   * @return The range.
+   */
+  public SpellRange getRange() {
+    return range;
+  }
+
+  /**
+   * Get the duration of the design.
+   *
+   * @return The duration.
+   */
+  public SpellDuration getDuration() {
+    return duration;
+  }
+
+  /**
+   * Get the target of the design.
+   *
+   * @return The target.
+   */
+  public SpellTarget getTarget() {
+    return target;
+  }
+
+  /**
+   * Get the additional magnitudes of the design.
+   *
+   * @return The magnitudes added on top of the range, duration, and target.
+   */
+  public int getExtraMagnitudes() {
+    return extraMagnitudes;
+  }
+
+  /**
+   * Get the final level of the design.
+   *
+   * @return The level of the design.
+   */
+  public short getLevel() {
+    return level;
+  }
+}
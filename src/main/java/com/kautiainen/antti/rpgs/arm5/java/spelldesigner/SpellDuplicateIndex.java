@@ -0,0 +1,415 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * An index of the structural identities of spell designs for finding duplicates.
+ *
+ * The canonical form of a design consists of its technique, form, sorted requisites, base
+ * level, range, duration, target, and final magnitude, ignoring the name. The fingerprint of
+ * a design is a stable 64 bit hash of the canonical form. The exact duplicates share the
+ * fingerprint bucket. The near duplicates differ in exactly one of the requisites, the base
+ * level, the range, the duration, the target, or the additional magnitudes, and they share
+ * the bucket of the canonical form without that component.
+ */
+public class SpellDuplicateIndex {
+
+  /**
+   * The number of near duplicate keys of a design.
+   */
+  public static final int NEAR_KEY_COUNT = 6;
+
+  /**
+   * The FNV-1a offset basis.
+   */
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+  /**
+   * The FNV-1a prime.
+   */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * The indexed designs.
+   */
+  private final List<SpellDesign> designs = new ArrayList<>();
+
+  /**
+   * The fingerprints by design identifier.
+   */
+  private long[] fingerprints = new long[64];
+
+  /**
+   * A growable list of the identifiers of a bucket.
+   */
+  private static final class Bucket {
+
+    /**
+     * The identifiers followed by the unused capacity.
+     */
+    int[] ids = new int[2];
+
+    /**
+     * The number of identifiers.
+     */
+    int size = 0;
+
+    /**
+     * Add an identifier.
+     *
+     * @param id The added identifier.
+     */
+    void add(int id) {
+      // The capacity doubles, so the bulk additions take amortized constant time.
+      if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+      ids[size++] = id;
+    }
+
+    /**
+     * Get the identifiers.
+     *
+     * @return A copy of the identifiers in the order of their addition.
+     */
+    int[] toArray() {
+      return Arrays.copyOf(ids, size);
+    }
+  }
+
+  /**
+   * The identifiers by fingerprint.
+   */
+  private final Map<Long, Bucket> exact = new HashMap<>();
+
+  /**
+   * The identifiers by near duplicate key.
+   */
+  private final Map<Long, Bucket> near = new HashMap<>();
+
+  /**
+   * The lock of the index.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Get the components of the canonical form of a design.
+   *
+   * @param design The design.
+   * @return The technique, form, requisites, base level, range, duration, target, and final
+   * magnitude of the design.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  static String[] components(SpellDesign design) throws IllegalArgumentException {
+    if (design == null) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    String technique = GuidelineCatalog.artKey(design.getTechnique());
+    String form = GuidelineCatalog.artKey(design.getForm());
+    TreeSet<String> requisites = new TreeSet<>();
+    for (ArtInterface<?> requisite : design.getRequisites()) requisites.add(GuidelineCatalog.artKey(requisite));
+    requisites.remove(technique);
+    requisites.remove(form);
+    return new String[] {
+      technique, form, String.join(",", requisites), Short.toString(design.getBaseLevel()),
+      design.getRange().name(), design.getDuration().name(), design.getTarget().name(),
+      Short.toString(SpellGuideline.levelToMagnitude(design.getLevel()))
+    };
+  }
+
+  /**
+   * Get the canonical form of a design.
+   *
+   * @param design The design.
+   * @return The canonical form of the structural identity of the design.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public static String canonicalForm(SpellDesign design) throws IllegalArgumentException {
+    return String.join("|", components(design));
+  }
+
+  /**
+   * Calculate the stable 64 bit hash of a text.
+   *
+   * @param text The hashed text.
+   * @return The FNV-1a hash of the UTF-8 bytes of the text with a final avalanche.
+   */
+  static long hash(String text) {
+    long result = FNV_OFFSET;
+    for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      result ^= b & 0xFF;
+      result *= FNV_PRIME;
+    }
+    result ^= result >>> 33;
+    result *= 0xff51afd7ed558ccdL;
+    result ^= result >>> 33;
+    return result;
+  }
+
+  /**
+   * Get the fingerprint of a design.
+   *
+   * @param design The design.
+   * @return The fingerprint of the canonical form.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public static long fingerprint(SpellDesign design) throws IllegalArgumentException {
+    return hash(canonicalForm(design));
+  }
+
+  /**
+   * Get the near duplicate keys of a design.
+   *
+   * The changes of the base level, the range, the duration, or the target also change the
+   * final magnitude, so the magnitude is omitted with them. The magnitude alone is omitted
+   * for the changes of the additional magnitudes.
+   *
+   * @param design The design.
+   * @return The hashes of the canonical form without the requisites, the base level, the
+   * range, the duration, the target, and the final magnitude.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public static long[] nearKeys(SpellDesign design) throws IllegalArgumentException {
+    String[] components = components(design);
+    long[] result = new long[NEAR_KEY_COUNT];
+    for (int i = 0; i < NEAR_KEY_COUNT; i++) result[i] = hash(partialForm(components, i));
+    return result;
+  }
+
+  /**
+   * Get the canonical form without the component of a near duplicate key.
+   *
+   * @param components The components of the canonical form.
+   * @param key The index of the near duplicate key.
+   * @return The canonical form with the omitted components replaced by "*".
+   */
+  private static String partialForm(String[] components, int key) {
+    String[] partial = components.clone();
+    partial[key + 2] = "*";
+    if (key > 0) partial[7] = "*";
+    return String.join("|", partial);
+  }
+
+  /**
+   * Add an identifier to a bucket.
+   *
+   * @param buckets The buckets.
+   * @param key The key of the bucket.
+   * @param id The added identifier.
+   */
+  private static void addId(Map<Long, Bucket> buckets, long key, int id) {
+    buckets.computeIfAbsent(key, bucket -> new Bucket()).add(id);
+  }
+
+  /**
+   * Add a design.
+   *
+   * @param design The added design.
+   * @return The identifier of the design.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public int add(SpellDesign design) throws IllegalArgumentException {
+    long fingerprint = fingerprint(design);
+    long[] keys = nearKeys(design);
+    lock.writeLock().lock();
+    try {
+      return insert(design, fingerprint, keys);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add designs in bulk. The fingerprints are calculated in parallel.
+   *
+   * @param added The added designs.
+   * @return The identifiers of the designs in the order of the designs.
+   * @throws IllegalArgumentException Any design was undefined.
+   */
+  public int[] addAll(Collection<? extends SpellDesign> added) throws IllegalArgumentException {
+    if (added == null || added.stream().anyMatch(Objects::isNull)) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    SpellDesign[] list = added.toArray(new SpellDesign[0]);
+    long[] prints = new long[list.length];
+    long[][] keys = new long[list.length][];
+    IntStream.range(0, list.length).parallel().forEach(i -> {
+      prints[i] = fingerprint(list[i]);
+      keys[i] = nearKeys(list[i]);
+    });
+    int[] result = new int[list.length];
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < list.length; i++) result[i] = insert(list[i], prints[i], keys[i]);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return result;
+  }
+
+  /**
+   * Insert a design while holding the write lock.
+   *
+   * @param design The design.
+   * @param fingerprint The fingerprint.
+   * @param keys The near duplicate keys.
+   * @return The identifier of the design.
+   */
+  private int insert(SpellDesign design, long fingerprint, long[] keys) {
+    int id = designs.size();
+    designs.add(design);
+    if (id == fingerprints.length) fingerprints = Arrays.copyOf(fingerprints, id * 2);
+    fingerprints[id] = fingerprint;
+    addId(exact, fingerprint, id);
+    for (long key : keys) addId(near, key, id);
+    return id;
+  }
+
+  /**
+   * Get a design.
+   *
+   * @param id The identifier.
+   * @return The design.
+   * @throws IndexOutOfBoundsException The identifier was invalid.
+   */
+  public SpellDesign get(int id) throws IndexOutOfBoundsException {
+    lock.readLock().lock();
+    try {
+      return designs.get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the number of designs.
+   *
+   * @return The number of indexed designs.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return designs.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the exact duplicates of a design.
+   *
+   * The canonical forms of the candidates are compared, so fingerprint collisions are never
+   * reported.
+   *
+   * @param design The design.
+   * @return The identifiers of the indexed designs with the same canonical form.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public int[] exactDuplicatesOf(SpellDesign design) throws IllegalArgumentException {
+    String canonical = canonicalForm(design);
+    lock.readLock().lock();
+    try {
+      Bucket candidates = exact.get(hash(canonical));
+      if (candidates == null) return new int[0];
+      return Arrays.stream(candidates.ids, 0, candidates.size).filter(id -> canonicalForm(designs.get(id)).equals(canonical)).toArray();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the near duplicates of a design.
+   *
+   * @param design The design.
+   * @return The identifiers of the indexed designs differing in exactly one component.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public int[] nearDuplicatesOf(SpellDesign design) throws IllegalArgumentException {
+    long fingerprint = fingerprint(design);
+    long[] keys = nearKeys(design);
+    lock.readLock().lock();
+    try {
+      TreeSet<Integer> result = new TreeSet<>();
+      for (long key : keys) {
+        Bucket bucket = near.get(key);
+        if (bucket == null) continue;
+        for (int i = 0; i < bucket.size; i++) {
+          if (fingerprints[bucket.ids[i]] != fingerprint) result.add(bucket.ids[i]);
+        }
+      }
+      return result.stream().mapToInt(Integer::intValue).toArray();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the groups of exact duplicates.
+   *
+   * @return The identifiers of the groups of more than one design with the same canonical form.
+   */
+  public List<int[]> exactGroups() {
+    lock.readLock().lock();
+    try {
+      List<int[]> result = new ArrayList<>();
+      for (Bucket bucket : exact.values()) {
+        if (bucket.size < 2) continue;
+        Map<String, List<Integer>> byForm = new TreeMap<>();
+        for (int id : bucket.toArray()) byForm.computeIfAbsent(canonicalForm(designs.get(id)), key -> new ArrayList<>()).add(id);
+        for (List<Integer> group : byForm.values()) {
+          if (group.size() > 1) result.add(group.stream().mapToInt(Integer::intValue).toArray());
+        }
+      }
+      result.sort((a, b) -> Integer.compare(a[0], b[0]));
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the groups of near duplicates.
+   *
+   * A group consists of the designs sharing the canonical form without the same component,
+   * so any two designs of a group differ in at most that component. The groups are not
+   * joined transitively, and a design belongs to a group for each component it shares with
+   * its near duplicates. The groups of only exact duplicates are omitted.
+   *
+   * @return The identifiers of the groups of more than one design in the order of their
+   * smallest identifiers.
+   */
+  public List<int[]> nearGroups() {
+    lock.readLock().lock();
+    try {
+      Map<List<Integer>, int[]> groups = new HashMap<>();
+      for (Map.Entry<Long, Bucket> entry : near.entrySet()) {
+        Bucket bucket = entry.getValue();
+        if (bucket.size < 2) continue;
+        // The canonical forms are compared, so the hash collisions do not join groups.
+        Map<String, List<Integer>> byForm = new HashMap<>();
+        for (int id : bucket.toArray()) {
+          String[] components = components(designs.get(id));
+          for (int key = 0; key < NEAR_KEY_COUNT; key++) {
+            String partial = partialForm(components, key);
+            if (hash(partial) == entry.getKey()) byForm.computeIfAbsent(partial, form -> new ArrayList<>()).add(id);
+          }
+        }
+        for (List<Integer> group : byForm.values()) {
+          if (group.size() > 1 && group.stream().mapToLong(id -> fingerprints[id]).distinct().count() > 1) {
+            groups.putIfAbsent(group, group.stream().mapToInt(Integer::intValue).toArray());
+          }
+        }
+      }
+      List<int[]> result = new ArrayList<>(groups.values());
+      result.sort(Arrays::compare);
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+/**
+ * The durations of the spells and effects.
+ */
+public enum SpellDuration {
+  Momentary(0), Concentration(1), Diameter(1), Sun(2), Ring(2), Moon(3), Year(4);
+
+  /**
+   * The number of magnitudes the duration adds to the base level.
+   */
+  private final int magnitude;
+
+  /**
+   * Create a new duration.
+   *
+   * @param magnitude The magnitude modifier of the duration.
+   */
+  SpellDuration(int magnitude) {
+    this.magnitude = magnitude;
+  }
+
+  /**
+   * Get the magnitude modifier of the duration.
+   *
+   * @return The number of magnitudes the duration adds.
+   */
+  public int getMagnitude() {
+    return magnitude;
+  }
+}
@@ -5,6 +5,7 @@
 
 package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
 
+import java.io.IOException;
 import java.util.Optional;
 
 import jakarta.resource.spi.IllegalStateException;
@@ -102,7 +103,7 @@ FORM extends FormInterface<FORM_TYPE>> {
     @SuppressWarnings("")
     public MagnitudeReference(int magnitudeModifier) {
       try {
-        setMagnitudeModifier(modifier);
+        setMagnitudeModifier(magnitudeModifier);
       } catch(IllegalStateException ase){
         throw new Error("The magntiude modifier initialzied before construction");
       }
@@ -119,6 +120,15 @@ FORM extends FormInterface<FORM_TYPE>> {
       return (Short.MIN_VALUE+8)/5 <= modifier && modifier < Short.MAX_VALUE/5;
     }
 
+    /**
+     * Get the magnitude modifier.
+     *
+     * @return The number of magnitudes added to the referred level.
+     */
+    public int getMagnitudeModifier() {
+      return modifier;
+    }
+
     /**
      * Set the magnitude modifier.
      * @implNote The method is called in constructor, thus subclass implementation should not
@@ -200,6 +210,24 @@ FORM extends FormInterface<FORM_TYPE>> {
       return new SequenceWithMagnitudeReference(null, modifier, suffix);
     }
 
+    /**
+     * Get the text preceding the magnitude reference.
+     *
+     * @return The prefix of the sequence.
+     */
+    public String getPrefix() {
+      return prefix;
+    }
+
+    /**
+     * Get the text following the magnitude reference.
+     *
+     * @return The suffix of the sequence.
+     */
+    public String getSuffix() {
+      return suffix;
+    }
+
     /**
      * Create descriptoin with reference replacing reference with generic description.
      * 
@@ -207,7 +235,7 @@ FORM extends FormInterface<FORM_TYPE>> {
      */
     @Override
     public String toString() {
-      return toString((Short)null);
+      return super.toString();
     }
 
     /**
@@ -364,6 +392,15 @@ FORM extends FormInterface<FORM_TYPE>> {
     return name.toString();
   }
 
+  /**
+   * Get the name of the spell guideline without rendering it.
+   *
+   * @return The name sequence, which may be a level reference.
+   */
+  public CharSequence getNameSequence() {
+    return name;
+  }
+
   /**
    * Initialize the name of the spell guideline.
    * 
@@ -399,7 +436,16 @@ FORM extends FormInterface<FORM_TYPE>> {
    * @return The long description, if any exists.
    */
   public Optional<String> getDescription() {
-    return Optional.ofNullable(this.description.toString());
+    return Optional.ofNullable(this.description).map(CharSequence::toString);
+  }
+
+  /**
+   * Get the description of the spell guideline without rendering it.
+   *
+   * @return The description sequence, which may be a level reference, or an undefined value.
+   */
+  public CharSequence getDescriptionSequence() {
+    return description;
   }
 
   /**
@@ -490,14 +536,60 @@ FORM extends FormInterface<FORM_TYPE>> {
 
   @Override
   public String toString() {
-    return String.format(
-      "%s%s%s: %s.%s",
-      this.getTechnique().getAbreviation().orElse(technique.getName()), 
-      this.getForm().getAbreviation().orElse(form.getName()),
-      this.getLevel().toString(),
-      this.getName(), 
-      this.getDescription().orElse("")
-    );
+    long start = SpellMetrics.start();
+    try {
+      return String.format(
+        "%s%s%s: %s.%s",
+        this.getTechnique().getAbreviation().orElse(technique.getName()), 
+        this.getForm().getAbreviation().orElse(form.getName()),
+        this.getLevel().toString(),
+        this.getName(), 
+        this.getDescription().orElse("")
+      );
+    } finally {
+      SpellMetrics.GUIDELINE_RENDERS.record(start);
+    }
+  }
+
+  /**
+   * Append the string representation of the guideline without creating it.
+   *
+   * @param <T> The type of the target.
+   * @param target The appended target.
+   * @return The target.
+   * @throws IOException The appending failed.
+   */
+  public <T extends Appendable> T appendTo(T target) throws IOException {
+    long start = SpellMetrics.start();
+    try {
+      target.append(getTechnique().getAbreviation().orElse(getTechnique().getName()))
+      .append(getForm().getAbreviation().orElse(getForm().getName()))
+      .append(getLevel().toString()).append(": ");
+      appendSequence(target, getNameSequence());
+      target.append('.');
+      if (getDescriptionSequence() != null) appendSequence(target, getDescriptionSequence());
+      return target;
+    } finally {
+      SpellMetrics.GUIDELINE_RENDERS.record(start);
+    }
+  }
+
+  /**
+   * Append a name or a description.
+   *
+   * @param target The appended target.
+   * @param sequence The appended sequence.
+   * @throws IOException The appending failed.
+   */
+  static void appendSequence(Appendable target, CharSequence sequence) throws IOException {
+    if (sequence instanceof String || sequence instanceof ReferenceSequence) {
+      // The references render themselves for every character access.
+      target.append(sequence.toString());
+    } else if (sequence instanceof GuidelineTextStore.StoredText text) {
+      text.appendTo(target);
+    } else {
+      for (int i = 0, end = sequence.length(); i < end; i++) target.append(sequence.charAt(i));
+    }
   }
 
 
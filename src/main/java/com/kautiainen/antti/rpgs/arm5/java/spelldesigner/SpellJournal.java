@@ -0,0 +1,810 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A persistent store of spell designs.
+ *
+ * The changes are appended to checksummed journal segments. The changes of concurrent
+ * writers are committed together, so one write and one synchronization to the disk covers a
+ * whole group of changes. When enough changes have been committed since the last snapshot,
+ * the designs are written to a new snapshot and the journal segments it covers are deleted.
+ * The recovery loads the snapshot and replays only the journal entries after it, stopping at
+ * the first torn or corrupted entry.
+ */
+public class SpellJournal implements AutoCloseable {
+
+  /**
+   * The error message indicating the journal was closed.
+   */
+  public static final String CLOSED_MESSAGE = "The journal is closed";
+
+  /**
+   * The error message indicating a stored art was unknown.
+   */
+  public static final String UNKNOWN_ART_MESSAGE = "Unknown art";
+
+  /**
+   * The error message indicating the snapshot was corrupted.
+   */
+  public static final String CORRUPTED_SNAPSHOT_MESSAGE = "Corrupted snapshot";
+
+  /**
+   * The error message indicating an entry before the last journal segment was corrupted.
+   */
+  public static final String CORRUPTED_SEGMENT_MESSAGE = "Corrupted journal segment";
+
+  /**
+   * The name of the snapshot file.
+   */
+  public static final String SNAPSHOT_FILE = "spells.snapshot";
+
+  /**
+   * The prefix of the journal segment files.
+   */
+  public static final String SEGMENT_PREFIX = "journal-";
+
+  /**
+   * The suffix of the journal segment files.
+   */
+  public static final String SEGMENT_SUFFIX = ".log";
+
+  /**
+   * The magic number of the snapshot.
+   */
+  private static final int SNAPSHOT_MAGIC = 0x53504c53;
+
+  /**
+   * The format version of the snapshot.
+   */
+  private static final int SNAPSHOT_VERSION = 1;
+
+  /**
+   * The size of the entry header: the payload length, the checksum, the sequence number, and
+   * the entry type.
+   */
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 1;
+
+  /**
+   * The entry type of an added design.
+   */
+  private static final byte ADD_ENTRY = 1;
+
+  /**
+   * The entry type of a removed design.
+   */
+  private static final byte REMOVE_ENTRY = 2;
+
+  /**
+   * The largest accepted payload.
+   */
+  private static final int MAX_PAYLOAD = 1 << 20;
+
+  /**
+   * A change waiting for the group commit.
+   */
+  private static final class Pending {
+
+    /**
+     * The sequence number of the change.
+     */
+    final long sequence;
+
+    /**
+     * The type of the change.
+     */
+    final byte type;
+
+    /**
+     * The added design, or an undefined value for a removal.
+     */
+    final SpellDesign design;
+
+    /**
+     * The encoded change.
+     */
+    final byte[] payload;
+
+    /**
+     * The result of the change.
+     */
+    final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    /**
+     * Create a pending change.
+     *
+     * @param sequence The sequence number.
+     * @param type The type.
+     * @param design The added design.
+     * @param payload The encoded change.
+     */
+    Pending(long sequence, byte type, SpellDesign design, byte[] payload) {
+      this.sequence = sequence;
+      this.type = type;
+      this.design = design;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * The directory of the journal.
+   */
+  private final Path directory;
+
+  /**
+   * The arts resolving the stored art names.
+   */
+  private final HermeticArts arts;
+
+  /**
+   * The largest number of changes in one group commit.
+   */
+  private final int maxBatch;
+
+  /**
+   * The time the committer waits for more changes after the first change of a group.
+   */
+  private final long groupDelayNanos;
+
+  /**
+   * The number of committed changes triggering a compaction.
+   */
+  private final int compactionThreshold;
+
+  /**
+   * The designs by their identifiers.
+   */
+  private final ConcurrentSkipListMap<Long, SpellDesign> designs = new ConcurrentSkipListMap<>();
+
+  /**
+   * The changes waiting for the commit.
+   */
+  private final List<Pending> pending = new ArrayList<>();
+
+  /**
+   * The lock of the pending changes and the sequence numbers.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The condition signaled when changes are pending or the journal closes.
+   */
+  private final Condition changed = lock.newCondition();
+
+  /**
+   * The lock of the journal segment and the applied state.
+   */
+  private final ReentrantLock ioLock = new ReentrantLock();
+
+  /**
+   * The lock preventing concurrent compactions.
+   */
+  private final ReentrantLock compactionLock = new ReentrantLock();
+
+  /**
+   * The next sequence number.
+   */
+  private long nextSequence;
+
+  /**
+   * The sequence number of the last applied change.
+   */
+  private volatile long lastSequence;
+
+  /**
+   * The number of changes committed since the last snapshot.
+   */
+  private int sinceSnapshot = 0;
+
+  /**
+   * The number of journal entries replayed by the recovery.
+   */
+  private final int recoveredEntries;
+
+  /**
+   * The current journal segment.
+   */
+  private FileChannel segment;
+
+  /**
+   * The first sequence number of the current segment.
+   */
+  private long segmentStart;
+
+  /**
+   * The failure of the journal, after which no changes are accepted.
+   */
+  private volatile IOException failure;
+
+  /**
+   * Has the journal been closed.
+   */
+  private boolean closed = false;
+
+  /**
+   * The committer thread.
+   */
+  private final Thread committer;
+
+  /**
+   * The executor of the compactions.
+   */
+  private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread result = new Thread(runnable, "spell-journal-compactor");
+    result.setDaemon(true);
+    return result;
+  });
+
+  /**
+   * Open a journal with the default group commit and compaction settings.
+   *
+   * @param directory The directory of the journal.
+   * @param arts The arts of the stored designs.
+   * @throws IOException The recovery failed.
+   */
+  public SpellJournal(Path directory, HermeticArts arts) throws IOException {
+    this(directory, arts, 512, TimeUnit.MILLISECONDS.toNanos(2), 100_000);
+  }
+
+  /**
+   * Open a journal.
+   *
+   * @param directory The directory of the journal.
+   * @param arts The arts of the stored designs.
+   * @param maxBatch The largest number of changes in one group commit.
+   * @param groupDelayNanos The time waited for more changes after the first change of a group.
+   * @param compactionThreshold The number of committed changes triggering a compaction.
+   * @throws IllegalArgumentException Any argument was invalid.
+   * @throws IOException The recovery failed.
+   */
+  public SpellJournal(Path directory, HermeticArts arts, int maxBatch, long groupDelayNanos, int compactionThreshold)
+  throws IllegalArgumentException, IOException {
+    if (directory == null || arts == null || maxBatch <= 0 || groupDelayNanos < 0 || compactionThreshold <= 0) {
+      throw new IllegalArgumentException("Invalid journal settings");
+    }
+    this.directory = directory;
+    this.arts = arts;
+    this.maxBatch = maxBatch;
+    this.groupDelayNanos = groupDelayNanos;
+    this.compactionThreshold = compactionThreshold;
+    Files.createDirectories(directory);
+    long snapshotSequence = readSnapshot();
+    int replayed = 0;
+    long last = snapshotSequence;
+    List<Path> files = segments();
+    // Only the last non-empty segment may end with a torn entry, as the earlier ones were synchronized.
+    int tail = files.size() - 1;
+    while (tail > 0 && Files.size(files.get(tail)) == 0) tail--;
+    for (int i = 0; i < files.size(); i++) {
+      Path file = files.get(i);
+      long[] result = replay(file, snapshotSequence, i >= tail);
+      replayed += (int)result[0];
+      last = Math.max(last, result[1]);
+      if (result[0] == 0 && result[1] < 0 && Files.size(file) == 0) Files.delete(file);
+    }
+    this.recoveredEntries = replayed;
+    this.sinceSnapshot = replayed;
+    this.lastSequence = last;
+    this.nextSequence = last + 1;
+    openSegment(nextSequence);
+    this.committer = new Thread(this::commitLoop, "spell-journal-committer");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  /**
+   * Get the designs.
+   *
+   * @return The unmodifiable view of the committed designs by their identifiers.
+   */
+  public NavigableMap<Long, SpellDesign> getDesigns() {
+    return Collections.unmodifiableNavigableMap(designs);
+  }
+
+  /**
+   * Get the sequence number of the last committed change.
+   *
+   * @return The last sequence number.
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Get the number of journal entries replayed by the recovery.
+   *
+   * @return The number of replayed entries after the snapshot.
+   */
+  public int getRecoveredEntries() {
+    return recoveredEntries;
+  }
+
+  /**
+   * Add a design.
+   *
+   * @param design The added design.
+   * @return The future identifier of the design, completed once the design is on the disk.
+   * @throws IllegalArgumentException The design was undefined.
+   */
+  public CompletableFuture<Long> add(SpellDesign design) throws IllegalArgumentException {
+    if (design == null) throw new IllegalArgumentException(SpellDesign.INVALID_TECHNIQUE_MESSAGE);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try {
+      write(new DataOutputStream(bytes), design);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+    return enqueue(ADD_ENTRY, design, bytes.toByteArray());
+  }
+
+  /**
+   * Remove a design.
+   *
+   * @param id The identifier of the removed design.
+   * @return The future sequence number of the removal, completed once the removal is on the disk.
+   */
+  public CompletableFuture<Long> remove(long id) {
+    return enqueue(REMOVE_ENTRY, null, ByteBuffer.allocate(8).putLong(0, id).array());
+  }
+
+  /**
+   * Queue a change for the group commit.
+   *
+   * @param type The type of the change.
+   * @param design The added design.
+   * @param payload The encoded change.
+   * @return The future sequence number of the change.
+   */
+  private CompletableFuture<Long> enqueue(byte type, SpellDesign design, byte[] payload) {
+    lock.lock();
+    try {
+      if (closed) return CompletableFuture.failedFuture(new IOException(CLOSED_MESSAGE));
+      if (failure != null) return CompletableFuture.failedFuture(failure);
+      Pending change = new Pending(nextSequence++, type, design, payload);
+      pending.add(change);
+      changed.signal();
+      return change.result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Commit the pending changes in groups until the journal closes.
+   */
+  private void commitLoop() {
+    while (true) {
+      List<Pending> batch;
+      lock.lock();
+      try {
+        while (pending.isEmpty() && !closed) changed.awaitUninterruptibly();
+        if (pending.isEmpty()) return;
+        long delay = closed ? 0 : groupDelayNanos;
+        while (delay > 0 && pending.size() < maxBatch && !closed) {
+          try {
+            delay = changed.awaitNanos(delay);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+        int size = Math.min(maxBatch, pending.size());
+        batch = new ArrayList<>(pending.subList(0, size));
+        pending.subList(0, size).clear();
+      } finally {
+        lock.unlock();
+      }
+      commit(batch);
+    }
+  }
+
+  /**
+   * Write, synchronize, and apply a group of changes.
+   *
+   * @param batch The committed changes.
+   */
+  private void commit(List<Pending> batch) {
+    IOException error = failure;
+    boolean compact = false;
+    ioLock.lock();
+    try {
+      if (error == null) {
+        int size = 0;
+        for (Pending change : batch) size += HEADER_SIZE + change.payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Pending change : batch) {
+          buffer.putInt(change.payload.length).putInt(checksum(change.sequence, change.type, change.payload))
+          .putLong(change.sequence).put(change.type).put(change.payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) segment.write(buffer);
+        segment.force(false);
+        for (Pending change : batch) apply(change.sequence, change.type, change.design, change.payload);
+        sinceSnapshot += batch.size();
+        compact = sinceSnapshot >= compactionThreshold;
+      }
+    } catch (IOException e) {
+      failure = e;
+      error = e;
+    } finally {
+      ioLock.unlock();
+    }
+    for (Pending change : batch) {
+      if (error == null) {
+        change.result.complete(change.sequence);
+      } else {
+        change.result.completeExceptionally(error);
+      }
+    }
+    if (compact) {
+      compactor.execute(() -> {
+        try {
+          compact();
+        } catch (IOException e) {
+          failure = e;
+        }
+      });
+    }
+  }
+
+  /**
+   * Apply a change to the designs.
+   *
+   * @param sequence The sequence number of the change.
+   * @param type The type of the change.
+   * @param design The added design, or an undefined value for a removal.
+   * @param payload The encoded change.
+   */
+  private void apply(long sequence, byte type, SpellDesign design, byte[] payload) {
+    if (type == ADD_ENTRY) {
+      designs.put(sequence, design);
+    } else {
+      designs.remove(ByteBuffer.wrap(payload).getLong());
+    }
+    lastSequence = sequence;
+  }
+
+  /**
+   * Write a snapshot of the designs and delete the journal segments it covers.
+   *
+   * @throws IOException The snapshot could not be written.
+   */
+  public void compact() throws IOException {
+    compactionLock.lock();
+    try {
+      TreeMap<Long, SpellDesign> state;
+      long covered;
+      long retained;
+      ioLock.lock();
+      try {
+        state = new TreeMap<>(designs);
+        covered = lastSequence;
+        sinceSnapshot = 0;
+        segment.close();
+        openSegment(covered + 1);
+        retained = segmentStart;
+      } finally {
+        ioLock.unlock();
+      }
+      writeSnapshot(state, covered);
+      // The segments are deleted only after the new snapshot is durable in the directory.
+      for (Path file : segments()) {
+        if (segmentStartOf(file) < retained) Files.delete(file);
+      }
+    } finally {
+      compactionLock.unlock();
+    }
+  }
+
+  /**
+   * Commit the pending changes and close the journal.
+   *
+   * @throws IOException The journal could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (closed) return;
+      closed = true;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    boolean interrupted = false;
+    while (committer.isAlive()) {
+      try {
+        committer.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    ioLock.lock();
+    try {
+      segment.close();
+    } finally {
+      ioLock.unlock();
+    }
+    if (failure != null) throw failure;
+  }
+
+  /**
+   * Open a new journal segment.
+   *
+   * @param start The first sequence number of the segment.
+   * @throws IOException The segment could not be opened.
+   */
+  private void openSegment(long start) throws IOException {
+    segment = FileChannel.open(directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX)),
+    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    segmentStart = start;
+    forceDirectory();
+  }
+
+  /**
+   * Get the journal segments.
+   *
+   * @return The segment files in the order of their first sequence numbers.
+   * @throws IOException The directory could not be listed.
+   */
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }).sorted((a, b) -> Long.compareUnsigned(segmentStartOf(a), segmentStartOf(b))).toList();
+    }
+  }
+
+  /**
+   * Get the first sequence number of a segment.
+   *
+   * @param file The segment file.
+   * @return The first sequence number encoded into the file name.
+   */
+  private static long segmentStartOf(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseUnsignedLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16);
+  }
+
+  /**
+   * Replay a journal segment, truncating the last segment at the first torn or corrupted entry.
+   *
+   * @param file The segment file.
+   * @param after The sequence number covered by the snapshot.
+   * @param tail Is the segment the last segment with entries.
+   * @return The number of replayed entries and the last sequence number, or -1 without entries.
+   * @throws IOException The segment could not be read, or an earlier segment was corrupted.
+   */
+  private long[] replay(Path file, long after, boolean tail) throws IOException {
+    long[] result = { 0, -1 };
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      long position = 0;
+      long size = channel.size();
+      while (true) {
+        header.clear();
+        if (position + HEADER_SIZE > size || channel.read(header, position) < HEADER_SIZE) break;
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        long sequence = header.getLong();
+        byte type = header.get();
+        if (length < 0 || length > MAX_PAYLOAD || position + HEADER_SIZE + length > size) break;
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        while (payload.hasRemaining() && channel.read(payload, position + HEADER_SIZE + payload.position()) > 0);
+        if (payload.hasRemaining() || checksum != checksum(sequence, type, payload.array())) break;
+        if (sequence > after) {
+          SpellDesign design = type == ADD_ENTRY ? read(new DataInputStream(new ByteArrayInputStream(payload.array())), arts) : null;
+          apply(sequence, type, design, payload.array());
+          result[0]++;
+        }
+        result[1] = sequence;
+        position += HEADER_SIZE + length;
+      }
+      if (position < size) {
+        // Truncating an earlier segment would lose its entries and replay the later ones over the gap.
+        if (!tail) throw new IOException(CORRUPTED_SEGMENT_MESSAGE + ": " + file.getFileName());
+        channel.truncate(position);
+        channel.force(true);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read the snapshot into the designs.
+   *
+   * @return The sequence number covered by the snapshot, or 0 without a snapshot.
+   * @throws IOException The snapshot was corrupted or could not be read.
+   */
+  private long readSnapshot() throws IOException {
+    Path file = directory.resolve(SNAPSHOT_FILE);
+    if (!Files.exists(file)) return 0;
+    byte[] bytes = Files.readAllBytes(file);
+    if (bytes.length < 8) throw new IOException(CORRUPTED_SNAPSHOT_MESSAGE);
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 8);
+    if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) throw new IOException(CORRUPTED_SNAPSHOT_MESSAGE);
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+    if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) throw new IOException(CORRUPTED_SNAPSHOT_MESSAGE);
+    long covered = input.readLong();
+    for (int i = input.readInt(); i > 0; i--) {
+      long id = input.readLong();
+      designs.put(id, read(input, arts));
+    }
+    return covered;
+  }
+
+  /**
+   * Write a snapshot and replace the previous snapshot with it.
+   *
+   * @param state The designs of the snapshot.
+   * @param covered The sequence number of the last change included in the snapshot.
+   * @throws IOException The snapshot could not be written.
+   */
+  private void writeSnapshot(Map<Long, SpellDesign> state, long covered) throws IOException {
+    Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+    StandardOpenOption.TRUNCATE_EXISTING)) {
+      CRC32 crc = new CRC32();
+      DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+      output.writeInt(SNAPSHOT_MAGIC);
+      output.writeInt(SNAPSHOT_VERSION);
+      output.writeLong(covered);
+      output.writeInt(state.size());
+      for (Map.Entry<Long, SpellDesign> entry : state.entrySet()) {
+        output.writeLong(entry.getKey());
+        write(output, entry.getValue());
+      }
+      output.flush();
+      new DataOutputStream(Channels.newOutputStream(channel)).writeLong(crc.getValue());
+      channel.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    forceDirectory();
+  }
+
+  /**
+   * Synchronize the entries of the directory to the disk, so a created or renamed file
+   * survives a crash.
+   *
+   * @throws IOException The directory could not be synchronized.
+   */
+  private void forceDirectory() throws IOException {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (AccessDeniedException e) {
+      // The directories cannot be opened on Windows, where the rename is durable on its own.
+    }
+  }
+
+  /**
+   * Calculate the checksum of a journal entry.
+   *
+   * @param sequence The sequence number.
+   * @param type The entry type.
+   * @param payload The payload.
+   * @return The checksum of the sequence number, the type, and the payload.
+   */
+  private static int checksum(long sequence, byte type, byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(9).putLong(sequence).put(type).flip());
+    crc.update(payload);
+    return (int)crc.getValue();
+  }
+
+  /**
+   * Write a design.
+   *
+   * @param output The output.
+   * @param design The written design.
+   * @throws IOException The design could not be written.
+   */
+  static void write(DataOutput output, SpellDesign design) throws IOException {
+    output.writeBoolean(design.getName() != null);
+    if (design.getName() != null) output.writeUTF(design.getName());
+    output.writeUTF(design.getTechnique().getName());
+    output.writeUTF(design.getForm().getName());
+    output.writeShort(design.getRequisites().size());
+    for (ArtInterface<?> requisite : design.getRequisites()) {
+      output.writeBoolean(requisite instanceof TechniqueInterface);
+      output.writeUTF(requisite.getName());
+    }
+    output.writeShort(design.getBaseLevel());
+    output.writeUTF(design.getRange().name());
+    output.writeUTF(design.getDuration().name());
+    output.writeUTF(design.getTarget().name());
+    output.writeInt(design.getExtraMagnitudes());
+  }
+
+  /**
+   * Read a design.
+   *
+   * @param input The input.
+   * @param arts The arts resolving the art names.
+   * @return The read design.
+   * @throws IOException The design could not be read, or it was invalid.
+   */
+  static SpellDesign read(DataInput input, HermeticArts arts) throws IOException {
+    String name = input.readBoolean() ? input.readUTF() : null;
+    TechniqueInterface<?> technique = technique(arts, input.readUTF());
+    FormInterface<?> form = form(arts, input.readUTF());
+    List<ArtInterface<?>> requisites = new ArrayList<>();
+    for (int i = input.readShort(); i > 0; i--) {
+      boolean isTechnique = input.readBoolean();
+      String art = input.readUTF();
+      requisites.add(isTechnique ? technique(arts, art) : form(arts, art));
+    }
+    try {
+      return new SpellDesign(name, technique, form, requisites, input.readShort(),
+      SpellRange.valueOf(input.readUTF()), SpellDuration.valueOf(input.readUTF()), SpellTarget.valueOf(input.readUTF()),
+      input.readInt());
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Resolve a technique.
+   *
+   * @param arts The arts.
+   * @param name The name of the technique.
+   * @return The technique.
+   * @throws IOException The technique was unknown.
+   */
+  private static TechniqueInterface<?> technique(HermeticArts arts, String name) throws IOException {
+    return arts.getTechnique(name).orElseThrow(() -> new IOException(UNKNOWN_ART_MESSAGE + ": " + name));
+  }
+
+  /**
+   * Resolve a form.
+   *
+   * @param arts The arts.
+   * @param name The name of the form.
+   * @return The form.
+   * @throws IOException The form was unknown.
+   */
+  private static FormInterface<?> form(HermeticArts arts, String name) throws IOException {
+    return arts.getForm(name).orElseThrow(() -> new IOException(UNKNOWN_ART_MESSAGE + ": " + name));
+  }
+}
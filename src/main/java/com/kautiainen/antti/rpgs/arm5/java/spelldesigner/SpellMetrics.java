@@ -0,0 +1,499 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * The counters and latency histograms of the hot paths.
+ *
+ * The counters and histograms are striped {@link LongAdder LongAdders}, so the instrumented
+ * threads do not contend on a shared cache line. The instrumentation is switched off with the
+ * system property {@link #ENABLED_PROPERTY} set to "false". The switch is a static final
+ * constant, so the just in time compiler removes the disabled instrumentation altogether.
+ *
+ * The instrumented code times itself with
+ * <pre>
+ * long start = SpellMetrics.start();
+ * try {
+ *   ...
+ * } finally {
+ *   SpellMetrics.GUIDELINE_RENDERS.record(start);
+ * }
+ * </pre>
+ */
+public final class SpellMetrics {
+
+  /**
+   * The system property switching the instrumentation off.
+   */
+  public static final String ENABLED_PROPERTY = "arm5.spells.metrics";
+
+  /**
+   * Is the instrumentation enabled.
+   */
+  public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "true").trim());
+
+  /**
+   * The error message indicating a metric name was invalid.
+   */
+  public static final String INVALID_NAME_MESSAGE = "Invalid metric name";
+
+  /**
+   * The error message indicating a metric help text was invalid.
+   */
+  public static final String INVALID_HELP_MESSAGE = "Invalid metric help";
+
+  /**
+   * The pattern of the valid metric names.
+   */
+  public static final Pattern NAME_PATTERN = Pattern.compile("^[a-zA-Z_:][a-zA-Z0-9_:]*$");
+
+  /**
+   * The registered metrics in the registration order.
+   */
+  private static final List<Metric> METRICS = new CopyOnWriteArrayList<>();
+
+  /**
+   * The lock of the registrations.
+   */
+  private static final ReentrantLock REGISTRATION_LOCK = new ReentrantLock();
+
+  /**
+   * The lookups of the known arts of a type.
+   */
+  public static final Histogram ART_TYPE_LOOKUPS = histogram("arm5_art_type_lookup_seconds",
+  "The latency of the lookups of the known arts of a type.");
+
+  /**
+   * The lookups of a technique or a form by name.
+   */
+  public static final Histogram ART_LOOKUPS = histogram("arm5_hermetic_arts_lookup_seconds",
+  "The latency of the lookups of the techniques and the forms by name.");
+
+  /**
+   * The lookups of a technique or a form by name finding nothing.
+   */
+  public static final Counter ART_LOOKUP_MISSES = counter("arm5_hermetic_arts_lookup_misses_total",
+  "The number of the lookups of the techniques and the forms finding no art.");
+
+  /**
+   * The calculations of the experience costs.
+   */
+  public static final Histogram EXPERIENCE_COSTS = histogram("arm5_experience_cost_seconds",
+  "The latency of the calculations of the experience costs.");
+
+  /**
+   * The renderings of the guidelines.
+   */
+  public static final Histogram GUIDELINE_RENDERS = histogram("arm5_guideline_render_seconds",
+  "The latency of the renderings of the guidelines.");
+
+  /**
+   * The calculations of the spell levels.
+   */
+  public static final Histogram LEVEL_CALCULATIONS = histogram("arm5_level_calculation_seconds",
+  "The latency of the calculations of the spell levels from the base levels and the magnitudes.");
+
+  /**
+   * The aggregate requests answered from the cache.
+   */
+  public static final Counter AGGREGATE_CACHE_HITS = counter("arm5_aggregate_cache_hits_total",
+  "The number of the aggregates answered from the cache.");
+
+  /**
+   * The aggregate requests scanning the columns.
+   */
+  public static final Counter AGGREGATE_CACHE_MISSES = counter("arm5_aggregate_cache_misses_total",
+  "The number of the aggregates scanning at least a part of the columns.");
+
+  /**
+   * The evaluations of the designs of the batches.
+   */
+  public static final Histogram BATCH_EVALUATIONS = histogram("arm5_batch_evaluation_seconds",
+  "The latency of the evaluations of the designs of the batches.");
+
+  /**
+   * The designs of the batches rejected as invalid.
+   */
+  public static final Counter BATCH_ERRORS = counter("arm5_batch_errors_total",
+  "The number of the designs of the batches rejected as invalid.");
+
+  /**
+   * The metrics are not instantiated.
+   */
+  private SpellMetrics() {
+  }
+
+  /**
+   * A metric.
+   */
+  public static abstract class Metric {
+
+    /**
+     * The name of the metric.
+     */
+    private final String name;
+
+    /**
+     * The help text of the metric.
+     */
+    private final String help;
+
+    /**
+     * Create a new metric.
+     *
+     * @param name The name of the metric.
+     * @param help The help text of the metric.
+     * @throws IllegalArgumentException The name or the help text was invalid.
+     */
+    protected Metric(String name, String help) throws IllegalArgumentException {
+      if (name == null || !NAME_PATTERN.matcher(name).matches()) throw new IllegalArgumentException(INVALID_NAME_MESSAGE);
+      if (help == null || help.indexOf('\n') >= 0) throw new IllegalArgumentException(INVALID_HELP_MESSAGE);
+      this.name = name;
+      this.help = help;
+    }
+
+    /**
+     * Get the name of the metric.
+     *
+     * @return The name of the metric.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Get the help text of the metric.
+     *
+     * @return The help text of the metric.
+     */
+    public String getHelp() {
+      return help;
+    }
+
+    /**
+     * Get the Prometheus type of the metric.
+     *
+     * @return The type of the metric.
+     */
+    public abstract String getType();
+
+    /**
+     * Append the samples of the metric in the Prometheus text format.
+     *
+     * @param target The appended target.
+     * @throws IOException The appending failed.
+     */
+    protected abstract void appendSamples(Appendable target) throws IOException;
+  }
+
+  /**
+   * A monotonic counter.
+   */
+  public static final class Counter extends Metric {
+
+    /**
+     * The count.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Create a new counter.
+     *
+     * @param name The name of the counter.
+     * @param help The help text of the counter.
+     * @throws IllegalArgumentException The name or the help text was invalid.
+     */
+    private Counter(String name, String help) throws IllegalArgumentException {
+      super(name, help);
+    }
+
+    /**
+     * Increment the counter, if the instrumentation is enabled.
+     */
+    public void increment() {
+      if (ENABLED) count.increment();
+    }
+
+    /**
+     * Get the count.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public String getType() {
+      return "counter";
+    }
+
+    @Override
+    protected void appendSamples(Appendable target) throws IOException {
+      target.append(getName()).append(' ').append(Long.toString(getCount())).append('\n');
+    }
+  }
+
+  /**
+   * A latency histogram with logarithmic buckets.
+   *
+   * Every power of two of nanoseconds is split into {@link #SUB_BUCKETS} linear buckets, so a
+   * recorded latency is known within a quarter of its magnitude, as in an HDR histogram with a
+   * single significant bit. The exported Prometheus buckets are the powers of two.
+   */
+  public static final class Histogram extends Metric {
+
+    /**
+     * The number of the linear buckets of a power of two as a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /**
+     * The number of the linear buckets of a power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The smallest exported power of two of nanoseconds, 1.024 microseconds.
+     */
+    private static final int MIN_EXPORTED_POWER = 10;
+
+    /**
+     * The largest exported power of two of nanoseconds, about 68.7 seconds.
+     */
+    private static final int MAX_EXPORTED_POWER = 36;
+
+    /**
+     * The counts of the buckets.
+     */
+    private final LongAdder[] buckets = new LongAdder[(Long.SIZE + 1) * SUB_BUCKETS];
+
+    /**
+     * The sum of the recorded nanoseconds.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Create a new histogram.
+     *
+     * @param name The name of the histogram.
+     * @param help The help text of the histogram.
+     * @throws IllegalArgumentException The name or the help text was invalid.
+     */
+    private Histogram(String name, String help) throws IllegalArgumentException {
+      super(name, help);
+      for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Get the bucket of a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long nanos) {
+      if (nanos < SUB_BUCKETS) return (int)Math.max(0, nanos);
+      int power = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+      int sub = (int)(nanos >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (power - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the largest latency of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The largest latency of the bucket in nanoseconds.
+     */
+    static long upperBoundOf(int bucket) {
+      if (bucket < SUB_BUCKETS) return bucket;
+      int power = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      int sub = bucket % SUB_BUCKETS;
+      long lower = (1L << power) + ((long)sub << (power - SUB_BUCKET_BITS));
+      return lower + (1L << (power - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Record the latency since a start time, if the instrumentation is enabled.
+     *
+     * @param start The start time from {@link SpellMetrics#start()}.
+     */
+    public void record(long start) {
+      if (ENABLED) recordNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Record a latency, if the instrumentation is enabled.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+      if (!ENABLED) return;
+      buckets[bucketOf(nanos)].increment();
+      sum.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Get the number of the recorded latencies.
+     *
+     * @return The number of the recorded latencies.
+     */
+    public long getCount() {
+      long result = 0;
+      for (LongAdder bucket : buckets) result += bucket.sum();
+      return result;
+    }
+
+    /**
+     * Get the sum of the recorded latencies.
+     *
+     * @return The sum of the recorded latencies in nanoseconds.
+     */
+    public long getSumNanos() {
+      return sum.sum();
+    }
+
+    /**
+     * Get a quantile of the recorded latencies.
+     *
+     * @param quantile The quantile between 0 and 1.
+     * @return The upper bound of the bucket of the quantile in nanoseconds, or 0 if nothing
+     * has been recorded.
+     * @throws IllegalArgumentException The quantile was invalid.
+     */
+    public long getQuantileNanos(double quantile) throws IllegalArgumentException {
+      if (!(quantile >= 0 && quantile <= 1)) throw new IllegalArgumentException("Invalid quantile");
+      long[] counts = new long[buckets.length];
+      long total = 0;
+      for (int i = 0; i < counts.length; i++) total += (counts[i] = buckets[i].sum());
+      long rank = Math.max(1, (long)Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && counts[i] > 0) return upperBoundOf(i);
+      }
+      return 0;
+    }
+
+    @Override
+    public String getType() {
+      return "histogram";
+    }
+
+    @Override
+    protected void appendSamples(Appendable target) throws IOException {
+      // The buckets are read once so that the cumulative counts never decrease.
+      long[] counts = new long[buckets.length];
+      for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+      long cumulative = 0;
+      int bucket = 0;
+      for (int power = MIN_EXPORTED_POWER; power <= MAX_EXPORTED_POWER; power++) {
+        for (int end = bucketOf(1L << power); bucket < end; bucket++) cumulative += counts[bucket];
+        target.append(getName()).append("_bucket{le=\"").append(seconds(1L << power))
+        .append("\"} ").append(Long.toString(cumulative)).append('\n');
+      }
+      while (bucket < counts.length) cumulative += counts[bucket++];
+      target.append(getName()).append("_bucket{le=\"+Inf\"} ").append(Long.toString(cumulative)).append('\n');
+      target.append(getName()).append("_sum ").append(seconds(sum.sum())).append('\n');
+      target.append(getName()).append("_count ").append(Long.toString(cumulative)).append('\n');
+    }
+  }
+
+  /**
+   * Get the start time of a timed operation.
+   *
+   * @return The current time in nanoseconds, or 0 if the instrumentation is disabled.
+   */
+  public static long start() {
+    return ENABLED ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Register a new counter.
+   *
+   * @param name The name of the counter.
+   * @param help The help text of the counter.
+   * @return The registered counter.
+   * @throws IllegalArgumentException The name or the help text was invalid, or the name was
+   * already registered.
+   */
+  public static Counter counter(String name, String help) throws IllegalArgumentException {
+    return register(new Counter(name, help));
+  }
+
+  /**
+   * Register a new histogram.
+   *
+   * @param name The name of the histogram.
+   * @param help The help text of the histogram.
+   * @return The registered histogram.
+   * @throws IllegalArgumentException The name or the help text was invalid, or the name was
+   * already registered.
+   */
+  public static Histogram histogram(String name, String help) throws IllegalArgumentException {
+    return register(new Histogram(name, help));
+  }
+
+  /**
+   * Register a metric.
+   *
+   * @param <T> The type of the metric.
+   * @param metric The registered metric.
+   * @return The registered metric.
+   * @throws IllegalArgumentException The name of the metric was already registered.
+   */
+  private static <T extends Metric> T register(T metric) throws IllegalArgumentException {
+    REGISTRATION_LOCK.lock();
+    try {
+      if (METRICS.stream().anyMatch(current -> current.getName().equals(metric.getName()))) {
+        throw new IllegalArgumentException(INVALID_NAME_MESSAGE);
+      }
+      METRICS.add(metric);
+    } finally {
+      REGISTRATION_LOCK.unlock();
+    }
+    return metric;
+  }
+
+  /**
+   * Get the registered metrics.
+   *
+   * @return The unmodifiable list of the metrics in the registration order.
+   */
+  public static List<Metric> getMetrics() {
+    return Collections.unmodifiableList(METRICS);
+  }
+
+  /**
+   * Append the registered metrics in the Prometheus text format.
+   *
+   * @param <T> The type of the target.
+   * @param target The appended target.
+   * @return The target.
+   * @throws IOException The appending failed.
+   */
+  public static <T extends Appendable> T appendTo(T target) throws IOException {
+    for (Metric metric : METRICS) {
+      target.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+      target.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+      metric.appendSamples(target);
+    }
+    return target;
+  }
+
+  /**
+   * Format nanoseconds as seconds.
+   *
+   * @param nanos The nanoseconds.
+   * @return The seconds.
+   */
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+  }
+}
@@ -0,0 +1,52 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+/**
+ * The ranges of the spells and effects.
+ */
+public enum SpellRange {
+  Personal(0), Touch(1), Eye(1), Voice(2), Sight(3), ArcaneConnection("Arcane Connection", 4);
+
+  /**
+   * The displayed name of the range.
+   */
+  private final String displayName;
+
+  /**
+   * The number of magnitudes the range adds to the base level.
+   */
+  private final int magnitude;
+
+  /**
+   * Create a new range whose displayed name is the name of the constant.
+   *
+   * @param magnitude The magnitude modifier of the range.
+   */
+  SpellRange(int magnitude) {
+    this(null, magnitude);
+  }
+
+  /**
+   * Create a new range.
+   *
+   * @param displayName The displayed name. An undefined value defaults to the name of the constant.
+   * @param magnitude The magnitude modifier of the range.
+   */
+  SpellRange(String displayName, int magnitude) {
+    this.displayName = displayName == null ? name() : displayName;
+    this.magnitude = magnitude;
+  }
+
+  /**
+   * Get the magnitude modifier of the range.
+   *
+   * @return The number of magnitudes the range adds.
+   */
+  public int getMagnitude() {
+    return magnitude;
+  }
+
+  @Override
+  public String toString() {
+    return displayName;
+  }
+}
@@ -0,0 +1,31 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+/**
+ * The targets of the spells and effects.
+ */
+public enum SpellTarget {
+  Individual(0), Circle(0), Part(1), Group(2), Room(2), Structure(3), Boundary(4);
+
+  /**
+   * The number of magnitudes the target adds to the base level.
+   */
+  private final int magnitude;
+
+  /**
+   * Create a new target.
+   *
+   * @param magnitude The magnitude modifier of the target.
+   */
+  SpellTarget(int magnitude) {
+    this.magnitude = magnitude;
+  }
+
+  /**
+   * Get the magnitude modifier of the target.
+   *
+   * @return The number of magnitudes the target adds.
+   */
+  public int getMagnitude() {
+    return magnitude;
+  }
+}
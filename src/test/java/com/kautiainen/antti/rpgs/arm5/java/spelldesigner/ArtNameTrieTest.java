@@ -0,0 +1,47 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link ArtNameTrie}.
+ */
+class ArtNameTrieTest {
+
+  @Test
+  void completesNamesAndAbbreviations() {
+    ArtNameTrie trie = new ArtNameTrie();
+    trie.addAll(HermeticArts.DEFAULT_ARTS);
+    Art creo = HermeticArts.DEFAULT_ARTS.getTechnique("Creo").orElseThrow();
+    Art corpus = HermeticArts.DEFAULT_ARTS.getForm("Corpus").orElseThrow();
+    assertEquals(List.of(creo), trie.complete("cre"));
+    assertEquals(List.of(creo), trie.complete("CR"));
+    List<Art> completions = trie.complete("c");
+    assertTrue(completions.contains(creo) && completions.contains(corpus), completions::toString);
+    assertEquals(completions.size(), completions.stream().distinct().count());
+    assertEquals(1, trie.complete("c", 1).size());
+    assertTrue(trie.complete("xyz").isEmpty());
+  }
+
+  @Test
+  void ignoresArtsAlreadyAdded() {
+    ArtNameTrie trie = new ArtNameTrie();
+    trie.addAll(HermeticArts.DEFAULT_ARTS);
+    int size = trie.size();
+    assertFalse(trie.add(HermeticArts.DEFAULT_ARTS.getTechnique("Creo").orElseThrow()));
+    assertEquals(size, trie.size());
+  }
+
+  @Test
+  void containsKnownArts() {
+    ArtNameTrie trie = ArtNameTrie.fromKnownArts();
+    for (Art art : HermeticArts.DEFAULT_ARTS.getTechniques()) {
+      assertTrue(trie.complete(art.getName()).contains(art), art::getName);
+    }
+  }
+}
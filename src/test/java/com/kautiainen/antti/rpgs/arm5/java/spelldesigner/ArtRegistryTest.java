@@ -0,0 +1,74 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link Art.Registry}.
+ */
+class ArtRegistryTest {
+
+  /**
+   * The art type of neither the techniques nor the forms.
+   */
+  private static final Art.ArtType OTHER_TYPE = new Art.ArtType() {
+
+    @Override
+    public String getKey() {
+      return "Hermetic";
+    }
+
+    @Override
+    public String getName() {
+      return "Ability";
+    }
+
+    @Override
+    public boolean isForm() {
+      return false;
+    }
+  };
+
+  @Test
+  void ordersTechniquesBeforeForms() {
+    Art.ArtType technique = HermeticArts.HermeticArtType.Technique;
+    Art.ArtType form = HermeticArts.HermeticArtType.Form;
+    assertTrue(Art.ArtType.COMPARATOR.compare(technique, form) < 0);
+    assertTrue(Art.ArtType.COMPARATOR.compare(form, technique) > 0);
+    assertTrue(Art.ArtType.COMPARATOR.compare(form, OTHER_TYPE) < 0);
+    assertTrue(Art.ArtType.COMPARATOR.compare(OTHER_TYPE, technique) > 0);
+    assertEquals(0, Art.ArtType.COMPARATOR.compare(form, form));
+  }
+
+  @Test
+  void addsArtsToNewSnapshots() {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    Art ignem = arts.createArt(HermeticArts.HermeticArtType.Form, "Ignem", "Ig");
+    Art aquam = arts.createArt(HermeticArts.HermeticArtType.Form, "Aquam", "Aq");
+    Art creo = arts.createArt(HermeticArts.HermeticArtType.Technique, "Creo", "Cr");
+    Art finesse = arts.createArt(OTHER_TYPE, "Finesse", "Fi");
+
+    Art.Registry empty = Art.Registry.EMPTY;
+    Art.Registry first = empty.withArt(ignem);
+    assertEquals(1, first.getVersion());
+    assertTrue(empty.getTypes().isEmpty());
+    assertSame(first, first.withArt(ignem));
+    assertSame(first, first.withType(ignem.getType()));
+
+    Art.Registry last = first.withArt(finesse).withArt(aquam).withArt(creo);
+    assertEquals(4, last.getVersion());
+    assertEquals(List.of(creo.getType(), ignem.getType(), OTHER_TYPE), last.getTypes());
+    assertEquals(List.of(aquam, ignem), last.getArts(ignem.getType()));
+    assertEquals(List.of(ignem), first.getArts(ignem.getType()));
+    assertEquals(List.of(creo, aquam, ignem, finesse), last.getAllArts());
+    assertEquals(aquam, last.getArtsOfType(ignem.getType()).first());
+    assertEquals(List.of(finesse), last.getArts(OTHER_TYPE));
+    assertSame(OTHER_TYPE, last.findType(OTHER_TYPE.toString()).orElseThrow());
+    assertTrue(first.getArtsOfType(OTHER_TYPE).isEmpty());
+  }
+}
@@ -0,0 +1,33 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link Art}.
+ */
+class ArtTest {
+
+  @Test
+  void costsTheLevelsAfterTheStart() {
+    assertEquals(0, Art.experienceCost(5, 5));
+    assertEquals(1, Art.experienceCost(0, 1));
+    assertEquals(6, Art.experienceCost(5, 6));
+    assertEquals(15, Art.experienceCost(0, 5));
+    assertEquals(6 + 7 + 8, Art.experienceCost(5, 8));
+    assertEquals(-(6 + 7 + 8), Art.experienceCost(8, 5));
+    assertEquals(Art.experienceCost(0, 10), Art.experienceCost(0, 4) + Art.experienceCost(4, 10));
+    assertEquals(536_854_528, Art.experienceCost(0, Short.MAX_VALUE));
+    assertThrows(IllegalArgumentException.class, () -> Art.experienceCost(-1, 3));
+  }
+
+  @Test
+  void chargesTheLevelChanges() {
+    Art.Level level = new Art.Level(5);
+    assertEquals(6 + 7, level.setLevel(7));
+    assertEquals(7, level.getLevel());
+    assertEquals(-(6 + 7), level.setLevel(5));
+  }
+}
@@ -0,0 +1,60 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link BkTree}.
+ */
+class BkTreeTest {
+
+  @Test
+  void calculatesBoundedDistances() {
+    assertEquals(0, BkTree.distance("creo", "creo", Integer.MAX_VALUE));
+    assertEquals(3, BkTree.distance("kitten", "sitting", Integer.MAX_VALUE));
+    assertEquals(4, BkTree.distance("", "muto", Integer.MAX_VALUE));
+    assertTrue(BkTree.distance("kitten", "sitting", 1) > 1);
+    assertTrue(BkTree.distance("a", "abcdef", 2) > 2);
+  }
+
+  @Test
+  void findsSameMatchesAsLinearScan() {
+    Random random = new Random(7);
+    List<String> keys = new ArrayList<>();
+    BkTree<Integer> tree = new BkTree<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder key = new StringBuilder();
+      for (int j = 3 + random.nextInt(5); j > 0; j--) key.append((char)('a' + random.nextInt(6)));
+      keys.add(key.toString());
+      tree.add(i % 2 == 0 ? key.toString().toUpperCase() : key.toString(), i);
+    }
+    assertEquals(keys.size(), tree.size());
+    for (String query : List.of("abc", "fedcba", "aaaa", "cdefab")) {
+      for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+          int distance = BkTree.distance(query, keys.get(i), Integer.MAX_VALUE);
+          if (distance <= maxDistance) expected.add(distance + ":" + keys.get(i) + ":" + i);
+        }
+        List<String> found = new ArrayList<>();
+        for (BkTree.Match<Integer> match : tree.search(query.toUpperCase(), maxDistance)) {
+          found.add(match.getDistance() + ":" + match.getKey() + ":" + match.getValue());
+        }
+        expected.sort(null);
+        List<String> sorted = new ArrayList<>(found);
+        sorted.sort(null);
+        assertEquals(expected, sorted);
+        List<BkTree.Match<Integer>> matches = tree.search(query, maxDistance);
+        for (int i = 1; i < matches.size(); i++) {
+          assertTrue(BkTree.Match.COMPARATOR.compare(matches.get(i - 1), matches.get(i)) <= 0);
+        }
+      }
+    }
+  }
+}
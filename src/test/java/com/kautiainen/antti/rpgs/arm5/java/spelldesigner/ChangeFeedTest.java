@@ -0,0 +1,81 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link ChangeFeed}.
+ */
+class ChangeFeedTest {
+
+  /**
+   * Run the scheduled deliveries.
+   *
+   * @param tasks The scheduled deliveries.
+   */
+  private static void runAll(Queue<Runnable> tasks) {
+    Runnable task;
+    while ((task = tasks.poll()) != null) task.run();
+  }
+
+  @Test
+  void deliversChangesInBatches() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    ChangeFeed feed = new ChangeFeed(tasks::add, 2, 16);
+    List<List<ChangeFeed.Change>> batches = new ArrayList<>();
+    ChangeFeed.Subscription subscription = feed.subscribe(batches::add);
+    for (int i = 0; i < 3; i++) feed.publish(ChangeFeed.Kind.GUIDELINE_ADDED, this, "guideline " + i, i, i + 1);
+    assertEquals(1, tasks.size());
+    assertEquals(3, subscription.getPendingCount());
+    runAll(tasks);
+    assertEquals(2, batches.size());
+    assertEquals(List.of(1L, 2L), batches.get(0).stream().map(ChangeFeed.Change::getSequence).toList());
+    assertEquals(2, batches.get(1).get(0).getId());
+    assertEquals(3, subscription.getDeliveredSequence());
+    assertEquals(0, subscription.getPendingCount());
+
+    subscription.close();
+    feed.publish(ChangeFeed.Kind.GUIDELINE_REMOVED, this, "guideline 0", 0, 4);
+    runAll(tasks);
+    assertEquals(2, batches.size());
+    assertEquals(4, feed.getSequence());
+  }
+
+  @Test
+  void resynchronizesAfterOverflow() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    ChangeFeed feed = new ChangeFeed(tasks::add, 8, 2);
+    List<ChangeFeed.Change> changes = new ArrayList<>();
+    feed.subscribe(changes::addAll);
+    for (int i = 0; i < 5; i++) feed.publish(ChangeFeed.Kind.ART_ADDED, this, null, -1, i);
+    runAll(tasks);
+    assertEquals(1, changes.size());
+    assertEquals(ChangeFeed.Kind.RESYNC, changes.get(0).getKind());
+    assertEquals(5, changes.get(0).getSequence());
+
+    feed.publish(ChangeFeed.Kind.ART_ADDED, this, null, -1, 5);
+    runAll(tasks);
+    assertEquals(ChangeFeed.Kind.ART_ADDED, changes.get(1).getKind());
+  }
+
+  @Test
+  void survivesFailingSubscribers() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    ChangeFeed feed = new ChangeFeed(tasks::add, 1, 16);
+    ChangeFeed.Subscription subscription = feed.subscribe(changes -> {
+      throw new IllegalStateException();
+    });
+    feed.publish(ChangeFeed.Kind.ART_ADDED, this, null, -1, 1);
+    feed.publish(ChangeFeed.Kind.ART_ADDED, this, null, -1, 2);
+    runAll(tasks);
+    assertEquals(2, subscription.getDeliveredSequence());
+    assertThrows(IllegalArgumentException.class, () -> feed.subscribe(null));
+  }
+}
@@ -0,0 +1,94 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link ColumnarGrimoire}.
+ */
+class ColumnarGrimoireTest {
+
+  /**
+   * Create a spell.
+   *
+   * @param technique The name of the technique.
+   * @param range The range.
+   * @param baseLevel The base level.
+   * @return The spell of the form Ignem.
+   */
+  private static SpellDesign spell(String technique, SpellRange range, int baseLevel) {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    return new SpellDesign(null, arts.getTechnique(technique).orElseThrow(), arts.getForm("Ignem").orElseThrow(), null,
+    (short)baseLevel, range, SpellDuration.Momentary, SpellTarget.Individual, 0);
+  }
+
+  @Test
+  void aggregatesGroups() {
+    ColumnarGrimoire grimoire = new ColumnarGrimoire();
+    grimoire.addAll(List.of(spell("Creo", SpellRange.Personal, 5), spell("Creo", SpellRange.Personal, 15),
+    spell("Perdo", SpellRange.Personal, 4)));
+    ColumnarGrimoire.Aggregate byArts = grimoire.aggregate(ColumnarGrimoire.Dimension.TECHNIQUE_AND_FORM);
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    int creoIgnem = byArts.keyOf(arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow());
+    assertEquals("Creo Ignem", byArts.labelOf(creoIgnem));
+    assertEquals(2, byArts.count(creoIgnem));
+    assertEquals(10.0, byArts.average(creoIgnem));
+    long[] histogram = byArts.histogram(creoIgnem);
+    assertEquals(1, histogram[1 + ColumnarGrimoire.MAGNITUDE_OFFSET]);
+    assertEquals(1, histogram[3 + ColumnarGrimoire.MAGNITUDE_OFFSET]);
+    assertEquals(3, byArts.getRows());
+    assertEquals(2, byArts.keys().length);
+  }
+
+  @Test
+  void updatesCachedAggregatesWithAddedSpells() {
+    List<SpellDesign> spells = new ArrayList<>();
+    SpellRange[] ranges = SpellRange.values();
+    for (int i = 0; i < 500; i++) spells.add(spell(i % 3 == 0 ? "Perdo" : "Creo", ranges[i % ranges.length], 1 + i % 20));
+    ColumnarGrimoire incremental = new ColumnarGrimoire();
+    incremental.addAll(spells.subList(0, 200));
+    incremental.aggregate(ColumnarGrimoire.Dimension.RANGE);
+    for (SpellDesign spell : spells.subList(200, spells.size())) incremental.add(spell);
+    ColumnarGrimoire.Aggregate updated = incremental.aggregate(ColumnarGrimoire.Dimension.RANGE);
+    ColumnarGrimoire complete = new ColumnarGrimoire();
+    complete.addAll(spells);
+    ColumnarGrimoire.Aggregate expected = complete.aggregate(ColumnarGrimoire.Dimension.RANGE);
+    assertEquals(spells.size(), updated.getRows());
+    assertArrayEquals(expected.keys(), updated.keys());
+    for (int key : expected.keys()) {
+      assertEquals(expected.labelOf(key), updated.labelOf(key));
+      assertEquals(expected.count(key), updated.count(key));
+      assertEquals(expected.average(key), updated.average(key), 1e-9);
+      assertArrayEquals(expected.histogram(key), updated.histogram(key));
+    }
+  }
+
+  @Test
+  void countsMagnitudesBelowTheLevelZero() {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    SpellDesign weak = new SpellDesign(null, arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow(),
+    null, (short)1, SpellRange.Personal, SpellDuration.Momentary, SpellTarget.Individual, -5);
+    ColumnarGrimoire grimoire = new ColumnarGrimoire();
+    grimoire.add(spell("Creo", SpellRange.Personal, 5));
+    ColumnarGrimoire.Aggregate before = grimoire.aggregate(ColumnarGrimoire.Dimension.TECHNIQUE_AND_FORM);
+    assertEquals(ColumnarGrimoire.MAGNITUDE_OFFSET, before.getMagnitudeOffset());
+    grimoire.add(weak);
+    grimoire.add(spell("Perdo", SpellRange.Personal, 5));
+    ColumnarGrimoire.Aggregate after = grimoire.aggregate(ColumnarGrimoire.Dimension.TECHNIQUE_AND_FORM);
+    int magnitude = SpellGuideline.levelToMagnitude(weak.getLevel());
+    assertEquals(-magnitude, after.getMagnitudeOffset());
+    int creo = after.keyOf(arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow());
+    long[] histogram = after.histogram(creo);
+    assertEquals(1, histogram[0]);
+    assertEquals(1, histogram[1 + after.getMagnitudeOffset()]);
+    assertEquals(2, Arrays.stream(histogram).sum());
+    int perdo = after.keyOf(arts.getTechnique("Perdo").orElseThrow(), arts.getForm("Ignem").orElseThrow());
+    assertEquals(1, Arrays.stream(after.histogram(perdo)).sum());
+  }
+}
@@ -0,0 +1,152 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A load harness comparing the execution modes of {@link ResourceExecutors}.
+ *
+ * Every simulated request blocks for a while, as a request waiting for a slow client or a
+ * journal read does, and then exports a small catalog. The harness prints the throughput
+ * and the latency percentiles of every available mode.
+ *
+ * Usage: {@code ExecutionModeBenchmark [requests] [blockMillis] [platformThreads]}
+ */
+public final class ExecutionModeBenchmark {
+
+  /**
+   * The harness is not instantiated.
+   */
+  private ExecutionModeBenchmark() {
+  }
+
+  /**
+   * A writer discarding its output.
+   */
+  private static final class NullWriter extends Writer {
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Run the harness.
+   *
+   * @param args The number of requests, the blocking time of a request in milliseconds, and
+   * the number of platform threads.
+   * @throws Exception The harness failed.
+   */
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int blockMillis = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : ResourceExecutors.DEFAULT_PLATFORM_THREADS;
+    GrimoireExporter exporter = new GrimoireExporter(sampleCatalog(), HermeticArts.DEFAULT_ARTS);
+    System.out.printf("%-10s %10s %12s %10s %10s %10s%n", "mode", "requests", "requests/s", "p50 ms", "p99 ms", "max ms");
+    for (ResourceExecutors.Mode mode : List.of(ResourceExecutors.Mode.PLATFORM, ResourceExecutors.Mode.VIRTUAL)) {
+      ExecutorService executor;
+      try {
+        executor = ResourceExecutors.create(mode, platformThreads);
+      } catch (UnsupportedOperationException e) {
+        System.out.printf("%-10s %s%n", mode, e.getMessage());
+        continue;
+      }
+      try {
+        run(mode, executor, exporter, requests / 10, blockMillis, false);
+        run(mode, executor, exporter, requests, blockMillis, true);
+      } finally {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+    }
+  }
+
+  /**
+   * Run a load.
+   *
+   * @param mode The mode.
+   * @param executor The executor of the mode.
+   * @param exporter The exporter of the requests.
+   * @param requests The number of requests.
+   * @param blockMillis The blocking time of a request.
+   * @param report Is the result printed.
+   * @throws InterruptedException The harness was interrupted.
+   */
+  private static void run(ResourceExecutors.Mode mode, ExecutorService executor, GrimoireExporter exporter,
+  int requests, int blockMillis, boolean report) throws InterruptedException {
+    long[] latencies = new long[requests];
+    AtomicInteger failures = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(requests);
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      int request = i;
+      long submitted = System.nanoTime();
+      executor.execute(() -> {
+        try {
+          Thread.sleep(blockMillis);
+          exporter.export(new NullWriter(), GrimoireExporter.Format.HTML, true);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failures.incrementAndGet();
+        } catch (IOException e) {
+          failures.incrementAndGet();
+        } finally {
+          latencies[request] = System.nanoTime() - submitted;
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    if (!report) return;
+    Arrays.sort(latencies);
+    System.out.printf("%-10s %10d %12.0f %10.1f %10.1f %10.1f%s%n", mode, requests,
+    requests * 1e9 / elapsed, percentile(latencies, 0.50), percentile(latencies, 0.99),
+    latencies[requests - 1] / 1e6, failures.get() == 0 ? "" : " failures: " + failures.get());
+  }
+
+  /**
+   * Get a percentile of sorted latencies.
+   *
+   * @param sorted The sorted latencies in nanoseconds.
+   * @param fraction The fraction of the percentile.
+   * @return The percentile in milliseconds.
+   */
+  private static double percentile(long[] sorted, double fraction) {
+    return sorted[Math.min(sorted.length - 1, (int)Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+  }
+
+  /**
+   * Create a catalog of a guideline per technique and form.
+   *
+   * @return The catalog.
+   */
+  private static GuidelineCatalog sampleCatalog() {
+    GuidelineCatalog result = new GuidelineCatalog();
+    for (String technique : HermeticArts.DEFAULT_TECHNIQUE_NAMES) {
+      for (String form : HermeticArts.DEFAULT_FORM_NAMES) {
+        result.add(ImmutableSpellGuideline.builder()
+        .technique(HermeticArts.DEFAULT_ARTS.getTechnique(technique).get())
+        .form(HermeticArts.DEFAULT_ARTS.getForm(form).get())
+        .level(new SpellGuideline.GuidelineLevel((short)5))
+        .name(technique + " " + form)
+        .description("A sample guideline.").build());
+      }
+    }
+    return result;
+  }
+}
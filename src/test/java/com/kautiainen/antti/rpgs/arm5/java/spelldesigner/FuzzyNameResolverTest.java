@@ -0,0 +1,40 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link FuzzyNameResolver}.
+ */
+class FuzzyNameResolverTest {
+
+  @Test
+  void resolvesMisspelledArts() {
+    FuzzyNameResolver resolver = new FuzzyNameResolver(HermeticArts.DEFAULT_ARTS);
+    Art rego = HermeticArts.DEFAULT_ARTS.getTechnique("Rego").orElseThrow();
+    Art corpus = HermeticArts.DEFAULT_ARTS.getForm("Corpus").orElseThrow();
+    Art mentem = HermeticArts.DEFAULT_ARTS.getForm("Mentem").orElseThrow();
+    assertEquals(Optional.of(corpus), resolver.resolveArt("Corpsu"));
+    assertEquals(Optional.of(rego), resolver.resolveArt("Re"));
+    // A typo in an abbreviation would match other abbreviations.
+    assertFalse(resolver.resolveArt("Rx").isPresent());
+    assertEquals(List.of(rego, corpus, mentem), resolver.resolveHeader("ReCo(Me)"));
+  }
+
+  @Test
+  void resolvesKnownArtsAndGuidelines() {
+    FuzzyNameResolver resolver = new FuzzyNameResolver();
+    resolver.addKnownArts();
+    assertEquals(HermeticArts.DEFAULT_ARTS.getForm("Ignem"), resolver.resolveArt("Ignm").map(HermeticArts.HermeticForm.class::cast));
+    SpellGuideline<?, ?, ?, ?> flame = GuidelineTextIndexTest.guideline(5, "Create a flame", null);
+    resolver.addGuideline(flame);
+    resolver.addGuideline(GuidelineTextIndexTest.guideline(10, "Create a fire", null));
+    assertEquals(Optional.of(flame), resolver.resolveGuideline("create a flmae", 2));
+    assertFalse(resolver.resolveGuideline("destroy a flame", 2).isPresent());
+  }
+}
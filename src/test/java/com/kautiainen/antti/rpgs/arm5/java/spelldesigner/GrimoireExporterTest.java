@@ -0,0 +1,46 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link GrimoireExporter}.
+ */
+class GrimoireExporterTest {
+
+  /**
+   * Create a catalog of Creo Ignem guidelines.
+   *
+   * @return The catalog.
+   */
+  private static GuidelineCatalog catalog() {
+    GuidelineCatalog result = new GuidelineCatalog(false);
+    result.add(GuidelineTextIndexTest.guideline(10, "Create a fire", null));
+    result.add(GuidelineTextIndexTest.guideline(5, "Create a flame", "It is <small> & bright"));
+    return result;
+  }
+
+  @Test
+  void exportsGroupedText() throws IOException {
+    StringBuilder text = new StringBuilder();
+    new GrimoireExporter(catalog(), HermeticArts.DEFAULT_ARTS).export(text, GrimoireExporter.Format.TEXT, true);
+    String[] lines = text.toString().split("\n");
+    assertEquals("Creo Ignem", lines[0]);
+    assertEquals(3, lines.length);
+    assertTrue(lines[1].startsWith("CrIg5: Create a flame"), lines[1]);
+    assertTrue(lines[2].startsWith("CrIg10: Create a fire"), lines[2]);
+  }
+
+  @Test
+  void escapesHtml() throws IOException {
+    StringBuilder html = new StringBuilder();
+    new GrimoireExporter(catalog(), HermeticArts.DEFAULT_ARTS).export(html, GrimoireExporter.Format.HTML, true);
+    assertTrue(html.indexOf("<h2>Creo Ignem</h2>") >= 0, html::toString);
+    assertTrue(html.indexOf("&lt;small&gt; &amp; bright") >= 0, html::toString);
+    assertTrue(html.indexOf("<small>") < 0, html::toString);
+  }
+}
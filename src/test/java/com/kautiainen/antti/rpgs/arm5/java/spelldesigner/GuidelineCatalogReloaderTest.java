@@ -0,0 +1,65 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The tests of {@link GuidelineCatalogReloader}.
+ */
+class GuidelineCatalogReloaderTest {
+
+  /**
+   * The directory of the guideline files.
+   */
+  @TempDir
+  Path directory;
+
+  @Test
+  void parsesGuidelines() throws IOException {
+    List<String> errors = new ArrayList<>();
+    List<SpellGuideline<?, ?, ?, ?>> guidelines = GuidelineCatalogReloader.parse(new StringReader(
+    "# Creo Ignem\n\nCrIg5: Create a flame.It is the size of a fist\nReCoGeneric: Move a body.\nXxIg5: Nothing.\n"),
+    "test", HermeticArts.DEFAULT_ARTS, errors);
+    assertEquals(2, guidelines.size());
+    assertEquals("Create a flame", guidelines.get(0).getName());
+    assertEquals("It is the size of a fist", guidelines.get(0).getDescription().orElseThrow());
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0).startsWith("test:5: "));
+  }
+
+  @Test
+  void publishesOnlyTheReplacement() throws IOException {
+    GuidelineCatalog previous = CatalogHolder.getCatalog();
+    Files.writeString(directory.resolve("ignem" + GuidelineCatalogReloader.FILE_SUFFIX),
+    "CrIg5: Create a flame.\nCrIg10: Create a bonfire.\nPeIg4: Put out a candle.\n");
+    try (GuidelineCatalogReloader reloader = new GuidelineCatalogReloader(directory, HermeticArts.DEFAULT_ARTS)) {
+      long sequence = ChangeFeed.shared().getSequence();
+      GuidelineCatalogReloader.Result result = reloader.reload();
+      assertTrue(result.isPublished());
+      assertEquals(3, result.getCatalog().orElseThrow().size());
+      assertSame(result.getCatalog().orElseThrow(), CatalogHolder.getCatalog());
+      assertEquals(sequence + 1, ChangeFeed.shared().getSequence());
+      // An invalid file keeps the current catalog.
+      Files.writeString(directory.resolve("broken" + GuidelineCatalogReloader.FILE_SUFFIX), "CrIg: Missing level.\n");
+      GuidelineCatalogReloader.Result rejected = reloader.reload();
+      assertFalse(rejected.isPublished());
+      assertEquals(1, rejected.getErrors().size());
+      assertEquals(1, rejected.getParsedCount());
+      assertSame(result.getCatalog().orElseThrow(), CatalogHolder.getCatalog());
+    } finally {
+      CatalogHolder.setCatalog(previous);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link GuidelineCatalog}.
+ */
+class GuidelineCatalogTest {
+
+  /**
+   * Create a guideline.
+   *
+   * @param technique The name of the technique.
+   * @param form The name of the form.
+   * @param level The level.
+   * @return The guideline.
+   */
+  static SpellGuideline<?, ?, ?, ?> guideline(String technique, String form, int level) {
+    return ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>>builder()
+    .technique(HermeticArts.DEFAULT_ARTS.getTechnique(technique).orElseThrow())
+    .form(HermeticArts.DEFAULT_ARTS.getForm(form).orElseThrow())
+    .level(new SpellGuideline.GuidelineLevel((short)level)).name(technique + " " + form + " " + level).build();
+  }
+
+  @Test
+  void indexesBulkAdditionsByLevel() {
+    GuidelineCatalog catalog = new GuidelineCatalog(false);
+    List<SpellGuideline<?, ?, ?, ?>> guidelines = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) guidelines.add(GuidelineTextIndexTest.guideline(1 + i % 5, "Guideline " + i, null));
+    catalog.addAllUnpublished(guidelines);
+    assertEquals(1000, catalog.size());
+    assertEquals(200, catalog.countInLevelRange(3, 3));
+    int[] level3 = catalog.idsInLevelRange(3, 3);
+    assertArrayEquals(IntStream.range(0, 1000).filter(id -> id % 5 == 2).toArray(), level3);
+
+    for (int i = 2; i < 1000; i += 10) catalog.remove(guidelines.get(i));
+    assertEquals(100, catalog.countInLevelRange(3, 3));
+    assertEquals(100, catalog.countOfTechniquesAndForms(List.of("cr"), List.of("ig"), 3, 3));
+    int[] remaining = IntStream.range(0, 1000).filter(id -> id % 10 == 7).toArray();
+    assertArrayEquals(remaining, catalog.idsInLevelRange(3, 3));
+    assertArrayEquals(new int[] { remaining[1], remaining[2] }, catalog.idsAfter("cr", "ig", 3, remaining[0], 2));
+    assertArrayEquals(new int[] { remaining[0] }, catalog.idsAfter(null, null, 3, 2, 1));
+    assertEquals(900, catalog.ids().length);
+  }
+
+  @Test
+  void mergesTheKeysOfTechniquesAndFormsByLevel() {
+    GuidelineCatalog catalog = new GuidelineCatalog(false);
+    String[] techniques = { "Creo", "Perdo", "Rego" };
+    String[] forms = { "Ignem", "Aquam" };
+    for (int i = 0; i < 300; i++) catalog.add(guideline(techniques[i % 3], forms[i % 2], 1 + (i * 7) % 30));
+    long[] all = catalog.keysOfTechniquesAndForms(null, null, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    assertEquals(300, all.length);
+    long[] sorted = all.clone();
+    Arrays.sort(sorted);
+    assertArrayEquals(sorted, all);
+    assertArrayEquals(Arrays.copyOf(all, 20), catalog.keysOfTechniquesAndForms(null, null, Integer.MIN_VALUE,
+    Integer.MAX_VALUE, 20));
+    long[] fire = catalog.keysOfTechniquesAndForms(List.of("cr", "pe"), List.of("ig"), 5, 10, 1000);
+    assertArrayEquals(Arrays.stream(all).filter(key -> {
+      SpellGuideline<?, ?, ?, ?> guideline = catalog.get((int)key);
+      String technique = GuidelineCatalog.artKey(guideline.getTechnique());
+      return (technique.equals("cr") || technique.equals("pe")) && GuidelineCatalog.artKey(guideline.getForm()).equals("ig")
+      && key >> 32 >= 5 && key >> 32 <= 10;
+    }).toArray(), fire);
+    assertEquals(0, catalog.keysOfTechniquesAndForms(null, null, 10, 5, 10).length);
+  }
+}
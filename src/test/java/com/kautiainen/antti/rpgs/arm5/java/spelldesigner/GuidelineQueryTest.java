@@ -0,0 +1,90 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link GuidelineQuery}.
+ */
+class GuidelineQueryTest {
+
+  /**
+   * Create a guideline.
+   *
+   * @param technique The name of the technique.
+   * @param form The name of the form.
+   * @param level The level.
+   * @param name The name.
+   * @return The guideline.
+   */
+  private static SpellGuideline<?, ?, ?, ?> guideline(String technique, String form, int level, String name) {
+    return ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>>builder()
+    .technique(HermeticArts.DEFAULT_ARTS.getTechnique(technique).orElseThrow())
+    .form(HermeticArts.DEFAULT_ARTS.getForm(form).orElseThrow())
+    .level(new SpellGuideline.GuidelineLevel((short)level)).name(name).build();
+  }
+
+  /**
+   * The guidelines of the queried catalog.
+   */
+  private static final List<SpellGuideline<?, ?, ?, ?>> GUIDELINES = List.of(
+    guideline("Creo", "Corpus", 20, "Heal a light wound"),
+    guideline("Creo", "Corpus", 5, "Heal a scratch"),
+    guideline("Rego", "Corpus", 10, "Move a person"),
+    guideline("Creo", "Ignem", 5, "Create a flame"),
+    guideline("Perdo", "Corpus", 30, "Kill a person"));
+
+  /**
+   * Create the queried catalog.
+   *
+   * @return The catalog of the guidelines.
+   */
+  private static GuidelineCatalog catalog() {
+    GuidelineCatalog result = new GuidelineCatalog(false);
+    result.addAllUnpublished(GUIDELINES);
+    return result;
+  }
+
+  /**
+   * Execute a query and list the names of the results.
+   *
+   * @param query The query.
+   * @return The names of the matching guidelines in the result order.
+   */
+  private static List<String> names(String query) {
+    return GuidelineQuery.compile(query).execute(catalog()).stream().map(SpellGuideline::getName).toList();
+  }
+
+  @Test
+  void executesQueriesInLevelOrder() {
+    assertEquals(List.of("Heal a scratch", "Move a person", "Heal a light wound"),
+    names("tech in (Cr,Re) and form=Co and level<=20"));
+    assertEquals(List.of("Heal a scratch", "Heal a light wound"), names("text~\"heal\""));
+    assertEquals(List.of("Create a flame", "Kill a person"), names("form=Ig or level>20"));
+    assertEquals(List.of("Create a flame", "Move a person"), names("not form=Co or tech=Re"));
+  }
+
+  @Test
+  void testsGuidelinesWithoutCatalog() {
+    GuidelineQuery query = GuidelineQuery.compile("tech=Cr and (level<10 or name~\"wound\")");
+    assertEquals(3, GUIDELINES.stream().filter(query::test).count());
+  }
+
+  @Test
+  void choosesIndexesAndCachesPlans() {
+    GuidelineCatalog catalog = catalog();
+    assertTrue(GuidelineQuery.compile("tech=Cr and form=Co").explain(catalog).startsWith("TeFo index"));
+    assertTrue(GuidelineQuery.compile("level>=25").explain(catalog).startsWith("level index"));
+    assertEquals("scan", GuidelineQuery.compile("not level=5").explain(catalog));
+    assertSame(GuidelineQuery.compile("level>=25"), GuidelineQuery.compile("level>=25"));
+    assertThrows(IllegalArgumentException.class, () -> GuidelineQuery.compile("level<<5"));
+    assertThrows(IllegalArgumentException.class, () -> GuidelineQuery.compile("color=red"));
+  }
+}
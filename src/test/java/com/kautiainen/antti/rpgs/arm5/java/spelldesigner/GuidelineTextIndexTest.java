@@ -0,0 +1,83 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link GuidelineTextIndex}.
+ */
+class GuidelineTextIndexTest {
+
+  /**
+   * Create a Creo Ignem guideline.
+   *
+   * @param level The level.
+   * @param name The name.
+   * @param description The description, or an undefined value.
+   * @return The guideline.
+   */
+  static SpellGuideline<?, ?, ?, ?> guideline(int level, String name, String description) {
+    return ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>>builder()
+    .technique(HermeticArts.DEFAULT_ARTS.getTechnique("Creo").orElseThrow())
+    .form(HermeticArts.DEFAULT_ARTS.getForm("Ignem").orElseThrow())
+    .level(new SpellGuideline.GuidelineLevel((short)level)).name(name).description(description).build();
+  }
+
+  @Test
+  void matchesWordsAndPhrases() {
+    GuidelineTextIndex index = new GuidelineTextIndex();
+    int flame = index.add(guideline(5, "Create a flame", "The flame is the size of a candle"));
+    int fire = index.add(guideline(10, "Create a fire", "A fire the size of a campfire"));
+    int heat = index.add(guideline(4, "Warm a room", null));
+    assertEquals(3, index.size());
+    assertArrayEquals(new int[] { flame, fire }, index.matchAll(List.of("create", "size")));
+    assertArrayEquals(new int[] { fire, heat }, index.matchAny(List.of("fire", "warm")));
+    assertArrayEquals(new int[] { flame }, index.matchPhrase("the size of a candle"));
+    assertArrayEquals(new int[0], index.matchPhrase("size the"));
+    assertEquals(2, index.documentFrequency("create"));
+  }
+
+  @Test
+  void searchesWithOrAndPhrases() {
+    GuidelineTextIndex index = new GuidelineTextIndex();
+    int flame = index.add(guideline(5, "Create a flame", "The flame is the size of a candle"));
+    int fire = index.add(guideline(10, "Create a fire", "A fire the size of a campfire"));
+    int heat = index.add(guideline(4, "Warm a room", null));
+    List<GuidelineTextIndex.Hit> hits = index.search("flame OR warm", 10);
+    assertEquals(List.of(flame, heat), hits.stream().map(GuidelineTextIndex.Hit::getId).sorted().toList());
+    hits = index.search("create \"a campfire\"", 10);
+    assertEquals(1, hits.size());
+    assertEquals(fire, hits.get(0).getId());
+    assertEquals(1, index.search("create", 1).size());
+  }
+
+  @Test
+  void ignoresClausesWithoutWords() {
+    GuidelineTextIndex index = new GuidelineTextIndex();
+    int fire = index.add(guideline(10, "Create a fire", null));
+    index.add(guideline(4, "Warm a room", null));
+    assertEquals(List.of(fire), index.search("create - fire", 10).stream().map(GuidelineTextIndex.Hit::getId).toList());
+    assertEquals(1, index.search("create & \"\" fire", 10).size());
+    assertEquals(2, index.search("fire OR & warm", 10).size());
+    assertEquals(0, index.search("-", 10).size());
+  }
+
+  @Test
+  void removesGuidelines() {
+    GuidelineTextIndex index = new GuidelineTextIndex();
+    SpellGuideline<?, ?, ?, ?> flame = guideline(5, "Create a flame", null);
+    int id = index.add(flame);
+    assertSame(flame, index.getGuideline(id));
+    assertEquals(id, index.add(flame));
+    assertEquals(true, index.remove(flame));
+    assertFalse(index.remove(flame));
+    assertArrayEquals(new int[0], index.matchAll(List.of("flame")));
+  }
+}
@@ -0,0 +1,55 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link GuidelineTextStore}.
+ */
+class GuidelineTextStoreTest {
+
+  @Test
+  void internsSharedTexts() {
+    GuidelineTextStore store = new GuidelineTextStore();
+    CharSequence text = store.intern("Create a flame of the size of a fist");
+    assertEquals("Create a flame of the size of a fist", text.toString());
+    assertSame(text, store.intern(new StringBuilder("Create a flame of the size of a fist")));
+    assertEquals("Create a flame", store.intern("Create a flame").toString());
+  }
+
+  @Test
+  void comparesTextsOfStoresByContent() {
+    GuidelineTextStore first = new GuidelineTextStore();
+    GuidelineTextStore second = new GuidelineTextStore();
+    // The first texts of both stores have the same fragment identifiers.
+    CharSequence alpha = first.intern("Alpha beta");
+    CharSequence gamma = second.intern("Gamma delta");
+    assertNotEquals(alpha, gamma);
+    CharSequence otherAlpha = second.intern("Alpha beta");
+    assertEquals(alpha, otherAlpha);
+    assertEquals(otherAlpha, alpha);
+    assertEquals(alpha.hashCode(), otherAlpha.hashCode());
+  }
+
+  @Test
+  void readsCharactersAcrossFragments() throws IOException {
+    String original = "Warm a room, \u00e4nd \u0394elta \u2014 for a day.";
+    GuidelineTextStore.StoredText text = (GuidelineTextStore.StoredText)new GuidelineTextStore().intern(original);
+    assertEquals(original.length(), text.length());
+    for (int i = 0; i < original.length(); i++) assertEquals(original.charAt(i), text.charAt(i));
+    assertThrows(IndexOutOfBoundsException.class, () -> text.charAt(original.length()));
+    StringBuilder rendered = new StringBuilder("Name: ");
+    SpellGuideline.appendSequence(rendered, text);
+    assertEquals("Name: " + original, rendered.toString());
+    StringWriter writer = new StringWriter();
+    text.appendTo(writer);
+    assertEquals(original, writer.toString());
+  }
+}
@@ -0,0 +1,93 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link ImmutableSpellGuideline}.
+ */
+class ImmutableSpellGuidelineTest {
+
+  /**
+   * Create a builder of a Creo Ignem guideline.
+   *
+   * @param level The level of the guideline.
+   * @return The builder with the technique, the form, and the level.
+   */
+  private static ImmutableSpellGuideline.Builder<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+  FormInterface<FormArtType>> builder(Integer level) {
+    return ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>>builder()
+    .technique(HermeticArts.DEFAULT_ARTS.getTechnique("Creo").orElseThrow())
+    .form(HermeticArts.DEFAULT_ARTS.getForm("Ignem").orElseThrow())
+    .level(new SpellGuideline.GuidelineLevel(level == null ? null : level.shortValue()));
+  }
+
+  @Test
+  void snapshotsMutableSequences() {
+    StringBuilder name = new StringBuilder("Create a flame");
+    StringBuilder description = new StringBuilder("The flame burns for a moment");
+    ImmutableSpellGuideline<?, ?, ?, ?> guideline = builder(5).name(name).description(description).build();
+    int hashCode = guideline.hashCode();
+    name.append(" of a bonfire");
+    description.setLength(0);
+    assertEquals("Create a flame", guideline.getName());
+    assertEquals("Create a flame", guideline.getNameSequence().toString());
+    assertEquals("The flame burns for a moment", guideline.getDescriptionSequence().toString());
+    assertEquals(hashCode, guideline.hashCode());
+  }
+
+  @Test
+  void keepsImmutableSequences() {
+    SpellGuideline.SequenceWithMagnitudeReference reference = SpellGuideline.SequenceWithMagnitudeReference
+    .prefixed("Level ", (short)1);
+    String name = "Create a flame";
+    ImmutableSpellGuideline<?, ?, ?, ?> guideline = builder(10).name(name).description(reference).build();
+    assertSame(name, guideline.getNameSequence());
+    assertSame(reference, guideline.getDescriptionSequence());
+  }
+
+  @Test
+  void snapshotsSequencesOfGenericGuidelines() {
+    StringBuilder name = new StringBuilder("Create a flame");
+    ImmutableSpellGuideline<?, ?, ?, ?> guideline = builder(null).name(name).build();
+    name.setLength(0);
+    assertEquals("Create a flame", guideline.getName());
+  }
+
+  @Test
+  void copySnapshotsMutableSequences() {
+    StringBuilder name = new StringBuilder("Create a flame");
+    ImmutableSpellGuideline<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>> guideline = builder(5).name(name).build();
+    SpellGuideline<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+    FormInterface<FormArtType>> source = new SpellGuideline<>() {
+
+      @Override
+      public CharSequence getNameSequence() {
+        return name;
+      }
+
+      @Override
+      public TechniqueInterface<TechniqueArtType> getTechnique() {
+        return guideline.getTechnique();
+      }
+
+      @Override
+      public FormInterface<FormArtType> getForm() {
+        return guideline.getForm();
+      }
+
+      @Override
+      public GuidelineLevel getLevel() {
+        return guideline.getLevel();
+      }
+    };
+    ImmutableSpellGuideline<?, ?, ?, ?> copy = ImmutableSpellGuideline.copyOf(source);
+    name.append(" of a bonfire");
+    assertEquals("Create a flame", copy.getNameSequence().toString());
+    assertEquals(guideline, copy);
+  }
+}
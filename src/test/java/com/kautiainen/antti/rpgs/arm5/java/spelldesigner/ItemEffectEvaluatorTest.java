@@ -0,0 +1,62 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link ItemEffect} and {@link ItemEffectEvaluator}.
+ */
+class ItemEffectEvaluatorTest {
+
+  @Test
+  void addsItemModifiers() {
+    ItemEffect effect = new ItemEffect(SpellDesignTest.design(10, 0), ItemEffect.UsesPerDay.TwentyFour, true, 10, true);
+    // 5 for the uses, 3 for the trigger, 5 for the penetration, and 5 for the concentration.
+    assertEquals(28, effect.getLevel());
+    assertEquals(3, effect.getVisCost());
+    assertEquals(0, ItemEffect.visCost(0));
+    assertEquals(1, ItemEffect.visCost(10));
+    assertEquals(2, ItemEffect.visCost(11));
+    assertEquals(-1, ItemEffect.seasons(28, 28));
+    assertEquals(1, ItemEffect.seasons(28, 56));
+    assertEquals(2, ItemEffect.seasons(28, 55));
+    assertThrows(IllegalArgumentException.class, () -> new ItemEffect(null, null, false, 0, false));
+    assertThrows(IllegalArgumentException.class, () -> new ItemEffect(SpellDesignTest.design(10, 0), null, false, -1, false));
+  }
+
+  @Test
+  void evaluatesIntoReusedResults() {
+    ItemEffectEvaluator evaluator = new ItemEffectEvaluator();
+    ItemEffectEvaluator.Results results = new ItemEffectEvaluator.Results(1);
+    List<ItemEffect> effects = List.of(new ItemEffect(SpellDesignTest.design(5, 0), null, false, 0, false),
+    new ItemEffect(SpellDesignTest.design(20, 1), ItemEffect.UsesPerDay.Unlimited, false, 0, false));
+    assertSame(results, evaluator.evaluate(effects, 30, results));
+    assertEquals(2, results.size());
+    assertEquals(5, results.getLevel(0));
+    assertEquals(35, results.getLevel(1));
+    assertEquals(4, results.getVisCost(1));
+    assertEquals(-1, results.getSeasons(1));
+    evaluator.evaluateAlternatives(SpellDesignTest.design(5, 0), new ItemEffect.UsesPerDay[] { null, ItemEffect.UsesPerDay.Twice },
+    new boolean[] { false, true }, new int[] { 0, 4 }, new boolean[] { false, false }, 15, results);
+    assertEquals(2, results.size());
+    assertEquals(5, results.getLevel(0));
+    assertEquals(11, results.getLevel(1));
+    assertEquals(1, results.getSeasons(0));
+    assertEquals(3, results.getSeasons(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> results.getLevel(2));
+  }
+
+  @Test
+  void rejectsNegativeAlternativePenetrations() {
+    ItemEffectEvaluator.Results results = new ItemEffectEvaluator.Results(1);
+    IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+    () -> new ItemEffectEvaluator().evaluateAlternatives(SpellDesignTest.design(5, 0), new ItemEffect.UsesPerDay[] { null },
+    new boolean[] { false }, new int[] { -1 }, new boolean[] { false }, 15, results));
+    assertEquals(ItemEffect.INVALID_PENETRATION_MESSAGE, error.getMessage());
+  }
+}
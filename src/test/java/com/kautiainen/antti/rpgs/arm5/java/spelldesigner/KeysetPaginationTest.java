@@ -0,0 +1,52 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link KeysetPagination}.
+ */
+class KeysetPaginationTest {
+
+  @Test
+  void listsDefaultArtsInPages() {
+    Set<Art> expected = new TreeSet<>(HermeticArts.DEFAULT_ARTS.getTechniques());
+    expected.addAll(HermeticArts.DEFAULT_ARTS.getForms());
+    List<Art> listed = new ArrayList<>();
+    Optional<String> cursor = Optional.empty();
+    do {
+      KeysetPagination.Page<Art> page = KeysetPagination.arts(Art.getRegistry(), null, cursor.orElse(null), 4);
+      assertTrue(page.getItems().size() <= 4);
+      listed.addAll(page.getItems());
+      cursor = page.getNext();
+    } while (cursor.isPresent());
+    assertTrue(listed.containsAll(expected));
+    assertEquals(listed.size(), new TreeSet<>(listed).size());
+  }
+
+  @Test
+  void listsArtsOfType() {
+    KeysetPagination.Page<Art> page = KeysetPagination.arts(Art.getRegistry(),
+    HermeticArts.TECHNIQUE_TYPE.getName(), null, KeysetPagination.MAX_LIMIT);
+    assertEquals(List.copyOf(HermeticArts.DEFAULT_ARTS.getTechniques()), page.getItems());
+    assertFalse(page.getNext().isPresent());
+  }
+
+  @Test
+  void registersArtsOnce() {
+    long version = Art.getRegistry().getVersion();
+    assertFalse(HermeticArts.DEFAULT_ARTS.register());
+    new HermeticArts(List.of("Creo", "Facio"), List.of("Ignem"));
+    assertEquals(version, Art.getRegistry().getVersion());
+    assertTrue(Art.getRegistry().getAllArts().stream().noneMatch(art -> art.getName().equals("Facio")));
+  }
+}
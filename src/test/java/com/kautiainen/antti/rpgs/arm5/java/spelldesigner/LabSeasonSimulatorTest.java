@@ -0,0 +1,52 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link LabSeasonSimulator}.
+ */
+class LabSeasonSimulatorTest {
+
+  @Test
+  void advancesArtsByNextLevelCost() {
+    LabSeasonSimulator.State state = LabSeasonSimulator.uniformState(1, new int[] { 5, 0 });
+    LabSeasonSimulator simulator = new LabSeasonSimulator(state,
+    (current, magus, season, random) -> LabSeasonSimulator.plan(LabSeasonSimulator.Activity.StudyBook, 0, 0, 6), 1);
+    simulator.run(1, null);
+    assertEquals(6, state.getArtLevel(0, 0));
+    assertEquals(0, state.getArtExperience(0, 0));
+    // From 6 to 8 costs 7 and 8 experience, and the 3 remaining are kept.
+    simulator = new LabSeasonSimulator(state,
+    (current, magus, season, random) -> LabSeasonSimulator.plan(LabSeasonSimulator.Activity.StudyBook, 0, 0, 18), 1);
+    simulator.run(1, null);
+    assertEquals(8, state.getArtLevel(0, 0));
+    assertEquals(3, state.getArtExperience(0, 0));
+  }
+
+  @Test
+  void parallelRunMatchesSequentialRun() {
+    int[] levels = { 5, 10, 3, 8 };
+    LabSeasonSimulator.Policy policy = (state, magus, season, random) -> LabSeasonSimulator.plan(
+      (random & 1) == 0 ? LabSeasonSimulator.Activity.StudyBook : LabSeasonSimulator.Activity.InventSpell,
+      0, 1, (int)Long.remainderUnsigned(random, 15) + 1);
+    List<Integer> sequential = new ArrayList<>();
+    List<Integer> parallel = new ArrayList<>();
+    for (boolean isParallel : new boolean[] { false, true }) {
+      LabSeasonSimulator.State state = LabSeasonSimulator.uniformState(64, levels);
+      for (int magus = 0; magus < 64; magus++) state.setLabBase(magus, 10);
+      LabSeasonSimulator simulator = new LabSeasonSimulator(state, policy, 42);
+      simulator.setParallel(isParallel);
+      simulator.run(40, null);
+      for (int magus = 0; magus < 64; magus++) {
+        (isParallel ? parallel : sequential).add(state.getArtLevel(magus, 0));
+        (isParallel ? parallel : sequential).add(state.getSpellLevels(magus));
+      }
+    }
+    assertEquals(sequential, parallel);
+  }
+}
@@ -0,0 +1,133 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.json.Json;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+/**
+ * The tests of {@link LiveSession}.
+ */
+class LiveSessionTest {
+
+  /**
+   * The sink recording the events.
+   */
+  private static final class RecordingSink implements SseEventSink {
+
+    /**
+     * The sent events.
+     */
+    final ConcurrentLinkedQueue<OutboundSseEvent> events = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Is the sink closed.
+     */
+    volatile boolean closed;
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public CompletionStage<?> send(OutboundSseEvent event) {
+      events.add(event);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * The factory of the events carrying their name and data.
+   */
+  private static final Sse SSE = (Sse)Proxy.newProxyInstance(Sse.class.getClassLoader(), new Class<?>[] { Sse.class },
+  (sse, method, arguments) -> {
+    if (!method.getName().equals("newEventBuilder")) throw new UnsupportedOperationException(method.getName());
+    Map<String, Object> fields = new HashMap<>();
+    return Proxy.newProxyInstance(Sse.class.getClassLoader(), new Class<?>[] { OutboundSseEvent.Builder.class },
+    (builder, builderMethod, values) -> {
+      switch (builderMethod.getName()) {
+        case "name" -> fields.put("name", values[0]);
+        case "data" -> fields.put("data", values[values.length - 1]);
+        case "build" -> {
+          return Proxy.newProxyInstance(Sse.class.getClassLoader(), new Class<?>[] { OutboundSseEvent.class },
+          (event, eventMethod, none) -> fields.get(eventMethod.getName().equals("getName") ? "name" : "data"));
+        }
+        default -> {
+        }
+      }
+      return builder;
+    });
+  });
+
+  /**
+   * Get the session identifier of an event.
+   *
+   * @param event The session event.
+   * @return The identifier.
+   */
+  private static String sessionOf(OutboundSseEvent event) {
+    assertEquals(LiveSession.SESSION_EVENT, event.getName());
+    return Json.createReader(new StringReader((String)event.getData())).readObject().getString("session");
+  }
+
+  @Test
+  void sendsGeneratedIdentifierFirst() {
+    RecordingSink first = new RecordingSink();
+    RecordingSink second = new RecordingSink();
+    LiveSession one = LiveSession.open(first, SSE);
+    LiveSession other = LiveSession.open(second, SSE);
+    try {
+      assertEquals(one.getId(), sessionOf(first.events.peek()));
+      assertEquals(other.getId(), sessionOf(second.events.peek()));
+      assertNotEquals(one.getId(), other.getId());
+      assertTrue(one.getId().length() >= 32);
+      assertEquals(one, LiveSession.get(one.getId()).orElseThrow());
+    } finally {
+      one.close();
+      other.close();
+    }
+    assertTrue(first.closed);
+    assertFalse(LiveSession.get(one.getId()).isPresent());
+  }
+
+  @Test
+  void purgesAbandonedSessions() {
+    List<LiveSession> sessions = new ArrayList<>();
+    try {
+      for (int i = 0; i < LiveSession.MAX_SESSIONS; i++) {
+        RecordingSink sink = new RecordingSink();
+        sessions.add(LiveSession.open(sink, SSE));
+        // The client has gone away without the server noticing.
+        sink.closed = true;
+      }
+      sessions.add(LiveSession.open(new RecordingSink(), SSE));
+      assertFalse(LiveSession.get(sessions.get(0).getId()).isPresent());
+      assertTrue(LiveSession.get(sessions.get(sessions.size() - 1).getId()).isPresent());
+    } finally {
+      sessions.forEach(LiveSession::close);
+    }
+  }
+}
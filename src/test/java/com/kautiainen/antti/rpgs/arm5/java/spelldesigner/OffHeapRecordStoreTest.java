@@ -0,0 +1,51 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link OffHeapRecordStore}.
+ */
+class OffHeapRecordStoreTest {
+
+  @Test
+  void readsBackGrowingRecords() {
+    OffHeapRecordStore store = new OffHeapRecordStore(new ArtOrdinals(), 1, 4);
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    int flame = store.addGuideline(GuidelineTextIndexTest.guideline(5, "Create a flame", "The size of a fist"));
+    SpellDesign spell = new SpellDesign("Lamp without flame", arts.getTechnique("Creo").orElseThrow(),
+    arts.getForm("Ignem").orElseThrow(), List.of(arts.getForm("Auram").orElseThrow()), (short)4,
+    SpellRange.Touch, SpellDuration.Sun, SpellTarget.Individual, 1);
+    int lamp = store.addSpell(spell);
+    for (int i = 0; i < 100; i++) store.addGuideline(GuidelineTextIndexTest.guideline(i + 1, "Guideline " + i, null));
+    assertEquals(102, store.size());
+    OffHeapRecordStore.Cursor cursor = store.cursor();
+    cursor.moveTo(flame);
+    assertFalse(cursor.isSpell());
+    assertEquals("Creo", cursor.getTechnique().getName());
+    assertEquals("Ignem", cursor.getForm().getName());
+    assertEquals(5, cursor.getLevelValue());
+    assertTrue(cursor.nameEquals("Create a flame"));
+    assertEquals(Optional.of("The size of a fist"), cursor.getDescription());
+    cursor.moveTo(lamp);
+    assertTrue(cursor.isSpell());
+    assertEquals(SpellRange.Touch, cursor.getRange());
+    assertEquals(SpellDuration.Sun, cursor.getDuration());
+    assertEquals("Auram", cursor.getRequisite(0).getName());
+    SpellDesign copy = cursor.toSpellDesign();
+    assertEquals(spell.getName(), copy.getName());
+    assertEquals(spell.getLevel(), copy.getLevel());
+    assertEquals(spell.getExtraMagnitudes(), copy.getExtraMagnitudes());
+    cursor.moveTo(101);
+    assertEquals("Guideline 99", cursor.getName());
+    assertEquals(Optional.empty(), cursor.getDescription());
+    assertThrows(IndexOutOfBoundsException.class, () -> store.cursor().moveTo(102));
+  }
+}
@@ -0,0 +1,80 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link PartitionedGuidelineCatalog}.
+ */
+class PartitionedGuidelineCatalogTest {
+
+  /**
+   * Create a guideline of every technique and form at a few levels.
+   *
+   * @return The guidelines.
+   */
+  private static List<SpellGuideline<?, ?, ?, ?>> guidelines() {
+    List<SpellGuideline<?, ?, ?, ?>> result = new ArrayList<>();
+    for (Art technique : HermeticArts.DEFAULT_ARTS.getTechniques()) {
+      for (Art form : HermeticArts.DEFAULT_ARTS.getForms()) {
+        for (int level : new int[] { 1, 5, 10, 20 }) {
+          result.add(ImmutableSpellGuideline.<TechniqueArtType, TechniqueInterface<TechniqueArtType>, FormArtType,
+          FormInterface<FormArtType>>builder()
+          .technique((HermeticArts.HermeticTechnique)technique).form((HermeticArts.HermeticForm)form)
+          .level(new SpellGuideline.GuidelineLevel((short)level))
+          .name("Affect " + form.getName() + " with " + technique.getName() + " " + level).build());
+        }
+      }
+    }
+    return result;
+  }
+
+  @Test
+  void findsGuidelinesOfAllNodesInLevelOrder() {
+    PartitionedGuidelineCatalog catalog = new PartitionedGuidelineCatalog(3);
+    List<SpellGuideline<?, ?, ?, ?>> guidelines = guidelines();
+    long sequence = ChangeFeed.shared().getSequence();
+    for (SpellGuideline<?, ?, ?, ?> guideline : guidelines) catalog.add(guideline);
+    // The partitions are internal, so their changes are not published.
+    assertEquals(sequence, ChangeFeed.shared().getSequence());
+    assertEquals(guidelines.size(), catalog.size());
+    List<SpellGuideline<?, ?, ?, ?>> found = catalog.find(null, null, 5, 10, 1000);
+    assertEquals(guidelines.size() / 2, found.size());
+    List<SpellGuideline<?, ?, ?, ?>> sorted = new ArrayList<>(found);
+    sorted.sort(Comparator.comparingInt(guideline -> GuidelineCatalog.levelKey(guideline.getLevel())));
+    assertEquals(sorted, found);
+    assertEquals(found.subList(0, 7), catalog.find(null, null, 5, 10, 7));
+    List<SpellGuideline<?, ?, ?, ?>> creoIgnem = catalog.find(List.of("cr"), List.of("ig"), 0, 100, 100);
+    assertEquals(4, creoIgnem.size());
+    for (SpellGuideline<?, ?, ?, ?> guideline : creoIgnem) assertEquals("Creo", guideline.getTechnique().getName());
+  }
+
+  @Test
+  void movesGuidelinesToAddedNode() {
+    PartitionedGuidelineCatalog catalog = new PartitionedGuidelineCatalog(2);
+    List<SpellGuideline<?, ?, ?, ?>> guidelines = guidelines();
+    for (SpellGuideline<?, ?, ?, ?> guideline : guidelines) catalog.add(guideline);
+    List<SpellGuideline<?, ?, ?, ?>> before = catalog.find(null, null, 0, 100, 1000);
+    PartitionedGuidelineCatalog.LocalNode node = new PartitionedGuidelineCatalog.LocalNode("added");
+    long sequence = ChangeFeed.shared().getSequence();
+    int moved = catalog.addNode(node);
+    assertEquals(sequence, ChangeFeed.shared().getSequence());
+    assertTrue(moved > 0);
+    assertEquals(moved, node.size());
+    assertEquals(guidelines.size(), catalog.size());
+    assertEquals(before.size(), catalog.find(null, null, 0, 100, 1000).size());
+    for (SpellGuideline<?, ?, ?, ?> guideline : guidelines) {
+      PartitionedGuidelineCatalog.Node owner = catalog.nodeOf(GuidelineCatalog.artKey(guideline.getTechnique()),
+      GuidelineCatalog.artKey(guideline.getForm()));
+      if (owner == node) assertTrue(node.getCatalog().getTextIndex().indexOf(guideline) >= 0);
+    }
+    assertSame(node, catalog.getNodes().get(2));
+  }
+}
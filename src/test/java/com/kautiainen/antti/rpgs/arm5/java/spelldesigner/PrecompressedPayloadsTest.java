@@ -0,0 +1,71 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link PrecompressedPayloads}.
+ */
+class PrecompressedPayloadsTest {
+
+  @Test
+  void negotiatesEncodings() {
+    assertEquals(PrecompressedPayloads.Encoding.IDENTITY, PrecompressedPayloads.negotiate(null));
+    assertEquals(PrecompressedPayloads.Encoding.IDENTITY, PrecompressedPayloads.negotiate(" "));
+    assertEquals(PrecompressedPayloads.Encoding.GZIP, PrecompressedPayloads.negotiate("gzip, deflate, br"));
+    assertEquals(PrecompressedPayloads.Encoding.DEFLATE, PrecompressedPayloads.negotiate("gzip;q=0.5, deflate"));
+    assertEquals(PrecompressedPayloads.Encoding.GZIP, PrecompressedPayloads.negotiate("X-GZIP"));
+    assertEquals(PrecompressedPayloads.Encoding.GZIP, PrecompressedPayloads.negotiate("*"));
+    assertEquals(PrecompressedPayloads.Encoding.IDENTITY, PrecompressedPayloads.negotiate("br"));
+    assertEquals(PrecompressedPayloads.Encoding.IDENTITY, PrecompressedPayloads.negotiate("gzip;q=0, deflate;q=0"));
+    assertEquals(PrecompressedPayloads.Encoding.IDENTITY, PrecompressedPayloads.negotiate("gzip;q=oops"));
+  }
+
+  @Test
+  void cachesPayloadsByVersion() throws IOException {
+    GuidelineCatalog catalog = new GuidelineCatalog(false);
+    catalog.add(GuidelineTextIndexTest.guideline(5, "Create a flame", null));
+    PrecompressedPayloads.Payload payload = PrecompressedPayloads.export(catalog, HermeticArts.DEFAULT_ARTS,
+    GrimoireExporter.Format.TEXT, true);
+    assertSame(payload, PrecompressedPayloads.export(catalog, HermeticArts.DEFAULT_ARTS,
+    GrimoireExporter.Format.TEXT, true));
+    byte[] identity = payload.getBytes(PrecompressedPayloads.Encoding.IDENTITY);
+    assertArrayEquals(identity, readAll(new GZIPInputStream(new ByteArrayInputStream(
+    payload.getBytes(PrecompressedPayloads.Encoding.GZIP)))));
+    assertArrayEquals(identity, readAll(new InflaterInputStream(new ByteArrayInputStream(
+    payload.getBytes(PrecompressedPayloads.Encoding.DEFLATE)))));
+    String tag = payload.getEntityTag(PrecompressedPayloads.Encoding.IDENTITY);
+    assertEquals(tag + "-gzip", payload.getEntityTag(PrecompressedPayloads.Encoding.GZIP));
+
+    catalog.add(GuidelineTextIndexTest.guideline(10, "Create a fire", null));
+    PrecompressedPayloads.Payload changed = PrecompressedPayloads.export(catalog, HermeticArts.DEFAULT_ARTS,
+    GrimoireExporter.Format.TEXT, true);
+    assertNotSame(payload, changed);
+    assertEquals(catalog.getVersion(), changed.getVersion());
+    assertNotEquals(tag, changed.getEntityTag(PrecompressedPayloads.Encoding.IDENTITY));
+  }
+
+  /**
+   * Read a whole stream.
+   *
+   * @param input The stream, which is closed.
+   * @return The bytes of the stream.
+   * @throws IOException The reading failed.
+   */
+  private static byte[] readAll(InputStream input) throws IOException {
+    try (input) {
+      return input.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.container.AsyncResponse;
+
+/**
+ * The tests of {@link ResourceExecutors}.
+ */
+class ResourceExecutorsTest {
+
+  @Test
+  void createsDaemonPlatformThreads() throws Exception {
+    ExecutorService executor = ResourceExecutors.create(ResourceExecutors.Mode.PLATFORM, 2);
+    try {
+      Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+      assertTrue(thread.isDaemon());
+      assertTrue(thread.getName().startsWith("spell-resource-"), thread.getName());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void rejectsTheWorkBeyondTheQueue() throws Exception {
+    ExecutorService executor = ResourceExecutors.create(ResourceExecutors.Mode.PLATFORM, 1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+      executor.submit(() -> {});
+      assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> {}));
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void rejectsUnavailableModes() {
+    assertThrows(UnsupportedOperationException.class, () -> ResourceExecutors.create(ResourceExecutors.Mode.MANAGED, 1));
+    if (!ResourceExecutors.virtualThreadsSupported()) {
+      assertThrows(UnsupportedOperationException.class, () -> ResourceExecutors.create(ResourceExecutors.Mode.VIRTUAL, 1));
+    }
+  }
+
+  @Test
+  void resumesWithTheFailureOfTheWork() throws Exception {
+    CompletableFuture<Object> resumed = new CompletableFuture<>();
+    AsyncResponse response = (AsyncResponse)Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+    new Class<?>[] { AsyncResponse.class }, (proxy, method, arguments) -> {
+      if (!method.getName().equals("resume")) throw new UnsupportedOperationException(method.getName());
+      return resumed.complete(arguments[0]);
+    });
+    IllegalStateException failure = new IllegalStateException("Failed");
+    ResourceExecutors.resume(response, () -> {
+      throw failure;
+    });
+    assertEquals(failure, assertInstanceOf(IllegalStateException.class, resumed.get(5, TimeUnit.SECONDS)));
+  }
+}
@@ -0,0 +1,79 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link SagaArtSets}.
+ */
+class SagaArtSetsTest {
+
+  /**
+   * Get the names of arts.
+   *
+   * @param arts The arts.
+   * @return The names of the arts.
+   */
+  private static List<String> names(Collection<? extends Art> arts) {
+    return new ArrayList<>(arts.stream().map(Art::getName).toList());
+  }
+
+  @Test
+  void sharesTheStandardArtSet() {
+    SagaArtSets sets = new SagaArtSets();
+    List<String> techniques = names(HermeticArts.DEFAULT_ARTS.getTechniques());
+    List<String> forms = names(HermeticArts.DEFAULT_ARTS.getForms());
+    SagaArtSets.SagaArts arts = sets.register("Tremere", techniques, forms);
+    assertTrue(arts.isDefault());
+    assertSame(HermeticArts.DEFAULT_ARTS, arts.asHermeticArts());
+    assertSame(SagaArtSets.DEFAULT_SAGA_ARTS, sets.getOrDefault("Unknown"));
+    assertTrue(sets.get("Unknown").isEmpty());
+  }
+
+  @Test
+  void storesOnlyTheDifferences() {
+    SagaArtSets sets = new SagaArtSets();
+    List<String> techniques = names(HermeticArts.DEFAULT_ARTS.getTechniques());
+    List<String> forms = names(HermeticArts.DEFAULT_ARTS.getForms());
+    int standardCount = techniques.size() + forms.size();
+    techniques.remove("Perdo");
+    forms.add("Vim");
+    forms.add("Tempus");
+    SagaArtSets.SagaArts arts = sets.register("Chronomancers", techniques, forms);
+    assertFalse(arts.isDefault());
+    assertEquals(2, arts.getDifferenceCount());
+    assertEquals(standardCount, arts.getArtCount());
+    assertTrue(arts.getTechnique("Perdo").isEmpty());
+    assertSame(HermeticArts.DEFAULT_ARTS.getTechnique("Creo").orElseThrow(), arts.getTechnique("Creo").orElseThrow());
+    Art tempus = sets.getForm("Chronomancers", "Tempus").orElseThrow();
+    assertEquals("Te", tempus.getAbbreviation().orElseThrow());
+    assertTrue(sets.getForm(null, "Tempus").isEmpty());
+
+    SagaArtSets.SagaArts other = sets.register("Timekeepers", techniques, forms);
+    assertSame(tempus, other.getForm("Tempus").orElseThrow());
+    assertTrue(names(other.asHermeticArts().getForms()).contains("Tempus"));
+    assertEquals(HermeticArts.DEFAULT_ARTS.getForms().size() + 1, other.asHermeticArts().getForms().size());
+    assertSame(other.asHermeticArts(), other.asHermeticArts());
+    assertEquals(2, sets.size());
+    assertTrue(sets.remove("Timekeepers"));
+    assertFalse(sets.remove("Timekeepers"));
+  }
+
+  @Test
+  void rejectsInvalidSagas() {
+    SagaArtSets sets = new SagaArtSets();
+    assertThrows(IllegalArgumentException.class, () -> sets.register("", List.of(), List.of()));
+    assertThrows(IllegalArgumentException.class, () -> sets.register("Saga", null, List.of()));
+    assertThrows(IllegalArgumentException.class, () -> sets.register("Saga", List.of(), Arrays.asList("Ignem", null)));
+  }
+}
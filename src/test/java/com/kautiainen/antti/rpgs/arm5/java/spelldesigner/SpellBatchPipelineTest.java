@@ -0,0 +1,100 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.json.JsonObject;
+
+/**
+ * The tests of {@link SpellBatchPipeline}.
+ */
+class SpellBatchPipelineTest {
+
+  /**
+   * Evaluate a batch.
+   *
+   * @param pipeline The pipeline.
+   * @param batch The JSON of the batch.
+   * @return The result lines.
+   * @throws IOException The evaluation failed.
+   */
+  private static String[] run(SpellBatchPipeline pipeline, String batch) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    pipeline.run(new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)), output);
+    return output.toString(StandardCharsets.UTF_8).split("\n");
+  }
+
+  @Test
+  void keepsTheOrderOfTheDesigns() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      StringBuilder batch = new StringBuilder("[");
+      for (int i = 1; i <= 200; i++) batch.append(i > 1 ? "," : "").append("{\"code\":\"CrIg").append(i).append("\"}");
+      String[] lines = run(new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS, executor, 1), batch.append(']').toString());
+      assertEquals(200, lines.length);
+      for (int i = 0; i < lines.length; i++) {
+        assertTrue(lines[i].startsWith("{\"index\":" + i + ",\"code\":\"CrIg" + (i + 1) + "\""), lines[i]);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void evaluatesDesignFields() throws IOException {
+    String[] lines = run(new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS),
+    "[{\"name\":\"Pilum\",\"technique\":\"Creo\",\"form\":\"Ignem\",\"requisites\":[\"Rego\"],\"baseLevel\":5,"
+    + "\"range\":\"Voice\",\"castingTotal\":20}]");
+    assertEquals(1, lines.length);
+    assertEquals("{\"index\":0,\"name\":\"Pilum\",\"code\":\"CrIg(Re)5\",\"level\":15,\"magnitude\":3,"
+    + "\"castingMargin\":5}", lines[0]);
+  }
+
+  @Test
+  void reportsErrorsWithTheDesigns() throws IOException {
+    SpellBatchPipeline pipeline = new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS);
+    String[] lines = run(pipeline, "[{\"code\":\"CrIg\"},[1],{\"code\":\"CrIg5\",\"range\":\"Far\"},{\"code\":\"CrIg5\"}]");
+    assertEquals(4, lines.length);
+    assertTrue(lines[0].contains(SpellBatchPipeline.GENERIC_LEVEL_MESSAGE), lines[0]);
+    assertTrue(lines[1].contains(SpellBatchPipeline.EXPECTED_OBJECT_MESSAGE), lines[1]);
+    assertTrue(lines[2].startsWith("{\"index\":2,\"error\":"), lines[2]);
+    assertTrue(lines[3].contains("\"level\":5"), lines[3]);
+    lines = run(pipeline, "{}");
+    assertTrue(lines[0].contains(SpellBatchPipeline.EXPECTED_ARRAY_MESSAGE), lines[0]);
+    assertThrows(IllegalArgumentException.class, () -> new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS, Runnable::run, 0));
+  }
+
+  @Test
+  void reportsInvalidMagnitudesWithinBatch() throws IOException {
+    String[] lines = run(new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS),
+    "[{\"code\":\"CrIg5\",\"extraMagnitudes\":32767},{\"code\":\"CrIg5\",\"extraMagnitudes\":1}]");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].contains("\"error\":\"" + SpellDesign.INVALID_MAGNITUDES_MESSAGE + "\""), lines[0]);
+    assertTrue(lines[1].contains("\"level\":10"), lines[1]);
+  }
+
+  @Test
+  void reportsUnexpectedFailuresWithTheDesigns() throws IOException {
+    SpellBatchPipeline pipeline = new SpellBatchPipeline(HermeticArts.DEFAULT_ARTS) {
+      @Override
+      SpellDesign design(JsonObject source) {
+        if (source.containsKey("fail")) throw new IllegalStateException("Failed");
+        return super.design(source);
+      }
+    };
+    String[] lines = run(pipeline, "[{\"code\":\"CrIg5\",\"fail\":true},{\"code\":\"CrIg5\"}]");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].contains("Failed"), lines[0]);
+    assertTrue(lines[1].contains("\"level\":5"), lines[1]);
+  }
+}
@@ -0,0 +1,58 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link SpellCodeParser}.
+ */
+class SpellCodeParserTest {
+
+  @Test
+  void parsesCodesWithRequisites() {
+    SpellCodeParser parser = new SpellCodeParser();
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    SpellCodeParser.SpellCode code = parser.parse("ReCo(Me) 20");
+    assertEquals(arts.getTechnique("Rego").orElseThrow(), code.getTechnique());
+    assertEquals(arts.getForm("Corpus").orElseThrow(), code.getForm());
+    assertEquals(List.of(arts.getForm("Mentem").orElseThrow()), code.getRequisites());
+    assertFalse(code.isGeneric());
+    assertEquals(20, code.getLevel());
+    code = parser.parse("CrIg Generic");
+    assertTrue(code.isGeneric());
+    assertEquals(0, code.getRequisiteCount());
+  }
+
+  @Test
+  void reportsErrorPositions() {
+    SpellCodeParser parser = new SpellCodeParser();
+    SpellCodeParser.SpellCode code = new SpellCodeParser.SpellCode();
+    assertFalse(parser.parse("CrXx5", 0, 5, code));
+    assertEquals(2, code.getErrorIndex());
+    assertEquals(SpellCodeParser.INVALID_FORM_MESSAGE, code.getErrorMessage());
+    assertFalse(parser.parse("IgCr5", 0, 5, code));
+    assertEquals(SpellCodeParser.INVALID_TECHNIQUE_MESSAGE, code.getErrorMessage());
+    assertThrows(IllegalArgumentException.class, () -> parser.parse("CrIg5x"));
+    assertThrows(IllegalArgumentException.class, () -> parser.parse("ReCo(Me 20"));
+    // An absent level is generic.
+    assertTrue(parser.parse("CrIg").isGeneric());
+  }
+
+  @Test
+  void parsesWindows() {
+    SpellCodeParser parser = new SpellCodeParser();
+    SpellCodeParser.SpellCode code = new SpellCodeParser.SpellCode();
+    String line = "Spells: CrIg5, PeIg10";
+    assertTrue(parser.parse(line, 8, 13, code));
+    assertEquals(5, code.getLevel());
+    assertTrue(parser.parse(line, 15, line.length(), code));
+    assertEquals("Perdo", code.getTechnique().getName());
+    assertEquals(10, code.getLevel());
+  }
+}
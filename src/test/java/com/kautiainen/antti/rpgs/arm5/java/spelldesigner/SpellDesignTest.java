@@ -0,0 +1,43 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of the level calculation of {@link SpellDesign}.
+ */
+class SpellDesignTest {
+
+  /**
+   * Create a design.
+   *
+   * @param baseLevel The base level.
+   * @param extraMagnitudes The additional magnitudes.
+   * @return The design.
+   */
+  static SpellDesign design(int baseLevel, int extraMagnitudes) {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    return new SpellDesign(null, arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow(), null,
+    (short)baseLevel, SpellRange.Personal, SpellDuration.Momentary, SpellTarget.Individual, extraMagnitudes);
+  }
+
+  @Test
+  void addsMagnitudes() {
+    assertEquals(5, design(5, 0).getLevel());
+    assertEquals(10, design(5, 1).getLevel());
+    assertEquals(25, design(15, 2).getLevel());
+    assertEquals(4, design(5, -1).getLevel());
+    assertEquals(SpellDesign.MAX_MAGNITUDE * 5, design(5, SpellDesign.MAX_MAGNITUDE - 1).getLevel());
+  }
+
+  @Test
+  void rejectsMagnitudesOutOfRange() {
+    assertThrows(IllegalArgumentException.class, () -> design(5, 32767));
+    assertThrows(IllegalArgumentException.class, () -> design(5, -32769));
+    assertThrows(IllegalArgumentException.class, () -> design(5, Integer.MAX_VALUE));
+    assertThrows(IllegalArgumentException.class, () -> design(5, SpellDesign.MAX_MAGNITUDE));
+    assertThrows(IllegalArgumentException.class, () -> SpellDesign.levelOf((short)5, Integer.MIN_VALUE));
+  }
+}
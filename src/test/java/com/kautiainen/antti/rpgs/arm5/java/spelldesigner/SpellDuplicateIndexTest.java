@@ -0,0 +1,79 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link SpellDuplicateIndex}.
+ */
+class SpellDuplicateIndexTest {
+
+  @Test
+  void findsExactAndNearDuplicates() {
+    SpellDuplicateIndex index = new SpellDuplicateIndex();
+    int first = index.add(SpellDesignTest.design(5, 0));
+    int copy = index.add(SpellDesignTest.design(5, 0));
+    int stronger = index.add(SpellDesignTest.design(5, 1));
+    // The base level differs, and the final magnitude follows it.
+    int higher = index.add(SpellDesignTest.design(15, 0));
+    assertArrayEquals(new int[] { first, copy }, index.exactDuplicatesOf(SpellDesignTest.design(5, 0)));
+    assertArrayEquals(new int[] { stronger, higher }, index.nearDuplicatesOf(SpellDesignTest.design(5, 0)));
+    assertArrayEquals(new int[0], index.exactDuplicatesOf(SpellDesignTest.design(10, 0)));
+    assertEquals(1, index.exactGroups().size());
+    assertArrayEquals(new int[] { first, copy }, index.exactGroups().get(0));
+    // The additional magnitudes and the base level change the final magnitude.
+    assertEquals(List.of(List.of(first, copy, stronger), List.of(first, copy, stronger, higher)), groups(index));
+  }
+
+  /**
+   * Get the near duplicate groups of an index.
+   *
+   * @param index The index.
+   * @return The identifiers of the near duplicate groups as lists.
+   */
+  private static List<List<Integer>> groups(SpellDuplicateIndex index) {
+    return index.nearGroups().stream().map(group -> Arrays.stream(group).boxed().toList()).toList();
+  }
+
+  /**
+   * Create a design with a range.
+   *
+   * @param baseLevel The base level.
+   * @param range The range.
+   * @return The design.
+   */
+  private static SpellDesign design(int baseLevel, SpellRange range) {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    return new SpellDesign(null, arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow(), null,
+    (short)baseLevel, range, SpellDuration.Momentary, SpellTarget.Individual, 0);
+  }
+
+  @Test
+  void keepsChainsOfNearDuplicatesApart() {
+    SpellDuplicateIndex index = new SpellDuplicateIndex();
+    int personal = index.add(design(5, SpellRange.Personal));
+    int voice = index.add(design(5, SpellRange.Voice));
+    int stronger = index.add(design(10, SpellRange.Voice));
+    // The personal and the stronger voice designs differ in both the range and the base level.
+    assertEquals(List.of(List.of(personal, voice), List.of(voice, stronger)), groups(index));
+  }
+
+  @Test
+  void addsLargeBucketsInBulk() {
+    List<SpellDesign> designs = new ArrayList<>(Collections.nCopies(50_000, SpellDesignTest.design(5, 0)));
+    designs.add(SpellDesignTest.design(10, 0));
+    SpellDuplicateIndex index = new SpellDuplicateIndex();
+    int[] ids = index.addAll(designs);
+    assertEquals(designs.size(), ids.length);
+    assertEquals(50_000, index.exactDuplicatesOf(SpellDesignTest.design(5, 0)).length);
+    assertArrayEquals(new int[] { 50_000 }, index.nearDuplicatesOf(SpellDesignTest.design(5, 0)));
+    assertEquals(1, index.nearGroups().size());
+  }
+}
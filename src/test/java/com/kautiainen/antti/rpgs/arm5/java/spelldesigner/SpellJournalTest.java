@@ -0,0 +1,215 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The tests of the recovery and the compaction of {@link SpellJournal}.
+ */
+class SpellJournalTest {
+
+  /**
+   * The journal directory.
+   */
+  @TempDir
+  Path directory;
+
+  /**
+   * Create a design.
+   *
+   * @param name The name of the design.
+   * @param baseLevel The base level.
+   * @return The design.
+   */
+  static SpellDesign design(String name, int baseLevel) {
+    HermeticArts arts = HermeticArts.DEFAULT_ARTS;
+    return new SpellDesign(name, arts.getTechnique("Creo").orElseThrow(), arts.getForm("Ignem").orElseThrow(), null,
+    (short)baseLevel, SpellRange.Personal, SpellDuration.Momentary, SpellTarget.Individual, 0);
+  }
+
+  /**
+   * Open a journal without the group delay.
+   *
+   * @param threshold The compaction threshold.
+   * @return The journal.
+   * @throws IOException The recovery failed.
+   */
+  SpellJournal open(int threshold) throws IOException {
+    return new SpellJournal(directory, HermeticArts.DEFAULT_ARTS, 64, 0, threshold);
+  }
+
+  /**
+   * Get the journal segments.
+   *
+   * @return The segment files.
+   * @throws IOException The listing failed.
+   */
+  List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().startsWith(SpellJournal.SEGMENT_PREFIX)).sorted().toList();
+    }
+  }
+
+  @Test
+  void recoversCommittedChanges() throws Exception {
+    long removed;
+    try (SpellJournal journal = open(1000)) {
+      removed = journal.add(design("First", 5)).get();
+      journal.add(design("Second", 10)).get();
+      journal.remove(removed).get();
+    }
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(3, journal.getRecoveredEntries());
+      assertEquals(1, journal.getDesigns().size());
+      assertEquals("Second", journal.getDesigns().firstEntry().getValue().getName());
+      assertFalse(journal.getDesigns().containsKey(removed));
+    }
+  }
+
+  @Test
+  void truncatesTornTail() throws Exception {
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("First", 5)).get();
+      journal.add(design("Second", 10)).get();
+    }
+    Path segment = segments().get(segments().size() - 1);
+    long intact = Files.size(segment);
+    // A crash in the middle of a write leaves a partial entry behind.
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3 }));
+    }
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(2, journal.getDesigns().size());
+      assertEquals(intact, Files.size(segment));
+      journal.add(design("Third", 15)).get();
+    }
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(3, journal.getDesigns().size());
+    }
+  }
+
+  @Test
+  void dropsCorruptedLastEntry() throws Exception {
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("First", 5)).get();
+      journal.add(design("Second", 10)).get();
+    }
+    flipLastByte(segments().get(0));
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(1, journal.getDesigns().size());
+      assertEquals("First", journal.getDesigns().firstEntry().getValue().getName());
+    }
+  }
+
+  @Test
+  void refusesCorruptedEarlierSegment() throws Exception {
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("First", 5)).get();
+      journal.add(design("Second", 10)).get();
+    }
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("Third", 15)).get();
+    }
+    List<Path> segments = segments();
+    assertEquals(2, segments.size());
+    long size = Files.size(segments.get(0));
+    flipLastByte(segments.get(0));
+    IOException error = assertThrows(IOException.class, () -> open(1000));
+    assertTrue(error.getMessage().startsWith(SpellJournal.CORRUPTED_SEGMENT_MESSAGE), error.getMessage());
+    assertEquals(size, Files.size(segments.get(0)));
+    assertEquals(segments, segments());
+  }
+
+  @Test
+  void truncatesOnlyTheLastSegment() throws Exception {
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("First", 5)).get();
+    }
+    try (SpellJournal journal = open(1000)) {
+      journal.add(design("Second", 10)).get();
+      journal.add(design("Third", 15)).get();
+    }
+    flipLastByte(segments().get(1));
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(2, journal.getRecoveredEntries());
+      assertEquals(List.of("First", "Second"),
+      journal.getDesigns().values().stream().map(SpellDesign::getName).toList());
+    }
+  }
+
+  /**
+   * Corrupt the last byte of a segment.
+   *
+   * @param segment The segment file.
+   * @throws IOException The writing failed.
+   */
+  static void flipLastByte(Path segment) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      channel.read(last, channel.size() - 1);
+      last.put(0, (byte)(last.get(0) ^ 0xFF));
+      channel.write(last.rewind(), channel.size() - 1);
+    }
+  }
+
+  @Test
+  void replaysOnlyEntriesAfterSnapshot() throws Exception {
+    try (SpellJournal journal = open(1000)) {
+      for (int i = 1; i <= 5; i++) journal.add(design("Before " + i, i)).get();
+      journal.compact();
+      journal.add(design("After 1", 20)).get();
+      journal.add(design("After 2", 25)).get();
+    }
+    assertTrue(Files.exists(directory.resolve(SpellJournal.SNAPSHOT_FILE)));
+    assertEquals(1, segments().size());
+    try (SpellJournal journal = open(1000)) {
+      assertEquals(2, journal.getRecoveredEntries());
+      assertEquals(7, journal.getDesigns().size());
+    }
+  }
+
+  @Test
+  void compactsWhileWriting() throws Exception {
+    Set<Long> expected = new TreeSet<>();
+    try (SpellJournal journal = open(50)) {
+      Queue<CompletableFuture<Long>> added = new ConcurrentLinkedQueue<>();
+      Thread[] writers = new Thread[4];
+      for (int t = 0; t < writers.length; t++) {
+        int writer = t;
+        writers[t] = new Thread(() -> {
+          for (int i = 0; i < 250; i++) {
+            added.add(journal.add(design("Writer " + writer + " " + i, 1 + i % 50)));
+          }
+        });
+        writers[t].start();
+      }
+      for (int i = 0; i < 5; i++) journal.compact();
+      for (Thread writer : writers) writer.join();
+      for (CompletableFuture<Long> id : added) expected.add(id.get(10, TimeUnit.SECONDS));
+      assertEquals(expected, journal.getDesigns().keySet());
+    }
+    try (SpellJournal journal = open(50)) {
+      assertEquals(expected, journal.getDesigns().keySet());
+    }
+  }
+}
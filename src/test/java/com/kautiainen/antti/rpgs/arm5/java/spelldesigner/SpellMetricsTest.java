@@ -0,0 +1,57 @@
+package com.kautiainen.antti.rpgs.arm5.java.spelldesigner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of {@link SpellMetrics}.
+ */
+class SpellMetricsTest {
+
+  @Test
+  void bucketsBoundTheirDurations() {
+    for (long nanos = 0; nanos < 1 << 16; nanos++) {
+      int bucket = SpellMetrics.Histogram.bucketOf(nanos);
+      assertTrue(SpellMetrics.Histogram.upperBoundOf(bucket) >= nanos, () -> "Bucket too low");
+      assertTrue(bucket == 0 || SpellMetrics.Histogram.upperBoundOf(bucket - 1) < nanos, () -> "Bucket too high");
+    }
+    int last = SpellMetrics.Histogram.bucketOf(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, SpellMetrics.Histogram.upperBoundOf(last));
+    assertEquals(0, SpellMetrics.Histogram.bucketOf(-5));
+  }
+
+  @Test
+  void estimatesQuantiles() {
+    SpellMetrics.Histogram histogram = SpellMetrics.histogram("test_quantile_seconds", "Test durations");
+    for (int i = 1; i <= 100; i++) histogram.recordNanos(i * 1000L);
+    assertEquals(100, histogram.getCount());
+    assertEquals(5_050_000, histogram.getSumNanos());
+    long median = histogram.getQuantileNanos(0.5);
+    assertTrue(median >= 50_000 && median < 50_000 * 5 / 4, () -> "Median " + median);
+    long maximum = histogram.getQuantileNanos(1);
+    assertTrue(maximum >= 100_000 && maximum < 100_000 * 5 / 4, () -> "Maximum " + maximum);
+    assertThrows(IllegalArgumentException.class, () -> histogram.getQuantileNanos(1.5));
+  }
+
+  @Test
+  void exportsTextFormat() throws IOException {
+    SpellMetrics.Counter counter = SpellMetrics.counter("test_exported_total", "Test events");
+    counter.increment();
+    counter.increment();
+    SpellMetrics.Histogram histogram = SpellMetrics.histogram("test_exported_seconds", "Test durations");
+    histogram.recordNanos(2_000_000_000L);
+    String text = SpellMetrics.appendTo(new StringBuilder()).toString();
+    assertTrue(text.contains("# TYPE test_exported_total counter\ntest_exported_total 2\n"), text);
+    assertTrue(text.contains("test_exported_seconds_bucket{le=\"1.073741824\"} 0\n"), text);
+    assertTrue(text.contains("test_exported_seconds_bucket{le=\"2.147483648\"} 1\n"), text);
+    assertTrue(text.contains("test_exported_seconds_bucket{le=\"+Inf\"} 1\n"), text);
+    assertTrue(text.contains("test_exported_seconds_sum 2.000000000\n"), text);
+    assertThrows(IllegalArgumentException.class, () -> SpellMetrics.counter("test_exported_total", "Again"));
+    assertThrows(IllegalArgumentException.class, () -> SpellMetrics.counter("1 invalid", "Invalid"));
+  }
+}